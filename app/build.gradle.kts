@@ -36,6 +36,17 @@ android {
     buildFeatures {
         viewBinding = true
     }
+
+    testOptions {
+        // relay classes log through android.util.Log; the stand-in relay tests run on the host JVM
+        unitTests.isReturnDefaultValues = true
+        unitTests.all { test ->
+            // forward -Drelay.load.* so load profiles can be set from the command line
+            System.getProperties().stringPropertyNames()
+                .filter { it.startsWith("relay.load.") }
+                .forEach { test.systemProperty(it, System.getProperty(it)) }
+        }
+    }
 }
 
 dependencies {
@@ -88,6 +99,7 @@ dependencies {
 
     // Testing
     testImplementation(libs.junit)
+    testImplementation(libs.mockwebserver)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
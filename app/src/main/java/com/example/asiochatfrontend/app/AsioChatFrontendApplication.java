@@ -1,13 +1,52 @@
 package com.example.asiochatfrontend.app;
 
+import android.app.Activity;
 import android.app.Application;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatDelegate;
 
+import com.example.asiochatfrontend.app.di.ServiceModule;
+
 public class AsioChatFrontendApplication extends Application {
 
     @Override
     public void onCreate() {
         super.onCreate();
         AppCompatDelegate.setDefaultNightMode(AppCompatDelegate.MODE_NIGHT_NO);
+        registerActivityLifecycleCallbacks(new ForegroundTracker());
+    }
+
+    @Override
+    public void onTerminate() {
+        ServiceModule.shutdown();
+        super.onTerminate();
+    }
+
+    /** Tells ServiceModule when the app has no visible activity, so relay probes can back off */
+    private static class ForegroundTracker implements ActivityLifecycleCallbacks {
+        private int startedActivities = 0;
+
+        @Override
+        public void onActivityStarted(@NonNull Activity activity) {
+            if (startedActivities++ == 0) {
+                ServiceModule.setAppInForeground(true);
+            }
+        }
+
+        @Override
+        public void onActivityStopped(@NonNull Activity activity) {
+            if (--startedActivities == 0) {
+                ServiceModule.setAppInForeground(false);
+            }
+        }
+
+        @Override public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) { }
+        @Override public void onActivityResumed(@NonNull Activity activity) { }
+        @Override public void onActivityPaused(@NonNull Activity activity) { }
+        @Override public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) { }
+        @Override public void onActivityDestroyed(@NonNull Activity activity) { }
     }
-}
\ No newline at end of file
+}
@@ -3,6 +3,8 @@ package com.example.asiochatfrontend.app.di;
 import android.content.Context;
 import android.util.Log;
 
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
+import com.example.asiochatfrontend.core.concurrent.SerialExecutor;
 import com.example.asiochatfrontend.core.connection.ConnectionManager;
 import com.example.asiochatfrontend.core.connection.ConnectionMode;
 import com.example.asiochatfrontend.core.model.dto.ChatDto;
@@ -20,7 +22,13 @@ import com.example.asiochatfrontend.data.direct.service.DirectMessageService;
 import com.example.asiochatfrontend.data.direct.service.DirectUserService;
 import com.example.asiochatfrontend.data.relay.network.RelayApiClient;
 import com.example.asiochatfrontend.data.relay.network.RelayWebSocketClient;
+import com.example.asiochatfrontend.data.relay.network.ResumeCursorTracker;
+import com.example.asiochatfrontend.data.relay.network.NetworkReachabilityMonitor;
 import com.example.asiochatfrontend.data.relay.network.WebSocketHealthMonitor;
+import com.example.asiochatfrontend.data.relay.service.ChatSyncMarks;
+import com.example.asiochatfrontend.data.relay.service.KeyPrefetcher;
+import com.example.asiochatfrontend.data.relay.service.MessageIdDeduplicator;
+import com.example.asiochatfrontend.data.relay.service.OutboxFlusher;
 import com.example.asiochatfrontend.data.relay.service.RelayAuthService;
 import com.example.asiochatfrontend.data.relay.service.RelayChatService;
 import com.example.asiochatfrontend.data.relay.service.RelayMediaService;
@@ -30,6 +38,7 @@ import com.example.asiochatfrontend.domain.repository.ChatRepository;
 import com.example.asiochatfrontend.domain.repository.MediaRepository;
 import com.example.asiochatfrontend.domain.repository.MessageRepository;
 import com.example.asiochatfrontend.domain.repository.UserRepository;
+import com.example.asiochatfrontend.domain.usecase.message.GetOfflineMessagesUseCase;
 import com.example.asiochatfrontend.domain.usecase.user.CreateUserUseCase;
 import com.example.asiochatfrontend.domain.usecase.user.GetUserByIdUseCase;
 import com.example.asiochatfrontend.domain.usecase.user.UpdateUserUseCase;
@@ -41,8 +50,7 @@ import com.google.gson.GsonBuilder;
 
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 import javax.inject.Singleton;
 
@@ -73,10 +81,12 @@ public class ServiceModule {
     private static RelayMediaService      relayMediaService;
     private static RelayUserService       relayUserService;
     private static RelayAuthService       relayAuthService;
+    private static KeyPrefetcher          keyPrefetcher;
 
     private static UserDiscoveryManager   userDiscoveryManager;
     private static RelayWebSocketClient    relayWebSocketClient;
     private static WebSocketHealthMonitor  webSocketHealthMonitor;
+    private static NetworkReachabilityMonitor networkReachabilityMonitor;
     private static ConnectionManager       connectionManager;
     private static Gson                    gson;
 
@@ -87,6 +97,17 @@ public class ServiceModule {
 
     private static FileUtils               fileUtils;
     private static final List<OnWSEventCallback> wsEventCallbacks = new CopyOnWriteArrayList<>();
+    private static volatile boolean appInForeground = true;
+
+    // Relay redelivery dedup, shared by text and media ingestion
+    private static final long DEDUP_WINDOW_MS = 10 * 60_000;
+    private static final int  DEDUP_CAPACITY  = 20_000;
+    // Offline outbox: messages queued but not yet confirmed, and how long a reconnect waits on them
+    private static final int  OUTBOX_MAX_IN_FLIGHT    = 64;
+    private static final long OUTBOX_FLUSH_TIMEOUT_MS = 30_000;
+    // Bulk key prefetch: how many recent chats at startup, and how often one chat is refetched
+    private static final int  KEY_PREFETCH_RECENT_CHATS = 10;
+    private static final long KEY_PREFETCH_INTERVAL_MS  = 5 * 60_000;
 
     //==============================
     // Public initialization API
@@ -105,6 +126,9 @@ public class ServiceModule {
             int port,
             AppDatabase db
     ) {
+        // — Shared background pools —
+        AppExecutors.start();
+
         // — Repositories —
         chatRepository    = chatRepo;
         messageRepository = msgRepo;
@@ -139,14 +163,31 @@ public class ServiceModule {
         String protocol      = relayIp.startsWith("http") ? "" : "http://";
         relayApiClient       = RelayApiClient.createInstance(relayIp, port, userId);
         String baseUrl       = protocol + relayIp + ":" + port;
-        relayWebSocketClient = new RelayWebSocketClient(baseUrl, userId);
+        relayWebSocketClient = new RelayWebSocketClient(
+                baseUrl,
+                userId,
+                new ResumeCursorTracker(db.syncCursorDao(), userId),
+                gson
+        );
+
+        // — Reconnect backoff follows the device's network —
+        if (networkReachabilityMonitor != null) {
+            networkReachabilityMonitor.stop();
+        }
+        networkReachabilityMonitor = new NetworkReachabilityMonitor(context, relayWebSocketClient);
+        networkReachabilityMonitor.start();
 
         // — Relay services —
         relayAuthService    = new RelayAuthService(relayApiClient, encryptionManager, userId);
         relayChatService    = new RelayChatService(userId, chatRepository, relayAuthService, relayApiClient, relayWebSocketClient, gson, wsEventCallbacks);
-        relayMessageService = new RelayMessageService(messageRepository, mediaRepository, chatRepository, relayAuthService, relayApiClient, relayWebSocketClient, gson, userId);
-        relayMediaService   = new RelayMediaService(mediaRepository, messageRepository, chatRepository, relayApiClient, relayWebSocketClient, fileUtils, userId, gson);
+        MessageIdDeduplicator deduplicator = new MessageIdDeduplicator(DEDUP_WINDOW_MS, DEDUP_CAPACITY);
+        ChatSyncMarks syncMarks = new ChatSyncMarks(db.syncCursorDao(), userId);
+        OutboxFlusher outboxFlusher = new OutboxFlusher(chatRepository, AppExecutors.io(), OUTBOX_MAX_IN_FLIGHT, OUTBOX_FLUSH_TIMEOUT_MS);
+        relayMessageService = new RelayMessageService(messageRepository, mediaRepository, chatRepository, relayAuthService, relayApiClient, relayWebSocketClient, gson, userId, db::runInTransaction, deduplicator, syncMarks, outboxFlusher);
+        relayMediaService   = new RelayMediaService(mediaRepository, messageRepository, chatRepository, relayApiClient, relayWebSocketClient, fileUtils, userId, gson, deduplicator, syncMarks, db::runInTransaction, outboxFlusher);
         relayUserService    = new RelayUserService(userRepository, relayApiClient, relayWebSocketClient, gson);
+        keyPrefetcher       = new KeyPrefetcher(relayAuthService, chatRepository, syncMarks, userId, KEY_PREFETCH_INTERVAL_MS);
+        keyPrefetcher.prefetchRecentChats(KEY_PREFETCH_RECENT_CHATS, AppExecutors.io());
 
         // — Final ConnectionManager wiring —
         connectionManager = new ConnectionManager(
@@ -173,11 +214,15 @@ public class ServiceModule {
         );
         directUserService.setUserDiscoveryManager(userDiscoveryManager);
 
-        // — Health monitoring for Relay TCP ping loop —
-        ExecutorService healthExecutor = Executors.newSingleThreadExecutor();
+        // — Health monitoring: PING/PONG over the live relay session —
+        if (webSocketHealthMonitor != null) {
+            webSocketHealthMonitor.stop();
+        }
+        // Lost/restored handling runs in order, on the shared IO pool
+        Executor healthExecutor = new SerialExecutor(task -> AppExecutors.io().execute(task));
+        GetOfflineMessagesUseCase getOfflineMessagesUseCase = new GetOfflineMessagesUseCase(connectionManager);
         webSocketHealthMonitor = new WebSocketHealthMonitor(
-                relayIp.replace("http://", "").replace("https://", ""),
-                port,
+                relayWebSocketClient,
                 new WebSocketHealthMonitor.HealthObserver() {
                     @Override public void onConnectionLost() {
                         healthExecutor.execute(() -> connectionManager.updateOnlineStatus(false));
@@ -185,25 +230,30 @@ public class ServiceModule {
                     @Override public void onConnectionRestored() {
                         healthExecutor.execute(() -> {
                             connectionManager.updateOnlineStatus(true);
-                            relayWebSocketClient.scheduleReconnect();
-                            if (Boolean.TRUE.equals(connectionManager.getOnlineStatus().getValue()))
-                            {
-                                try {
-                                    List<MessageDto> messageDtoList = connectionManager.sendPendingMessages();
-                                    List<ChatDto> chatDtoList = connectionManager.sendPendingChats();
-                                    // Fire the callback to notify that pending messages have been sent in UI
-                                    for (OnWSEventCallback onWSEventCallback : wsEventCallbacks) {
-                                        onWSEventCallback.onPendingMessagesSendEvent(messageDtoList);
-                                        onWSEventCallback.onChatCreateEvent(chatDtoList);
-                                    }
-                                } catch (Exception e) {
-                                    // Failed to send pending messages
+                            relayAuthService.onConnectionRestored();
+                            relayMessageService.onConnectionRestored();
+                            try {
+                                // what arrived while we were away, before our own backlog goes out
+                                getOfflineMessagesUseCase.execute(userId);
+                            } catch (Exception e) {
+                                Log.e("ServiceModule", "Offline inbox sync failed", e);
+                            }
+                            try {
+                                List<MessageDto> messageDtoList = connectionManager.sendPendingMessages();
+                                List<ChatDto> chatDtoList = connectionManager.sendPendingChats();
+                                // Fire the callback to notify that pending messages have been sent in UI
+                                for (OnWSEventCallback onWSEventCallback : wsEventCallbacks) {
+                                    onWSEventCallback.onPendingMessagesSendEvent(messageDtoList);
+                                    onWSEventCallback.onChatCreateEvent(chatDtoList);
                                 }
+                            } catch (Exception e) {
+                                // Failed to send pending messages
                             }
                         });
                     }
                 }
         );
+        webSocketHealthMonitor.setForeground(appInForeground);
 
         webSocketHealthMonitor.start();
     }
@@ -220,6 +270,21 @@ public class ServiceModule {
         wsEventCallbacks.remove(cb);
     }
 
+    /** Called by the Application as its first activity starts or last one stops */
+    public static void setAppInForeground(boolean foreground) {
+        appInForeground = foreground;
+        WebSocketHealthMonitor monitor = webSocketHealthMonitor;
+        if (monitor != null) {
+            monitor.setForeground(foreground);
+        }
+        if (!foreground) {
+            AppExecutors.logStats();
+            if (relayMessageService != null) {
+                Log.d("ServiceModule", relayMessageService.getAckStats().toString());
+            }
+        }
+    }
+
     public static void startUserDiscovery() {
         if (userDiscoveryManager == null) {
             throw new IllegalStateException("ServiceModule not initialized. Call initialize() first.");
@@ -264,6 +329,27 @@ public class ServiceModule {
         }
     }
 
+    /**
+     * Stops the relay session and health checks, stores what the services
+     * still batch, then drains the shared pools
+     */
+    public static synchronized void shutdown() {
+        if (webSocketHealthMonitor != null) {
+            webSocketHealthMonitor.stop();
+        }
+        if (networkReachabilityMonitor != null) {
+            networkReachabilityMonitor.stop();
+        }
+        shutdownRelayServices();
+        if (relayMessageService != null) {
+            relayMessageService.shutdown();
+        }
+        if (relayMediaService != null) {
+            relayMediaService.shutdown();
+        }
+        AppExecutors.shutdown();
+    }
+
     public static ChatRepository getChatRepository() {
         return chatRepository;
     }
@@ -312,6 +398,10 @@ public class ServiceModule {
         return relayAuthService;
     }
 
+    public static KeyPrefetcher getKeyPrefetcher() {
+        return keyPrefetcher;
+    }
+
     public static RelayUserService getRelayUserService() {
         return relayUserService;
     }
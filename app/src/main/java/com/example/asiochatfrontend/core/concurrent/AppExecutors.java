@@ -0,0 +1,141 @@
+package com.example.asiochatfrontend.core.concurrent;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The app's shared background pools. Work goes to the pool matching what it
+ * waits on, instead of each call site starting its own thread:
+ * <ul>
+ *     <li>{@link #io()} - network calls and database reads</li>
+ *     <li>{@link #crypto()} - key generation and encryption</li>
+ *     <li>{@link #dbWrite()} - database writes, one at a time like SQLite itself</li>
+ *     <li>{@link #uiPrep()} - loading what a visible row or screen is about to show</li>
+ *     <li>{@link #timer()} - timeouts and delays; callbacks must be short or hand off to a pool</li>
+ * </ul>
+ * Started and shut down by ServiceModule. A pool used before start, or after
+ * shutdown, starts the set again.
+ */
+public final class AppExecutors {
+    private static final String TAG = "AppExecutors";
+    private static final long SHUTDOWN_TIMEOUT_MS = 2_000;
+
+    private static volatile AppExecutors instance;
+
+    private final InstrumentedExecutor io;
+    private final InstrumentedExecutor crypto;
+    private final InstrumentedExecutor dbWrite;
+    private final InstrumentedExecutor uiPrep;
+    private final ScheduledThreadPoolExecutor timer;
+
+    private AppExecutors() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        io = new InstrumentedExecutor("io", 8, 256, InstrumentedExecutor.Rejection.CALLER_RUNS);
+        crypto = new InstrumentedExecutor("crypto", Math.max(2, Math.min(4, cpus - 1)), 128,
+                InstrumentedExecutor.Rejection.CALLER_RUNS);
+        dbWrite = new InstrumentedExecutor("db-write", 1, 512, InstrumentedExecutor.Rejection.CALLER_RUNS);
+        uiPrep = new InstrumentedExecutor("ui-prep", 3, 64, InstrumentedExecutor.Rejection.DISCARD_OLDEST);
+        timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "asio-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true); // most timeouts are cancelled long before they fire
+    }
+
+    public static InstrumentedExecutor io() {
+        return get().io;
+    }
+
+    public static InstrumentedExecutor crypto() {
+        return get().crypto;
+    }
+
+    public static InstrumentedExecutor dbWrite() {
+        return get().dbWrite;
+    }
+
+    public static InstrumentedExecutor uiPrep() {
+        return get().uiPrep;
+    }
+
+    public static ScheduledExecutorService timer() {
+        return get().timer;
+    }
+
+    public static void start() {
+        get();
+    }
+
+    /** Lets queued work finish for a short while, then interrupts what is left */
+    public static void shutdown() {
+        AppExecutors current;
+        synchronized (AppExecutors.class) {
+            current = instance;
+            instance = null;
+        }
+        if (current == null) return;
+
+        logStats(current);
+        current.timer.shutdownNow(); // pending timeouts belong to the services being torn down
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MS;
+        for (InstrumentedExecutor pool : current.pools()) {
+            pool.shutdown();
+        }
+        for (InstrumentedExecutor pool : current.pools()) {
+            try {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                if (!pool.awaitTermination(remaining, TimeUnit.MILLISECONDS)) {
+                    Log.w(TAG, pool.getName() + " did not drain in time, " + pool.getQueue().size() + " tasks dropped");
+                    pool.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static List<InstrumentedExecutor.Stats> getStats() {
+        List<InstrumentedExecutor.Stats> stats = new ArrayList<>();
+        AppExecutors current = instance;
+        if (current == null) return stats;
+        for (InstrumentedExecutor pool : current.pools()) {
+            stats.add(pool.getStats());
+        }
+        return stats;
+    }
+
+    public static void logStats() {
+        AppExecutors current = instance;
+        if (current != null) {
+            logStats(current);
+        }
+    }
+
+    private static void logStats(AppExecutors current) {
+        for (InstrumentedExecutor pool : current.pools()) {
+            Log.d(TAG, pool.getStats().toString());
+        }
+    }
+
+    private static AppExecutors get() {
+        AppExecutors current = instance;
+        if (current != null) return current;
+        synchronized (AppExecutors.class) {
+            if (instance == null) {
+                instance = new AppExecutors();
+            }
+            return instance;
+        }
+    }
+
+    private InstrumentedExecutor[] pools() {
+        return new InstrumentedExecutor[]{io, crypto, dbWrite, uiPrep};
+    }
+}
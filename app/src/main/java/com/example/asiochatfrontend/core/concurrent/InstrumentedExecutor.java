@@ -0,0 +1,254 @@
+package com.example.asiochatfrontend.core.concurrent;
+
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed-size pool with a bounded queue that records how long tasks wait
+ * and run. Idle threads time out, so a quiet pool holds no threads.
+ * When the queue is full the {@link Rejection} policy decides what happens
+ * to the new task. A shut down pool throws {@link RejectedExecutionException}.
+ */
+public class InstrumentedExecutor extends ThreadPoolExecutor {
+    private static final String TAG = "InstrumentedExecutor";
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    public enum Rejection {
+        /**
+         * Run the task on the submitting thread, which slows the producer.
+         * The main thread must not block, so a task it submits waits in an
+         * overflow list instead, which refills the queue as tasks finish.
+         */
+        CALLER_RUNS,
+        /**
+         * Drop the oldest queued task to make room; for work that goes stale,
+         * like binding a row that has already scrolled away. Use execute(),
+         * a dropped Future never completes.
+         */
+        DISCARD_OLDEST
+    }
+
+    private final String name;
+    private final Rejection rejection;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+    private final AtomicLong totalWaitNs = new AtomicLong();
+    private final AtomicLong maxWaitNs = new AtomicLong();
+    private final AtomicLong totalRunNs = new AtomicLong();
+    private final AtomicLong maxRunNs = new AtomicLong();
+    private final Queue<Runnable> mainThreadOverflow = new ArrayDeque<>(); // guarded by itself
+
+    public InstrumentedExecutor(String name, int threads, int queueCapacity, Rejection rejection) {
+        super(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), namedThreads(name), new RejectionHandler());
+        this.name = name;
+        this.rejection = rejection;
+        allowCoreThreadTimeOut(true);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) throw new NullPointerException();
+        submitted.incrementAndGet();
+        super.execute(new TimedTask(command));
+        updateMax(peakQueueDepth, getQueue().size());
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        if (t != null) {
+            failed.incrementAndGet();
+            Log.e(TAG, "Task failed on " + name, t);
+        }
+        synchronized (mainThreadOverflow) {
+            while (!mainThreadOverflow.isEmpty() && getQueue().offer(mainThreadOverflow.peek())) {
+                mainThreadOverflow.poll();
+            }
+        }
+    }
+
+    public Stats getStats() {
+        long done = completed.get();
+        return new Stats(
+                name,
+                getPoolSize(),
+                getActiveCount(),
+                getQueue().size() + overflowSize(),
+                peakQueueDepth.get(),
+                submitted.get(),
+                done,
+                failed.get(),
+                rejected.get(),
+                done > 0 ? TimeUnit.NANOSECONDS.toMillis(totalWaitNs.get() / done) : 0,
+                TimeUnit.NANOSECONDS.toMillis(maxWaitNs.get()),
+                done > 0 ? TimeUnit.NANOSECONDS.toMillis(totalRunNs.get() / done) : 0,
+                TimeUnit.NANOSECONDS.toMillis(maxRunNs.get()));
+    }
+
+    private int overflowSize() {
+        synchronized (mainThreadOverflow) {
+            return mainThreadOverflow.size();
+        }
+    }
+
+    private static boolean isMainThread() {
+        Looper mainLooper = Looper.getMainLooper();
+        return mainLooper != null && mainLooper == Looper.myLooper();
+    }
+
+    private static ThreadFactory namedThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "asio-" + name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static void updateMax(AtomicInteger max, int value) {
+        int current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+
+    //==============================
+    // Task timing
+    //==============================
+    private final class TimedTask implements Runnable {
+        private final Runnable task;
+        private final long enqueuedNs = System.nanoTime();
+
+        TimedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long startNs = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                long waitNs = startNs - enqueuedNs;
+                long runNs = System.nanoTime() - startNs;
+                totalWaitNs.addAndGet(waitNs);
+                totalRunNs.addAndGet(runNs);
+                updateMax(maxWaitNs, waitNs);
+                updateMax(maxRunNs, runNs);
+                completed.incrementAndGet();
+            }
+        }
+    }
+
+    //==============================
+    // Rejection
+    //==============================
+    private static final class RejectionHandler implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            InstrumentedExecutor pool = (InstrumentedExecutor) executor;
+            pool.rejected.incrementAndGet();
+
+            if (pool.isShutdown()) {
+                throw new RejectedExecutionException(pool.name + " is shut down");
+            }
+
+            switch (pool.rejection) {
+                case DISCARD_OLDEST:
+                    pool.getQueue().poll();
+                    if (!pool.getQueue().offer(r)) {
+                        Log.w(TAG, pool.name + " queue is full, dropping task");
+                    }
+                    break;
+                case CALLER_RUNS:
+                default:
+                    if (isMainThread()) {
+                        synchronized (pool.mainThreadOverflow) {
+                            if (pool.mainThreadOverflow.isEmpty()) {
+                                Log.w(TAG, pool.name + " queue is full; holding main thread tasks in overflow");
+                            }
+                            pool.mainThreadOverflow.add(r);
+                        }
+                        return;
+                    }
+                    r.run();
+                    break;
+            }
+        }
+    }
+
+    //==============================
+    // Stats
+    //==============================
+    /** A point-in-time snapshot of one pool; times are in milliseconds */
+    public static final class Stats {
+        public final String name;
+        public final int poolSize;
+        public final int activeCount;
+        public final int queueDepth;
+        public final int peakQueueDepth;
+        public final long submitted;
+        public final long completed;
+        public final long failed;
+        public final long rejected;
+        public final long avgWaitMs;
+        public final long maxWaitMs;
+        public final long avgRunMs;
+        public final long maxRunMs;
+
+        Stats(String name, int poolSize, int activeCount, int queueDepth, int peakQueueDepth,
+              long submitted, long completed, long failed, long rejected,
+              long avgWaitMs, long maxWaitMs, long avgRunMs, long maxRunMs) {
+            this.name = name;
+            this.poolSize = poolSize;
+            this.activeCount = activeCount;
+            this.queueDepth = queueDepth;
+            this.peakQueueDepth = peakQueueDepth;
+            this.submitted = submitted;
+            this.completed = completed;
+            this.failed = failed;
+            this.rejected = rejected;
+            this.avgWaitMs = avgWaitMs;
+            this.maxWaitMs = maxWaitMs;
+            this.avgRunMs = avgRunMs;
+            this.maxRunMs = maxRunMs;
+        }
+
+        @Override
+        public String toString() {
+            return name + "{threads=" + poolSize + ", active=" + activeCount
+                    + ", queued=" + queueDepth + ", peakQueued=" + peakQueueDepth
+                    + ", submitted=" + submitted + ", completed=" + completed
+                    + ", failed=" + failed + ", rejected=" + rejected
+                    + ", waitMs(avg/max)=" + avgWaitMs + "/" + maxWaitMs
+                    + ", runMs(avg/max)=" + avgRunMs + "/" + maxRunMs + "}";
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.asiochatfrontend.core.concurrent;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs tasks one at a time, in submission order, on a shared pool. For work
+ * that must not overlap, like connection state changes, without keeping a
+ * dedicated thread for it. If the pool rejects a task, the task stays at
+ * the head of the lane and the next execute() hands it to the pool again.
+ */
+public class SerialExecutor implements Executor {
+    private static final String TAG = "SerialExecutor";
+
+    private final Executor pool;
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>(); // guarded by this
+    private Runnable active;                                       // guarded by this
+
+    public SerialExecutor(Executor pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public synchronized void execute(Runnable task) {
+        tasks.offer(() -> {
+            try {
+                task.run();
+            } finally {
+                try {
+                    scheduleNext();
+                } catch (RejectedExecutionException e) {
+                    Log.w(TAG, "Pool rejected the next task; it runs on the next execute()", e);
+                }
+            }
+        });
+        if (active == null) {
+            scheduleNext();
+        }
+    }
+
+    private synchronized void scheduleNext() {
+        if ((active = tasks.poll()) == null) return;
+        try {
+            pool.execute(active);
+        } catch (RejectedExecutionException e) {
+            // not running, so the lane must not wait on it
+            tasks.addFirst(active);
+            active = null;
+            throw e;
+        }
+    }
+}
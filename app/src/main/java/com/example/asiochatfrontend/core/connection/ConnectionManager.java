@@ -250,9 +250,9 @@ public class ConnectionManager implements ChatService, MessageService, MediaServ
     }
 
     @Override
-    public List<MessageDto> getOfflineMessages(String userId) throws Exception {
-        Log.d(TAG, "Fetching offline messages for " + userId);
-        return currentState.getOfflineMessages(userId);
+    public int syncOfflineMessages(String userId) throws Exception {
+        Log.d(TAG, "Syncing offline messages for " + userId);
+        return currentState.syncOfflineMessages(userId);
     }
 
     @Override
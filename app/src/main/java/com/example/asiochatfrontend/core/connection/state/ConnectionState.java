@@ -29,7 +29,7 @@ public abstract class ConnectionState {
     public abstract List<TextMessageDto> getMessagesForChat(String chatId) throws Exception;
     public abstract boolean setMessageReadByUser(String messageId, String userId, String readBy) throws Exception;
     public abstract boolean setMessagesInChatReadByUser(String chatId, String userId) throws Exception;
-    public abstract List<MessageDto> getOfflineMessages(String userId) throws Exception;
+    public abstract int syncOfflineMessages(String userId) throws Exception;
     public abstract MediaMessageDto createMediaMessage(MediaMessageDto mediaMessageDto);
     public abstract MediaMessageDto getMediaMessage(String mediaId) throws Exception;
     public abstract List<MediaMessageDto> getMediaMessageForChat(String chatId);
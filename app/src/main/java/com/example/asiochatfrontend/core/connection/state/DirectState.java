@@ -176,11 +176,11 @@ public class DirectState extends ConnectionState {
     }
 
     @Override
-    public List<MessageDto> getOfflineMessages(String userId) throws Exception {
+    public int syncOfflineMessages(String userId) throws Exception {
         try {
-            List<MessageDto> messages = connectionManager.directMessageService.getOfflineMessages(userId);
-            Log.d(TAG, "Retrieved " + messages.size() + " offline messages for " + userId);
-            return messages;
+            int stored = connectionManager.directMessageService.syncOfflineMessages(userId);
+            Log.d(TAG, "Stored " + stored + " offline messages for " + userId);
+            return stored;
         } catch (Exception e) {
             Log.e(TAG, "Failed to get offline messages", e);
             throw e;
@@ -142,7 +142,7 @@ public class RelayState extends ConnectionState {
     public MessageDto sendMessage(MessageDto message) throws Exception {
         try {
             MessageDto sent = connectionManager.relayMessageService.sendMessage(message);
-            Log.i(TAG, "Sent message " + sent.getId());
+            Log.i(TAG, "Queued message " + sent.getId());
             return sent;
         } catch (Exception e) {
             Log.e(TAG, "Failed to send message", e);
@@ -187,10 +187,8 @@ public class RelayState extends ConnectionState {
     @Override
     public int getUnreadMessagesCount(String chatId, String userId) {
         try {
-            int textCount = connectionManager.relayMessageService.getUnreadMessagesCount(chatId, userId);
-            int mediaCount = connectionManager.relayMediaService.getUnreadMessagesCount(chatId, userId);
-            ServiceModule.getChatRepository().updateUnreadCount(chatId, textCount + mediaCount);
-            return textCount + mediaCount;
+            // kept up to date on ingest and on read, no need to count rows
+            return ServiceModule.getChatRepository().getUnreadCounts(chatId);
         } catch (Exception e) {
             Log.e(TAG, "Failed to get unread messages count", e);
             return 0;
@@ -215,15 +213,15 @@ public class RelayState extends ConnectionState {
     }
 
     @Override
-    public List<MessageDto> getOfflineMessages(String userId) throws Exception {
+    public int syncOfflineMessages(String userId) throws Exception {
         try {
             if (!connectionManager.isOnline()) {
                 throw new Exception("Can't get offline message while not connected to server");
             }
 
-            List<MessageDto> offline = connectionManager.relayMessageService.getOfflineMessages(userId);
-            Log.d(TAG, "Retrieved " + offline.size() + " offline messages for " + userId);
-            return offline;
+            int stored = connectionManager.relayMessageService.syncOfflineMessages(userId);
+            Log.d(TAG, "Stored " + stored + " offline messages for " + userId);
+            return stored;
         } catch (Exception e) {
             Log.e(TAG, "Failed to get offline messages", e);
             throw e;
@@ -259,8 +257,8 @@ public class RelayState extends ConnectionState {
 
             connectionManager.relayMessageService.setMessagesInChatReadByUser(chatId, userId);
             connectionManager.relayMediaService.setMessagesInChatReadByUser(chatId, userId);
-            ServiceModule.getChatRepository().updateUnreadCount(chatId, 0);
-            ChatUpdateBus.postUnreadCountUpdate(chatId, 0);
+            // anything that arrived after the watermark stays unread
+            ChatUpdateBus.postUnreadCountUpdate(chatId, ServiceModule.getChatRepository().getUnreadCounts(chatId));
             Log.d(TAG, "Set messages in chat " + chatId + " read by user " + userId);
             return true;
         } catch (Exception e) {
@@ -414,6 +412,7 @@ public class RelayState extends ConnectionState {
     @Override
     public List<MessageDto> sendAllPendingData() {
         try {
+            // Text first: its flush waits for the relay before media uploads start
             List<MessageDto> textMessages = connectionManager.relayMessageService.sendPendingMessages();
             List<MessageDto> mediaMessages = connectionManager.relayMediaService.sendPendingMessages();
 
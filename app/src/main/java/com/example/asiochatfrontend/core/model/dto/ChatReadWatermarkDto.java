@@ -0,0 +1,62 @@
+package com.example.asiochatfrontend.core.model.dto;
+
+/**
+ * "readBy has read everything in chatId up to upToMessageId / upToTimestamp".
+ * One watermark replaces a MESSAGE_READ per message; the relay expands it
+ * into per-message read state on its side.
+ */
+public class ChatReadWatermarkDto {
+    private String chatId;
+    private String readBy;
+    private String upToMessageId;
+    private long upToTimestamp;
+
+    public ChatReadWatermarkDto(String chatId, String readBy, String upToMessageId, long upToTimestamp) {
+        this.chatId = chatId;
+        this.readBy = readBy;
+        this.upToMessageId = upToMessageId;
+        this.upToTimestamp = upToTimestamp;
+    }
+
+    public String getChatId() {
+        return chatId;
+    }
+
+    public void setChatId(String chatId) {
+        this.chatId = chatId;
+    }
+
+    public String getReadBy() {
+        return readBy;
+    }
+
+    public void setReadBy(String readBy) {
+        this.readBy = readBy;
+    }
+
+    public String getUpToMessageId() {
+        return upToMessageId;
+    }
+
+    public void setUpToMessageId(String upToMessageId) {
+        this.upToMessageId = upToMessageId;
+    }
+
+    public long getUpToTimestamp() {
+        return upToTimestamp;
+    }
+
+    public void setUpToTimestamp(long upToTimestamp) {
+        this.upToTimestamp = upToTimestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "ChatReadWatermarkDto{" +
+                "chatId='" + chatId + '\'' +
+                ", readBy='" + readBy + '\'' +
+                ", upToMessageId='" + upToMessageId + '\'' +
+                ", upToTimestamp=" + upToTimestamp +
+                '}';
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.asiochatfrontend.core.model.dto;
+
+/** The relay's confirmation that it stored a sent message */
+public class MessageAckDto {
+    private String messageId;
+
+    public MessageAckDto(String messageId) {
+        this.messageId = messageId;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(String messageId) {
+        this.messageId = messageId;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageAckDto{" +
+                "messageId='" + messageId + '\'' +
+                '}';
+    }
+}
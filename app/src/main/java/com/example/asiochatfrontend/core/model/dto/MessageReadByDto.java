@@ -3,6 +3,7 @@ package com.example.asiochatfrontend.core.model.dto;
 public class MessageReadByDto {
     private String messageId;
     private String readBy;
+    private String chatId; // optional; filled by relays that send it
 
     public MessageReadByDto(String messageId, String readBy) {
         this.messageId = messageId;
@@ -17,6 +18,14 @@ public class MessageReadByDto {
         this.messageId = messageId;
     }
 
+    public String getChatId() {
+        return chatId;
+    }
+
+    public void setChatId(String chatId) {
+        this.chatId = chatId;
+    }
+
     public String getReadBy() {
         return readBy;
     }
@@ -0,0 +1,49 @@
+package com.example.asiochatfrontend.core.model.dto;
+
+/**
+ * Progress of sending the messages that piled up while offline.
+ * Counts cover every flush since the outbox was last empty.
+ */
+public class OutboxProgressDto {
+    private final int total;
+    private final int sent;
+    private final int failed;
+    private final int inFlight;
+
+    public OutboxProgressDto(int total, int sent, int failed, int inFlight) {
+        this.total = total;
+        this.sent = sent;
+        this.failed = failed;
+        this.inFlight = inFlight;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getSent() {
+        return sent;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public boolean isFinished() {
+        return sent + failed >= total;
+    }
+
+    @Override
+    public String toString() {
+        return "OutboxProgressDto{" +
+                "total=" + total +
+                ", sent=" + sent +
+                ", failed=" + failed +
+                ", inFlight=" + inFlight +
+                '}';
+    }
+}
@@ -5,6 +5,7 @@ public class PublicKeyDto {
     private String publicKey;
     private long createdAt;
     private long expiresAt;
+    private int envelopeVersion; // newest private-message format the key holder reads; 0 = legacy RSA only
 
     public PublicKeyDto(String jid, String publicKey, long createdAt, long expiresAt) {
         this.jid = jid;
@@ -44,4 +45,12 @@ public class PublicKeyDto {
     public void setExpiresAt(long expiresAt) {
         this.expiresAt = expiresAt;
     }
+
+    public int getEnvelopeVersion() {
+        return envelopeVersion;
+    }
+
+    public void setEnvelopeVersion(int envelopeVersion) {
+        this.envelopeVersion = envelopeVersion;
+    }
 }
\ No newline at end of file
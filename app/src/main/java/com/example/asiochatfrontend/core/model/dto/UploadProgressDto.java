@@ -0,0 +1,60 @@
+package com.example.asiochatfrontend.core.model.dto;
+
+public class UploadProgressDto {
+
+    public enum Status {
+        QUEUED,
+        UPLOADING,
+        PAUSED,
+        COMPLETED,
+        FAILED,
+        CANCELLED
+    }
+
+    private final String messageId;
+    private final String chatId;
+    private final Status status;
+    private final int percent;
+    private final long bytesPerSecond;
+
+    public UploadProgressDto(String messageId, String chatId, Status status, int percent, long bytesPerSecond) {
+        this.messageId = messageId;
+        this.chatId = chatId;
+        this.status = status;
+        this.percent = percent;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public String getChatId() {
+        return chatId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getPercent() {
+        return percent;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED || status == Status.CANCELLED;
+    }
+
+    @Override
+    public String toString() {
+        return "UploadProgressDto{" +
+                "messageId='" + messageId + '\'' +
+                ", status=" + status +
+                ", percent=" + percent +
+                '}';
+    }
+}
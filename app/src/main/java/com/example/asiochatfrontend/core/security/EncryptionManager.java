@@ -8,9 +8,14 @@ import com.example.asiochatfrontend.data.database.dao.EncryptionKeyDao;
 import com.example.asiochatfrontend.data.database.entity.EncryptionKeyEntity;
 import com.example.asiochatfrontend.data.common.utils.UuidGenerator;
 
+import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import javax.crypto.SecretKey;
@@ -25,11 +30,18 @@ public class EncryptionManager {
     private final EncryptionService encryptionService;
     private final EncryptionKeyDao encryptionKeyDao;
     private final String currentUserId;
+    private final KeyMaterialCache keyCache;
 
     public EncryptionManager(EncryptionService encryptionService, EncryptionKeyDao encryptionKeyDao, String currentUserId) {
         this.encryptionService = encryptionService;
         this.encryptionKeyDao = encryptionKeyDao;
         this.currentUserId = currentUserId;
+        this.keyCache = new KeyMaterialCache(encryptionService, encryptionKeyDao, currentUserId);
+    }
+
+    /** Drop every decoded key; the next message reloads from the key table */
+    public void clearKeyCache() {
+        keyCache.clear();
     }
 
     // ====== RSA Public/Private Key Operations ======
@@ -38,7 +50,9 @@ public class EncryptionManager {
         try {
             EncryptionKeyEntity currentKey = encryptionKeyDao.getLatestPublicKeyForUser(currentUserId);
             if (isKeyValid(currentKey)) {
-                return new PublicKeyDto(currentUserId, currentKey.publicKey, currentKey.createdAt, currentKey.createdAt + TimeUnit.DAYS.toMillis(KEY_VALIDITY_DAYS));
+                PublicKeyDto keyDto = new PublicKeyDto(currentUserId, currentKey.publicKey, currentKey.createdAt, currentKey.createdAt + TimeUnit.DAYS.toMillis(KEY_VALIDITY_DAYS));
+                keyDto.setEnvelopeVersion(HybridEnvelope.VERSION);
+                return keyDto;
             }
             return null;
         } catch (Exception e) {
@@ -63,8 +77,11 @@ public class EncryptionManager {
         entity.createdAt = createdAt;
 
         encryptionKeyDao.insertKey(entity);
+        keyCache.invalidateOwnKeys();
         Log.d(TAG, "Generated new RSA key pair for user: " + currentUserId);
-        return new PublicKeyDto(currentUserId, publicKeyBase64, createdAt, expiresAt);
+        PublicKeyDto keyDto = new PublicKeyDto(currentUserId, publicKeyBase64, createdAt, expiresAt);
+        keyDto.setEnvelopeVersion(HybridEnvelope.VERSION); // tells senders we read v2 envelopes
+        return keyDto;
     }
 
     public SymmetricKeyDto generateSymmetricKeyDtoForChat(String chatId) {
@@ -82,6 +99,7 @@ public class EncryptionManager {
             entity.createdAt = createdAt;
 
             encryptionKeyDao.insertKey(entity);
+            keyCache.invalidateChat(chatId);
             Log.d(TAG, "Generated new AES key for chat: " + chatId);
             return new SymmetricKeyDto(chatId, keyBase64, createdAt, expiresAt);
         } catch (Exception e) {
@@ -92,46 +110,98 @@ public class EncryptionManager {
 
     public SecretKey getSymmetricKeyObjectForChat(String chatId, long timestamp) {
         try {
-            EncryptionKeyEntity key = encryptionKeyDao.getSymmetricKeyForTimestamp(chatId, timestamp);
-            if (key != null && key.symmetricKey != null) {
-                byte[] keyBytes = android.util.Base64.decode(key.symmetricKey, android.util.Base64.NO_WRAP);
-                return encryptionService.convertBytesToSecretKey(keyBytes);
-            }
-            return null;
+            return keyCache.symmetricKeyAt(chatId, timestamp);
         } catch (Exception e) {
             Log.e(TAG, "Error retrieving symmetric key for chat: " + chatId, e);
             return null;
         }
     }
 
+    /**
+     * The stored chat key whose epoch covers the timestamp, from memory once
+     * the chat's keys are loaded. Expired keys are still returned; older
+     * messages need them.
+     *
+     * @return null if no stored key is old enough
+     */
+    public SymmetricKeyDto getSymmetricKeyDtoAt(String chatId, long timestamp) {
+        KeyMaterialCache.ChatKeyEpoch epoch = keyCache.chatKeyEpochAt(chatId, timestamp);
+        if (epoch == null || epoch.encodedKey == null) return null;
+        return new SymmetricKeyDto(chatId, epoch.encodedKey, epoch.validFrom,
+                epoch.validFrom + TimeUnit.DAYS.toMillis(KEY_VALIDITY_DAYS));
+    }
+
     public boolean isKeyValid(EncryptionKeyEntity key) {
         if (key == null) return false;
         long expirationTime = key.createdAt + TimeUnit.DAYS.toMillis(KEY_VALIDITY_DAYS);
         return System.currentTimeMillis() < expirationTime;
     }
 
-    public String encryptMessagePublic(String plainText, String recipientPublicKey) {
+    /**
+     * Encrypt for one recipient. Recipients that registered envelope support
+     * get a hybrid envelope: AES-GCM under a session key that is RSA-wrapped
+     * once per recipient key, so there is no RSA work per message and no RSA
+     * size limit on the text. Older recipients get legacy RSA while the text
+     * fits; longer text goes out as an envelope, as legacy RSA cannot carry it.
+     *
+     * @param recipientEnvelopeVersion from the recipient's key registration, 0 if unknown
+     */
+    public String encryptMessagePublic(String plainText, String recipientPublicKey, int recipientEnvelopeVersion) {
         try {
-            byte[] keyBytes = android.util.Base64.decode(recipientPublicKey, android.util.Base64.NO_WRAP);
-            PublicKey publicKey = encryptionService.convertBytesToPublicKey(keyBytes);
-            byte[] encryptedBytes = encryptionService.encryptStringPublic(plainText, publicKey);
-            return android.util.Base64.encodeToString(encryptedBytes, android.util.Base64.NO_WRAP);
+            byte[] plain = plainText.getBytes(StandardCharsets.UTF_8);
+            PublicKey publicKey = keyCache.publicKey(recipientPublicKey);
+            if (recipientEnvelopeVersion < HybridEnvelope.VERSION && HybridEnvelope.fitsLegacy(plain.length, publicKey)) {
+                byte[] encryptedBytes = encryptionService.encryptPublic(plain, publicKey);
+                return android.util.Base64.encodeToString(encryptedBytes, android.util.Base64.NO_WRAP);
+            }
+
+            KeyMaterialCache.OutgoingSession session = keyCache.outgoingSession(recipientPublicKey);
+            byte[] iv = encryptionService.generateRandomGcmIV();
+            byte[] ciphertext = encryptionService.encryptGcm(plain, session.key, iv);
+            return new HybridEnvelope(session.wrappedKey, iv, ciphertext).format();
         } catch (Exception e) {
             Log.e(TAG, "Error encrypting message", e);
             return null;
         }
     }
 
-    public String decryptMessagePrivate(String encryptedBase64, long messageTimestamp) {
+    /** Decrypt a private-chat payload, hybrid envelope or legacy RSA */
+    public String decryptMessagePrivate(String encryptedPayload, long messageTimestamp) {
+        if (HybridEnvelope.isHybrid(encryptedPayload)) {
+            return decryptEnvelope(encryptedPayload, messageTimestamp);
+        }
+        return decryptLegacyPrivate(encryptedPayload, messageTimestamp);
+    }
+
+    private String decryptEnvelope(String payload, long messageTimestamp) {
         try {
-            EncryptionKeyEntity key = encryptionKeyDao.getPublicKeyForTimestamp(currentUserId, messageTimestamp);
-            if (key == null) {
+            HybridEnvelope envelope = HybridEnvelope.parse(payload);
+            if (envelope == null) {
+                Log.e(TAG, "Malformed message envelope");
+                return null;
+            }
+
+            SecretKey sessionKey = keyCache.incomingSession(envelope.wrappedKey, messageTimestamp);
+            if (sessionKey == null) {
                 Log.e(TAG, "No valid RSA key found in repo for timestamp: " + messageTimestamp);
                 return null;
             }
+            byte[] plain = encryptionService.decryptGcm(envelope.ciphertext, sessionKey, envelope.iv);
+            return new String(plain, StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            Log.e(TAG, "Error decrypting message envelope", e);
+            return null;
+        }
+    }
 
-            byte[] keyBytes = android.util.Base64.decode(key.privateKey, android.util.Base64.NO_WRAP);
-            PrivateKey privateKey = encryptionService.convertBytesToPrivateKey(keyBytes);
+    /** Messages sent before the envelope, RSA over the whole text */
+    private String decryptLegacyPrivate(String encryptedBase64, long messageTimestamp) {
+        try {
+            PrivateKey privateKey = keyCache.privateKeyAt(messageTimestamp);
+            if (privateKey == null) {
+                Log.e(TAG, "No valid RSA key found in repo for timestamp: " + messageTimestamp);
+                return null;
+            }
 
             byte[] encryptedBytes = android.util.Base64.decode(encryptedBase64, android.util.Base64.NO_WRAP);
             return encryptionService.decryptToStringPrivate(encryptedBytes, privateKey);
@@ -174,6 +244,7 @@ public class EncryptionManager {
             entity.symmetricKey = symmetricKeyDto.getSymmetricKey();
             entity.createdAt = symmetricKeyDto.getCreatedAt();
             encryptionKeyDao.updateKey(entity);
+            keyCache.invalidateChat(symmetricKeyDto.getChatId());
             return;
         }
 
@@ -184,6 +255,7 @@ public class EncryptionManager {
         entity.symmetricKey = symmetricKeyDto.getSymmetricKey();
         entity.createdAt = symmetricKeyDto.getCreatedAt();
         encryptionKeyDao.insertKey(entity);
+        keyCache.invalidateChat(symmetricKeyDto.getChatId());
     }
 
     public void insertPublicKey(PublicKeyDto publicKeyDto) {
@@ -193,6 +265,38 @@ public class EncryptionManager {
         entity.publicKey = publicKeyDto.getPublicKey();
         entity.createdAt = publicKeyDto.getCreatedAt();
         encryptionKeyDao.insertKey(entity);
+        if (currentUserId != null && currentUserId.equals(publicKeyDto.getJid())) {
+            keyCache.invalidateOwnKeys();
+        }
+    }
+
+    /**
+     * Store a chat's key epochs from the relay in one transaction, skipping
+     * epochs already held
+     *
+     * @return how many epochs were new
+     */
+    public int storeSymmetricKeys(String chatId, List<SymmetricKeyDto> keyDtos) {
+        Set<Long> stored = new HashSet<>();
+        for (EncryptionKeyEntity key : encryptionKeyDao.getAllSymmetricKeysForChat(chatId)) {
+            stored.add(key.createdAt);
+        }
+
+        List<EncryptionKeyEntity> entities = new ArrayList<>();
+        for (SymmetricKeyDto keyDto : keyDtos) {
+            if (keyDto.getSymmetricKey() == null || !stored.add(keyDto.getCreatedAt())) continue;
+            EncryptionKeyEntity entity = new EncryptionKeyEntity();
+            entity.id = UuidGenerator.generate();
+            entity.chatId = chatId;
+            entity.symmetricKey = keyDto.getSymmetricKey();
+            entity.createdAt = keyDto.getCreatedAt();
+            entities.add(entity);
+        }
+
+        if (entities.isEmpty()) return 0;
+        encryptionKeyDao.insertKeys(entities);
+        keyCache.invalidateChat(chatId);
+        return entities.size();
     }
 
     public EncryptionKeyEntity getPublicKeyForTimestamp(String userId, long timestamp) {
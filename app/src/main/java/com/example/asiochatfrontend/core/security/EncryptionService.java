@@ -6,6 +6,7 @@ import java.security.spec.X509EncodedKeySpec;
 import java.util.Base64;
 
 import javax.crypto.*;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import javax.inject.Inject;
@@ -15,8 +16,18 @@ public class EncryptionService {
     private final String rsaAlgorithm = "RSA";
     private final String aesAlgorithm = "AES";
     private final String aesTransformation = "AES/CBC/PKCS5Padding"; // secure and padding-friendly
+    private final String aesGcmTransformation = "AES/GCM/NoPadding";
+    private final String rsaWrapTransformation = "RSA/ECB/OAEPWithSHA-1AndMGF1Padding"; // same on Android and the JDK
 
     private final int aesKeySize = 256;
+    private final int gcmTagBits = 128;
+    private final int gcmIvBytes = 12;
+
+    // Cipher.getInstance walks the providers on every call; each thread keeps one per transformation
+    private final ThreadLocal<Cipher> rsaCipher = new ThreadLocal<>();
+    private final ThreadLocal<Cipher> aesCipher = new ThreadLocal<>();
+    private final ThreadLocal<Cipher> aesGcmCipher = new ThreadLocal<>();
+    private final ThreadLocal<Cipher> rsaWrapCipher = new ThreadLocal<>();
 
     @Inject
     public EncryptionService() {
@@ -30,13 +41,13 @@ public class EncryptionService {
     }
 
     public byte[] encryptPublic(byte[] data, PublicKey publicKey) throws Exception {
-        Cipher cipher = Cipher.getInstance(rsaAlgorithm);
+        Cipher cipher = cipherFor(rsaCipher, rsaAlgorithm);
         cipher.init(Cipher.ENCRYPT_MODE, publicKey);
         return cipher.doFinal(data);
     }
 
     public byte[] decryptPrivate(byte[] encryptedData, PrivateKey privateKey) throws Exception {
-        Cipher cipher = Cipher.getInstance(rsaAlgorithm);
+        Cipher cipher = cipherFor(rsaCipher, rsaAlgorithm);
         cipher.init(Cipher.DECRYPT_MODE, privateKey);
         return cipher.doFinal(encryptedData);
     }
@@ -49,6 +60,19 @@ public class EncryptionService {
         return new String(decryptPrivate(encryptedData, privateKey));
     }
 
+    /** Encrypt a session key for the holder of the private key, with OAEP padding */
+    public byte[] wrapKey(SecretKey sessionKey, PublicKey publicKey) throws Exception {
+        Cipher cipher = cipherFor(rsaWrapCipher, rsaWrapTransformation);
+        cipher.init(Cipher.WRAP_MODE, publicKey);
+        return cipher.wrap(sessionKey);
+    }
+
+    public SecretKey unwrapKey(byte[] wrappedKey, PrivateKey privateKey) throws Exception {
+        Cipher cipher = cipherFor(rsaWrapCipher, rsaWrapTransformation);
+        cipher.init(Cipher.UNWRAP_MODE, privateKey);
+        return (SecretKey) cipher.unwrap(wrappedKey, aesAlgorithm, Cipher.SECRET_KEY);
+    }
+
     public PublicKey convertBytesToPublicKey(byte[] keyBytes) throws Exception {
         X509EncodedKeySpec keySpec = new X509EncodedKeySpec(keyBytes);
         KeyFactory keyFactory = KeyFactory.getInstance(rsaAlgorithm);
@@ -70,17 +94,31 @@ public class EncryptionService {
     }
 
     public byte[] encryptSymmetric(byte[] data, SecretKey secretKey, byte[] iv) throws Exception {
-        Cipher cipher = Cipher.getInstance(aesTransformation);
+        Cipher cipher = cipherFor(aesCipher, aesTransformation);
         cipher.init(Cipher.ENCRYPT_MODE, secretKey, new IvParameterSpec(iv));
         return cipher.doFinal(data);
     }
 
     public byte[] decryptSymmetric(byte[] encryptedData, SecretKey secretKey, byte[] iv) throws Exception {
-        Cipher cipher = Cipher.getInstance(aesTransformation);
+        Cipher cipher = cipherFor(aesCipher, aesTransformation);
         cipher.init(Cipher.DECRYPT_MODE, secretKey, new IvParameterSpec(iv));
         return cipher.doFinal(encryptedData);
     }
 
+    /** Authenticated encryption; the iv must never repeat under the same key */
+    public byte[] encryptGcm(byte[] data, SecretKey secretKey, byte[] iv) throws Exception {
+        Cipher cipher = cipherFor(aesGcmCipher, aesGcmTransformation);
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(gcmTagBits, iv));
+        return cipher.doFinal(data);
+    }
+
+    /** Fails with AEADBadTagException if the ciphertext was altered */
+    public byte[] decryptGcm(byte[] encryptedData, SecretKey secretKey, byte[] iv) throws Exception {
+        Cipher cipher = cipherFor(aesGcmCipher, aesGcmTransformation);
+        cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(gcmTagBits, iv));
+        return cipher.doFinal(encryptedData);
+    }
+
     public String encryptStringSymmetric(String plainText, SecretKey secretKey, byte[] iv) throws Exception {
         byte[] encrypted = encryptSymmetric(plainText.getBytes(), secretKey, iv);
         return Base64.getEncoder().encodeToString(encrypted);
@@ -96,9 +134,25 @@ public class EncryptionService {
         return new SecretKeySpec(keyBytes, 0, keyBytes.length, aesAlgorithm);
     }
 
+    /** init() resets a Cipher, so one instance per thread serves every call on it */
+    private Cipher cipherFor(ThreadLocal<Cipher> holder, String transformation) throws Exception {
+        Cipher cipher = holder.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+            holder.set(cipher);
+        }
+        return cipher;
+    }
+
     public byte[] generateRandomIV() {
         byte[] iv = new byte[16]; // 128-bit IV for AES
         new SecureRandom().nextBytes(iv);
         return iv;
     }
+
+    public byte[] generateRandomGcmIV() {
+        byte[] iv = new byte[gcmIvBytes]; // 96-bit nonce, the size GCM is built for
+        new SecureRandom().nextBytes(iv);
+        return iv;
+    }
 }
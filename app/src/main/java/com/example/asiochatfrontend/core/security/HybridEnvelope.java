@@ -0,0 +1,63 @@
+package com.example.asiochatfrontend.core.security;
+
+import java.security.PublicKey;
+import java.security.interfaces.RSAKey;
+import java.util.Base64;
+
+/**
+ * Wire format of a private-chat payload encrypted with a session key:
+ * {@code v2:<wrapped key>:<iv>:<ciphertext>}, each part Base64. The wrapped
+ * key is the AES session key encrypted with the recipient's RSA key, sent
+ * with every message so each one can be read on its own.
+ * Anything without the prefix is a legacy payload, the whole text RSA
+ * encrypted as a single Base64 string, which can never contain ':'.
+ * Senders use v2 only for recipients whose key registration says they read
+ * it, or for text too long for legacy RSA.
+ */
+final class HybridEnvelope {
+    static final int VERSION = 2;
+    static final String V2_PREFIX = "v2:";
+    private static final int PKCS1_OVERHEAD_BYTES = 11;
+
+    final String wrappedKey;
+    final byte[] iv;
+    final byte[] ciphertext;
+
+    HybridEnvelope(String wrappedKey, byte[] iv, byte[] ciphertext) {
+        this.wrappedKey = wrappedKey;
+        this.iv = iv;
+        this.ciphertext = ciphertext;
+    }
+
+    static boolean isHybrid(String payload) {
+        return payload != null && payload.startsWith(V2_PREFIX);
+    }
+
+    /** Whether a legacy RSA payload can carry this much text for the key */
+    static boolean fitsLegacy(int plainTextBytes, PublicKey recipientKey) {
+        if (!(recipientKey instanceof RSAKey)) return false;
+        int modulusBytes = (((RSAKey) recipientKey).getModulus().bitLength() + 7) / 8;
+        return plainTextBytes <= modulusBytes - PKCS1_OVERHEAD_BYTES;
+    }
+
+    /** @return null if the payload is not a well-formed v2 envelope */
+    static HybridEnvelope parse(String payload) {
+        if (!isHybrid(payload)) return null;
+        String[] parts = payload.substring(V2_PREFIX.length()).split(":", -1);
+        if (parts.length != 3 || parts[0].isEmpty()) return null;
+        try {
+            return new HybridEnvelope(
+                    parts[0],
+                    Base64.getDecoder().decode(parts[1]),
+                    Base64.getDecoder().decode(parts[2]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    String format() {
+        return V2_PREFIX + wrappedKey
+                + ":" + Base64.getEncoder().encodeToString(iv)
+                + ":" + Base64.getEncoder().encodeToString(ciphertext);
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.asiochatfrontend.core.security;
+
+import android.util.Log;
+
+import com.example.asiochatfrontend.data.database.dao.EncryptionKeyDao;
+import com.example.asiochatfrontend.data.database.entity.EncryptionKeyEntity;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Decoded keys, so encrypting or decrypting a message costs a map lookup
+ * instead of a Base64 decode, a KeyFactory pass and a key table query.
+ * The user's own RSA keys and each chat's AES keys are held per epoch and
+ * picked by message timestamp in O(log n), the same way the key table
+ * queries pick them: a key covers [its createdAt, the next key's createdAt),
+ * and the newest one stays open until a newer key is stored.
+ * Other users' public keys are held by their encoded form.
+ * Session keys for hybrid envelopes are held both ways: the one we send
+ * with, per recipient public key, and the ones we received, per wrapped form.
+ * Writers to the key table invalidate through {@link EncryptionManager}.
+ */
+class KeyMaterialCache {
+    private static final String TAG = "KeyMaterialCache";
+    private static final int MAX_PUBLIC_KEYS = 256;
+    private static final int MAX_INCOMING_SESSIONS = 256;
+
+    /** One chat key and where its epoch starts */
+    static final class ChatKeyEpoch {
+        final long validFrom;
+        final String encodedKey;
+        final SecretKey key; // null if the stored key could not be read
+
+        ChatKeyEpoch(long validFrom, String encodedKey, SecretKey key) {
+            this.validFrom = validFrom;
+            this.encodedKey = encodedKey;
+            this.key = key;
+        }
+    }
+
+    /** A session key and its wrapped form, ready to go into an envelope */
+    static final class OutgoingSession {
+        final SecretKey key;
+        final String wrappedKey;
+
+        OutgoingSession(SecretKey key, String wrappedKey) {
+            this.key = key;
+            this.wrappedKey = wrappedKey;
+        }
+    }
+
+    private final EncryptionService encryptionService;
+    private final EncryptionKeyDao encryptionKeyDao;
+    private final String currentUserId;
+
+    // bumped by every invalidation, so a load that raced one is not kept
+    private final AtomicLong generation = new AtomicLong();
+    private volatile NavigableMap<Long, PrivateKey> ownKeyEpochs;
+    private final Map<String, NavigableMap<Long, ChatKeyEpoch>> chatKeyEpochs = new ConcurrentHashMap<>();
+    private final Map<String, PublicKey> publicKeys = lruMap(MAX_PUBLIC_KEYS);
+
+    // a new recipient key starts a new session, so the epoch follows the recipient's rotation
+    private final Map<String, OutgoingSession> outgoingSessions = lruMap(MAX_PUBLIC_KEYS);
+    private final Map<String, SecretKey> incomingSessions = lruMap(MAX_INCOMING_SESSIONS);
+
+    KeyMaterialCache(EncryptionService encryptionService, EncryptionKeyDao encryptionKeyDao, String currentUserId) {
+        this.encryptionService = encryptionService;
+        this.encryptionKeyDao = encryptionKeyDao;
+        this.currentUserId = currentUserId;
+    }
+
+    /** The user's private key in effect at the timestamp, or null if there is none */
+    PrivateKey privateKeyAt(long timestamp) {
+        NavigableMap<Long, PrivateKey> epochs = ownKeyEpochs;
+        if (epochs == null) {
+            long loadedAt = generation.get();
+            epochs = loadOwnKeys();
+            if (generation.get() == loadedAt) {
+                ownKeyEpochs = epochs;
+            }
+        }
+        Map.Entry<Long, PrivateKey> epoch = epochs.floorEntry(timestamp);
+        return epoch != null ? epoch.getValue() : null;
+    }
+
+    /** The chat's AES key in effect at the timestamp, or null if there is none */
+    SecretKey symmetricKeyAt(String chatId, long timestamp) {
+        ChatKeyEpoch epoch = chatKeyEpochAt(chatId, timestamp);
+        return epoch != null ? epoch.key : null;
+    }
+
+    /** The chat's key epoch covering the timestamp, or null if it predates every stored key */
+    ChatKeyEpoch chatKeyEpochAt(String chatId, long timestamp) {
+        NavigableMap<Long, ChatKeyEpoch> epochs = chatKeyEpochs.get(chatId);
+        if (epochs == null) {
+            long loadedAt = generation.get();
+            epochs = loadChatKeys(chatId);
+            if (generation.get() == loadedAt) {
+                chatKeyEpochs.put(chatId, epochs);
+            }
+        }
+        Map.Entry<Long, ChatKeyEpoch> epoch = epochs.floorEntry(timestamp);
+        return epoch != null ? epoch.getValue() : null;
+    }
+
+    PublicKey publicKey(String encodedKey) throws Exception {
+        PublicKey key = publicKeys.get(encodedKey);
+        if (key == null) {
+            byte[] keyBytes = android.util.Base64.decode(encodedKey, android.util.Base64.NO_WRAP);
+            key = encryptionService.convertBytesToPublicKey(keyBytes);
+            publicKeys.put(encodedKey, key);
+        }
+        return key;
+    }
+
+    /** The session key for messages to the holder of this public key, wrapped once */
+    OutgoingSession outgoingSession(String encodedPublicKey) throws Exception {
+        OutgoingSession session = outgoingSessions.get(encodedPublicKey);
+        if (session == null) {
+            SecretKey sessionKey = encryptionService.generateSymmetricKey();
+            byte[] wrapped = encryptionService.wrapKey(sessionKey, publicKey(encodedPublicKey));
+            session = new OutgoingSession(sessionKey,
+                    android.util.Base64.encodeToString(wrapped, android.util.Base64.NO_WRAP));
+            outgoingSessions.put(encodedPublicKey, session);
+        }
+        return session;
+    }
+
+    /**
+     * The session key inside a received envelope, unwrapped with our key in
+     * effect at the timestamp the first time it is seen
+     *
+     * @return null if we have no key for the timestamp
+     */
+    SecretKey incomingSession(String wrappedKey, long timestamp) throws Exception {
+        SecretKey sessionKey = incomingSessions.get(wrappedKey);
+        if (sessionKey == null) {
+            PrivateKey privateKey = privateKeyAt(timestamp);
+            if (privateKey == null) return null;
+            byte[] wrapped = android.util.Base64.decode(wrappedKey, android.util.Base64.NO_WRAP);
+            sessionKey = encryptionService.unwrapKey(wrapped, privateKey);
+            incomingSessions.put(wrappedKey, sessionKey);
+        }
+        return sessionKey;
+    }
+
+    void invalidateOwnKeys() {
+        generation.incrementAndGet();
+        ownKeyEpochs = null;
+    }
+
+    void invalidateChat(String chatId) {
+        generation.incrementAndGet();
+        chatKeyEpochs.remove(chatId);
+    }
+
+    void clear() {
+        generation.incrementAndGet();
+        ownKeyEpochs = null;
+        chatKeyEpochs.clear();
+        publicKeys.clear();
+        outgoingSessions.clear();
+        incomingSessions.clear();
+    }
+
+    private static <V> Map<String, V> lruMap(int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    //==============================
+    // Loading
+    //==============================
+    private NavigableMap<Long, PrivateKey> loadOwnKeys() {
+        NavigableMap<Long, PrivateKey> epochs = new TreeMap<>();
+        List<EncryptionKeyEntity> keys = encryptionKeyDao.getAllPublicKeysForUser(currentUserId);
+        for (EncryptionKeyEntity key : keys) { // newest first; keep the one the table query would return
+            if (epochs.containsKey(key.createdAt)) continue;
+            PrivateKey privateKey = null;
+            try {
+                if (key.privateKey != null) {
+                    byte[] keyBytes = android.util.Base64.decode(key.privateKey, android.util.Base64.NO_WRAP);
+                    privateKey = encryptionService.convertBytesToPrivateKey(keyBytes);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Unreadable private key " + key.id, e);
+            }
+            epochs.put(key.createdAt, privateKey);
+        }
+        return epochs;
+    }
+
+    private NavigableMap<Long, ChatKeyEpoch> loadChatKeys(String chatId) {
+        NavigableMap<Long, ChatKeyEpoch> epochs = new TreeMap<>();
+        List<EncryptionKeyEntity> keys = encryptionKeyDao.getAllSymmetricKeysForChat(chatId);
+        for (EncryptionKeyEntity key : keys) { // newest first; keep the one the table query would return
+            if (epochs.containsKey(key.createdAt)) continue;
+            SecretKey secretKey = null;
+            try {
+                byte[] keyBytes = android.util.Base64.decode(key.symmetricKey, android.util.Base64.NO_WRAP);
+                secretKey = encryptionService.convertBytesToSecretKey(keyBytes);
+            } catch (Exception e) {
+                Log.e(TAG, "Unreadable symmetric key " + key.id, e);
+            }
+            epochs.put(key.createdAt, new ChatKeyEpoch(key.createdAt, key.symmetricKey, secretKey));
+        }
+        return epochs;
+    }
+}
@@ -11,6 +11,7 @@ import android.util.Log;
 
 import com.example.asiochatfrontend.app.di.DatabaseModule;
 import com.example.asiochatfrontend.app.di.ServiceModule;
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
 import com.example.asiochatfrontend.data.database.dao.EncryptionKeyDao;
 import com.example.asiochatfrontend.data.relay.service.RelayAuthService;
 
@@ -76,7 +77,7 @@ public class KeyRotationJob extends JobService {
         }
 
         // Run key rotation on a background thread
-        new Thread(() -> {
+        AppExecutors.crypto().execute(() -> {
             try {
                 rotatePublicKeyIfNeeded();
 
@@ -87,7 +88,7 @@ public class KeyRotationJob extends JobService {
                 // Schedule a retry
                 jobFinished(params, true);
             }
-        }).start();
+        });
 
         // Return true to indicate the job is still running in a background thread
         return true;
@@ -108,6 +109,8 @@ public class KeyRotationJob extends JobService {
             // then register it with the backend and store it in the database
             boolean registered = authService.registerPublicKey();
             if (registered) {
+                // a rotation may have retired keys; decode afresh on the next message
+                ServiceModule.getEncryptionManager().clearKeyCache();
                 Log.d(TAG, "Successfully registered new public key or using existing one");
             } else {
                 Log.e(TAG, "Failed to register new public key");
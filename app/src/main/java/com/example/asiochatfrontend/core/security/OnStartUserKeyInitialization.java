@@ -3,6 +3,7 @@ package com.example.asiochatfrontend.core.security;
 import android.util.Log;
 
 import com.example.asiochatfrontend.app.di.ServiceModule;
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
 import com.example.asiochatfrontend.core.model.dto.PublicKeyDto;
 import com.example.asiochatfrontend.data.relay.network.RelayApiClient;
 import com.example.asiochatfrontend.data.relay.service.RelayAuthService;
@@ -13,7 +14,7 @@ public class OnStartUserKeyInitialization {
     public static void executePublicKeyInitialization(
             RelayAuthService authService,
             RelayApiClient relayApiClient) {
-        new Thread(() -> {
+        AppExecutors.crypto().execute(() -> {
             try {
                 if (authService == null) {
                     Log.e(TAG, "Auth service not initialized");
@@ -48,6 +49,6 @@ public class OnStartUserKeyInitialization {
             } catch (Exception e) {
                 Log.e(TAG, "Error running one-time key rotation check", e);
             }
-        }).start();
+        });
     }
 }
@@ -14,6 +14,8 @@ public interface AuthService {
     boolean resendSymmetricKey(String chatId, SymmetricKeyDto keyDto);
     String getSymmetricKey(String chatId, long messageTimestamp);
     SymmetricKeyDto getSymmetricKeyDto(String chatId, long messageTimestamp);
+    void onSymmetricKeyRotated(String chatId); // Refresh the chat's key in the background
+    int prefetchSymmetricKeys(String chatId, long from); // Store the chat's key epochs from a timestamp on; one relay call
 
     // === Public/Private Keys Encryption Methods ===
     String encryptWithPublicKey(String plainText, String recipientId, long timestamp);
@@ -21,5 +23,5 @@ public interface AuthService {
 
     // === Symmetric Key Encryption Methods ===
     String encryptWithSymmetricKey(String plainText, String chatId, long timestamp);
-    String decryptWithSymmetricKey(String combinedIvCiphertext, String chatId, long timestamp);
+    String decryptWithSymmetricKey(String combinedIvCiphertext, String chatId, long timestamp); // Stored keys only, never the relay
 }
@@ -8,7 +8,7 @@ import java.util.List;
 public interface MessageService {
     MessageDto sendMessage(MessageDto messageDto) throws Exception;
     List<TextMessageDto> getMessagesForChat(String chatId) throws Exception;
-    List<MessageDto> getOfflineMessages(String userId) throws Exception;
+    int syncOfflineMessages(String userId) throws Exception;
     List<MessageDto>  sendPendingMessages() throws Exception;
     boolean setMessagesInChatReadByUser(String chatId, String userId) throws Exception;
     boolean setMessageReadByUser(String messageId, String userId, String readBy) throws Exception;
@@ -2,6 +2,7 @@ package com.example.asiochatfrontend.data.common.repository;
 
 import android.util.Log;
 
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
 import com.example.asiochatfrontend.core.model.dto.ChatDto;
 import com.example.asiochatfrontend.core.model.dto.abstracts.MessageDto;
 import com.example.asiochatfrontend.core.model.enums.ChatType;
@@ -15,7 +16,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
@@ -89,6 +89,14 @@ public class ChatRepositoryImpl implements ChatRepository {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public List<ChatDto> getRecentChatsForUser(String userId, int limit) {
+        return chatDao.getRecentChatsForUser(userId, limit)
+                .stream()
+                .map(this::mapEntityToDto)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public ChatDto updateChat(ChatDto chatDto) {
         try {
@@ -189,7 +197,7 @@ public class ChatRepositoryImpl implements ChatRepository {
                 ChatUpdateBus.postUnreadCountUpdate(chatId, unreadCount);
 
                 // Also notify with full chat update for UI refresh
-                Executors.newSingleThreadExecutor().execute(() -> {
+                AppExecutors.io().execute(() -> {
                     ChatEntity updatedEntity = chatDao.getChatById(chatId);
                     if (updatedEntity != null) {
                         ChatDto updatedChat = mapEntityToDto(updatedEntity);
@@ -208,6 +216,21 @@ public class ChatRepositoryImpl implements ChatRepository {
         }
     }
 
+    @Override
+    public boolean recordIncomingMessages(String chatId, String lastMessageId, int unreadDelta) {
+        return chatDao.updateLastMessageAndAddUnread(chatId, lastMessageId, unreadDelta) > 0;
+    }
+
+    @Override
+    public boolean recordOutgoingMessage(String chatId, String messageId) {
+        return chatDao.updateLastMessageId(chatId, messageId) > 0;
+    }
+
+    @Override
+    public boolean addUnreadCount(String chatId, int delta) {
+        return chatDao.addUnreadCount(chatId, delta) > 0;
+    }
+
     @Override
     public List<ChatDto> searchChats(String query) {
         return Collections.emptyList();
@@ -223,7 +246,7 @@ public class ChatRepositoryImpl implements ChatRepository {
 
                 // Notify UI about the last message update
                 // We'll use a background thread to fetch the updated chat
-                Executors.newSingleThreadExecutor().execute(() -> {
+                AppExecutors.io().execute(() -> {
                     ChatDto updatedChat = getChatById(chatId);
                     if (updatedChat != null) {
                         ChatEntity updatedChatEntity = chatDao.getChatById(updatedChat.getChatId());
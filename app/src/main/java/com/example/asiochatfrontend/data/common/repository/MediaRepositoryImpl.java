@@ -7,6 +7,7 @@ import com.example.asiochatfrontend.core.model.dto.abstracts.MessageDto;
 import com.example.asiochatfrontend.core.model.enums.MessageState;
 import com.example.asiochatfrontend.data.common.utils.FileUtils;
 import com.example.asiochatfrontend.data.common.utils.UuidGenerator;
+import com.example.asiochatfrontend.data.database.converter.ListConverter;
 import com.example.asiochatfrontend.data.database.dao.MediaDao;
 import com.example.asiochatfrontend.data.database.entity.MediaEntity;
 import com.example.asiochatfrontend.data.database.entity.MessageEntity;
@@ -167,32 +168,13 @@ public class MediaRepositoryImpl implements MediaRepository {
     }
 
     @Override
-    public int getUnreadMessagesCount(String chatId, String userId) {
-        List<MediaEntity> mediaEntities = mediaDao.getUnreadMessagesCount(chatId);
-        if (mediaEntities == null || mediaEntities.isEmpty()) {
-            return 0;
-        }
-
-        return (int) mediaEntities
-                .stream()
-                .filter((messageEntity -> {
-                    // Check if the message is sent by the user
-                    if (messageEntity.getSenderId().equals(userId)) return false;
-
-                    // Private chat
-                    boolean result = false;
-                    if (chatId.contains(userId)) {
-                        result = messageEntity.getWaitingMembersList() != null &&
-                                !messageEntity.getWaitingMembersList().isEmpty();
-                    }
-
-                    // Group chat
-                    if (messageEntity.waitingMembersList.contains(userId)) result = true;
+    public int markChatReadUpTo(String chatId, String userId, long upToTimestamp) {
+        return mediaDao.markReadUpTo(chatId, userId, ListConverter.elementToken(userId), upToTimestamp);
+    }
 
-                    return result;
-                }
-                ))
-                .count();
+    @Override
+    public int getUnreadMessagesCount(String chatId, String userId) {
+        return mediaDao.countUnread(chatId, userId, ListConverter.elementToken(userId));
     }
 
     @Override
@@ -4,10 +4,12 @@ import com.example.asiochatfrontend.core.model.dto.TextMessageDto;
 import com.example.asiochatfrontend.core.model.dto.abstracts.MessageDto;
 import com.example.asiochatfrontend.core.model.enums.MessageState;
 import com.example.asiochatfrontend.data.common.utils.UuidGenerator;
+import com.example.asiochatfrontend.data.database.converter.ListConverter;
 import com.example.asiochatfrontend.data.database.dao.MessageDao;
 import com.example.asiochatfrontend.data.database.entity.MessageEntity;
 import com.example.asiochatfrontend.domain.repository.MessageRepository;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -25,6 +27,40 @@ public class MessageRepositoryImpl implements MessageRepository {
 
     @Override
     public TextMessageDto saveMessage(TextMessageDto messageDto) {
+        MessageEntity entity = mapDtoToEntity(messageDto);
+
+        messageDao.insertMessage(entity);
+
+        /// if it was “SENT” but nobody’s left to read it, mark it READ
+        if (entity.state == MessageState.SENT
+                && (entity.waitingMembersList == null || entity.waitingMembersList.isEmpty())) {
+            messageDao.updateMessageState(entity.id, MessageState.READ.name());
+            entity.state = MessageState.READ;
+        }
+
+        return mapEntityToDto(entity);
+    }
+
+    @Override
+    public List<TextMessageDto> saveMessages(List<TextMessageDto> messages) {
+        List<MessageEntity> entities = new ArrayList<>(messages.size());
+        for (TextMessageDto messageDto : messages) {
+            MessageEntity entity = mapDtoToEntity(messageDto);
+            // same rule as saveMessage, applied before the insert instead of as a second write
+            if (entity.state == MessageState.SENT
+                    && (entity.waitingMembersList == null || entity.waitingMembersList.isEmpty())) {
+                entity.state = MessageState.READ;
+            }
+            entities.add(entity);
+        }
+
+        messageDao.insertMessages(entities);
+        return entities.stream()
+                .map(this::mapEntityToDto)
+                .collect(Collectors.toList());
+    }
+
+    private MessageEntity mapDtoToEntity(TextMessageDto messageDto) {
         MessageEntity entity = new MessageEntity();
 
         entity.id = messageDto.getId() != null ? messageDto.getId() : UuidGenerator.generate();
@@ -38,17 +74,7 @@ public class MessageRepositoryImpl implements MessageRepository {
         entity.createdAt = messageDto.getTimestamp() != null ? messageDto.getTimestamp() : new Date();
         entity.deliveredAt = null;
         entity.readAt = null;
-
-        messageDao.insertMessage(entity);
-
-        /// if it was “SENT” but nobody’s left to read it, mark it READ
-        if (entity.state == MessageState.SENT
-                && (entity.waitingMembersList == null || entity.waitingMembersList.isEmpty())) {
-            messageDao.updateMessageState(entity.id, MessageState.READ.name());
-            entity.state = MessageState.READ;
-        }
-
-        return mapEntityToDto(entity);
+        return entity;
     }
 
     @Override
@@ -57,6 +83,12 @@ public class MessageRepositoryImpl implements MessageRepository {
         return entity != null ? mapEntityToDto(entity) : null;
     }
 
+    @Override
+    public List<String> getExistingMessageIds(List<String> messageIds) {
+        if (messageIds.isEmpty()) return new ArrayList<>();
+        return messageDao.getExistingMessageIds(messageIds);
+    }
+
     @Override
     public List<TextMessageDto> getMessagesForChat(String chatId) {
         return messageDao.getMessagesForChat(chatId)
@@ -107,6 +139,11 @@ public class MessageRepositoryImpl implements MessageRepository {
         return true;
     }
 
+    @Override
+    public boolean updatePendingMessageState(String messageId, MessageState state) {
+        return messageDao.updatePendingMessageState(messageId, state.name()) > 0;
+    }
+
     @Override
     public boolean updateMessageDeliveredAt(String messageId, Date deliveredAt) {
         return messageDao.updateMessageDeliveredAt(messageId, deliveredAt.getTime()) > 0;
@@ -124,16 +161,13 @@ public class MessageRepositoryImpl implements MessageRepository {
     }
 
     @Override
-    public int getUnreadMessagesCount(String chatId, String userId) {
-        List<MessageEntity> messageEntities = messageDao.getUnreadMessagesCount(chatId);
-        if (messageEntities == null || messageEntities.isEmpty()) {
-            return 0;
-        }
+    public int markChatReadUpTo(String chatId, String userId, long upToTimestamp) {
+        return messageDao.markReadUpTo(chatId, userId, ListConverter.elementToken(userId), upToTimestamp);
+    }
 
-        return (int) messageEntities
-                .stream()
-                .filter((messageEntity -> messageEntity.waitingMembersList.contains(userId)))
-                .count();
+    @Override
+    public int getUnreadMessagesCount(String chatId, String userId) {
+        return messageDao.countUnread(chatId, userId, ListConverter.elementToken(userId));
     }
 
     private TextMessageDto mapEntityToDto(MessageEntity entity) {
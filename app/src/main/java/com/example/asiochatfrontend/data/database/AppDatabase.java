@@ -13,11 +13,13 @@ import com.example.asiochatfrontend.data.database.dao.ChatDao;
 import com.example.asiochatfrontend.data.database.dao.EncryptionKeyDao;
 import com.example.asiochatfrontend.data.database.dao.MediaDao;
 import com.example.asiochatfrontend.data.database.dao.MessageDao;
+import com.example.asiochatfrontend.data.database.dao.SyncCursorDao;
 import com.example.asiochatfrontend.data.database.dao.UserDao;
 import com.example.asiochatfrontend.data.database.entity.ChatEntity;
 import com.example.asiochatfrontend.data.database.entity.EncryptionKeyEntity;
 import com.example.asiochatfrontend.data.database.entity.MediaEntity;
 import com.example.asiochatfrontend.data.database.entity.MessageEntity;
+import com.example.asiochatfrontend.data.database.entity.SyncCursorEntity;
 import com.example.asiochatfrontend.data.database.entity.UserEntity;
 
 @Database(
@@ -26,9 +28,10 @@ import com.example.asiochatfrontend.data.database.entity.UserEntity;
                 MessageEntity.class,
                 UserEntity.class,
                 MediaEntity.class,
-                EncryptionKeyEntity.class
+                EncryptionKeyEntity.class,
+                SyncCursorEntity.class
         },
-        version = 9,
+        version = 11,
         exportSchema = false
 )
 @TypeConverters({DateTimeConverter.class, ListConverter.class})
@@ -39,6 +42,7 @@ public abstract class AppDatabase extends RoomDatabase {
     public abstract UserDao userDao();
     public abstract MediaDao mediaDao();
     public abstract EncryptionKeyDao encryptionKeyDao();
+    public abstract SyncCursorDao syncCursorDao();
 
     private static AppDatabase instance;
 
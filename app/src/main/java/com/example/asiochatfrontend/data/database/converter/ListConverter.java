@@ -27,4 +27,10 @@ public class ListConverter {
             return Collections.emptyList();
         }
     }
-}
\ No newline at end of file
+
+    /** A single value exactly as it appears inside a stored list, quotes included */
+    public static String elementToken(String value) {
+        String json = stringListAdapter.toJson(Collections.singletonList(value));
+        return json.substring(1, json.length() - 1);
+    }
+}
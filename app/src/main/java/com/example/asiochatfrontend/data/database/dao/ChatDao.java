@@ -28,6 +28,14 @@ public interface ChatDao {
     @Query("SELECT * FROM chats WHERE participants LIKE '%\"' || :userId || '\"%'")
     List<ChatEntity> getChatsForUser(String userId);
 
+    // Newest last message first; chats whose last message is not stored sort last
+    @Query("SELECT * FROM chats WHERE participants LIKE '%\"' || :userId || '\"%' "
+            + "ORDER BY COALESCE("
+            + "(SELECT CAST(m.createdAt AS INTEGER) FROM messages m WHERE m.id = chats.lastMessageId), "
+            + "(SELECT CAST(md.createdAt AS INTEGER) FROM media md WHERE md.id = chats.lastMessageId), "
+            + "0) DESC LIMIT :limit")
+    List<ChatEntity> getRecentChatsForUser(String userId, int limit);
+
     @Query("SELECT * FROM chats WHERE :userId IN (participants)")
     Flow<List<ChatEntity>> observeChatsForUser(String userId);
 
@@ -43,6 +51,12 @@ public interface ChatDao {
     @Query("UPDATE chats SET lastMessageId = :lastMessageId WHERE id = :chatId")
     int updateLastMessageId(String chatId, String lastMessageId);
 
+    @Query("UPDATE chats SET lastMessageId = :lastMessageId, unreadCount = unreadCount + :unreadDelta WHERE id = :chatId")
+    int updateLastMessageAndAddUnread(String chatId, String lastMessageId, int unreadDelta);
+
+    @Query("UPDATE chats SET unreadCount = MAX(0, unreadCount + :delta) WHERE id = :chatId")
+    int addUnreadCount(String chatId, int delta);
+
     @Query("SELECT * FROM chats ORDER BY updatedAt DESC")
     Flow<List<ChatEntity>> observeAllChats();
 
@@ -11,6 +11,10 @@ public interface EncryptionKeyDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insertKey(EncryptionKeyEntity key);
 
+    // One statement per key, all in one transaction
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertKeys(List<EncryptionKeyEntity> keys);
+
     // ======== RSA Public/Private Key Methods (User) ========
 
     @Query("SELECT * FROM encryption_keys WHERE userId = :userId AND publicKey IS NOT NULL ORDER BY createdAt DESC LIMIT 1")
@@ -49,11 +49,22 @@ public interface MediaDao {
     @Query("SELECT * FROM media WHERE chatId = :chatId ORDER BY createdAt DESC LIMIT 1")
     MediaEntity getLastMessageForChat(String chatId);
 
-    @Query("SELECT * FROM media WHERE state = 'PENDING'")
+    @Query("SELECT * FROM media WHERE state = 'PENDING' ORDER BY CAST(createdAt AS INTEGER)")
     List<MediaEntity> getPendingMessages();
 
-    @Query("SELECT * FROM media WHERE chatId = :chatId AND state = 'SENT'")
-    List<MediaEntity> getUnreadMessagesCount(String chatId);
+    /** Same as MessageDao.markReadUpTo, for media rows */
+    @Query("UPDATE media SET "
+            + "waitingMembersList = REPLACE(REPLACE(REPLACE(waitingMembersList, :readerToken || ',', ''), ',' || :readerToken, ''), :readerToken, ''), "
+            + "state = CASE WHEN REPLACE(REPLACE(REPLACE(waitingMembersList, :readerToken || ',', ''), ',' || :readerToken, ''), :readerToken, '') = '[]' "
+            + "AND state = 'SENT' THEN 'READ' ELSE state END "
+            + "WHERE chatId = :chatId AND CAST(createdAt AS INTEGER) <= :upTo AND state = 'SENT' "
+            + "AND senderId != :readerId AND instr(waitingMembersList, :readerToken) > 0")
+    int markReadUpTo(String chatId, String readerId, String readerToken, long upTo);
+
+    /** Same as MessageDao.countUnread, for media rows */
+    @Query("SELECT COUNT(*) FROM media WHERE chatId = :chatId AND state = 'SENT' "
+            + "AND senderId != :userId AND instr(waitingMembersList, :readerToken) > 0")
+    int countUnread(String chatId, String userId, String readerToken);
 
     @Query("UPDATE media SET state = :state WHERE id = :id")
     void updateMediaState(String id, String state);
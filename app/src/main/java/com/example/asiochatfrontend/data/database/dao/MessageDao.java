@@ -23,10 +23,13 @@ public interface MessageDao {
     @Query("SELECT * FROM messages WHERE id = :messageId")
     MessageEntity getMessageById(String messageId);
 
+    @Query("SELECT id FROM messages WHERE id IN (:messageIds)")
+    List<String> getExistingMessageIds(List<String> messageIds);
+
     @Query("SELECT * FROM messages WHERE chatId = :chatId ORDER BY createdAt ASC")
     List<MessageEntity> getMessagesForChat(String chatId);
 
-    @Query("SELECT * FROM messages WHERE state = 'PENDING'")
+    @Query("SELECT * FROM messages WHERE state = 'PENDING' ORDER BY CAST(createdAt AS INTEGER)")
     List<MessageEntity> getPendingMessages();
 
     @Query("SELECT * FROM messages WHERE chatId = :chatId ORDER BY createdAt DESC")
@@ -41,12 +44,34 @@ public interface MessageDao {
     @Query("UPDATE messages SET state = :state WHERE id = :messageId")
     int updateMessageState(String messageId, String state);
 
+    /** Only moves a message that is still PENDING, so a late send ack never undoes a READ */
+    @Query("UPDATE messages SET state = :state WHERE id = :messageId AND state = 'PENDING'")
+    int updatePendingMessageState(String messageId, String state);
+
     @Query("UPDATE messages SET deliveredAt = :deliveredAt WHERE id = :messageId")
     int updateMessageDeliveredAt(String messageId, long deliveredAt);
 
     @Query("UPDATE messages SET readAt = :readAt WHERE id = :messageId")
     int updateMessageReadAt(String messageId, long readAt);
 
-    @Query("SELECT * FROM messages WHERE chatId = :chatId AND state = 'SENT'")
-    List<MessageEntity> getUnreadMessagesCount(String chatId);
+    /**
+     * Drop a reader from the waiting list of every message in the chat created
+     * at or before upTo, and mark READ the ones nobody is waiting on anymore.
+     * Only rows unread by the reader under ReadReceipts.isUnreadFor are
+     * touched, so the count is what the reader's badge goes down by.
+     * waitingMembersList is a JSON array and createdAt starts with epoch millis,
+     * so both are handled as text; readerToken is the quoted user id.
+     */
+    @Query("UPDATE messages SET "
+            + "waitingMembersList = REPLACE(REPLACE(REPLACE(waitingMembersList, :readerToken || ',', ''), ',' || :readerToken, ''), :readerToken, ''), "
+            + "state = CASE WHEN REPLACE(REPLACE(REPLACE(waitingMembersList, :readerToken || ',', ''), ',' || :readerToken, ''), :readerToken, '') = '[]' "
+            + "AND state = 'SENT' THEN 'READ' ELSE state END "
+            + "WHERE chatId = :chatId AND CAST(createdAt AS INTEGER) <= :upTo AND state = 'SENT' "
+            + "AND senderId != :readerId AND instr(waitingMembersList, :readerToken) > 0")
+    int markReadUpTo(String chatId, String readerId, String readerToken, long upTo);
+
+    /** ReadReceipts.isUnreadFor as a query; readerToken is the quoted user id, as in markReadUpTo */
+    @Query("SELECT COUNT(*) FROM messages WHERE chatId = :chatId AND state = 'SENT' "
+            + "AND senderId != :userId AND instr(waitingMembersList, :readerToken) > 0")
+    int countUnread(String chatId, String userId, String readerToken);
 }
\ No newline at end of file
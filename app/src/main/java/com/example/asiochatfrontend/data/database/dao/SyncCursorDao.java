@@ -0,0 +1,17 @@
+package com.example.asiochatfrontend.data.database.dao;
+
+import androidx.room.*;
+import com.example.asiochatfrontend.data.database.entity.SyncCursorEntity;
+
+@Dao
+public interface SyncCursorDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertCursor(SyncCursorEntity cursor);
+
+    @Query("SELECT * FROM sync_cursors WHERE id = :id")
+    SyncCursorEntity getCursor(String id);
+
+    @Query("DELETE FROM sync_cursors WHERE id = :id")
+    void deleteCursor(String id);
+}
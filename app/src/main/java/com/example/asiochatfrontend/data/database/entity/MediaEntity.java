@@ -2,6 +2,7 @@ package com.example.asiochatfrontend.data.database.entity;
 
 import androidx.annotation.NonNull;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 import com.example.asiochatfrontend.core.model.enums.MediaType;
@@ -10,7 +11,10 @@ import com.example.asiochatfrontend.core.model.enums.MessageState;
 import java.util.Date;
 import java.util.List;
 
-@Entity(tableName = "media")
+@Entity(
+        tableName = "media",
+        indices = {@Index(value = {"chatId", "state"})}
+)
 public class MediaEntity {
 
     @PrimaryKey
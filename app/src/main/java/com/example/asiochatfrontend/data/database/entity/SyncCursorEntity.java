@@ -0,0 +1,64 @@
+package com.example.asiochatfrontend.data.database.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Durable sync position, keyed by scope (e.g. the relay event stream of an account).
+ */
+@Entity(tableName = "sync_cursors")
+public class SyncCursorEntity {
+
+    @PrimaryKey
+    @NonNull
+    public String id;
+
+    public long sequence;       // last server sequence applied, 0 if unknown
+    public long timestamp;      // last server timestamp applied (epoch millis), 0 if unknown
+    public long updatedAt;
+
+    public SyncCursorEntity() {
+        id = "";
+    }
+
+    public SyncCursorEntity(@NonNull String id, long sequence, long timestamp, long updatedAt) {
+        this.id = id;
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.updatedAt = updatedAt;
+    }
+
+    @NonNull
+    public String getId() {
+        return id;
+    }
+
+    public void setId(@NonNull String id) {
+        this.id = id;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
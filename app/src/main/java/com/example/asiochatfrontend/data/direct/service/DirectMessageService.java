@@ -135,8 +135,8 @@ public class DirectMessageService implements MessageService {
     }
 
     @Override
-    public List<MessageDto> getOfflineMessages(String userId) throws Exception {
-        return Collections.emptyList();
+    public int syncOfflineMessages(String userId) throws Exception {
+        return 0;
     }
 
     @Override
@@ -0,0 +1,38 @@
+package com.example.asiochatfrontend.data.relay.model;
+
+/**
+ * Outcome of reading one page of the user's offline inbox. The messages
+ * themselves went to the reader's sink as they were read. {@code nextCursor}
+ * asks the relay for the page after this one; null once the inbox is
+ * drained. A page the sink stopped early is not complete, and its cursor
+ * must not be used.
+ */
+public class OfflineInboxPage {
+
+    private final int received;
+    private final String nextCursor;
+    private final boolean complete;
+
+    public OfflineInboxPage(int received, String nextCursor, boolean complete) {
+        this.received = received;
+        this.nextCursor = nextCursor;
+        this.complete = complete;
+    }
+
+    public int getReceived() {
+        return received;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /** Every message on the page was read and accepted by the sink */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public boolean hasMore() {
+        return complete && nextCursor != null && received > 0;
+    }
+}
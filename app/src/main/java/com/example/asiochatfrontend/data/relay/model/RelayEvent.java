@@ -0,0 +1,62 @@
+package com.example.asiochatfrontend.data.relay.model;
+
+import com.example.asiochatfrontend.data.relay.model.WebSocketEvent.EventType;
+
+/**
+ * An inbound relay frame whose payload has already been bound to its DTO
+ * (TextMessageDto, MediaMessageDto, MessageReadByDto, ChatDto, ...).
+ * Decoded once per frame and shared by every subscriber.
+ */
+public class RelayEvent {
+
+    private final EventType type;
+    private final String jid;
+    private final Long seq;
+    private final Long timestamp;
+    private final Object payload;
+
+    public RelayEvent(EventType type, String jid, Long seq, Long timestamp, Object payload) {
+        this.type = type;
+        this.jid = jid;
+        this.seq = seq;
+        this.timestamp = timestamp;
+        this.payload = payload;
+    }
+
+    public EventType getType() {
+        return type;
+    }
+
+    public String getJid() {
+        return jid;
+    }
+
+    /** Server-assigned position in the account's event stream, or null */
+    public Long getSeq() {
+        return seq;
+    }
+
+    /** Server time the event was recorded (epoch millis), or null */
+    public Long getTimestamp() {
+        return timestamp;
+    }
+
+    public Object getPayload() {
+        return payload;
+    }
+
+    /** The bound payload if it is of the given type, otherwise null */
+    public <T> T getPayloadAs(Class<T> payloadType) {
+        return payloadType.isInstance(payload) ? payloadType.cast(payload) : null;
+    }
+
+    @Override
+    public String toString() {
+        return "RelayEvent{" +
+                "type=" + type +
+                ", jid='" + jid + '\'' +
+                ", seq=" + seq +
+                ", payload=" + (payload != null ? payload.getClass().getSimpleName() : null) +
+                '}';
+    }
+}
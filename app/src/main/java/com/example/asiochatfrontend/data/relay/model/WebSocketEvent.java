@@ -30,6 +30,10 @@ public class WebSocketEvent {
         return payload;
     }
 
+    public String getJid() {
+        return jid;
+    }
+
     public enum EventType {
         @SerializedName("CHAT")
         CHAT,
@@ -43,6 +47,12 @@ public class WebSocketEvent {
         @SerializedName("MESSAGE_READ")
         MESSAGE_READ,
 
+        @SerializedName("MESSAGE_ACK")
+        MESSAGE_ACK,
+
+        @SerializedName("CHAT_READ")
+        CHAT_READ,
+
         @SerializedName("CREATE_CHAT")
         CREATE_CHAT,
 
@@ -51,6 +61,15 @@ public class WebSocketEvent {
 
         @SerializedName("VIDEO_STREAM")
         VIDEO_STREAM,
+
+        @SerializedName("RESUME")
+        RESUME,
+
+        @SerializedName("PING")
+        PING,
+
+        @SerializedName("PONG")
+        PONG,
     }
 
     @Override
@@ -0,0 +1,147 @@
+package com.example.asiochatfrontend.data.relay.network;
+
+import com.example.asiochatfrontend.core.model.dto.abstracts.MessageDto;
+import com.example.asiochatfrontend.core.model.enums.MediaType;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One file streamed to the relay in sequenced, offset-tagged chunks.
+ * Progress counters are updated by {@link ChunkedUploadEngine} and can be
+ * read from any thread.
+ */
+public class ChunkedUpload {
+
+    public enum State {
+        /** Waiting for the socket or for a scheduler slot */
+        QUEUED,
+        SENDING,
+        /** Interrupted; resumes from the last acked offset when retried */
+        PAUSED,
+        COMPLETED,
+        FAILED,
+        CANCELLED
+    }
+
+    /** The result of an upload that stopped because the socket went away */
+    public static class PausedException extends Exception {
+        public PausedException(String uploadId) {
+            super("Upload paused: " + uploadId);
+        }
+    }
+
+    /** Called on scheduler or socket threads as chunks are sent and acked */
+    public interface ProgressListener {
+        void onProgress(ChunkedUpload upload);
+    }
+
+    final String id;
+    final File file;
+    final MessageDto message;
+    final String contentType;
+    final MediaType mediaType;
+    final long totalBytes;
+    final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+    volatile State state = State.QUEUED;
+    volatile long sentBytes;
+    volatile long ackedBytes;
+    volatile int nextSeq;
+    volatile boolean ackSupported;  // relay has acked at least once
+    volatile int framing;           // chunk header version from the start ack; 0 = raw chunks
+    volatile boolean started;       // start frame sent at least once
+    volatile ProgressListener progressListener;
+    volatile boolean cancelled;
+    volatile int attempts;
+
+    private volatile long sendStartedAtMs;
+    private volatile long bytesSentThisRun;
+
+    ChunkedUpload(File file, MessageDto message, String contentType, MediaType mediaType) {
+        this.id = message.getId();
+        this.file = file;
+        this.message = message;
+        this.contentType = contentType;
+        this.mediaType = mediaType;
+        this.totalBytes = file.length();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getSentBytes() {
+        return sentBytes;
+    }
+
+    /** Bytes the relay confirmed; equals sent bytes if the relay does not ack */
+    public long getAckedBytes() {
+        return ackSupported ? ackedBytes : sentBytes;
+    }
+
+    public String getChatId() {
+        return message.getChatId();
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /** 0-100, based on acknowledged bytes */
+    public int getPercent() {
+        if (totalBytes == 0) return 100;
+        return (int) (getAckedBytes() * 100 / totalBytes);
+    }
+
+    /** Send rate of the current run, bytes per second */
+    public long getBytesPerSecond() {
+        long elapsedMs = System.currentTimeMillis() - sendStartedAtMs;
+        if (sendStartedAtMs == 0 || elapsedMs <= 0) return 0;
+        return bytesSentThisRun * 1000 / elapsedMs;
+    }
+
+    /**
+     * Completes with true when the relay has the whole file, false if it
+     * failed, or exceptionally with {@link PausedException} if it paused
+     */
+    public CompletableFuture<Boolean> getResult() {
+        return result;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this.progressListener = listener;
+    }
+
+    void markRunStarted() {
+        sendStartedAtMs = System.currentTimeMillis();
+        bytesSentThisRun = 0;
+    }
+
+    void recordSent(long bytes) {
+        sentBytes += bytes;
+        bytesSentThisRun += bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkedUpload{" +
+                "id='" + id + '\'' +
+                ", state=" + state +
+                ", acked=" + getAckedBytes() + "/" + totalBytes +
+                ", rate=" + getBytesPerSecond() + "B/s" +
+                '}';
+    }
+}
@@ -0,0 +1,437 @@
+package com.example.asiochatfrontend.data.relay.network;
+
+import android.util.Log;
+
+import com.example.asiochatfrontend.core.model.dto.abstracts.MessageDto;
+import com.example.asiochatfrontend.core.model.enums.MediaType;
+import com.example.asiochatfrontend.data.relay.model.WebSocketEvent;
+import com.example.asiochatfrontend.data.relay.model.WebSocketEvent.EventType;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import okhttp3.WebSocket;
+import okio.ByteString;
+
+/**
+ * Streams media files to the relay as VIDEO_STREAM transfers (the event
+ * name predates images and documents using the same path).
+ *
+ * Wire format: a JSON {@code start} frame (with {@code resume: true} when
+ * continuing) announcing a per-connection {@code streamId}, binary chunks,
+ * then a JSON {@code end} frame. A relay that supports it answers with
+ * {@code ack} frames carrying the highest contiguous offset it stored; the
+ * start ack tells where to resume from and which chunk header it reads:
+ * {@code framing: 1} for a 12-byte big-endian {@code [int seq][long offset]},
+ * {@code framing: 2} for the multiplexed 16-byte
+ * {@code [int streamId][int seq][long offset]}. Without it the chunks go
+ * out raw, as older relays write every binary byte into the file.
+ * A {@code cancel} frame abandons a stream.
+ * Whether the relay answers start frames at all, and with which framing, is
+ * learned once per socket, so only the first upload on a connection to an
+ * older relay waits out {@link #START_ACK_TIMEOUT_MS}. Only framing 2 tells
+ * streams apart; below it the relay writes every chunk into the stream it
+ * opened last, so uploads on that socket must not overlap.
+ *
+ * Sending is paced by the socket's outgoing buffer and, once the relay has
+ * acked, by a window of unacknowledged bytes. Chunks also wait while text
+ * and receipt events are queued, so media never delays them. Scheduling,
+ * retries and parallelism are left to {@link MediaUploadScheduler}, which
+ * calls {@link #run} on its worker threads.
+ */
+public class ChunkedUploadEngine {
+    private static final String TAG = "ChunkedUploadEngine";
+
+    static final int CHUNK_SIZE = 32 * 1024; // 32 KB
+    static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+    static final int MUX_HEADER_SIZE = Integer.BYTES + HEADER_SIZE;
+    private static final long SOCKET_HIGH_WATER_BYTES = 256 * 1024;
+    private static final long QUEUE_POLL_MS = 10;
+    private static final long MAX_UNACKED_BYTES = 1024 * 1024;
+    private static final long START_ACK_TIMEOUT_MS = 5_000;
+    private static final long ACK_STALL_TIMEOUT_MS = 15_000;
+    private static final int PROGRESS_EVERY_CHUNKS = 8;
+
+    private final Supplier<WebSocket> openSocket;
+    private final BooleanSupplier eventsPending;
+    private final Gson gson;
+    private final String userId;
+    private final Map<String, ChunkedUpload> uploads = new ConcurrentHashMap<>();
+    private final AtomicInteger nextStreamId = new AtomicInteger(1);
+    // ids of paused uploads whose start frame went out; a resend asks to resume
+    private final Set<String> resumable = ConcurrentHashMap.newKeySet();
+
+    // what the relay on the current socket answered to its first start frame
+    private WebSocket probedSocket;     // guarded by this
+    private boolean socketAcksStart;    // guarded by this
+    private int socketFraming;          // guarded by this
+    private volatile Runnable framingListener;
+
+    /**
+     * @param openSocket    returns the current socket if it is open, else null
+     * @param eventsPending true while regular relay events wait to be sent
+     */
+    public ChunkedUploadEngine(
+            Supplier<WebSocket> openSocket,
+            BooleanSupplier eventsPending,
+            Gson gson,
+            String userId
+    ) {
+        this.openSocket = openSocket;
+        this.eventsPending = eventsPending;
+        this.gson = gson;
+        this.userId = userId;
+    }
+
+    /** Register a new upload; it is sent once the scheduler runs it */
+    public ChunkedUpload create(File file, MessageDto message, String contentType, MediaType mediaType) {
+        ChunkedUpload upload = new ChunkedUpload(file, message, contentType, mediaType);
+        upload.started = resumable.remove(upload.id);
+        uploads.put(upload.id, upload);
+        return upload;
+    }
+
+    public ChunkedUpload getUpload(String id) {
+        return uploads.get(id);
+    }
+
+    public boolean isSocketOpen() {
+        return openSocket.get() != null;
+    }
+
+    /**
+     * Whether the current socket's relay reported framing 2, so chunks of
+     * concurrent uploads carry their stream id. False until the first
+     * start frame on the socket has been answered.
+     */
+    public synchronized boolean isMultiplexed() {
+        WebSocket socket = openSocket.get();
+        return socket != null && socket == probedSocket && socketFraming >= 2;
+    }
+
+    /** Called on an upload thread once a socket's framing has been learned */
+    void setFramingListener(Runnable listener) {
+        this.framingListener = listener;
+    }
+
+    /** Inbound VIDEO_STREAM frame; only acks are of interest here */
+    public void onStreamEvent(JsonObject payload) {
+        if (payload == null || !payload.has("id") || !payload.has("streamState")) return;
+        if (!"ack".equals(payload.get("streamState").getAsString())) return;
+
+        ChunkedUpload upload = uploads.get(payload.get("id").getAsString());
+        if (upload == null) return;
+
+        long offset = payload.has("offset") ? payload.get("offset").getAsLong() : 0;
+        int framing = payload.has("framing") ? payload.get("framing").getAsInt() : 0;
+        synchronized (upload) {
+            upload.ackSupported = true;
+            upload.framing = Math.max(upload.framing, framing);
+            if (offset > upload.ackedBytes) {
+                upload.ackedBytes = offset;
+            }
+            upload.notifyAll();
+        }
+        notifyProgress(upload);
+    }
+
+    /** Flag an upload cancelled and wake a run waiting on its acks */
+    public void cancel(ChunkedUpload upload) {
+        synchronized (upload) {
+            upload.cancelled = true;
+            upload.notifyAll();
+        }
+    }
+
+    /**
+     * Settle an upload for good and stop tracking it. A PAUSED upload
+     * completes its result exceptionally with {@link ChunkedUpload.PausedException};
+     * sending the same message again resumes it.
+     */
+    public void finish(ChunkedUpload upload, ChunkedUpload.State state) {
+        upload.state = state;
+        uploads.remove(upload.id);
+        notifyProgress(upload);
+        if (state == ChunkedUpload.State.PAUSED) {
+            if (upload.started) resumable.add(upload.id);
+            upload.result.completeExceptionally(new ChunkedUpload.PausedException(upload.id));
+        } else {
+            resumable.remove(upload.id);
+            upload.result.complete(state == ChunkedUpload.State.COMPLETED);
+        }
+    }
+
+    public void shutdown() {
+        for (ChunkedUpload upload : uploads.values()) {
+            cancel(upload);
+            finish(upload, ChunkedUpload.State.FAILED);
+        }
+    }
+
+    //==============================
+    // Upload loop
+    //==============================
+
+    /**
+     * Send as much of the upload as possible on the calling thread.
+     *
+     * @return COMPLETED when the relay has the whole file, PAUSED if the
+     *         socket dropped or the relay stalled, CANCELLED, or FAILED on
+     *         a local error. Only COMPLETED settles the upload; the caller
+     *         decides whether to retry the rest.
+     */
+    public ChunkedUpload.State run(ChunkedUpload upload) {
+        if (upload.cancelled) return ChunkedUpload.State.CANCELLED;
+
+        WebSocket socket = openSocket.get();
+        if (socket == null) {
+            return pause(upload, "socket not open");
+        }
+        upload.state = ChunkedUpload.State.SENDING;
+        upload.markRunStarted();
+        int streamId = nextStreamId.getAndIncrement();
+
+        try (RandomAccessFile in = new RandomAccessFile(upload.file, "r")) {
+            long offset = negotiateStart(socket, upload, streamId);
+            if (offset < 0) {
+                return pause(upload, "start frame not sent");
+            }
+            in.seek(offset);
+
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int chunksThisRun = 0;
+            while (offset < upload.totalBytes) {
+                if (upload.cancelled) {
+                    sendControl(socket, upload, "cancel");
+                    return ChunkedUpload.State.CANCELLED;
+                }
+                if (!awaitSocketRoom(socket) || !awaitWindow(upload, offset)) {
+                    if (upload.cancelled) continue; // woken by cancel; handled above
+                    return pause(upload, "socket closed or relay stopped acking");
+                }
+
+                int read = in.read(buffer);
+                if (read == -1) break;
+
+                ByteString chunk;
+                if (upload.framing >= 2) {
+                    ByteBuffer frame = ByteBuffer.allocate(MUX_HEADER_SIZE + read);
+                    frame.putInt(streamId);
+                    frame.putInt(upload.nextSeq);
+                    frame.putLong(offset);
+                    frame.put(buffer, 0, read);
+                    chunk = ByteString.of(frame.array());
+                } else if (upload.framing == 1) {
+                    ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + read);
+                    frame.putInt(upload.nextSeq);
+                    frame.putLong(offset);
+                    frame.put(buffer, 0, read);
+                    chunk = ByteString.of(frame.array());
+                } else {
+                    chunk = ByteString.of(buffer, 0, read);
+                }
+                if (!socket.send(chunk)) {
+                    return pause(upload, "send failed at offset " + offset);
+                }
+
+                offset += read;
+                upload.nextSeq++;
+                upload.recordSent(read);
+                if (++chunksThisRun % PROGRESS_EVERY_CHUNKS == 0) {
+                    notifyProgress(upload);
+                }
+            }
+
+            if (!sendControl(socket, upload, "end")) {
+                return pause(upload, "end frame not sent");
+            }
+            if (upload.ackSupported && !awaitAck(upload, upload.totalBytes, ACK_STALL_TIMEOUT_MS)) {
+                if (upload.cancelled) {
+                    sendControl(socket, upload, "cancel");
+                    return ChunkedUpload.State.CANCELLED;
+                }
+                return pause(upload, "final ack missing");
+            }
+
+            finish(upload, ChunkedUpload.State.COMPLETED);
+            Log.d(TAG, "Upload complete: " + upload);
+            return ChunkedUpload.State.COMPLETED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return pause(upload, "interrupted");
+        } catch (Exception e) {
+            Log.e(TAG, "Upload failed: " + upload.id, e);
+            upload.state = ChunkedUpload.State.FAILED;
+            notifyProgress(upload);
+            return ChunkedUpload.State.FAILED;
+        }
+    }
+
+    /**
+     * Send the start frame and wait briefly for the relay's ack.
+     *
+     * @return offset to continue from, or -1 if the frame could not be sent
+     */
+    private long negotiateStart(WebSocket socket, ChunkedUpload upload, int streamId) throws InterruptedException {
+        boolean resuming = upload.started;
+        MessageDto message = upload.message;
+
+        JsonObject startPayload = new JsonObject();
+        startPayload.addProperty("id", message.getId());
+        startPayload.addProperty("jid", message.getJid());
+        startPayload.addProperty("chatId", message.getChatId());
+        startPayload.addProperty("streamState", "start");
+        startPayload.addProperty("streamId", streamId);
+        startPayload.addProperty("filename", upload.file.getName());
+        startPayload.addProperty("contentType", upload.contentType);
+        if (upload.mediaType != null) {
+            startPayload.add("mediaType", gson.toJsonTree(upload.mediaType));
+        }
+        startPayload.addProperty("fileSize", upload.totalBytes);
+        startPayload.addProperty("chunkSize", CHUNK_SIZE);
+        startPayload.addProperty("resume", resuming);
+
+        if (message.getReplyTo() != null) {
+            startPayload.addProperty("replyTo", message.getReplyTo());
+        }
+
+        if (message.getWaitingMemebersList() != null) {
+            JsonArray waitingMembers = new JsonArray();
+            for (String member : message.getWaitingMemebersList()) {
+                waitingMembers.add(member);
+            }
+            startPayload.add("waitingMemebersList", waitingMembers);
+        }
+
+        synchronized (upload) {
+            // re-learned from this run's start ack; the relay's offset is authoritative
+            upload.ackSupported = false;
+            upload.framing = 0;
+            upload.ackedBytes = 0;
+        }
+        if (!socket.send(gson.toJson(new WebSocketEvent(EventType.VIDEO_STREAM, startPayload, userId)))) {
+            return -1;
+        }
+        upload.started = true;
+
+        boolean probe;
+        synchronized (this) {
+            probe = probedSocket != socket;
+        }
+        // a relay that ignored one start frame on this socket ignores them all
+        boolean acked = (probe || socketAcksStart()) && awaitAnyAck(upload, START_ACK_TIMEOUT_MS);
+        if (probe && !upload.cancelled) { // a cancel cut the wait short; learn nothing
+            synchronized (this) {
+                probedSocket = socket;
+                socketAcksStart = acked;
+                socketFraming = acked ? upload.framing : 0;
+            }
+            if (!acked) {
+                Log.d(TAG, "Relay does not ack stream starts; sending raw chunks on this connection");
+            } else {
+                Log.d(TAG, "Relay stream framing on this connection: " + upload.framing);
+            }
+            Runnable listener = framingListener;
+            if (listener != null) {
+                listener.run();
+            }
+        }
+        long offset = 0;
+        if (acked && resuming) {
+            synchronized (upload) {
+                offset = Math.min(upload.ackedBytes, upload.totalBytes);
+            }
+        } else if (!acked && resuming) {
+            Log.d(TAG, "No resume ack for " + upload.id + "; restarting from 0");
+        }
+
+        synchronized (upload) {
+            upload.ackedBytes = offset;
+            upload.sentBytes = offset;
+            upload.nextSeq = (int) (offset / CHUNK_SIZE);
+        }
+        return offset;
+    }
+
+    private synchronized boolean socketAcksStart() {
+        return socketAcksStart;
+    }
+
+    private boolean sendControl(WebSocket socket, ChunkedUpload upload, String streamState) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("id", upload.id);
+        payload.addProperty("streamState", streamState);
+        payload.addProperty("totalChunks", upload.nextSeq);
+        payload.addProperty("fileSize", upload.totalBytes);
+        return socket.send(gson.toJson(new WebSocketEvent(EventType.VIDEO_STREAM, payload, userId)));
+    }
+
+    /**
+     * Wait while OkHttp's outgoing buffer is above the high-water mark, or
+     * while regular events are queued behind us.
+     */
+    private boolean awaitSocketRoom(WebSocket socket) throws InterruptedException {
+        while (socket.queueSize() > SOCKET_HIGH_WATER_BYTES || eventsPending.getAsBoolean()) {
+            if (openSocket.get() != socket) return false;
+            Thread.sleep(QUEUE_POLL_MS);
+        }
+        return openSocket.get() == socket;
+    }
+
+    /** Wait until the unacked window has room; a no-op until the relay acks */
+    private boolean awaitWindow(ChunkedUpload upload, long offset) throws InterruptedException {
+        if (!upload.ackSupported) return true;
+        return awaitAck(upload, offset - MAX_UNACKED_BYTES, ACK_STALL_TIMEOUT_MS);
+    }
+
+    private boolean awaitAck(ChunkedUpload upload, long offset, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (upload) {
+            while (upload.ackedBytes < offset && !upload.cancelled) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                upload.wait(remaining);
+            }
+            return !upload.cancelled;
+        }
+    }
+
+    private boolean awaitAnyAck(ChunkedUpload upload, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (upload) {
+            while (!upload.ackSupported && !upload.cancelled) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                upload.wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    private ChunkedUpload.State pause(ChunkedUpload upload, String reason) {
+        Log.d(TAG, "Upload " + upload.id + " paused: " + reason);
+        upload.state = ChunkedUpload.State.PAUSED;
+        notifyProgress(upload);
+        return ChunkedUpload.State.PAUSED;
+    }
+
+    void notifyProgress(ChunkedUpload upload) {
+        ChunkedUpload.ProgressListener listener = upload.progressListener;
+        if (listener == null) return;
+        try {
+            listener.onProgress(upload);
+        } catch (Exception e) {
+            Log.e(TAG, "Progress listener error", e);
+        }
+    }
+}
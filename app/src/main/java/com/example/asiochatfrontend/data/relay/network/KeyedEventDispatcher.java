@@ -0,0 +1,184 @@
+package com.example.asiochatfrontend.data.relay.network;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs tasks off the caller's thread on a fixed set of single-threaded
+ * stripes. Tasks with the same key always land on the same stripe, so they
+ * run in submission order; different keys run in parallel.
+ * Each stripe has a bounded queue. When the queue is full, tasks spill into
+ * the stripe's overflow list, which refills the queue in order as tasks
+ * finish. Spills are logged, so a stalled listener shows up without
+ * stalling the socket reader that submits.
+ * The overflow is bounded too. Once it is full, submitting blocks until the
+ * stripe catches up, so a listener that stays stalled slows the socket
+ * reader instead of growing the heap. A stripe's own tasks never block on it.
+ */
+public class KeyedEventDispatcher {
+    private static final String TAG = "KeyedEventDispatcher";
+
+    private final List<Stripe> stripes = new ArrayList<>();
+    private final int queueCapacity;
+    private final int overflowCapacity;
+    private final AtomicLong overflowed = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+
+    public KeyedEventDispatcher(String name, int stripeCount, int queueCapacity) {
+        this(name, stripeCount, queueCapacity, queueCapacity * 4);
+    }
+
+    /**
+     * @param overflowCapacity tasks a stripe holds beyond its queue before
+     *                         submitting blocks
+     */
+    public KeyedEventDispatcher(String name, int stripeCount, int queueCapacity, int overflowCapacity) {
+        this.queueCapacity = queueCapacity;
+        this.overflowCapacity = overflowCapacity;
+        for (int i = 0; i < stripeCount; i++) {
+            stripes.add(new Stripe(name + "-" + i, queueCapacity));
+        }
+    }
+
+    /** Run the task after every task previously submitted with the same key */
+    public void execute(String key, Runnable task) {
+        stripeFor(key).dispatch(task);
+    }
+
+    /** Tasks waiting across all stripes, overflow included */
+    public int getQueuedCount() {
+        int queued = 0;
+        for (Stripe stripe : stripes) {
+            queued += stripe.getQueue().size() + stripe.overflowSize();
+        }
+        return queued;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getOverflowCapacity() {
+        return overflowCapacity;
+    }
+
+    /** Tasks that had to wait in an overflow list since start */
+    public long getOverflowedCount() {
+        return overflowed.get();
+    }
+
+    /** Submissions that blocked on a full overflow list since start */
+    public long getBlockedCount() {
+        return blocked.get();
+    }
+
+    public void shutdown() {
+        for (Stripe stripe : stripes) {
+            stripe.shutdownNow();
+            stripe.wakeSubmitters();
+        }
+    }
+
+    private Stripe stripeFor(String key) {
+        int hash = key != null ? key.hashCode() : 0;
+        hash ^= (hash >>> 16); // spread so similar ids do not pile onto one stripe
+        return stripes.get(Math.floorMod(hash, stripes.size()));
+    }
+
+    /** One worker thread, a bounded queue and an ordered overflow behind it */
+    private final class Stripe extends ThreadPoolExecutor {
+        private final String threadName;
+        private final Queue<Runnable> overflow = new ArrayDeque<>(); // guarded by itself
+        private volatile Thread worker;
+
+        Stripe(String threadName, int queueCapacity) {
+            super(1, 1,
+                    0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            this.threadName = threadName;
+            setRejectedExecutionHandler((task, executor) -> spill(task));
+        }
+
+        void dispatch(Runnable task) {
+            synchronized (overflow) {
+                awaitOverflowRoom();
+                // behind earlier spills, or it would overtake them
+                if (!overflow.isEmpty()) {
+                    spill(task);
+                    return;
+                }
+                execute(task); // a full queue spills through the rejection handler
+            }
+        }
+
+        /** Hold the submitter while the overflow is full; called with the overflow lock held */
+        private void awaitOverflowRoom() {
+            if (overflow.size() < overflowCapacity || Thread.currentThread() == worker) return;
+            Log.w(TAG, threadName + " overflow full; holding the submitter until it drains");
+            blocked.incrementAndGet();
+            try {
+                while (overflow.size() >= overflowCapacity && !isShutdown()) {
+                    overflow.wait(100);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // spill over the cap rather than lose the task
+            }
+        }
+
+        void wakeSubmitters() {
+            synchronized (overflow) {
+                overflow.notifyAll();
+            }
+        }
+
+        int overflowSize() {
+            synchronized (overflow) {
+                return overflow.size();
+            }
+        }
+
+        private void spill(Runnable task) {
+            if (isShutdown()) {
+                throw new RejectedExecutionException("Dispatcher shut down");
+            }
+            synchronized (overflow) {
+                if (overflow.isEmpty()) {
+                    Log.w(TAG, threadName + " queue full; spilling events to overflow");
+                }
+                overflow.add(task);
+            }
+            overflowed.incrementAndGet();
+        }
+
+        @Override
+        protected void beforeExecute(Thread thread, Runnable task) {
+            worker = thread;
+        }
+
+        @Override
+        protected void afterExecute(Runnable task, Throwable error) {
+            synchronized (overflow) {
+                boolean drained = false;
+                while (!overflow.isEmpty() && getQueue().offer(overflow.peek())) {
+                    overflow.poll();
+                    drained = true;
+                }
+                if (drained) overflow.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.asiochatfrontend.data.relay.network;
+
+import android.util.Log;
+
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
+import com.example.asiochatfrontend.core.model.enums.MediaType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which media upload runs next and how many run at once.
+ * Up to {@code maxParallel} uploads share the socket only once its relay
+ * has reported multiplexed framing; otherwise the relay cannot tell their
+ * chunks apart, so they run one at a time.
+ *
+ * Small media drains before large media (video, or anything over
+ * {@link #LARGE_MEDIA_BYTES}); text and receipts already go ahead of both,
+ * because the engine yields to the send queue. Within a lane, chats take
+ * turns, so ten photos to one chat do not hold up a photo to another.
+ * Interrupted uploads are retried with jittered backoff while the socket
+ * is up. One that pauses because the socket is gone is settled as paused,
+ * so its sender is not left waiting; sending it again resumes it.
+ * Uploads run on the shared io pool and retries wait on the shared timer.
+ * An upload never runs on the thread that started it, which may be the
+ * socket reader its acks arrive on; if the pool is full, it waits for a
+ * retry instead.
+ */
+public class MediaUploadScheduler {
+    private static final String TAG = "MediaUploadScheduler";
+
+    static final long LARGE_MEDIA_BYTES = 2 * 1024 * 1024;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_BASE_DELAY_MS = 2_000;
+    private static final long RETRY_MAX_DELAY_MS = 60_000;
+    private static final long POOL_FULL_RETRY_MS = 500;
+
+    /** Lower ordinal runs first */
+    public enum Lane {
+        SMALL_MEDIA,
+        LARGE_MEDIA
+    }
+
+    private final ChunkedUploadEngine engine;
+    private final int maxParallel;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService retryTimer;
+    // set while this thread hands an upload to the pool, to spot a full pool running it inline
+    private final ThreadLocal<Boolean> starting = ThreadLocal.withInitial(() -> false);
+
+    // lane -> (chatId -> uploads); chat order rotates for fairness
+    private final List<LinkedHashMap<String, ArrayDeque<ChunkedUpload>>> lanes = new ArrayList<>();
+    private final Set<Future<?>> runningTasks = new HashSet<>(); // guarded by this
+    private int running = 0;
+    private boolean shutdown = false;
+
+    public MediaUploadScheduler(ChunkedUploadEngine engine, int maxParallel) {
+        this.engine = engine;
+        this.maxParallel = maxParallel;
+        this.workers = AppExecutors.io();
+        this.retryTimer = AppExecutors.timer();
+        for (int i = 0; i < Lane.values().length; i++) {
+            lanes.add(new LinkedHashMap<>());
+        }
+        engine.setFramingListener(this::pump); // a multiplexing relay frees the other slots
+    }
+
+    /** Queue an upload created by the engine */
+    public void submit(ChunkedUpload upload) {
+        synchronized (this) {
+            enqueue(upload);
+        }
+        pump();
+    }
+
+    /**
+     * Cancel a queued or running upload.
+     *
+     * @return false if no such upload is pending
+     */
+    public boolean cancel(String uploadId) {
+        ChunkedUpload upload = engine.getUpload(uploadId);
+        if (upload == null) return false;
+
+        engine.cancel(upload); // wakes a run waiting on acks
+        boolean removed;
+        synchronized (this) {
+            removed = removeQueued(upload);
+        }
+        if (removed) {
+            engine.finish(upload, ChunkedUpload.State.CANCELLED);
+        }
+        // a running upload notices the flag between chunks and finishes itself
+        return true;
+    }
+
+    /** Start whatever is queued now that the socket is open */
+    public void onSocketOpened() {
+        pump();
+    }
+
+    public synchronized int getQueuedCount() {
+        int queued = 0;
+        for (Map<String, ArrayDeque<ChunkedUpload>> lane : lanes) {
+            for (ArrayDeque<ChunkedUpload> chatQueue : lane.values()) {
+                queued += chatQueue.size();
+            }
+        }
+        return queued;
+    }
+
+    public synchronized int getRunningCount() {
+        return running;
+    }
+
+    /** Stops starting uploads and interrupts the running ones; the shared pools stay up */
+    public void shutdown() {
+        List<Future<?>> tasks;
+        synchronized (this) {
+            shutdown = true;
+            tasks = new ArrayList<>(runningTasks);
+            runningTasks.clear();
+        }
+        for (Future<?> task : tasks) {
+            task.cancel(true);
+        }
+    }
+
+    static Lane laneFor(ChunkedUpload upload) {
+        if (upload.getMediaType() == MediaType.VIDEO || upload.getTotalBytes() > LARGE_MEDIA_BYTES) {
+            return Lane.LARGE_MEDIA;
+        }
+        return Lane.SMALL_MEDIA;
+    }
+
+    //==============================
+    // Scheduling
+    //==============================
+
+    private void enqueue(ChunkedUpload upload) {
+        upload.state = ChunkedUpload.State.QUEUED;
+        String chatId = upload.getChatId() != null ? upload.getChatId() : "";
+        lanes.get(laneFor(upload).ordinal())
+                .computeIfAbsent(chatId, id -> new ArrayDeque<>())
+                .addLast(upload);
+    }
+
+    private boolean removeQueued(ChunkedUpload upload) {
+        for (Map<String, ArrayDeque<ChunkedUpload>> lane : lanes) {
+            Iterator<Map.Entry<String, ArrayDeque<ChunkedUpload>>> it = lane.entrySet().iterator();
+            while (it.hasNext()) {
+                ArrayDeque<ChunkedUpload> chatQueue = it.next().getValue();
+                if (chatQueue.remove(upload)) {
+                    if (chatQueue.isEmpty()) it.remove();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Highest lane first; within it, the chat that has waited longest */
+    private ChunkedUpload pollNext() {
+        for (LinkedHashMap<String, ArrayDeque<ChunkedUpload>> lane : lanes) {
+            Iterator<Map.Entry<String, ArrayDeque<ChunkedUpload>>> it = lane.entrySet().iterator();
+            if (!it.hasNext()) continue;
+
+            Map.Entry<String, ArrayDeque<ChunkedUpload>> first = it.next();
+            String chatId = first.getKey();
+            ArrayDeque<ChunkedUpload> chatQueue = first.getValue();
+            ChunkedUpload next = chatQueue.pollFirst();
+            it.remove();
+            if (!chatQueue.isEmpty()) {
+                lane.put(chatId, chatQueue); // back of the line
+            }
+            if (next != null) return next;
+        }
+        return null;
+    }
+
+    private void pump() {
+        while (true) {
+            ChunkedUpload next;
+            int allowed = engine.isMultiplexed() ? maxParallel : 1;
+            synchronized (this) {
+                if (shutdown || running >= allowed) return;
+                next = pollNext();
+                if (next == null) return;
+                running++;
+            }
+
+            if (!start(next)) return;
+        }
+    }
+
+    /** @return false if the upload went back in line instead */
+    private boolean start(ChunkedUpload upload) {
+        boolean[] ranInline = new boolean[1];
+        Future<?> task;
+        starting.set(true);
+        try {
+            task = workers.submit(() -> {
+                if (starting.get()) {
+                    ranInline[0] = true; // the pool was full and handed it back to this thread
+                    return;
+                }
+                runUpload(upload);
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                running--;
+            }
+            return false;
+        } finally {
+            starting.set(false);
+        }
+
+        synchronized (this) {
+            if (!ranInline[0]) {
+                runningTasks.removeIf(Future::isDone);
+                runningTasks.add(task);
+                return true;
+            }
+            running--;
+            lanes.get(laneFor(upload).ordinal())
+                    .computeIfAbsent(upload.getChatId() != null ? upload.getChatId() : "", id -> new ArrayDeque<>())
+                    .addFirst(upload); // keeps its place ahead of its chat's later uploads
+        }
+        Log.w(TAG, "Upload pool full; upload " + upload.getId() + " waits " + POOL_FULL_RETRY_MS + "ms");
+        try {
+            retryTimer.schedule(this::pump, POOL_FULL_RETRY_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // timer shut down: ignore
+        }
+        return false;
+    }
+
+    private void runUpload(ChunkedUpload upload) {
+        ChunkedUpload.State outcome = ChunkedUpload.State.FAILED;
+        try {
+            outcome = engine.run(upload);
+        } finally {
+            synchronized (this) {
+                running--;
+            }
+        }
+
+        switch (outcome) {
+            case COMPLETED:
+                break;
+            case CANCELLED:
+                engine.finish(upload, ChunkedUpload.State.CANCELLED);
+                break;
+            case PAUSED:
+                if (!engine.isSocketOpen()) {
+                    // not the upload's fault; hand it back instead of holding its sender
+                    engine.finish(upload, ChunkedUpload.State.PAUSED);
+                    break;
+                }
+                scheduleRetry(upload);
+                break;
+            case FAILED:
+            default:
+                scheduleRetry(upload);
+                break;
+        }
+        pump();
+    }
+
+    private void scheduleRetry(ChunkedUpload upload) {
+        int attempt = ++upload.attempts;
+        if (attempt >= MAX_ATTEMPTS || upload.cancelled) {
+            Log.e(TAG, "Giving up on upload " + upload.getId() + " after " + attempt + " attempts");
+            engine.finish(upload, upload.cancelled ? ChunkedUpload.State.CANCELLED : ChunkedUpload.State.FAILED);
+            return;
+        }
+
+        long ceiling = Math.min(RETRY_MAX_DELAY_MS, RETRY_BASE_DELAY_MS << attempt);
+        long delayMs = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        Log.d(TAG, "Retrying upload " + upload.getId() + " in " + delayMs + "ms (attempt " + attempt + ")");
+        try {
+            retryTimer.schedule(() -> {
+                if (upload.cancelled) {
+                    engine.finish(upload, ChunkedUpload.State.CANCELLED);
+                } else {
+                    submit(upload);
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // scheduler shut down: ignore
+        }
+    }
+}
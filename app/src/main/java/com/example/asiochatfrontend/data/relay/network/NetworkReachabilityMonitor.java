@@ -0,0 +1,61 @@
+package com.example.asiochatfrontend.data.relay.network;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.util.Log;
+
+/**
+ * Feeds the relay client's reconnect backoff from the system's default
+ * network. While the device has no network, reconnect attempts are
+ * deferred instead of burning through the backoff; when a network comes
+ * back a reconnect is dialed right away.
+ */
+public class NetworkReachabilityMonitor {
+    private static final String TAG = "NetworkReachability";
+
+    private final ConnectivityManager connectivityManager;
+    private final RelayWebSocketClient client;
+    private ConnectivityManager.NetworkCallback callback;
+
+    public NetworkReachabilityMonitor(Context context, RelayWebSocketClient client) {
+        this.connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.client = client;
+    }
+
+    public synchronized void start() {
+        if (callback != null || connectivityManager == null) return;
+
+        client.setHostReachable(connectivityManager.getActiveNetwork() != null);
+        callback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                Log.d(TAG, "Default network available");
+                client.setHostReachable(true);
+            }
+
+            @Override
+            public void onLost(Network network) {
+                Log.d(TAG, "Default network lost");
+                client.setHostReachable(false);
+            }
+        };
+        try {
+            connectivityManager.registerDefaultNetworkCallback(callback);
+        } catch (Exception e) {
+            Log.e(TAG, "Could not register network callback", e);
+            callback = null;
+            client.setHostReachable(true);
+        }
+    }
+
+    public synchronized void stop() {
+        if (callback == null) return;
+        try {
+            connectivityManager.unregisterNetworkCallback(callback);
+        } catch (Exception e) {
+            Log.e(TAG, "Could not unregister network callback", e);
+        }
+        callback = null;
+    }
+}
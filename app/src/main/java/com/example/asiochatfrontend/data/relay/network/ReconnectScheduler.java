@@ -0,0 +1,148 @@
+package com.example.asiochatfrontend.data.relay.network;
+
+import android.util.Log;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules relay reconnect attempts with capped exponential backoff and
+ * full jitter, so a fleet of devices does not redial in lockstep after a
+ * relay restart.
+ * Concurrent requests collapse into the single pending attempt, and no
+ * attempt is made while the host is known to be unreachable.
+ */
+public class ReconnectScheduler {
+    private static final String TAG = "ReconnectScheduler";
+
+    private final ScheduledExecutorService scheduler;
+    private final Runnable connectAction;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+
+    private ScheduledFuture<?> pending;
+    private int attempt = 0;
+    private boolean hostReachable = true;
+    private boolean deferred = false;
+    private boolean shutdown = false;
+
+    public ReconnectScheduler(
+            ScheduledExecutorService scheduler,
+            Runnable connectAction,
+            long baseDelayMs,
+            long maxDelayMs
+    ) {
+        this.scheduler     = scheduler;
+        this.connectAction = connectAction;
+        this.baseDelayMs   = baseDelayMs;
+        this.maxDelayMs    = maxDelayMs;
+    }
+
+    /**
+     * Ask for a reconnect. No-op if one is already pending.
+     *
+     * @return true if a new attempt was scheduled
+     */
+    public synchronized boolean request() {
+        if (shutdown) return false;
+        if (pending != null && !pending.isDone()) {
+            Log.d(TAG, "Reconnect already pending; request collapsed");
+            return false;
+        }
+        if (!hostReachable) {
+            Log.d(TAG, "Host unreachable; reconnect deferred");
+            deferred = true;
+            return false;
+        }
+
+        long delayMs = nextDelayMs(attempt);
+        attempt++;
+        Log.d(TAG, "Scheduling reconnect #" + attempt + " in " + delayMs + "ms");
+
+        try {
+            pending = scheduler.schedule(this::fire, delayMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException ignored) {
+            // executor shut down: ignore
+            return false;
+        }
+    }
+
+    /** Call after a successful open: next failure starts from the base delay again */
+    public synchronized void reset() {
+        attempt = 0;
+        deferred = false;
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    /**
+     * Reachability hint from the network monitor. While unreachable, pending
+     * attempts are cancelled and new ones deferred; when the host comes back
+     * a deferred attempt is scheduled right away (still jittered).
+     */
+    public synchronized void setHostReachable(boolean reachable) {
+        if (hostReachable == reachable) return;
+        hostReachable = reachable;
+
+        if (!reachable) {
+            if (pending != null && !pending.isDone()) {
+                pending.cancel(false);
+                deferred = true;
+            }
+            pending = null;
+            return;
+        }
+
+        if (deferred) {
+            deferred = false;
+            attempt = 0;
+            request();
+        }
+    }
+
+    public synchronized boolean isHostReachable() {
+        return hostReachable;
+    }
+
+    public synchronized int getAttempt() {
+        return attempt;
+    }
+
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    private void fire() {
+        synchronized (this) {
+            pending = null;
+            if (shutdown) return;
+            if (!hostReachable) {
+                deferred = true;
+                return;
+            }
+        }
+
+        try {
+            connectAction.run();
+        } catch (Exception e) {
+            Log.e(TAG, "Reconnect attempt failed", e);
+        }
+    }
+
+    /** Full jitter: uniform in [0, min(max, base * 2^attempt)] */
+    long nextDelayMs(int attempt) {
+        long ceiling = baseDelayMs << Math.min(attempt, 20);
+        if (ceiling <= 0 || ceiling > maxDelayMs) ceiling = maxDelayMs;
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
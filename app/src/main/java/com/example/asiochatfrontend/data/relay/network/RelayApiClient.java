@@ -8,8 +8,11 @@ import com.example.asiochatfrontend.core.model.enums.MediaType;
 import com.example.asiochatfrontend.data.common.utils.FileUtils;
 import com.example.asiochatfrontend.data.database.converter.MediaTypeDeserialize;
 import com.example.asiochatfrontend.data.database.converter.MessageStateDeserializer;
+import com.example.asiochatfrontend.data.relay.model.OfflineInboxPage;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import okhttp3.*;
 import retrofit2.*;
@@ -17,15 +20,22 @@ import retrofit2.Call;
 import retrofit2.Response;
 import retrofit2.converter.gson.GsonConverterFactory;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
 
 public class RelayApiClient {
     private static final String TAG = "RelayApiClient";
     private final RelayApiService relayApiService;
+    private final Gson gson;
 
     public RelayApiClient(RelayApiService relayApiService) {
+        this(relayApiService, new Gson());
+    }
+
+    public RelayApiClient(RelayApiService relayApiService, Gson gson) {
         this.relayApiService = relayApiService;
+        this.gson = gson;
     }
 
     public static RelayApiClient createInstance(String ip, int port, String userId) {
@@ -41,7 +51,7 @@ public class RelayApiClient {
                 .addConverterFactory(GsonConverterFactory.create(gson))
                 .build();
 
-        return new RelayApiClient(retrofit.create(RelayApiService.class));
+        return new RelayApiClient(retrofit.create(RelayApiService.class), gson);
     }
 
     // ==================== AuthService ====================
@@ -92,6 +102,16 @@ public class RelayApiClient {
             return null;
         }
     }
+
+    public List<SymmetricKeyDto> getAllSymmetricKeysForChat(String chatId) {
+        try {
+            List<SymmetricKeyDto> keys = relayApiService.getAllSymmetricKeysForChat(chatId).execute().body();
+            return keys != null ? keys : Collections.emptyList();
+        } catch (Exception e) {
+            Log.e(TAG, "getAllSymmetricKeysForChat failed", e);
+            return Collections.emptyList();
+        }
+    }
     // endregion
 
     // ==================== UserService ====================
@@ -240,15 +260,113 @@ public class RelayApiClient {
         }
     }
 
-    public List<MessageDto> getOfflineMessages(String userId) {
+    /**
+     * One page of messages for the user newer than the timestamp, oldest first.
+     * Returns null on failure so callers can tell an error from an empty page.
+     */
+    public List<TextMessageDto> getMessagesSince(String userId, long timestamp, int limit) {
         try {
-            return relayApiService.getOfflineMessages(userId).execute().body();
+            Response<List<TextMessageDto>> response =
+                    relayApiService.getMessagesSince(userId, timestamp, limit).execute();
+            if (!response.isSuccessful()) {
+                Log.e(TAG, "getMessagesSince failed: " + response.code());
+                return null;
+            }
+            return response.body() != null ? response.body() : Collections.emptyList();
         } catch (Exception e) {
-            Log.e(TAG, "getOfflineMessages", e);
-            return Collections.emptyList();
+            Log.e(TAG, "getMessagesSince", e);
+            return null;
         }
     }
 
+    /**
+     * One page of a chat's messages newer than the timestamp, oldest first.
+     * Returns null on failure so callers can tell an error from an empty page.
+     */
+    public List<TextMessageDto> getMessagesForChatSince(String chatId, long timestamp, int limit) {
+        try {
+            Response<List<TextMessageDto>> response =
+                    relayApiService.getMessagesForChatSince(chatId, timestamp, limit).execute();
+            if (!response.isSuccessful()) {
+                Log.e(TAG, "getMessagesForChatSince failed: " + response.code());
+                return null;
+            }
+            return response.body() != null ? response.body() : Collections.emptyList();
+        } catch (Exception e) {
+            Log.e(TAG, "getMessagesForChatSince", e);
+            return null;
+        }
+    }
+
+    /** Takes an offline inbox page in chunks of at most the page limit */
+    public interface OfflineInboxSink {
+        /** @return false to stop; the rest of the page is left unread */
+        boolean accept(List<TextMessageDto> messages);
+    }
+
+    /**
+     * One page of the user's offline inbox, read off the response stream a
+     * message at a time and handed to the sink {@code limit} messages at a
+     * time. A relay that sends more than asked costs no more memory and
+     * loses nothing. Returns null on failure so callers can tell an error
+     * from an empty page.
+     */
+    public OfflineInboxPage getOfflineMessagesPage(String userId, String cursor, int limit, OfflineInboxSink sink) {
+        try {
+            Response<ResponseBody> response =
+                    relayApiService.getOfflineMessagesPage(userId, cursor, limit).execute();
+            if (!response.isSuccessful() || response.body() == null) {
+                Log.e(TAG, "getOfflineMessagesPage failed: " + response.code());
+                if (response.errorBody() != null) response.errorBody().close();
+                return null;
+            }
+            try (ResponseBody body = response.body();
+                 JsonReader reader = new JsonReader(body.charStream())) {
+                return readOfflineInboxPage(reader, limit, sink);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "getOfflineMessagesPage", e);
+            return null;
+        }
+    }
+
+    OfflineInboxPage readOfflineInboxPage(JsonReader reader, int limit, OfflineInboxSink sink) throws IOException {
+        List<TextMessageDto> chunk = new ArrayList<>(Math.min(limit, 256));
+        String nextCursor = null;
+        int received = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("messages".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    TextMessageDto message = gson.fromJson(reader, TextMessageDto.class);
+                    if (message == null) continue;
+                    chunk.add(message);
+                    if (chunk.size() < limit) continue;
+
+                    // hand over before reading on; a refused chunk ends the page here
+                    if (!sink.accept(chunk)) return new OfflineInboxPage(received, null, false);
+                    received += chunk.size();
+                    chunk = new ArrayList<>(Math.min(limit, 256));
+                }
+                reader.endArray();
+            } else if ("nextCursor".equals(name) && reader.peek() == JsonToken.STRING) {
+                nextCursor = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!chunk.isEmpty()) {
+            if (!sink.accept(chunk)) return new OfflineInboxPage(received, null, false);
+            received += chunk.size();
+        }
+        return new OfflineInboxPage(received, nextCursor, true);
+    }
+
     public boolean setMessageReadByUser(String messageId, String userId) {
         try {
             return relayApiService.markMessageAsRead(messageId).execute().isSuccessful();
@@ -267,7 +385,9 @@ public class RelayApiClient {
             MultipartBody.Part filePart = MultipartBody.Part.createFormData(
                     "payload.file",
                     payload.getFileName(),
-                    RequestBody.create(FileUtils.readFileToByteArray(payload.getFile()))
+                    // streamed from disk rather than loaded into memory
+                    RequestBody.create(payload.getFile(), okhttp3.MediaType.parse(
+                            payload.getContentType() != null ? payload.getContentType() : "application/octet-stream"))
             );
 
             Call<MessageDto> call = relayApiService.uploadMedia(
@@ -354,6 +474,22 @@ public class RelayApiClient {
             return Collections.emptyList();
         }
     }
+
+    /** Media counterpart of {@link #getMessagesForChatSince}; null on failure */
+    public List<MediaMessageDto> getMediaMessagesForChatSince(String chatId, long timestamp, int limit) {
+        try {
+            Response<List<MediaMessageDto>> response =
+                    relayApiService.getMediaMessagesForChatSince(chatId, timestamp, limit).execute();
+            if (!response.isSuccessful()) {
+                Log.e(TAG, "getMediaMessagesForChatSince failed: " + response.code());
+                return null;
+            }
+            return response.body() != null ? response.body() : Collections.emptyList();
+        } catch (Exception e) {
+            Log.e(TAG, "getMediaMessagesForChatSince", e);
+            return null;
+        }
+    }
     // endregion
 
     private RequestBody toBody(String value) {
@@ -50,8 +50,8 @@ public interface RelayApiService {
     @GET(authService + "keys/symmetric/{chatId}/timestamp/{timestamp}")
     Call<SymmetricKeyDto> getSymmetricKeyForTimestamp(@Path("chatId") String chatId, @Path("timestamp") long timestamp);
 
-    @GET(authService + "keys/symmetric/all/{userId}")
-    Call<List<SymmetricKeyDto>> getAllSymmetricKeysForChat(@Path("userId") String userId);
+    @GET(authService + "keys/symmetric/all/{chatId}")
+    Call<List<SymmetricKeyDto>> getAllSymmetricKeysForChat(@Path("chatId") String chatId);
     // endregion
 
     // ================== User Operations ==================
@@ -95,7 +95,31 @@ public interface RelayApiService {
     @GET(messageService + "chat/{chatId}")
     Call<List<TextMessageDto>> getMessagesForChat(@Path("chatId") String chatId);
 
-    Call<List<MessageDto>> getOfflineMessages(String userId);
+    @GET(messageService + "user/{userId}/since/{timestamp}")
+    Call<List<TextMessageDto>> getMessagesSince(
+            @Path("userId") String userId,
+            @Path("timestamp") long timestamp,
+            @Query("limit") int limit
+    );
+
+    @GET(messageService + "chat/{chatId}/since/{timestamp}")
+    Call<List<TextMessageDto>> getMessagesForChatSince(
+            @Path("chatId") String chatId,
+            @Path("timestamp") long timestamp,
+            @Query("limit") int limit
+    );
+
+    /**
+     * One page of the offline inbox as {"messages": [...], "nextCursor": "..."}.
+     * Streamed so the client can read it incrementally.
+     */
+    @Streaming
+    @GET(messageService + "user/{userId}/offline")
+    Call<ResponseBody> getOfflineMessagesPage(
+            @Path("userId") String userId,
+            @Query("cursor") String cursor,
+            @Query("limit") int limit
+    );
 
     Call<Boolean> markMessageAsRead(String messageId);
     // endregion
@@ -123,6 +147,13 @@ public interface RelayApiService {
     @GET(mediaService + "messages/chat/{chatId}")
     Call<List<MediaMessageDto>> getMediaMessagesForChat(@Path("chatId") String chatId);
 
+    @GET(mediaService + "messages/chat/{chatId}/since/{timestamp}")
+    Call<List<MediaMessageDto>> getMediaMessagesForChatSince(
+            @Path("chatId") String chatId,
+            @Path("timestamp") long timestamp,
+            @Query("limit") int limit
+    );
+
     @GET(mediaService + "messages/{messageId}")
     Call<MessageDto> getMediaById(@Path("messageId") String messageId);
 
@@ -0,0 +1,151 @@
+package com.example.asiochatfrontend.data.relay.network;
+
+import com.example.asiochatfrontend.core.model.dto.ChatDto;
+import com.example.asiochatfrontend.core.model.dto.ChatReadWatermarkDto;
+import com.example.asiochatfrontend.core.model.dto.MediaMessageDto;
+import com.example.asiochatfrontend.core.model.dto.MessageAckDto;
+import com.example.asiochatfrontend.core.model.dto.MessageReadByDto;
+import com.example.asiochatfrontend.core.model.dto.TextMessageDto;
+import com.example.asiochatfrontend.data.relay.model.RelayEvent;
+import com.example.asiochatfrontend.data.relay.model.WebSocketEvent.EventType;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Streaming decoder for inbound relay frames.
+ * Reads the envelope field by field and binds the payload straight into
+ * its DTO when {@code type} arrives first, without building a tree.
+ * Only types whose DTO depends on the payload's shape (INCOMING, CHAT),
+ * or frames that put the payload before the type, go through a JsonElement.
+ */
+public class RelayEventDecoder {
+
+    private final Gson gson;
+    private final TypeAdapter<EventType> typeAdapter;
+    private final TypeAdapter<JsonElement> elementAdapter;
+
+    public RelayEventDecoder(Gson gson) {
+        this.gson = gson;
+        this.typeAdapter = gson.getAdapter(EventType.class);
+        this.elementAdapter = gson.getAdapter(JsonElement.class);
+    }
+
+    public RelayEvent decode(String text) throws IOException {
+        EventType type = null;
+        String jid = null;
+        Long seq = null;
+        Long timestamp = null;
+        Object payload = null;
+        JsonElement deferredPayload = null;
+
+        JsonReader reader = new JsonReader(new StringReader(text));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "type":
+                    type = typeAdapter.read(reader);
+                    break;
+                case "jid":
+                    jid = nextNullableString(reader);
+                    break;
+                case "seq":
+                    seq = nextNullableLong(reader);
+                    break;
+                case "ts":
+                    timestamp = nextNullableLong(reader);
+                    break;
+                case "payload":
+                    Class<?> payloadType = type != null ? fixedPayloadType(type) : null;
+                    if (payloadType != null) {
+                        payload = gson.getAdapter(payloadType).read(reader);
+                    } else {
+                        deferredPayload = elementAdapter.read(reader);
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (deferredPayload != null && !deferredPayload.isJsonNull()) {
+            payload = bind(type, deferredPayload);
+        }
+        return new RelayEvent(type, jid, seq, timestamp, payload);
+    }
+
+    //==============================
+    // Payload binding
+    //==============================
+
+    /** DTO for types whose payload shape is fixed; null when it must be sniffed */
+    static Class<?> fixedPayloadType(EventType type) {
+        switch (type) {
+            case MESSAGE_READ:
+                return MessageReadByDto.class;
+            case CHAT_READ:
+                return ChatReadWatermarkDto.class;
+            case MESSAGE_ACK:
+                return MessageAckDto.class;
+            case REMOVED_CHAT:
+                return String.class;
+            case INCOMING:
+            case CHAT:
+                return null;
+            case CONNECTION:
+            case CREATE_CHAT:
+            case RESUME:
+            case PING:
+            case PONG:
+            case VIDEO_STREAM:
+            default:
+                return JsonElement.class;
+        }
+    }
+
+    private Object bind(EventType type, JsonElement element) {
+        if (type == null) return element;
+
+        Class<?> payloadType = fixedPayloadType(type);
+        if (payloadType == null) {
+            boolean isMedia = isMediaMessage(element);
+            if (type == EventType.INCOMING) {
+                payloadType = isMedia ? MediaMessageDto.class : TextMessageDto.class;
+            } else {
+                payloadType = isMedia ? MediaMessageDto.class : ChatDto.class;
+            }
+        }
+        return gson.fromJson(element, payloadType);
+    }
+
+    /** Media messages carry an object payload (MediaDto); text messages a string */
+    private static boolean isMediaMessage(JsonElement element) {
+        if (!element.isJsonObject()) return false;
+        JsonObject object = element.getAsJsonObject();
+        return object.has("payload") && object.get("payload").isJsonObject();
+    }
+
+    private static String nextNullableString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static Long nextNullableLong(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextLong();
+    }
+}
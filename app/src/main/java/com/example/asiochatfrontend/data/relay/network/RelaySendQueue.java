@@ -0,0 +1,246 @@
+package com.example.asiochatfrontend.data.relay.network;
+
+import com.example.asiochatfrontend.data.relay.model.WebSocketEvent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded, priority-aware buffer for outbound relay events.
+ * Events wait here while the socket is down and are handed out in
+ * priority order (FIFO within the same priority) once it reopens.
+ * An event handed out by {@link #poll()} keeps its slot until it is marked
+ * sent or failed, so putting it back with {@link #requeue} always fits and
+ * never pushes the queue past its capacity.
+ */
+public class RelaySendQueue {
+
+    /** Lower ordinal drains first */
+    public enum Priority {
+        CONTROL,
+        HIGH,
+        NORMAL,
+        BULK
+    }
+
+    /** What to do with a new event when the queue is full */
+    public enum OverflowPolicy {
+        /** Block the caller until space frees up or the timeout expires */
+        BLOCK,
+        /** Reject immediately; the returned future fails */
+        FAIL_FAST
+    }
+
+    /** An event waiting to be written to the socket */
+    public static final class PendingEvent {
+        final WebSocketEvent event;
+        final Priority priority;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        PendingEvent(WebSocketEvent event, Priority priority) {
+            this.event = event;
+            this.priority = priority;
+        }
+
+        public CompletableFuture<Boolean> getResult() {
+            return result;
+        }
+    }
+
+    //==============================
+    // State
+    //==============================
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final List<ArrayDeque<PendingEvent>> lanes = new ArrayList<>();
+    private int size = 0;
+    private int inFlight = 0; // polled, not yet sent, failed or requeued; still holding a slot
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong sentCount = new AtomicLong();
+
+    public RelaySendQueue(int capacity, OverflowPolicy overflowPolicy, long blockTimeoutMs) {
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutMs = blockTimeoutMs;
+        for (int i = 0; i < Priority.values().length; i++) {
+            lanes.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Queue an event. The returned handle's future completes with true once the
+     * event is written to the socket, or exceptionally if it had to be dropped.
+     */
+    public PendingEvent offer(WebSocketEvent event) {
+        PendingEvent pending = new PendingEvent(event, priorityOf(event.getType()));
+        lock.lock();
+        try {
+            if (isFull() && overflowPolicy == OverflowPolicy.BLOCK) {
+                long remainingNs = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMs);
+                while (isFull() && remainingNs > 0) {
+                    remainingNs = notFull.awaitNanos(remainingNs);
+                }
+            }
+
+            if (isFull()) {
+                droppedCount.incrementAndGet();
+                pending.result.completeExceptionally(
+                        new IllegalStateException("Relay send queue full (" + capacity + ")"));
+                return pending;
+            }
+
+            lanes.get(pending.priority.ordinal()).addLast(pending);
+            size++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedCount.incrementAndGet();
+            pending.result.completeExceptionally(e);
+        } finally {
+            lock.unlock();
+        }
+        return pending;
+    }
+
+    /**
+     * Next event to send, or null if the queue is empty. Its slot stays
+     * taken until it is passed to {@link #markSent}, {@link #markFailed}
+     * or {@link #requeue}.
+     */
+    public PendingEvent poll() {
+        lock.lock();
+        try {
+            for (ArrayDeque<PendingEvent> lane : lanes) {
+                PendingEvent next = lane.pollFirst();
+                if (next != null) {
+                    size--;
+                    inFlight++;
+                    return next;
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Put back a polled event that could not be written, keeping its place
+     * in line. It goes back into the slot it held, so it never waits or fails
+     * on a queue that filled up in the meantime.
+     */
+    public void requeue(PendingEvent pending) {
+        lock.lock();
+        try {
+            lanes.get(pending.priority.ordinal()).addFirst(pending);
+            size++;
+            inFlight--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void markSent(PendingEvent pending) {
+        release();
+        sentCount.incrementAndGet();
+        pending.result.complete(true);
+    }
+
+    /** Give up on a polled event that cannot be written */
+    public void markFailed(PendingEvent pending, Throwable reason) {
+        release();
+        droppedCount.incrementAndGet();
+        pending.result.completeExceptionally(reason);
+    }
+
+    /** Fail everything still waiting, e.g. on shutdown */
+    public void failAll(Throwable reason) {
+        List<PendingEvent> drained = new ArrayList<>();
+        lock.lock();
+        try {
+            for (ArrayDeque<PendingEvent> lane : lanes) {
+                drained.addAll(lane);
+                lane.clear();
+            }
+            size = 0;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        droppedCount.addAndGet(drained.size());
+        for (PendingEvent pending : drained) {
+            pending.result.completeExceptionally(reason);
+        }
+    }
+
+    //==============================
+    // Metrics
+    //==============================
+    public int depth() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return depth() == 0;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    //==============================
+    // Helpers
+    //==============================
+    private boolean isFull() {
+        return size + inFlight >= capacity;
+    }
+
+    /** Free the slot a polled event held */
+    private void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            notFull.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static Priority priorityOf(WebSocketEvent.EventType type) {
+        if (type == null) return Priority.NORMAL;
+        switch (type) {
+            case CONNECTION:
+                return Priority.CONTROL;
+            case CHAT:
+            case CREATE_CHAT:
+            case REMOVED_CHAT:
+                return Priority.HIGH;
+            case VIDEO_STREAM:
+                return Priority.BULK;
+            case MESSAGE_READ:
+            case CHAT_READ:
+            default:
+                return Priority.NORMAL;
+        }
+    }
+}
@@ -4,33 +4,55 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
+import com.example.asiochatfrontend.core.model.dto.ChatDto;
+import com.example.asiochatfrontend.core.model.dto.MessageReadByDto;
 import com.example.asiochatfrontend.core.model.dto.abstracts.MessageDto;
+import com.example.asiochatfrontend.core.model.enums.MediaType;
+import com.example.asiochatfrontend.data.relay.model.RelayEvent;
 import com.example.asiochatfrontend.data.relay.model.WebSocketEvent;
 import com.example.asiochatfrontend.data.relay.model.WebSocketEvent.EventType;
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
-import okio.ByteString;
 
 /**
  * Manages a persistent WebSocket connection to the relay server.
  * Automatically attempts reconnection on failure.
+ * Outbound events are buffered in a bounded {@link RelaySendQueue} while the
+ * socket is down and flushed once it opens.
+ * On (re)connect the handshake carries the persisted resume cursor, so the
+ * relay can replay only the events this account missed; when it cannot, a
+ * {@link CatchUpHandler} fetches the gap instead.
+ * Inbound frames are decoded once by {@link RelayEventDecoder} and delivered
+ * only to the listeners subscribed to their {@link EventType}. Listeners run
+ * on a {@link KeyedEventDispatcher}, off the socket's reader thread, in order
+ * per chat and in parallel across chats. A stripe that falls too far behind
+ * holds the reader until it catches up.
+ * PING/PONG frames bypass both queues so {@link WebSocketHealthMonitor}
+ * measures the link itself, not our own backlog.
  */
 public class RelayWebSocketClient {
 
@@ -38,16 +60,28 @@ public class RelayWebSocketClient {
     // Constants
     //==============================
     private static final String TAG = "RelayWebSocketClient";
-    private static final int RECONNECT_DELAY_SECONDS = 5;
-    private static final int CHUNK_SIZE = 32 * 1024; // 32 KB
-    private static final long CHUNK_DELAY = 5; // ms
+    private static final long RECONNECT_BASE_DELAY_MS = 1_000;
+    private static final long RECONNECT_MAX_DELAY_MS = 60_000;
+    private static final int SEND_QUEUE_CAPACITY = 500;
+    private static final long SEND_QUEUE_BLOCK_TIMEOUT_MS = 2_000;
+    private static final long SOCKET_HIGH_WATER_BYTES = 256 * 1024; // OkHttp outgoing buffer
+    private static final long DRAIN_RETRY_DELAY_MS = 50;
+    private static final long RESUME_ACK_TIMEOUT_MS = 10_000;
+    private static final long CURSOR_FLUSH_DELAY_MS = 500;
+    private static final int DISPATCH_STRIPES = 4;
+    private static final int DISPATCH_QUEUE_CAPACITY = 256; // per stripe
+    private static final int DISPATCH_OVERFLOW_CAPACITY = 1_024; // per stripe; beyond it the reader waits
+    private static final long SLOW_LISTENER_WARN_MS = 200;
+    private static final int MEDIA_UPLOAD_PARALLELISM = 2; // only on relays with multiplexed framing
+    private static final int SENT_CHAT_INDEX_SIZE = 2_048;
 
     //==============================
     // Dependencies & State
     //==============================
     private final OkHttpClient client;
-    private final Gson gson = new Gson();
-    private WebSocket webSocket;
+    private final Gson gson;
+    private final RelayEventDecoder decoder;
+    private volatile WebSocket webSocket;
     private final String serverUrl;
     private final String userId;
     private String authToken;
@@ -57,22 +91,120 @@ public class RelayWebSocketClient {
     //==============================
     private final AtomicBoolean isConnected   = new AtomicBoolean(false);
     private final AtomicBoolean isConnecting  = new AtomicBoolean(false);
-    private int reconnectAttempts              = 0;
+    private final AtomicBoolean isOpen        = new AtomicBoolean(false);
+    private final AtomicBoolean pongSeen      = new AtomicBoolean(false); // this session answered a PING
     private final ScheduledExecutorService scheduler =
             Executors.newScheduledThreadPool(1);
+    private final ReconnectScheduler reconnectScheduler;
 
     //==============================
-    // Event Listeners
+    // Outbound Queue
+    //==============================
+    private final RelaySendQueue sendQueue;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+    //==============================
+    // Resume Cursor
     //==============================
-    private final CopyOnWriteArrayList<RelayWebSocketListener> listeners =
+    private final ResumeCursorTracker resumeCursor; // null = no resume
+    private final AtomicBoolean cursorFlushScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean catchUpRunning = new AtomicBoolean(false);
+    // catch-up and cursor writes; barriers store buffered events, so never on the socket thread
+    private final ScheduledExecutorService resumeExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+    private final CopyOnWriteArrayList<CatchUpHandler> catchUpHandlers =
             new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<Runnable> cursorFlushBarriers =
+            new CopyOnWriteArrayList<>();
+    private volatile ScheduledFuture<?> resumeAckTimeout;
+
+    //==============================
+    // Event Listeners
+    //==============================
+    private final Map<EventType, List<Subscription<?>>> subscriptions = createSubscriptionTable();
+    private final KeyedEventDispatcher dispatcher;
+    private volatile PongListener pongListener;
+    // chats of the messages we sent, so their read receipts order with the chat
+    private final Map<String, String> sentMessageChats = Collections.synchronizedMap(
+            new LinkedHashMap<String, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > SENT_CHAT_INDEX_SIZE;
+                }
+            });
+
+    //==============================
+    // Media Uploads
+    //==============================
+    private final ChunkedUploadEngine uploadEngine;
+    private final MediaUploadScheduler uploadScheduler;
 
     //==============================
     // Construction
     //==============================
     public RelayWebSocketClient(String serverUrl, String userId) {
+        this(serverUrl, userId, null, new Gson());
+    }
+
+    /**
+     * @param resumeCursor persisted cursor for resume-on-reconnect, or null
+     * @param gson         binds inbound payloads; should carry the app's DTO adapters
+     */
+    public RelayWebSocketClient(String serverUrl, String userId, ResumeCursorTracker resumeCursor, Gson gson) {
+        this(serverUrl, userId, new RelaySendQueue(
+                SEND_QUEUE_CAPACITY,
+                RelaySendQueue.OverflowPolicy.BLOCK,
+                SEND_QUEUE_BLOCK_TIMEOUT_MS
+        ), new KeyedEventDispatcher(
+                "relay-dispatch",
+                DISPATCH_STRIPES,
+                DISPATCH_QUEUE_CAPACITY,
+                DISPATCH_OVERFLOW_CAPACITY
+        ), resumeCursor, gson);
+    }
+
+    public RelayWebSocketClient(String serverUrl, String userId, RelaySendQueue sendQueue) {
+        this(serverUrl, userId, sendQueue, new KeyedEventDispatcher(
+                "relay-dispatch",
+                DISPATCH_STRIPES,
+                DISPATCH_QUEUE_CAPACITY,
+                DISPATCH_OVERFLOW_CAPACITY
+        ), null, new Gson());
+    }
+
+    public RelayWebSocketClient(
+            String serverUrl,
+            String userId,
+            RelaySendQueue sendQueue,
+            KeyedEventDispatcher dispatcher,
+            ResumeCursorTracker resumeCursor,
+            Gson gson
+    ) {
         this.serverUrl = serverUrl;
         this.userId    = userId;
+        this.sendQueue = sendQueue;
+        this.dispatcher = dispatcher;
+        this.resumeCursor = resumeCursor;
+        this.gson = gson;
+        this.decoder = new RelayEventDecoder(gson);
+        this.uploadEngine = new ChunkedUploadEngine(
+                () -> isOpen.get() ? webSocket : null,
+                () -> !sendQueue.isEmpty(),
+                gson,
+                userId
+        );
+        this.uploadScheduler = new MediaUploadScheduler(uploadEngine, MEDIA_UPLOAD_PARALLELISM);
+        subscribe(EventType.VIDEO_STREAM, JsonElement.class, (payload, event) -> {
+            if (payload != null && payload.isJsonObject()) {
+                uploadEngine.onStreamEvent(payload.getAsJsonObject());
+            }
+        });
+        this.reconnectScheduler = new ReconnectScheduler(
+                scheduler,
+                this::performScheduledReconnect,
+                RECONNECT_BASE_DELAY_MS,
+                RECONNECT_MAX_DELAY_MS
+        );
 
         // build OkHttp client with a ping interval
         this.client = new OkHttpClient.Builder()
@@ -133,60 +265,127 @@ public class RelayWebSocketClient {
         }
         isConnected.set(false);
         isConnecting.set(false);
-        reconnectAttempts = 0;
+        isOpen.set(false);
     }
 
     /**
-     * Send a WebSocketEvent if connected; otherwise log and drop it.
+     * Queue a WebSocketEvent for delivery. It is written immediately when the
+     * socket is open and below its high-water mark, otherwise it waits in the
+     * send queue until the next flush.
+     * When the queue is full the caller is blocked or the event is rejected,
+     * depending on the queue's {@link RelaySendQueue.OverflowPolicy}.
+     *
+     * @return completes with true once the frame is handed to the socket,
+     *         or exceptionally if the event was dropped
      */
-    public void sendEvent(WebSocketEvent event) {
-        if (!isConnected.get() || webSocket == null) {
-            // Fallback, try again
-            connect();
-            if (!isConnected.get()) {
-                Log.e(TAG, "Not connected; event dropped");
-                return;
-            }
+    public CompletableFuture<Boolean> sendEvent(WebSocketEvent event) {
+        rememberSentMessageChat(event);
+        RelaySendQueue.PendingEvent pending = sendQueue.offer(event);
+        if (pending.getResult().isCompletedExceptionally()) {
+            Log.e(TAG, "Send queue full; event dropped: " + event.getType());
+            return pending.getResult();
         }
 
-        try {
-            boolean sent = webSocket.send(gson.toJson(event));
-            if (!sent) Log.e(TAG, "Failed to send event");
-        } catch (Exception e) {
-            Log.e(TAG, "Error sending WebSocket event", e);
+        if (isOpen.get()) {
+            scheduleDrain(0);
+        } else if (!isConnected.get() || webSocket == null) {
+            // Fallback, try again; queued events flush from onOpen
+            scheduleReconnect();
         }
+        return pending.getResult();
+    }
+
+    /** Number of events waiting to be written to the socket */
+    public int getSendQueueDepth() {
+        return sendQueue.depth();
+    }
+
+    /** Number of events dropped because the queue was full, shut down or the write failed */
+    public long getDroppedEventCount() {
+        return sendQueue.getDroppedCount();
+    }
+
+    /** Number of queued events successfully handed to the socket */
+    public long getSentEventCount() {
+        return sendQueue.getSentCount();
     }
 
     /**
-     * Schedule an automatic reconnect after a fixed delay,
-     * unless we're already connected.
+     * Schedule an automatic reconnect with jittered exponential backoff,
+     * unless we're already connected. Concurrent calls collapse into the
+     * single pending attempt.
      */
     public void scheduleReconnect() {
-        reconnectAttempts++;
-        Log.d(TAG, "Scheduling reconnect #" + reconnectAttempts
-                + " in " + RECONNECT_DELAY_SECONDS + "s");
+        if (isOpen.get()) return;
+        reconnectScheduler.request();
+    }
 
-        try {
-            scheduler.schedule(() -> {
-                if (!isConnected.get()) {
-                    Log.d(TAG, "Performing scheduled reconnect...");
-                    isConnecting.set(false);
-                    connect(authToken);
-                }
-            }, RECONNECT_DELAY_SECONDS, TimeUnit.SECONDS);
-        } catch (RejectedExecutionException ignored) {
-            // executor shut down: ignore
+    /**
+     * Reachability hint, fed by {@link NetworkReachabilityMonitor}. No
+     * reconnect is dialed while the device has no network; once it is back
+     * a reconnect is scheduled if the socket is closed.
+     */
+    public void setHostReachable(boolean reachable) {
+        reconnectScheduler.setHostReachable(reachable);
+        if (reachable && !isOpen.get()) {
+            reconnectScheduler.request();
+        }
+    }
+
+    /** Register a handler that fetches missed events when the relay cannot replay them */
+    public void addCatchUpHandler(CatchUpHandler handler) {
+        catchUpHandlers.addIfAbsent(handler);
+    }
+
+    public void removeCatchUpHandler(CatchUpHandler handler) {
+        catchUpHandlers.remove(handler);
+    }
+
+    /**
+     * Register a hook that runs before every resume cursor write. Listeners
+     * that buffer events use it to store them first, so the cursor never
+     * points past an event that is not yet stored.
+     */
+    public void addCursorFlushBarrier(Runnable barrier) {
+        cursorFlushBarriers.addIfAbsent(barrier);
+    }
+
+    /**
+     * Receive inbound events of one type whose payload was bound to
+     * {@code payloadType}. Events of that type with a different payload
+     * class (e.g. a media INCOMING for a text subscriber) are not delivered;
+     * a missing payload is delivered as null.
+     */
+    public <T> void subscribe(EventType type, Class<T> payloadType, RelayEventListener<T> listener) {
+        subscriptions.get(type).add(new Subscription<>(payloadType, listener));
+    }
+
+    /** Remove a listener from every type it was subscribed to */
+    public void unsubscribe(RelayEventListener<?> listener) {
+        for (List<Subscription<?>> subscribers : subscriptions.values()) {
+            subscribers.removeIf(subscription -> subscription.listener == listener);
         }
     }
 
-    /** Add a listener for incoming WebSocketEvent callbacks */
-    public void addListener(RelayWebSocketListener listener) {
-        listeners.addIfAbsent(listener);
+    /** Inbound events waiting for a dispatch worker */
+    public int getDispatchQueueDepth() {
+        return dispatcher.getQueuedCount();
     }
 
-    /** Remove a previously added listener */
-    public void removeListener(RelayWebSocketListener listener) {
-        listeners.remove(listener);
+    /** Times the socket reader waited because a dispatch stripe was full */
+    public long getDispatchBlockedCount() {
+        return dispatcher.getBlockedCount();
+    }
+
+    /** Per-listener delivery counts and latency, one entry per subscription */
+    public List<ListenerStats> getListenerStats() {
+        List<ListenerStats> stats = new ArrayList<>();
+        for (Map.Entry<EventType, List<Subscription<?>>> entry : subscriptions.entrySet()) {
+            for (Subscription<?> subscription : entry.getValue()) {
+                stats.add(subscription.snapshot(entry.getKey()));
+            }
+        }
+        return stats;
     }
 
     /** Returns true if currently connected */
@@ -194,14 +393,70 @@ public class RelayWebSocketClient {
         return isConnected.get();
     }
 
+    /** True once the handshake completed and until the socket closes or fails */
+    public boolean isSessionOpen() {
+        return isOpen.get() && webSocket != null;
+    }
+
+    /**
+     * True once the relay has answered one of our application PINGs in the
+     * current session. Relays that never answer are left to OkHttp's
+     * transport pings, so a missing PONG only means something once this is set.
+     */
+    public boolean hasSessionAnsweredPing() {
+        return isSessionOpen() && pongSeen.get();
+    }
+
+    /** Receives answers to {@link #sendPing(long)} on the socket's reader thread */
+    public void setPongListener(PongListener listener) {
+        this.pongListener = listener;
+    }
+
+    /**
+     * Write an application PING straight to the socket, ahead of anything
+     * queued. The relay echoes the payload back in a PONG.
+     *
+     * @return false if there is no open session to probe
+     */
+    public boolean sendPing(long probeId) {
+        WebSocket socket = webSocket;
+        if (!isOpen.get() || socket == null) return false;
+
+        JsonObject payload = new JsonObject();
+        payload.addProperty("id", probeId);
+        return socket.send(gson.toJson(new WebSocketEvent(EventType.PING, payload, userId)));
+    }
+
+    /**
+     * Abandon a session that looks open but has stopped answering. The
+     * socket is cancelled rather than closed, since a close handshake would
+     * wait on the same dead link; the failure callback then redials.
+     * Ignored for a session that never answered a PING, since its silence
+     * says nothing about the link.
+     */
+    public void recycleSession() {
+        WebSocket socket = webSocket;
+        if (socket == null || !pongSeen.get()) return;
+        Log.d(TAG, "Relay session unresponsive; dropping socket");
+        socket.cancel();
+    }
+
     /** Cleanly tear down everything and prevent reconnection */
     public void shutdown() {
         Log.d(TAG, "Shutdown called; stopping all reconnection attempts");
         isConnected.set(false);
         isConnecting.set(false);
-        reconnectAttempts = Integer.MAX_VALUE;
+        isOpen.set(false);
 
+        reconnectScheduler.shutdown();
+        cancelResumeAckTimeout();
         scheduler.shutdownNow();
+        resumeExecutor.shutdownNow();
+        dispatcher.shutdown();
+        uploadScheduler.shutdown();
+        uploadEngine.shutdown();
+        flushResumeCursor();
+        sendQueue.failAll(new IllegalStateException("Relay client shut down"));
         if (webSocket != null) {
             webSocket.close(1000, "Shutdown");
             webSocket = null;
@@ -218,22 +473,46 @@ public class RelayWebSocketClient {
                 Log.d(TAG, "WebSocket connected");
                 isConnected.set(true);
                 isConnecting.set(false);
-                reconnectAttempts = 0;
+                pongSeen.set(false);
+                isOpen.set(true);
+                reconnectScheduler.reset();
 
                 // announce ourselves
                 JsonObject payload = new JsonObject();
                 payload.addProperty("jid", userId);
+                boolean resuming = addResumeCursor(payload);
                 WebSocketEvent connectEvent = new WebSocketEvent(EventType.CONNECTION, payload, userId);
                 socket.send(gson.toJson(connectEvent));
+                if (resuming) {
+                    scheduleResumeAckTimeout();
+                }
+
+                // flush whatever queued up while we were offline
+                scheduleDrain(0);
+                uploadScheduler.onSocketOpened();
 
                 // notify observers
-                dispatchEvent(connectEvent);
+                dispatchEvent(new RelayEvent(EventType.CONNECTION, userId, null, null, payload));
             }
 
             @Override
             public void onMessage(@NonNull WebSocket socket, @NonNull String text) {
                 try {
-                    WebSocketEvent event = gson.fromJson(text, WebSocketEvent.class);
+                    RelayEvent event = decoder.decode(text);
+                    if (event.getType() == null) {
+                        Log.d(TAG, "Ignoring frame with unknown event type");
+                        return;
+                    }
+                    if (event.getType() == EventType.RESUME) {
+                        handleResumeAck(event);
+                        return;
+                    }
+                    if (event.getType() == EventType.PING || event.getType() == EventType.PONG) {
+                        handleProbe(socket, event);
+                        return;
+                    }
+
+                    if (!checkResumeCursor(event)) return;
                     dispatchEvent(event);
                 } catch (Exception e) {
                     Log.e(TAG, "Error parsing WebSocket message", e);
@@ -243,110 +522,460 @@ public class RelayWebSocketClient {
             @Override
             public void onClosed(@NonNull WebSocket socket, int code, @NonNull String reason) {
                 Log.d(TAG, "WebSocket closed: " + reason);
+                if (socket != webSocket) return; // superseded by a newer socket
                 isConnected.set(false);
                 isConnecting.set(false);
+                isOpen.set(false);
+                cancelResumeAckTimeout();
+                flushResumeCursorAsync();
             }
 
             @Override
             public void onFailure(@NonNull WebSocket socket, @NonNull Throwable t, Response response) {
                 Log.e(TAG, "WebSocket failure", t);
+                if (socket != webSocket) return; // superseded by a newer socket
                 isConnected.set(false);
+                isOpen.set(false);
+                cancelResumeAckTimeout();
+                flushResumeCursorAsync();
                 scheduleReconnect();
             }
         };
     }
 
-    /** Dispatches a WebSocketEvent to all registered listeners */
-    private void dispatchEvent(WebSocketEvent event) {
-        for (RelayWebSocketListener l : listeners) {
+    /** Answer relay pings; hand our own pongs to the health monitor */
+    private void handleProbe(WebSocket socket, RelayEvent event) {
+        JsonElement payload = event.getPayloadAs(JsonElement.class);
+        if (event.getType() == EventType.PING) {
+            socket.send(gson.toJson(new WebSocketEvent(EventType.PONG, payload, userId)));
+            return;
+        }
+
+        pongSeen.set(true);
+        PongListener listener = pongListener;
+        if (listener == null || payload == null || !payload.isJsonObject()) return;
+        JsonObject pong = payload.getAsJsonObject();
+        if (pong.has("id")) {
+            listener.onPong(pong.get("id").getAsLong());
+        }
+    }
+
+    private void performScheduledReconnect() {
+        if (isOpen.get()) return;
+        Log.d(TAG, "Performing scheduled reconnect...");
+        isConnecting.set(false);
+        connect(authToken);
+    }
+
+    //==============================
+    // Send queue draining
+    //==============================
+
+    /** Schedule a single drain pass on the scheduler thread, if none is pending */
+    private void scheduleDrain(long delayMs) {
+        if (!drainScheduled.compareAndSet(false, true)) return;
+        try {
+            scheduler.schedule(this::drainSendQueue, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // executor shut down: ignore
+            drainScheduled.set(false);
+        }
+    }
+
+    /**
+     * Write queued events while the socket is open. Stops at OkHttp's
+     * high-water mark and retries shortly, so a slow link does not grow
+     * the socket's internal buffer without bound.
+     */
+    private void drainSendQueue() {
+        drainScheduled.set(false);
+
+        RelaySendQueue.PendingEvent pending;
+        while (isOpen.get() && (pending = sendQueue.poll()) != null) {
+            WebSocket socket = webSocket;
+            if (socket == null) {
+                sendQueue.requeue(pending);
+                return;
+            }
+
+            if (socket.queueSize() > SOCKET_HIGH_WATER_BYTES) {
+                sendQueue.requeue(pending);
+                scheduleDrain(DRAIN_RETRY_DELAY_MS);
+                return;
+            }
+
             try {
-                l.onEvent(event);
+                if (socket.send(gson.toJson(pending.event))) {
+                    sendQueue.markSent(pending);
+                } else {
+                    // socket is closing; keep the event for the next connection
+                    Log.e(TAG, "Failed to send event; re-queued");
+                    sendQueue.requeue(pending);
+                    return;
+                }
             } catch (Exception e) {
-                Log.e(TAG, "Listener error", e);
+                Log.e(TAG, "Error sending WebSocket event", e);
+                sendQueue.markFailed(pending, e);
             }
         }
     }
 
     //==============================
-    // Video stream handling
+    // Resume cursor & catch-up
     //==============================
 
-    public void sendVideoStreamEvent(File videoFile, MessageDto messageDto, String videoMimeType) {
-        if (!isConnected.get() || webSocket == null) {
-            // Fallback, try again
-            connect();
-            if (!isConnected.get()) {
-                Log.e(TAG, "Not connected; event dropped");
+    /**
+     * Attach the stored cursor to the CONNECTION payload.
+     *
+     * @return true if there is a cursor to resume from
+     */
+    private boolean addResumeCursor(JsonObject payload) {
+        if (resumeCursor == null) return false;
+        long lastSeq = resumeCursor.getLastSequence();
+        long lastTimestamp = resumeCursor.getLastTimestamp();
+        if (lastSeq <= 0 && lastTimestamp <= 0) return false; // first login, nothing to resume
+
+        payload.addProperty("resume", true);
+        payload.addProperty("lastSeq", lastSeq);
+        payload.addProperty("lastTimestamp", lastTimestamp);
+        return true;
+    }
+
+    /** The relay did not answer the resume request in time: assume it cannot replay */
+    private void scheduleResumeAckTimeout() {
+        cancelResumeAckTimeout();
+        try {
+            resumeAckTimeout = scheduler.schedule(() -> {
+                Log.d(TAG, "No RESUME ack from relay; falling back to catch-up fetch");
+                requestCatchUp();
+            }, RESUME_ACK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // executor shut down: ignore
+        }
+    }
+
+    private void cancelResumeAckTimeout() {
+        ScheduledFuture<?> timeout = resumeAckTimeout;
+        if (timeout != null) {
+            timeout.cancel(false);
+            resumeAckTimeout = null;
+        }
+    }
+
+    /**
+     * RESUME ack from the relay. Payload {@code replayed: true} means the
+     * missed events follow on the socket; anything else means we must fetch.
+     */
+    private void handleResumeAck(RelayEvent event) {
+        cancelResumeAckTimeout();
+        boolean replayed = false;
+        JsonElement ack = event.getPayloadAs(JsonElement.class);
+        if (ack != null && ack.isJsonObject()) {
+            JsonObject payload = ack.getAsJsonObject();
+            replayed = payload.has("replayed") && payload.get("replayed").getAsBoolean();
+        }
+
+        Log.d(TAG, "RESUME ack received, replayed=" + replayed);
+        if (!replayed) {
+            requestCatchUp();
+        }
+    }
+
+    /**
+     * Record a sequenced event against the cursor as it arrives.
+     *
+     * @return false if the event was already received and should be skipped
+     */
+    private boolean checkResumeCursor(RelayEvent event) {
+        if (resumeCursor == null || !ResumeCursorTracker.isReplayable(event.getType())) return true;
+
+        switch (resumeCursor.receive(event)) {
+            case DUPLICATE:
+                Log.d(TAG, "Skipping already applied event seq=" + event.getSeq());
+                return false;
+            case GAP:
+                Log.d(TAG, "Sequence gap before seq=" + event.getSeq() + "; requesting catch-up");
+                requestCatchUp();
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    private void advanceResumeCursor(RelayEvent event) {
+        if (resumeCursor == null || !ResumeCursorTracker.isReplayable(event.getType())) return;
+        resumeCursor.advance(event);
+        scheduleCursorFlush();
+    }
+
+    /** Debounced cursor write, so a burst of events costs one row update */
+    private void scheduleCursorFlush() {
+        if (!cursorFlushScheduled.compareAndSet(false, true)) return;
+        try {
+            resumeExecutor.schedule(this::flushResumeCursor, CURSOR_FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // executor shut down: ignore
+            cursorFlushScheduled.set(false);
+        }
+    }
+
+    /** Flush off the calling thread; the barriers may decrypt and write a whole batch */
+    private void flushResumeCursorAsync() {
+        if (resumeCursor == null) return;
+        try {
+            resumeExecutor.execute(this::flushResumeCursor);
+        } catch (RejectedExecutionException ignored) {
+            // executor shut down: shutdown() flushes synchronously
+        }
+    }
+
+    private void flushResumeCursor() {
+        cursorFlushScheduled.set(false);
+        if (resumeCursor == null) return;
+        for (Runnable barrier : cursorFlushBarriers) {
+            try {
+                barrier.run();
+            } catch (Exception e) {
+                Log.e(TAG, "Cursor flush barrier failed; keeping the previous cursor", e);
                 return;
             }
         }
+        resumeCursor.flush();
+    }
+
+    /**
+     * Run every registered catch-up handler from the cursor's timestamp.
+     * Concurrent requests collapse into the running one. The cursor moves
+     * only as far as every handler has covered, by server timestamps.
+     */
+    private void requestCatchUp() {
+        if (resumeCursor == null || catchUpHandlers.isEmpty()) return;
+        if (!catchUpRunning.compareAndSet(false, true)) return;
 
+        // read before the triggering event advances the cursor past the gap
+        long since = resumeCursor.getLastTimestamp();
         try {
-            // 1) Send video start event
-            JsonObject startPayload = new JsonObject();
-            startPayload.addProperty("id", messageDto.getId());
-            startPayload.addProperty("jid", messageDto.getJid());
-            startPayload.addProperty("chatId", messageDto.getChatId());
-            startPayload.addProperty("streamState", "start");
-            startPayload.addProperty("filename", videoFile.getName());
-            startPayload.addProperty("contentType", videoMimeType);
-            startPayload.addProperty("fileSize", videoFile.length());
-
-            if (messageDto.getReplyTo() != null) {
-                startPayload.addProperty("replyTo", messageDto.getReplyTo());
-            }
+            resumeExecutor.execute(() -> {
+                try {
+                    long coveredUpTo = Long.MAX_VALUE;
+                    for (CatchUpHandler handler : catchUpHandlers) {
+                        try {
+                            coveredUpTo = Math.min(coveredUpTo, handler.onCatchUp(since));
+                        } catch (Exception e) {
+                            Log.e(TAG, "Catch-up handler error", e);
+                            coveredUpTo = since;
+                        }
+                    }
 
-            if (messageDto.getWaitingMemebersList() != null) {
-                JsonArray waitingMembers = new JsonArray();
-                for (String member : messageDto.getWaitingMemebersList()) {
-                    waitingMembers.add(member);
+                    if (coveredUpTo > since) {
+                        resumeCursor.advanceTimestamp(coveredUpTo);
+                        flushResumeCursor();
+                    }
+                } finally {
+                    catchUpRunning.set(false);
                 }
-                startPayload.add("waitingMemebersList", waitingMembers);
+            });
+        } catch (RejectedExecutionException ignored) {
+            // executor shut down: ignore
+            catchUpRunning.set(false);
+        }
+    }
+
+    /**
+     * Hands a decoded event to the dispatch workers. Listeners for one event
+     * run in registration order on the stripe for its chat; the resume cursor
+     * moves once they have all returned.
+     */
+    private void dispatchEvent(RelayEvent event) {
+        try {
+            dispatcher.execute(orderingKey(event), () -> {
+                deliverToSubscribers(event);
+                advanceResumeCursor(event);
+            });
+        } catch (RejectedExecutionException ignored) {
+            // dispatcher shut down: ignore
+        }
+    }
+
+    private void deliverToSubscribers(RelayEvent event) {
+        for (Subscription<?> subscription : subscriptions.get(event.getType())) {
+            long startNs = System.nanoTime();
+            try {
+                subscription.deliver(event);
+            } catch (Exception e) {
+                Log.e(TAG, "Listener error for " + event.getType(), e);
+            }
+            long elapsedNs = System.nanoTime() - startNs;
+            subscription.record(elapsedNs);
+            if (elapsedNs > TimeUnit.MILLISECONDS.toNanos(SLOW_LISTENER_WARN_MS)) {
+                Log.w(TAG, "Slow " + event.getType() + " listener "
+                        + subscription.name() + ": " + TimeUnit.NANOSECONDS.toMillis(elapsedNs) + "ms");
             }
+        }
+    }
 
-            WebSocketEvent startEvent = new WebSocketEvent(EventType.VIDEO_STREAM, startPayload, userId);
-            webSocket.send(gson.toJson(startEvent));
+    /** Events about the same chat share a key and are handled in arrival order */
+    private String orderingKey(RelayEvent event) {
+        Object payload = event.getPayload();
+        if (payload instanceof MessageDto && ((MessageDto) payload).getChatId() != null) {
+            return ((MessageDto) payload).getChatId();
+        }
+        if (payload instanceof ChatDto && ((ChatDto) payload).getChatId() != null) {
+            return ((ChatDto) payload).getChatId();
+        }
+        if (event.getType() == EventType.REMOVED_CHAT && payload instanceof String) {
+            return (String) payload; // payload is the chat id
+        }
+        if (payload instanceof MessageReadByDto) {
+            // receipts are for messages we sent; the relay may leave out the chat
+            MessageReadByDto receipt = (MessageReadByDto) payload;
+            String chatId = receipt.getChatId() != null
+                    ? receipt.getChatId()
+                    : sentMessageChats.get(receipt.getMessageId());
+            if (chatId != null) return chatId;
+        }
+        return event.getType().name();
+    }
 
-            // 2) Send binary chunks directly
-            try (InputStream in = new FileInputStream(videoFile)) {
-                byte[] buffer = new byte[CHUNK_SIZE];
-                int bytesRead;
-                int chunkCount = 0;
+    private void rememberSentMessageChat(WebSocketEvent event) {
+        if (event.getType() != EventType.CHAT || event.getPayload() == null || !event.getPayload().isJsonObject()) return;
+        JsonObject payload = event.getPayload().getAsJsonObject();
+        JsonElement id = payload.get("id");
+        JsonElement chatId = payload.get("chatId");
+        if (id != null && id.isJsonPrimitive() && chatId != null && chatId.isJsonPrimitive()) {
+            sentMessageChats.put(id.getAsString(), chatId.getAsString());
+        }
+    }
 
-                while ((bytesRead = in.read(buffer)) != -1) {
-                    // Send the chunk directly as a binary frame
-                    boolean sent = webSocket.send(ByteString.of(buffer, 0, bytesRead));
-                    chunkCount++;
+    private static Map<EventType, List<Subscription<?>>> createSubscriptionTable() {
+        Map<EventType, List<Subscription<?>>> table = new EnumMap<>(EventType.class);
+        for (EventType type : EventType.values()) {
+            table.put(type, new CopyOnWriteArrayList<>());
+        }
+        return Collections.unmodifiableMap(table);
+    }
 
-                    if (!sent) {
-                        Log.e(TAG, "Failed to send video chunk #" + chunkCount);
-                        return;
-                    }
+    private static final class Subscription<T> {
+        final Class<T> payloadType;
+        final RelayEventListener<T> listener;
+        final AtomicLong deliveries = new AtomicLong();
+        final AtomicLong totalNanos = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
 
-                    if (chunkCount % 10 == 0) {
-                        Log.d(TAG, "Sent " + chunkCount + " chunks so far");
-                    }
+        Subscription(Class<T> payloadType, RelayEventListener<T> listener) {
+            this.payloadType = payloadType;
+            this.listener = listener;
+        }
 
-                    // Small delay to prevent overwhelming the network
-                    Thread.sleep(CHUNK_DELAY);
-                }
+        void deliver(RelayEvent event) {
+            Object payload = event.getPayload();
+            if (payload == null) {
+                listener.onEvent(null, event);
+            } else if (payloadType.isInstance(payload)) {
+                listener.onEvent(payloadType.cast(payload), event);
             }
+        }
+
+        void record(long elapsedNs) {
+            deliveries.incrementAndGet();
+            totalNanos.addAndGet(elapsedNs);
+            maxNanos.accumulateAndGet(elapsedNs, Math::max);
+        }
 
-            // 3) Send video end event
-            JsonObject endPayload = new JsonObject();
-            endPayload.addProperty("id", messageDto.getId());
-            endPayload.addProperty("streamState", "end");
-            WebSocketEvent endEvent = new WebSocketEvent(EventType.VIDEO_STREAM, endPayload, userId);
-            webSocket.send(gson.toJson(endEvent));
-        } catch (Exception e) {
-            Log.e(TAG, "Error sending video stream event", e);
+        String name() {
+            return listener.getClass().getName();
+        }
+
+        ListenerStats snapshot(EventType type) {
+            return new ListenerStats(type, name(), deliveries.get(), totalNanos.get(), maxNanos.get());
         }
     }
 
+    /** Point-in-time delivery metrics for one subscription */
+    public static final class ListenerStats {
+        public final EventType type;
+        public final String listener;
+        public final long deliveries;
+        public final long totalNanos;
+        public final long maxNanos;
+
+        ListenerStats(EventType type, String listener, long deliveries, long totalNanos, long maxNanos) {
+            this.type = type;
+            this.listener = listener;
+            this.deliveries = deliveries;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getAverageMicros() {
+            return deliveries == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos / deliveries);
+        }
+
+        public long getMaxMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(maxNanos);
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + listener + ": n=" + deliveries
+                    + " avg=" + getAverageMicros() + "us max=" + getMaxMicros() + "us";
+        }
+    }
+
+    //==============================
+    // Video stream handling
+    //==============================
+
+    /**
+     * Stream a file to the relay in chunks, acked and resumable where the
+     * relay supports it. The upload is queued on the
+     * {@link MediaUploadScheduler}; if the socket goes away it settles as
+     * paused, and sending the same message again continues from the
+     * relay's last acked offset.
+     *
+     * @return handle for observing progress and throughput
+     */
+    public ChunkedUpload sendMediaStream(
+            File file,
+            MessageDto messageDto,
+            String contentType,
+            MediaType mediaType
+    ) {
+        ChunkedUpload upload = uploadEngine.create(file, messageDto, contentType, mediaType);
+        uploadScheduler.submit(upload);
+        if (!isOpen.get()) {
+            scheduleReconnect();
+        }
+        return upload;
+    }
+
+    /** Cancel a queued or running media upload by message id */
+    public boolean cancelMediaStream(String messageId) {
+        return uploadScheduler.cancel(messageId);
+    }
+
+    public ChunkedUpload sendVideoStreamEvent(File videoFile, MessageDto messageDto, String videoMimeType) {
+        return sendMediaStream(videoFile, messageDto, videoMimeType,
+                MediaType.VIDEO);
+    }
+
     //==============================
     // Listener interface
     //==============================
-    public interface RelayWebSocketListener {
-        void onEvent(WebSocketEvent event);
+    public interface RelayEventListener<T> {
+        void onEvent(T payload, RelayEvent event);
+    }
+
+    public interface PongListener {
+        void onPong(long probeId);
+    }
+
+    /**
+     * Fetches events missed since a timestamp when the relay could not replay
+     * them. Runs on a background thread; returns the newest server timestamp
+     * the gap is covered up to, or {@code sinceTimestamp} if none of it is.
+     */
+    public interface CatchUpHandler {
+        long onCatchUp(long sinceTimestamp);
     }
 }
@@ -0,0 +1,166 @@
+package com.example.asiochatfrontend.data.relay.network;
+
+import android.util.Log;
+
+import com.example.asiochatfrontend.data.database.dao.SyncCursorDao;
+import com.example.asiochatfrontend.data.database.entity.SyncCursorEntity;
+import com.example.asiochatfrontend.data.relay.model.RelayEvent;
+import com.example.asiochatfrontend.data.relay.model.WebSocketEvent;
+
+import java.util.TreeSet;
+
+/**
+ * Tracks the last relay event this account has applied, so a reconnect can
+ * ask the relay to replay only what was missed.
+ * Events are handled asynchronously and possibly out of order across chats,
+ * so two positions are kept: the highest sequence received (for gap and
+ * duplicate detection) and the highest sequence below which everything has
+ * been handled. Only the latter is persisted through {@link SyncCursorDao}.
+ * The timestamp half of the cursor only ever holds server timestamps; an
+ * event without one leaves it where it is.
+ */
+public class ResumeCursorTracker {
+    private static final String TAG = "ResumeCursorTracker";
+    private static final String CURSOR_PREFIX = "relay-events:";
+
+    /** Outcome of recording an event against the cursor */
+    public enum Position {
+        /** Next expected event, or the event carries no sequence */
+        IN_ORDER,
+        /** Sequence already covered by the cursor (e.g. replay overlap) */
+        DUPLICATE,
+        /** One or more events between the cursor and this one never arrived */
+        GAP
+    }
+
+    private final SyncCursorDao syncCursorDao;
+    private final String cursorId;
+
+    private long lastSequence;      // everything up to here has been handled
+    private long lastTimestamp;
+    private long receivedSequence;  // highest sequence seen on the socket
+    private long receivedTimestamp;
+    private final TreeSet<Long> inFlight = new TreeSet<>();
+    private boolean loaded = false;
+    private boolean dirty = false;
+
+    public ResumeCursorTracker(SyncCursorDao syncCursorDao, String accountId) {
+        this.syncCursorDao = syncCursorDao;
+        this.cursorId = CURSOR_PREFIX + accountId;
+    }
+
+    /** Only events of these types are sequenced and replayable */
+    public static boolean isReplayable(WebSocketEvent.EventType type) {
+        if (type == null) return false;
+        switch (type) {
+            case INCOMING:
+            case MESSAGE_READ:
+            case CHAT_READ:
+            case CREATE_CHAT:
+            case REMOVED_CHAT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public synchronized long getLastSequence() {
+        ensureLoaded();
+        return lastSequence;
+    }
+
+    public synchronized long getLastTimestamp() {
+        ensureLoaded();
+        return lastTimestamp;
+    }
+
+    /**
+     * Record an event as it comes off the socket, before it is handled.
+     * Duplicates are not recorded and should be skipped by the caller.
+     */
+    public synchronized Position receive(RelayEvent event) {
+        ensureLoaded();
+        Long seq = event.getSeq();
+        Long ts = event.getTimestamp();
+
+        Position position = Position.IN_ORDER;
+        if (seq != null) {
+            if (seq <= receivedSequence) return Position.DUPLICATE;
+            if (receivedSequence > 0 && seq > receivedSequence + 1) position = Position.GAP;
+            receivedSequence = seq;
+            inFlight.add(seq);
+        }
+        if (ts != null) { // only the relay's clock moves the timestamp; ours may run ahead
+            receivedTimestamp = Math.max(receivedTimestamp, ts);
+        }
+        return position;
+    }
+
+    /** Mark a received event as handled and move the cursor as far as is safe */
+    public synchronized void advance(RelayEvent event) {
+        ensureLoaded();
+        Long seq = event.getSeq();
+        if (seq != null) {
+            inFlight.remove(seq);
+        }
+
+        long handledUpTo = inFlight.isEmpty() ? receivedSequence : inFlight.first() - 1;
+        if (handledUpTo > lastSequence) {
+            lastSequence = handledUpTo;
+            dirty = true;
+        }
+        // timestamps are not contiguous, so only trust them once nothing is pending
+        if (inFlight.isEmpty() && receivedTimestamp > lastTimestamp) {
+            lastTimestamp = receivedTimestamp;
+            dirty = true;
+        }
+    }
+
+    /** Move the timestamp forward after a catch-up fetch filled a gap */
+    public synchronized void advanceTimestamp(long timestamp) {
+        ensureLoaded();
+        if (timestamp > lastTimestamp) {
+            lastTimestamp = timestamp;
+            dirty = true;
+        }
+        receivedTimestamp = Math.max(receivedTimestamp, timestamp);
+    }
+
+    /**
+     * Write the cursor if it moved since the last flush. Called on a
+     * debounce rather than per event, so a burst costs one row write.
+     */
+    public void flush() {
+        SyncCursorEntity snapshot;
+        synchronized (this) {
+            if (!dirty) return;
+            snapshot = new SyncCursorEntity(cursorId, lastSequence, lastTimestamp, System.currentTimeMillis());
+            dirty = false;
+        }
+
+        try {
+            syncCursorDao.upsertCursor(snapshot);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to persist resume cursor", e);
+            synchronized (this) {
+                dirty = true;
+            }
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        try {
+            SyncCursorEntity stored = syncCursorDao.getCursor(cursorId);
+            if (stored != null) {
+                lastSequence = stored.sequence;
+                lastTimestamp = stored.timestamp;
+                receivedSequence = Math.max(receivedSequence, lastSequence);
+                receivedTimestamp = Math.max(receivedTimestamp, lastTimestamp);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to load resume cursor", e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.asiochatfrontend.data.relay.network;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Round-trip times of the most recent relay probes, bucketed on a
+ * power-of-two millisecond scale unless other bounds are given. Old samples
+ * fall out as new ones arrive, so percentiles follow the current network
+ * rather than the whole session.
+ * Not thread-safe; the owner guards it.
+ */
+public class RttHistogram {
+
+    /** Upper bound of each bucket in ms; the last bucket is open-ended */
+    private static final long[] DEFAULT_BUCKET_BOUNDS_MS = {25, 50, 100, 200, 400, 800, 1_600, 3_200, Long.MAX_VALUE};
+
+    private final long[] bucketBoundsMs;
+    private final long[] window;
+    private final int[] bucketCounts;
+    private int next = 0;
+    private int size = 0;
+    private long sumMs = 0;
+
+    public RttHistogram(int windowSize) {
+        this(windowSize, DEFAULT_BUCKET_BOUNDS_MS);
+    }
+
+    /** @param bucketBoundsMs ascending upper bounds, the last one Long.MAX_VALUE */
+    public RttHistogram(int windowSize, long[] bucketBoundsMs) {
+        this.window = new long[windowSize];
+        this.bucketBoundsMs = bucketBoundsMs.clone();
+        this.bucketCounts = new int[bucketBoundsMs.length];
+    }
+
+    public void record(long rttMs) {
+        if (size == window.length) {
+            long evicted = window[next];
+            bucketCounts[bucketOf(evicted)]--;
+            sumMs -= evicted;
+        } else {
+            size++;
+        }
+        window[next] = rttMs;
+        next = (next + 1) % window.length;
+        bucketCounts[bucketOf(rttMs)]++;
+        sumMs += rttMs;
+    }
+
+    public void clear() {
+        next = 0;
+        size = 0;
+        sumMs = 0;
+        Arrays.fill(bucketCounts, 0);
+    }
+
+    public int getSampleCount() {
+        return size;
+    }
+
+    public long getAverageMs() {
+        return size == 0 ? 0 : sumMs / size;
+    }
+
+    public long getLastMs() {
+        return size == 0 ? 0 : window[Math.floorMod(next - 1, window.length)];
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile, e.g. 0.9 for p90.
+     * The open-ended bucket reports the largest sample in the window instead.
+     *
+     * @return 0 if there are no samples
+     */
+    public long getPercentileMs(double percentile) {
+        if (size == 0) return 0;
+        int rank = (int) Math.ceil(percentile * size);
+        int seen = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            seen += bucketCounts[i];
+            if (seen >= Math.max(rank, 1)) {
+                return bucketBoundsMs[i] == Long.MAX_VALUE ? maxSample() : bucketBoundsMs[i];
+            }
+        }
+        return maxSample();
+    }
+
+    /** Sample count per bucket, keyed by the bucket's upper bound in ms */
+    public Map<Long, Integer> getBuckets() {
+        Map<Long, Integer> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < bucketBoundsMs.length; i++) {
+            buckets.put(bucketBoundsMs[i], bucketCounts[i]);
+        }
+        return buckets;
+    }
+
+    private long maxSample() {
+        long max = 0;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, window[i]);
+        }
+        return max;
+    }
+
+    private int bucketOf(long rttMs) {
+        for (int i = 0; i < bucketBoundsMs.length; i++) {
+            if (rttMs <= bucketBoundsMs[i]) return i;
+        }
+        return bucketBoundsMs.length - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "RttHistogram{" +
+                "n=" + size +
+                ", avg=" + getAverageMs() + "ms" +
+                ", p50=" + getPercentileMs(0.5) + "ms" +
+                ", p90=" + getPercentileMs(0.9) + "ms" +
+                '}';
+    }
+}
@@ -2,118 +2,255 @@ package com.example.asiochatfrontend.data.relay.network;
 
 import android.util.Log;
 
-import com.example.asiochatfrontend.app.di.ServiceModule;
-
-import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.net.Socket;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Monitors TCP reachability of host:port at a fixed interval,
- * notifying exactly once on each transition lost→restored and restored→lost.
- * The underlying ScheduledExecutorService is never shut down.
+ * Probes the live relay session with application PING frames over the
+ * existing WebSocket and times the PONG. A session counts as alive only if
+ * the relay answers, so a half-open socket is caught even though the port
+ * still accepts connections. Relays that do not implement application
+ * PINGs are detected per session: until a session has answered once, a
+ * missed probe is not held against it and OkHttp's transport pings are
+ * left to notice a dead link.
+ * Notifies exactly once on each transition lost→restored and restored→lost.
+ * Probes run more often while the link is degraded, and back off while it
+ * is healthy or the app is in the background.
  */
 public class WebSocketHealthMonitor {
+    private static final String TAG = "WebSocketHealthMonitor";
+
     public interface HealthObserver {
         void onConnectionLost();
         void onConnectionRestored();
     }
 
-    private static final long CHECK_INTERVAL_MS = 10_000;
+    public enum HealthState {
+        HEALTHY,
+        /** Answering, but slowly or after a missed probe */
+        DEGRADED,
+        LOST
+    }
+
+    private static final long PROBE_TIMEOUT_MS = 5_000;
+    private static final long HEALTHY_INTERVAL_MS = 15_000;
+    private static final long IDLE_MAX_INTERVAL_MS = 60_000;
+    private static final long DEGRADED_INTERVAL_MS = 3_000;
+    private static final long BACKGROUND_INTERVAL_MS = 120_000;
+    private static final long DEGRADED_RTT_MS = 1_500;   // p90 above this is degraded
+    private static final int MISSES_BEFORE_LOST = 2;
+    private static final int RTT_WINDOW = 32;
 
-    private final String host;
-    private final int port;
+    private final RelayWebSocketClient client;
     private final HealthObserver observer;
 
     // single-thread executor lives until your app dies
     private final ScheduledExecutorService scheduler =
             Executors.newSingleThreadScheduledExecutor();
 
-    // handle to the repeating task
-    private ScheduledFuture<?> future;
+    private final RttHistogram rttHistogram = new RttHistogram(RTT_WINDOW);
 
-    /** true if last check was reachable */
-    private volatile boolean wasReachable = true;
+    // guarded by this
+    private ScheduledFuture<?> nextProbe;
+    private ScheduledFuture<?> probeTimeout;
+    private boolean running = false;
+    private boolean foreground = true;
+    private long startedAtNanos;
+    private HealthState state = null;   // null until the first probe settles
+    private long probeCounter = 0;
+    private long pendingProbeId = -1;
+    private long pendingSentAtNanos;
+    private int consecutiveMisses = 0;
+    private int consecutiveHealthy = 0;
 
-    public WebSocketHealthMonitor(
-            String host,
-            int port,
-            HealthObserver observer
-    ) {
-        this.host     = host;
-        this.port     = port;
+    public WebSocketHealthMonitor(RelayWebSocketClient client, HealthObserver observer) {
+        this.client   = client;
         this.observer = observer;
+        client.setPongListener(this::onPong);
     }
 
     /**
-     * Start (or restart) the periodic check.
+     * Start (or restart) probing.
      * If already running, this is a no-op.
      */
     public synchronized void start() {
-        if (future != null && !future.isCancelled()) {
-            return;
-        }
-        wasReachable = true;  // reset so next flip fires callbacks
-
-        future = scheduler.scheduleWithFixedDelay(
-                this::checkOnce,
-                0,
-                CHECK_INTERVAL_MS,
-                TimeUnit.MILLISECONDS
-        );
+        if (running) return;
+        running = true;
+        state = null;   // reset so the first result fires callbacks
+        consecutiveMisses = 0;
+        consecutiveHealthy = 0;
+        startedAtNanos = System.nanoTime();
+        scheduleProbe(0);
     }
 
     /**
-     * Cancel the periodic check but do not shut down the executor,
+     * Stop probing but do not shut down the executor,
      * so you can call start() again later.
      */
     public synchronized void stop() {
-        if (future != null) {
-            future.cancel(false);
-            future = null;
+        running = false;
+        pendingProbeId = -1;
+        cancel(nextProbe);
+        cancel(probeTimeout);
+        nextProbe = null;
+        probeTimeout = null;
+    }
+
+    /** Background probes are rare; coming to the foreground probes right away */
+    public synchronized void setForeground(boolean foreground) {
+        if (this.foreground == foreground) return;
+        this.foreground = foreground;
+        if (running && foreground && pendingProbeId < 0) {
+            scheduleProbe(0);
         }
     }
 
-    /** one single reachability test + transition notification */
-    private void checkOnce() {
-        boolean ok;
-        try (Socket sock = new Socket()) {
-            sock.connect(new InetSocketAddress(host, port), 2_000);
-            boolean currentConnectionStatus = ServiceModule.getConnectionManager().getOnlineStatus().getValue();
-            if (!currentConnectionStatus) {
-                try {
-                    observer.onConnectionRestored();
-                } catch (Exception e) {
-                    Log.e("WebSocketHealthMonitor", "Error while setting online status", e);
+    public synchronized HealthState getState() {
+        return state;
+    }
+
+    /** Rolling RTT summary for logs */
+    public synchronized String getLatencySummary() {
+        return rttHistogram.toString();
+    }
+
+    public synchronized long getRttPercentileMs(double percentile) {
+        return rttHistogram.getPercentileMs(percentile);
+    }
+
+    public synchronized long getLastRttMs() {
+        return rttHistogram.getLastMs();
+    }
+
+    //==============================
+    // Probing
+    //==============================
+
+    private void probe() {
+        synchronized (this) {
+            if (!running || pendingProbeId >= 0) return;
+
+            if (!client.isSessionOpen()) {
+                if (state == null && System.nanoTime() - startedAtNanos
+                        < TimeUnit.MILLISECONDS.toNanos(PROBE_TIMEOUT_MS)) {
+                    // still opening the first session; give it a moment before calling it lost
+                    scheduleProbe(DEGRADED_INTERVAL_MS / 3);
+                    return;
                 }
+                // nothing to probe; the client is already reconnecting
+                transitionTo(HealthState.LOST);
+                scheduleProbe(DEGRADED_INTERVAL_MS);
+                return;
             }
-            ok = true;
-        } catch (IOException ignored) {
-            ok = false;
-        }
 
-        if (ok) {
-            if (!wasReachable) {
-                wasReachable = true;
-                try {
-                    observer.onConnectionRestored();
-                } catch (Throwable t) {
-                    Log.e("WebSocketHealthMonitor", "watchdog observer error", t);
-                }
+            long probeId = ++probeCounter;
+            pendingProbeId = probeId;
+            pendingSentAtNanos = System.nanoTime();
+            if (!client.sendPing(probeId)) {
+                pendingProbeId = -1;
+                recordMiss();
+                return;
             }
+            try {
+                probeTimeout = scheduler.schedule(() -> onProbeTimeout(probeId),
+                        PROBE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignored) {
+                // executor shut down: ignore
+            }
+        }
+    }
+
+    /** Called on the socket's reader thread */
+    private synchronized void onPong(long probeId) {
+        if (probeId != pendingProbeId) return; // late answer to a probe we gave up on
+        long rttMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pendingSentAtNanos);
+        pendingProbeId = -1;
+        cancel(probeTimeout);
+        probeTimeout = null;
+
+        rttHistogram.record(rttMs);
+        consecutiveMisses = 0;
+        boolean slow = rttHistogram.getPercentileMs(0.9) > DEGRADED_RTT_MS;
+        consecutiveHealthy = slow ? 0 : consecutiveHealthy + 1;
+        transitionTo(slow ? HealthState.DEGRADED : HealthState.HEALTHY);
+        scheduleProbe(nextInterval());
+    }
+
+    private synchronized void onProbeTimeout(long probeId) {
+        if (probeId != pendingProbeId) return;
+        pendingProbeId = -1;
+        Log.d(TAG, "Probe " + probeId + " unanswered after " + PROBE_TIMEOUT_MS + "ms");
+        recordMiss();
+    }
+
+    private void recordMiss() {
+        if (client.isSessionOpen() && !client.hasSessionAnsweredPing()) {
+            // the relay may not speak PING at all; the socket is open, so trust the transport
+            consecutiveMisses = 0;
+            transitionTo(HealthState.HEALTHY);
+            scheduleProbe(nextInterval());
+            return;
+        }
+        consecutiveMisses++;
+        consecutiveHealthy = 0;
+        if (consecutiveMisses >= MISSES_BEFORE_LOST) {
+            transitionTo(HealthState.LOST);
+            // the socket looks open but the session is dead: drop it so the client redials
+            client.recycleSession();
         } else {
-            if (wasReachable) {
-                wasReachable = false;
-                try {
-                    observer.onConnectionLost();
-                } catch (Throwable t) {
-                    Log.e("WebSocketHealthMonitor", "watchdog observer error", t);
-                }
+            transitionTo(HealthState.DEGRADED);
+        }
+        scheduleProbe(DEGRADED_INTERVAL_MS);
+    }
+
+    /** Healthy probes stretch the interval up to the idle ceiling */
+    private long nextInterval() {
+        if (state == HealthState.DEGRADED) return DEGRADED_INTERVAL_MS;
+        if (!foreground) return BACKGROUND_INTERVAL_MS;
+        int doublings = Math.min(Math.max(consecutiveHealthy - 1, 0), 4);
+        return Math.min(IDLE_MAX_INTERVAL_MS, HEALTHY_INTERVAL_MS << doublings);
+    }
+
+    private void scheduleProbe(long delayMs) {
+        if (!running) return;
+        cancel(nextProbe);
+        try {
+            nextProbe = scheduler.schedule(this::probe, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // executor shut down: ignore
+        }
+    }
+
+    private void transitionTo(HealthState newState) {
+        HealthState previous = state;
+        if (previous == newState) return;
+        state = newState;
+        Log.d(TAG, "Relay session " + previous + " -> " + newState + " (" + rttHistogram + ")");
+
+        boolean wasAlive = previous != null && previous != HealthState.LOST;
+        boolean isAlive = newState != HealthState.LOST;
+        if (previous != null && wasAlive == isAlive) return;
+
+        if (newState == HealthState.LOST) {
+            rttHistogram.clear(); // a new session starts a new latency picture
+        }
+        try {
+            if (isAlive) {
+                observer.onConnectionRestored();
+            } else {
+                observer.onConnectionLost();
             }
+        } catch (Throwable t) {
+            Log.e(TAG, "watchdog observer error", t);
+        }
+    }
+
+    private static void cancel(ScheduledFuture<?> future) {
+        if (future != null) {
+            future.cancel(false);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,84 @@
+package com.example.asiochatfrontend.data.relay.service;
+
+import android.util.Log;
+
+import com.example.asiochatfrontend.core.model.dto.abstracts.MessageDto;
+import com.example.asiochatfrontend.data.database.dao.SyncCursorDao;
+import com.example.asiochatfrontend.data.database.entity.SyncCursorEntity;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Per-chat history high-water marks: the newest server timestamp already
+ * merged for a chat's messages or media. Stored as rows in the sync cursor
+ * table.
+ * A page can end partway through a millisecond, so history is fetched from
+ * the mark inclusive: the relay's routes are exclusive, so callers ask from
+ * one millisecond earlier and drop the ids they already took at the mark.
+ */
+public class ChatSyncMarks {
+    private static final String TAG = "ChatSyncMarks";
+
+    public static final String MESSAGES = "chat-messages";
+    public static final String MEDIA = "chat-media";
+
+    private final SyncCursorDao syncCursorDao;
+    private final String accountId;
+
+    public ChatSyncMarks(SyncCursorDao syncCursorDao, String accountId) {
+        this.syncCursorDao = syncCursorDao;
+        this.accountId = accountId;
+    }
+
+    /** @return the mark in epoch millis, 0 if the chat was never synced */
+    public long get(String scope, String chatId) {
+        try {
+            SyncCursorEntity stored = syncCursorDao.getCursor(cursorId(scope, chatId));
+            return stored != null ? stored.getTimestamp() : 0;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to load sync mark for " + chatId, e);
+            return 0;
+        }
+    }
+
+    /** Store a newer mark; called after the messages up to it are saved */
+    public void advance(String scope, String chatId, long timestamp) {
+        try {
+            syncCursorDao.upsertCursor(new SyncCursorEntity(
+                    cursorId(scope, chatId), 0, timestamp, System.currentTimeMillis()));
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to persist sync mark for " + chatId, e);
+        }
+    }
+
+    /** The page without the messages already taken at the mark */
+    static <T extends MessageDto> List<T> withoutIds(List<T> page, Set<String> takenIds) {
+        if (takenIds.isEmpty()) return page;
+        List<T> fresh = new ArrayList<>(page.size());
+        for (T message : page) {
+            if (!takenIds.contains(message.getId())) fresh.add(message);
+        }
+        return fresh;
+    }
+
+    /**
+     * Ids taken at the new mark, to drop from the next page. Ones taken at
+     * the old mark carry over while the mark has not moved.
+     */
+    static <T extends MessageDto> Set<String> idsAtMark(List<T> stored, long mark, long previousMark, Set<String> previousIds) {
+        Set<String> ids = mark == previousMark ? new HashSet<>(previousIds) : new HashSet<>();
+        for (T message : stored) {
+            if (message.getTimestamp() != null && message.getTimestamp().getTime() == mark) {
+                ids.add(message.getId());
+            }
+        }
+        return ids;
+    }
+
+    private String cursorId(String scope, String chatId) {
+        return scope + ":" + accountId + ":" + chatId;
+    }
+}
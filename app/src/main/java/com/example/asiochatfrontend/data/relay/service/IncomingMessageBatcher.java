@@ -0,0 +1,132 @@
+package com.example.asiochatfrontend.data.relay.service;
+
+import android.util.Log;
+
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
+import com.example.asiochatfrontend.core.concurrent.SerialExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects incoming items and hands them to a handler in batches, once
+ * {@code maxBatchSize} items are waiting or {@code maxDelayMs} after the
+ * first one arrived, whichever comes first. A burst costs one write per
+ * batch instead of one per item, while a lone message still lands within
+ * the delay window.
+ * Batches are handled one at a time, in arrival order, on the shared io
+ * pool; the delay runs on the shared timer. If the handler falls several
+ * batches behind, submitters handle a batch themselves, which slows the
+ * producer instead of letting the backlog grow.
+ */
+public class IncomingMessageBatcher<T> {
+    private static final String TAG = "IncomingMessageBatcher";
+    private static final int MAX_PENDING_BATCHES = 4;
+
+    public interface BatchHandler<T> {
+        void onBatch(List<T> batch);
+    }
+
+    private final int maxBatchSize;
+    private final long maxDelayMs;
+    private final BatchHandler<T> handler;
+    private final String name;
+    private final ScheduledExecutorService timer;
+    private final Executor executor;
+
+    private final Object handleLock = new Object(); // one batch handled at a time
+    private List<T> pending = new ArrayList<>();    // guarded by this
+    private ScheduledFuture<?> scheduledFlush;       // guarded by this
+    private boolean immediateFlushQueued = false;    // guarded by this
+
+    public IncomingMessageBatcher(String name, int maxBatchSize, long maxDelayMs, BatchHandler<T> handler) {
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMs = maxDelayMs;
+        this.handler = handler;
+        this.name = name;
+        this.timer = AppExecutors.timer();
+        this.executor = new SerialExecutor(AppExecutors.io());
+    }
+
+    public void submit(T item) {
+        boolean backlogged;
+        boolean flushNow = false;
+        synchronized (this) {
+            pending.add(item);
+            backlogged = pending.size() >= maxBatchSize * MAX_PENDING_BATCHES;
+            if (backlogged) {
+                cancelScheduledFlush();
+            } else if (pending.size() >= maxBatchSize) {
+                cancelScheduledFlush();
+                flushNow = !immediateFlushQueued;
+                immediateFlushQueued = true;
+            } else if (scheduledFlush == null) {
+                try {
+                    // the timer only hands the flush over; the batch runs on the io pool
+                    scheduledFlush = timer.schedule(() -> execute(this::flush), maxDelayMs, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException ignored) {
+                    // timer shut down: ignore
+                }
+            }
+        }
+        // outside the lock: a full pool runs the flush on this thread
+        if (flushNow) {
+            execute(this::flush);
+        }
+        if (backlogged) {
+            flush();
+        }
+    }
+
+    /**
+     * Handle everything submitted so far on the calling thread, after any
+     * batch already in progress.
+     */
+    public void flush() {
+        synchronized (handleLock) {
+            List<T> batch;
+            synchronized (this) {
+                cancelScheduledFlush();
+                immediateFlushQueued = false;
+                if (pending.isEmpty()) return;
+                batch = pending;
+                pending = new ArrayList<>();
+            }
+
+            try {
+                handler.onBatch(batch);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to handle batch of " + batch.size(), e);
+            }
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /** Handles whatever is still pending on the calling thread */
+    public void shutdown() {
+        flush();
+    }
+
+    private void cancelScheduledFlush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ignored) {
+            Log.w(TAG, name + " could not queue a flush; pool shut down");
+        }
+    }
+}
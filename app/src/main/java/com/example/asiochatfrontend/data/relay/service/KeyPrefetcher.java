@@ -0,0 +1,90 @@
+package com.example.asiochatfrontend.data.relay.service;
+
+import android.util.Log;
+
+import com.example.asiochatfrontend.core.model.dto.ChatDto;
+import com.example.asiochatfrontend.domain.repository.ChatRepository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads the key epochs a chat's history needs before it is decrypted, with
+ * the relay's bulk key endpoints instead of one call per message timestamp.
+ * The range starts at the chat's oldest sync mark, since everything before
+ * it is already stored decrypted; a chat never synced gets every epoch.
+ * Only group chats have key history to load. Private messages to us are
+ * encrypted with our own keys, so a private chat needs just the other
+ * member's newest public key, for sending.
+ * A chat is prefetched at most once per {@code minIntervalMs}.
+ */
+public class KeyPrefetcher {
+    private static final String TAG = "KeyPrefetcher";
+
+    private final RelayAuthService authService;
+    private final ChatRepository chatRepository;
+    private final ChatSyncMarks syncMarks;
+    private final String currentUserId;
+    private final long minIntervalMs;
+
+    private final Map<String, Long> prefetchedAt = new ConcurrentHashMap<>();
+
+    public KeyPrefetcher(RelayAuthService authService, ChatRepository chatRepository, ChatSyncMarks syncMarks,
+                         String currentUserId, long minIntervalMs) {
+        this.authService = authService;
+        this.chatRepository = chatRepository;
+        this.syncMarks = syncMarks;
+        this.currentUserId = currentUserId;
+        this.minIntervalMs = minIntervalMs;
+    }
+
+    /** Fetch and store the chat's key epochs; blocks, call off the main thread */
+    public void prefetchChat(String chatId) {
+        Long last = prefetchedAt.get(chatId);
+        long now = System.currentTimeMillis();
+        if (last != null && now - last < minIntervalMs) return;
+
+        ChatDto chat = chatRepository.getChatById(chatId);
+        if (chat == null) return;
+        prefetchedAt.put(chatId, now);
+
+        try {
+            if (Boolean.TRUE.equals(chat.getGroup())) {
+                long from = Math.min(
+                        syncMarks.get(ChatSyncMarks.MESSAGES, chatId),
+                        syncMarks.get(ChatSyncMarks.MEDIA, chatId));
+                if (authService.prefetchSymmetricKeys(chatId, from) < 0) {
+                    prefetchedAt.remove(chatId); // nothing came back; try again next open
+                }
+                return;
+            }
+
+            List<String> recipients = chat.getRecipients();
+            if (recipients == null) return;
+            for (String userId : recipients) {
+                if (userId == null || userId.equals(currentUserId)) continue;
+                authService.getPublicKey(userId, now); // served from cache once fetched
+            }
+        } catch (Exception e) {
+            prefetchedAt.remove(chatId);
+            Log.e(TAG, "Key prefetch failed for chat: " + chatId, e);
+        }
+    }
+
+    /** Prefetch the user's most recently active chats on the executor */
+    public void prefetchRecentChats(int limit, Executor executor) {
+        executor.execute(() -> {
+            try {
+                List<ChatDto> chats = chatRepository.getRecentChatsForUser(currentUserId, limit);
+                for (ChatDto chat : chats) {
+                    prefetchChat(chat.getChatId());
+                }
+                Log.d(TAG, "Prefetched keys for " + chats.size() + " recent chats");
+            } catch (Exception e) {
+                Log.e(TAG, "Recent chat key prefetch failed", e);
+            }
+        });
+    }
+}
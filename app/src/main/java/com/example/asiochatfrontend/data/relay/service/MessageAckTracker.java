@@ -0,0 +1,306 @@
+package com.example.asiochatfrontend.data.relay.service;
+
+import android.util.Log;
+
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
+import com.example.asiochatfrontend.data.relay.network.RttHistogram;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matches sent messages with the relay's MESSAGE_ACK. A message the relay
+ * has not acked within {@code ackTimeoutMs} is sent again, up to
+ * {@code maxAttempts} times, then reported as not delivered.
+ * Relays that never ack are common, so until the relay has acked at least
+ * one message a confirmed socket write counts as delivered, with no
+ * timeout and no resend.
+ * Also keeps send-to-ack and send-to-read latencies of recent messages,
+ * measured from the first attempt.
+ */
+public class MessageAckTracker {
+    private static final String TAG = "MessageAckTracker";
+    private static final int LATENCY_WINDOW = 512;
+    private static final int MAX_AWAITING_READ = 1_000;
+
+    /** Reads take seconds to days, so they get a coarser scale than acks */
+    private static final long[] READ_BUCKET_BOUNDS_MS = {
+            1_000, 5_000, 30_000, 60_000, 300_000, 1_800_000, 3_600_000, 86_400_000, Long.MAX_VALUE};
+
+    public interface Sender {
+        /** Queue one attempt; completes with false if it never reached the socket */
+        CompletableFuture<Boolean> send() throws Exception;
+    }
+
+    private static final class PendingAck {
+        final String chatId;
+        final Sender sender;
+        final long firstSentAt;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        int attempts = 0;             // guarded by this
+        ScheduledFuture<?> timeout;   // guarded by this
+        volatile long serverTimestamp = -1;
+
+        PendingAck(String chatId, Sender sender, long firstSentAt) {
+            this.chatId = chatId;
+            this.sender = sender;
+            this.firstSentAt = firstSentAt;
+        }
+    }
+
+    private static final class AwaitingRead {
+        final String chatId;
+        final long firstSentAt;
+        long serverTimestamp; // -1 until the relay echoes the message; guarded by the tracker
+
+        AwaitingRead(String chatId, long firstSentAt, long serverTimestamp) {
+            this.chatId = chatId;
+            this.firstSentAt = firstSentAt;
+            this.serverTimestamp = serverTimestamp;
+        }
+    }
+
+    private final long ackTimeoutMs;
+    private final int maxAttempts;
+    private final Map<String, PendingAck> pending = new ConcurrentHashMap<>();
+    private volatile boolean relayAcks = false; // set by the first MESSAGE_ACK
+
+    // acked messages nobody has read yet, oldest dropped first; guarded by this
+    private final Map<String, AwaitingRead> awaitingRead = new LinkedHashMap<String, AwaitingRead>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AwaitingRead> eldest) {
+            return size() > MAX_AWAITING_READ;
+        }
+    };
+    private final RttHistogram sendToAck = new RttHistogram(LATENCY_WINDOW);                          // guarded by this
+    private final RttHistogram sendToRead = new RttHistogram(LATENCY_WINDOW, READ_BUCKET_BOUNDS_MS); // guarded by this
+    private long acked = 0;    // guarded by this
+    private long written = 0;  // delivered on the socket write alone; guarded by this
+    private long retried = 0;  // guarded by this
+    private long timedOut = 0; // guarded by this
+
+    public MessageAckTracker(long ackTimeoutMs, int maxAttempts) {
+        this.ackTimeoutMs = ackTimeoutMs;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Send a message and wait for the relay to ack it, resending on timeout.
+     * Tracking a message that is already in flight joins the running attempt.
+     *
+     * @return completes with true once acked, or once written while the
+     *         relay has not acked anything yet; false once out of attempts
+     */
+    public CompletableFuture<Boolean> track(String messageId, String chatId, Sender sender) {
+        PendingAck entry = new PendingAck(chatId, sender, System.currentTimeMillis());
+        PendingAck running = pending.putIfAbsent(messageId, entry);
+        if (running != null) return running.result;
+
+        attempt(messageId, entry);
+        return entry.result;
+    }
+
+    /** The relay stored the message; late and repeated acks are ignored */
+    public void onAck(String messageId) {
+        if (!relayAcks) {
+            relayAcks = true;
+            Log.d(TAG, "Relay acks messages; waiting for acks from now on");
+        }
+        PendingAck entry = pending.remove(messageId);
+        if (entry == null) return;
+        cancelTimeout(entry);
+
+        synchronized (this) {
+            acked++;
+            sendToAck.record(System.currentTimeMillis() - entry.firstSentAt);
+            awaitingRead.put(messageId, new AwaitingRead(entry.chatId, entry.firstSentAt, entry.serverTimestamp));
+        }
+        entry.result.complete(true);
+    }
+
+    public boolean isRelayAcking() {
+        return relayAcks;
+    }
+
+    /** The relay echoed our message back with the time it stored it */
+    public void onServerTimestamp(String messageId, long timestamp) {
+        PendingAck entry = pending.get(messageId);
+        if (entry != null) {
+            entry.serverTimestamp = timestamp;
+        }
+        synchronized (this) {
+            AwaitingRead read = awaitingRead.get(messageId);
+            if (read != null) {
+                read.serverTimestamp = timestamp;
+            }
+        }
+    }
+
+    /** Someone else read the message; only the first reader counts */
+    public synchronized void onRead(String messageId) {
+        AwaitingRead read = awaitingRead.remove(messageId);
+        if (read != null) {
+            sendToRead.record(System.currentTimeMillis() - read.firstSentAt);
+        }
+    }
+
+    /**
+     * Someone else read the chat up to a message. Ours count as read if the
+     * relay stored them at or before the watermark, or if we sent them no
+     * later than the watermark's message. Ones the watermark does not
+     * provably cover keep waiting.
+     */
+    public synchronized void onChatRead(String chatId, String upToMessageId, long upToTimestamp) {
+        AwaitingRead upToMessage = upToMessageId != null ? awaitingRead.get(upToMessageId) : null;
+        long now = System.currentTimeMillis();
+        Iterator<AwaitingRead> it = awaitingRead.values().iterator();
+        while (it.hasNext()) {
+            AwaitingRead read = it.next();
+            if (!read.chatId.equals(chatId)) continue;
+
+            boolean covered = (read.serverTimestamp >= 0 && read.serverTimestamp <= upToTimestamp)
+                    || (upToMessage != null && read.firstSentAt <= upToMessage.firstSentAt);
+            if (covered) {
+                sendToRead.record(now - read.firstSentAt);
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(pending.size(), acked, written, retried, timedOut, sendToAck, sendToRead);
+    }
+
+    //==============================
+    // Attempts
+    //==============================
+    private void attempt(String messageId, PendingAck entry) {
+        synchronized (entry) {
+            if (entry.result.isDone()) return;
+            entry.attempts++;
+            try {
+                entry.timeout = AppExecutors.timer().schedule(
+                        () -> onTimeout(messageId, entry), ackTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                Log.w(TAG, "Ack timeout not scheduled for " + messageId, e);
+            }
+        }
+
+        CompletableFuture<Boolean> write;
+        try {
+            write = entry.sender.send();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to send " + messageId, e);
+            write = CompletableFuture.completedFuture(false);
+        }
+        write.whenComplete((queued, error) -> {
+            // nothing went out, so no ack is coming; leave it for the next outbox flush
+            if (error != null || !Boolean.TRUE.equals(queued)) {
+                giveUp(messageId, entry, "not written to the socket");
+            } else if (!relayAcks) {
+                confirmWritten(messageId, entry);
+            }
+        });
+    }
+
+    /** The relay has not shown it acks; a confirmed write is as good as it gets */
+    private void confirmWritten(String messageId, PendingAck entry) {
+        if (!pending.remove(messageId, entry)) return; // acked meanwhile
+        cancelTimeout(entry);
+
+        synchronized (this) {
+            written++;
+            awaitingRead.put(messageId, new AwaitingRead(entry.chatId, entry.firstSentAt, entry.serverTimestamp));
+        }
+        entry.result.complete(true);
+    }
+
+    private void onTimeout(String messageId, PendingAck entry) {
+        boolean retry;
+        synchronized (entry) {
+            if (entry.result.isDone()) return;
+            retry = entry.attempts < maxAttempts;
+        }
+
+        if (retry) {
+            synchronized (this) {
+                retried++;
+            }
+            Log.d(TAG, "No ack for " + messageId + " within " + ackTimeoutMs + "ms, sending again");
+            attempt(messageId, entry);
+        } else {
+            synchronized (this) {
+                timedOut++;
+            }
+            giveUp(messageId, entry, "no ack after " + maxAttempts + " attempts");
+        }
+    }
+
+    private void giveUp(String messageId, PendingAck entry, String reason) {
+        if (!pending.remove(messageId, entry)) return;
+        cancelTimeout(entry);
+        Log.w(TAG, "Message " + messageId + " not delivered: " + reason);
+        entry.result.complete(false);
+    }
+
+    private void cancelTimeout(PendingAck entry) {
+        synchronized (entry) {
+            if (entry.timeout != null) {
+                entry.timeout.cancel(false);
+                entry.timeout = null;
+            }
+        }
+    }
+
+    /** Snapshot for logging and export */
+    public static final class Stats {
+        public final int pending;
+        public final long acked;
+        public final long written;
+        public final long retried;
+        public final long timedOut;
+        public final long ackP50Ms;
+        public final long ackP90Ms;
+        public final long ackP99Ms;
+        public final long readP50Ms;
+        public final long readP90Ms;
+        /** Samples per bucket, keyed by the bucket's upper bound in ms */
+        public final Map<Long, Integer> sendToAckBuckets;
+        public final Map<Long, Integer> sendToReadBuckets;
+
+        Stats(int pending, long acked, long written, long retried, long timedOut,
+              RttHistogram sendToAck, RttHistogram sendToRead) {
+            this.pending = pending;
+            this.acked = acked;
+            this.written = written;
+            this.retried = retried;
+            this.timedOut = timedOut;
+            this.ackP50Ms = sendToAck.getPercentileMs(0.5);
+            this.ackP90Ms = sendToAck.getPercentileMs(0.9);
+            this.ackP99Ms = sendToAck.getPercentileMs(0.99);
+            this.readP50Ms = sendToRead.getPercentileMs(0.5);
+            this.readP90Ms = sendToRead.getPercentileMs(0.9);
+            this.sendToAckBuckets = sendToAck.getBuckets();
+            this.sendToReadBuckets = sendToRead.getBuckets();
+        }
+
+        @Override
+        public String toString() {
+            return "AckStats{" +
+                    "pending=" + pending +
+                    ", acked=" + acked +
+                    ", written=" + written +
+                    ", retried=" + retried +
+                    ", timedOut=" + timedOut +
+                    ", ack p50/p90/p99=" + ackP50Ms + "/" + ackP90Ms + "/" + ackP99Ms + "ms" +
+                    ", read p50/p90=" + readP50Ms + "/" + readP90Ms + "ms" +
+                    '}';
+        }
+    }
+}
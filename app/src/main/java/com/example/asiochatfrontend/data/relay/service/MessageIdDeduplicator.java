@@ -0,0 +1,123 @@
+package com.example.asiochatfrontend.data.relay.service;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Remembers recently ingested message ids so relay redeliveries are dropped.
+ * Ids live in a ring of buckets, each covering {@code windowMs / bucketCount};
+ * moving to the next bucket clears the oldest one, so an id is remembered for
+ * at least {@code windowMs * (bucketCount - 1) / bucketCount}. A bucket that
+ * fills up early also moves the ring on, which caps memory at
+ * {@code capacity} ids however fast messages arrive.
+ * Ids older than the window fall back to a storage check supplied by the
+ * caller. Shared by the text and media ingestion paths.
+ */
+public class MessageIdDeduplicator {
+    private static final int DEFAULT_BUCKET_COUNT = 4;
+
+    private final long bucketSpanNs;
+    private final int bucketCapacity;
+    private final Set<String>[] buckets;
+    private int current = 0;
+    private long currentStartNs;
+
+    public MessageIdDeduplicator(long windowMs, int capacity) {
+        this(windowMs, capacity, DEFAULT_BUCKET_COUNT);
+    }
+
+    @SuppressWarnings("unchecked")
+    public MessageIdDeduplicator(long windowMs, int capacity, int bucketCount) {
+        if (windowMs <= 0 || capacity <= 0 || bucketCount < 2) {
+            throw new IllegalArgumentException("windowMs and capacity must be positive, bucketCount at least 2");
+        }
+        this.bucketSpanNs = TimeUnit.MILLISECONDS.toNanos(windowMs) / bucketCount;
+        this.bucketCapacity = Math.max(1, capacity / bucketCount);
+        this.buckets = new Set[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new HashSet<>();
+        }
+        this.currentStartNs = System.nanoTime();
+    }
+
+    /** @return true if the id was seen within the window */
+    public synchronized boolean contains(String messageId) {
+        rotate(System.nanoTime());
+        return containsInWindow(messageId);
+    }
+
+    /**
+     * Record the id
+     *
+     * @return true if it was not seen within the window
+     */
+    public synchronized boolean markIfNew(String messageId) {
+        rotate(System.nanoTime());
+        if (containsInWindow(messageId)) return false;
+        Set<String> bucket = buckets[current];
+        if (bucket.size() >= bucketCapacity) {
+            advance();
+            currentStartNs = System.nanoTime();
+            bucket = buckets[current];
+        }
+        bucket.add(messageId);
+        return true;
+    }
+
+    /**
+     * Record the id, asking {@code isStored} about ids the window no longer
+     * covers. The storage check runs outside the lock.
+     *
+     * @return true if the id is neither in the window nor already stored
+     */
+    public boolean markIfNew(String messageId, Predicate<String> isStored) {
+        if (contains(messageId)) return false;
+        boolean stored = isStored.test(messageId);
+        return markIfNew(messageId) && !stored;
+    }
+
+    /** Drop the id again, e.g. when storing the message failed and a redelivery should be accepted */
+    public synchronized void forget(String messageId) {
+        for (Set<String> bucket : buckets) {
+            bucket.remove(messageId);
+        }
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (Set<String> bucket : buckets) {
+            size += bucket.size();
+        }
+        return size;
+    }
+
+    private boolean containsInWindow(String messageId) {
+        for (Set<String> bucket : buckets) {
+            if (bucket.contains(messageId)) return true;
+        }
+        return false;
+    }
+
+    private void rotate(long nowNs) {
+        long elapsedBuckets = (nowNs - currentStartNs) / bucketSpanNs;
+        if (elapsedBuckets <= 0) return;
+        if (elapsedBuckets >= buckets.length) {
+            for (Set<String> bucket : buckets) {
+                bucket.clear();
+            }
+            currentStartNs = nowNs;
+            return;
+        }
+        for (long i = 0; i < elapsedBuckets; i++) {
+            advance();
+        }
+        currentStartNs += elapsedBuckets * bucketSpanNs;
+    }
+
+    private void advance() {
+        current = (current + 1) % buckets.length;
+        buckets[current].clear();
+    }
+}
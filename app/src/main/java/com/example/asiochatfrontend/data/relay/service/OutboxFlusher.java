@@ -0,0 +1,266 @@
+package com.example.asiochatfrontend.data.relay.service;
+
+import android.util.Log;
+
+import com.example.asiochatfrontend.core.model.dto.ChatDto;
+import com.example.asiochatfrontend.core.model.dto.OutboxProgressDto;
+import com.example.asiochatfrontend.core.model.dto.abstracts.MessageDto;
+import com.example.asiochatfrontend.domain.repository.ChatRepository;
+import com.example.asiochatfrontend.ui.chat.bus.ChatUpdateBus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends the messages left PENDING while offline.
+ * Each chat gets a lane that prepares its messages in order and queues
+ * each frame without waiting for the previous one to be written, so
+ * encryption overlaps with the socket. Lanes for different chats run in
+ * parallel. At most {@code maxInFlight} messages are queued but not yet
+ * confirmed, across all lanes and flushes. Confirmed messages are stored
+ * once per chat; a message that fails stays PENDING for the next flush.
+ */
+public class OutboxFlusher {
+    private static final String TAG = "OutboxFlusher";
+
+    public interface Dispatcher<T extends MessageDto> {
+        /**
+         * Encrypt, frame and queue one message
+         *
+         * @return completes with true once the relay has the message
+         */
+        CompletableFuture<Boolean> dispatch(T message, ChatDto chat) throws Exception;
+    }
+
+    public interface SentHandler<T extends MessageDto> {
+        /** Store one chat's confirmed messages, oldest first */
+        void onSent(String chatId, List<T> sent);
+    }
+
+    private final ChatRepository chatRepository;
+    private final Executor laneExecutor;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final long flushTimeoutMs;
+
+    // message ids queued by a flush that has not confirmed them yet
+    private final Set<String> dispatching = ConcurrentHashMap.newKeySet();
+
+    private int total = 0;  // guarded by this
+    private int sent = 0;   // guarded by this
+    private int failed = 0; // guarded by this
+
+    public OutboxFlusher(ChatRepository chatRepository, Executor laneExecutor, int maxInFlight, long flushTimeoutMs) {
+        this.chatRepository = chatRepository;
+        this.laneExecutor = laneExecutor;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.flushTimeoutMs = flushTimeoutMs;
+    }
+
+    /**
+     * Reserve a message for a send made outside a flush, so no flush picks it
+     * up meanwhile
+     *
+     * @return false if a flush already has it
+     */
+    public boolean claim(String messageId) {
+        return dispatching.add(messageId);
+    }
+
+    public void release(String messageId) {
+        dispatching.remove(messageId);
+    }
+
+    /**
+     * Send {@code pending}, oldest first within each chat, and wait up to
+     * the flush timeout for the relay to confirm them. Messages confirmed
+     * after that are still stored as they complete.
+     *
+     * @return the messages confirmed within the timeout
+     */
+    public <T extends MessageDto> List<T> flush(List<T> pending, Dispatcher<T> dispatcher, SentHandler<T> sentHandler) {
+        Map<String, List<T>> byChat = new LinkedHashMap<>();
+        for (T message : pending) {
+            if (message.getChatId() == null || !dispatching.add(message.getId())) continue;
+            byChat.computeIfAbsent(message.getChatId(), id -> new ArrayList<>()).add(message);
+        }
+        if (byChat.isEmpty()) return Collections.emptyList();
+
+        int queued = 0;
+        for (List<T> lane : byChat.values()) {
+            queued += lane.size();
+        }
+        startProgress(queued);
+
+        List<T> confirmed = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> lanes = new ArrayList<>(byChat.size());
+        for (Map.Entry<String, List<T>> lane : byChat.entrySet()) {
+            CompletableFuture<Void> laneDone = new CompletableFuture<>();
+            lanes.add(laneDone);
+            laneExecutor.execute(() -> runLane(lane.getKey(), lane.getValue(), dispatcher, sentHandler, confirmed, laneDone));
+        }
+
+        try {
+            CompletableFuture.allOf(lanes.toArray(new CompletableFuture[0]))
+                    .get(flushTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.w(TAG, "Outbox flush still running after " + flushTimeoutMs + "ms; the rest is stored as it completes");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Log.e(TAG, "Outbox flush failed", e);
+        }
+
+        synchronized (confirmed) {
+            return new ArrayList<>(confirmed);
+        }
+    }
+
+    //==============================
+    // Lanes
+    //==============================
+    private <T extends MessageDto> void runLane(
+            String chatId,
+            List<T> messages,
+            Dispatcher<T> dispatcher,
+            SentHandler<T> sentHandler,
+            List<T> confirmed,
+            CompletableFuture<Void> laneDone) {
+        ChatDto chat = null;
+        try {
+            chat = chatRepository.getChatById(chatId);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to load chat " + chatId, e);
+        }
+        if (chat == null) {
+            Log.e(TAG, "Chat " + chatId + " not found, leaving " + messages.size() + " messages pending");
+            abandon(messages);
+            laneDone.complete(null);
+            return;
+        }
+
+        List<CompletableFuture<T>> writes = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            if (!acquireSlot()) {
+                // the socket is not draining; keep the rest pending, in order, for the next flush
+                Log.w(TAG, "No send slot within " + flushTimeoutMs + "ms, deferring the rest of " + chatId);
+                List<T> deferred = messages.subList(i, messages.size());
+                abandon(deferred);
+                break;
+            }
+            writes.add(dispatchOne(messages.get(i), chat, dispatcher));
+        }
+
+        // store in lane order once every write in the lane has settled
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]))
+                .thenRunAsync(() -> {
+                    List<T> sentInLane = new ArrayList<>();
+                    for (CompletableFuture<T> write : writes) {
+                        T message = write.join();
+                        if (message != null) sentInLane.add(message);
+                    }
+                    if (!sentInLane.isEmpty()) {
+                        try {
+                            sentHandler.onSent(chatId, sentInLane);
+                            confirmed.addAll(sentInLane);
+                        } catch (Exception e) {
+                            Log.e(TAG, "Failed to store sent messages for " + chatId, e);
+                        }
+                    }
+                }, laneExecutor)
+                .whenComplete((ignored, error) -> {
+                    for (T message : messages) {
+                        dispatching.remove(message.getId());
+                    }
+                    laneDone.complete(null);
+                });
+    }
+
+    private boolean acquireSlot() {
+        try {
+            return inFlight.tryAcquire(flushTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void abandon(List<? extends MessageDto> messages) {
+        for (MessageDto message : messages) {
+            settle(false);
+            dispatching.remove(message.getId());
+        }
+    }
+
+    /**
+     * Queue one message on an acquired send slot
+     *
+     * @return completes with the message once confirmed, or null if it failed
+     */
+    private <T extends MessageDto> CompletableFuture<T> dispatchOne(T message, ChatDto chat, Dispatcher<T> dispatcher) {
+        CompletableFuture<Boolean> write;
+        try {
+            write = dispatcher.dispatch(message, chat);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to send pending message " + message.getId(), e);
+            write = null;
+        }
+        if (write == null) {
+            inFlight.release();
+            settle(false);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return write.handle((ok, error) -> {
+            inFlight.release();
+            boolean delivered = error == null && Boolean.TRUE.equals(ok);
+            if (!delivered) {
+                Log.e(TAG, "Pending message not delivered: " + message.getId(), error);
+            }
+            settle(delivered);
+            return delivered ? message : null;
+        });
+    }
+
+    //==============================
+    // Progress
+    //==============================
+    private synchronized void startProgress(int queued) {
+        if (sent + failed >= total) {
+            total = 0;
+            sent = 0;
+            failed = 0;
+        }
+        total += queued;
+        postProgress();
+    }
+
+    private synchronized void settle(boolean delivered) {
+        if (delivered) {
+            sent++;
+        } else {
+            failed++;
+        }
+        postProgress();
+    }
+
+    private void postProgress() {
+        OutboxProgressDto progress = new OutboxProgressDto(
+                total, sent, failed, maxInFlight - inFlight.availablePermits());
+        ChatUpdateBus.postOutboxProgress(progress);
+        if (progress.isFinished()) {
+            Log.i(TAG, "Outbox flushed: " + progress);
+        }
+    }
+}
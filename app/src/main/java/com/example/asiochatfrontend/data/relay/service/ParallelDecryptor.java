@@ -0,0 +1,158 @@
+package com.example.asiochatfrontend.data.relay.service;
+
+import android.util.Log;
+
+import com.example.asiochatfrontend.core.model.dto.abstracts.MessageDto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Decrypts a batch of messages on the crypto pool. The batch is split into
+ * contiguous chunks, at most {@code parallelism} of them run at once and the
+ * calling thread works through the last chunk itself, so a batch never
+ * waits on a pool busy with other work. Batches smaller than
+ * {@code minChunkSize} are decrypted on the calling thread. Decrypted
+ * messages come back in batch order; each failure is reported with its
+ * message id and does not affect the rest of the batch.
+ * Decryption never blocks on the network. Whatever failed can be handed to
+ * a {@link Recovery} on the calling thread, e.g. to fetch missing keys once,
+ * and then only those messages are decrypted again.
+ */
+public class ParallelDecryptor<T extends MessageDto> {
+    private static final String TAG = "ParallelDecryptor";
+
+    public interface Decryption<T> {
+        /**
+         * Decrypt one message in place, with keys already held; runs on the
+         * crypto pool. A message that fails must be left as it was.
+         *
+         * @return the plaintext, or null if it could not be decrypted
+         */
+        String decrypt(T message) throws Exception;
+    }
+
+    public interface Recovery<T> {
+        /**
+         * Called on the calling thread with the messages that failed, in batch order
+         *
+         * @return true if they are worth decrypting again
+         */
+        boolean recover(List<T> failed);
+    }
+
+    public static class Result<T> {
+        private final List<T> decrypted;
+        private final Map<String, String> failures; // message id -> reason
+
+        Result(List<T> decrypted, Map<String, String> failures) {
+            this.decrypted = decrypted;
+            this.failures = failures;
+        }
+
+        public List<T> getDecrypted() {
+            return decrypted;
+        }
+
+        public Map<String, String> getFailures() {
+            return failures;
+        }
+    }
+
+    private final Executor cryptoExecutor;
+    private final int parallelism;
+    private final int minChunkSize;
+
+    public ParallelDecryptor(Executor cryptoExecutor, int parallelism, int minChunkSize) {
+        this.cryptoExecutor = cryptoExecutor;
+        this.parallelism = Math.max(1, parallelism);
+        this.minChunkSize = Math.max(1, minChunkSize);
+    }
+
+    /** Decrypt the batch, then retry whatever failed once if the recovery says so */
+    public Result<T> decryptAll(List<T> messages, Decryption<T> decryption, Recovery<T> recovery) {
+        Result<T> first = decryptAll(messages, decryption);
+        if (first.failures.isEmpty()) return first;
+
+        List<T> failed = new ArrayList<>(first.failures.size());
+        for (T message : messages) {
+            if (first.failures.containsKey(message.getId())) failed.add(message);
+        }
+        try {
+            if (!recovery.recover(failed)) return first;
+        } catch (Exception e) {
+            Log.e(TAG, "Recovery of " + failed.size() + " failed decrypts did not complete", e);
+            return first;
+        }
+
+        Result<T> retry = decryptAll(failed, decryption);
+        List<T> decrypted = new ArrayList<>(messages.size());
+        for (T message : messages) {
+            if (!retry.failures.containsKey(message.getId())) decrypted.add(message);
+        }
+        Log.d(TAG, "Recovered " + (failed.size() - retry.failures.size()) + " of " + failed.size() + " failed decrypts");
+        return new Result<>(decrypted, retry.failures);
+    }
+
+    public Result<T> decryptAll(List<T> messages, Decryption<T> decryption) {
+        if (messages.isEmpty()) {
+            return new Result<>(Collections.emptyList(), Collections.emptyMap());
+        }
+
+        int chunks = Math.max(1, Math.min(parallelism, messages.size() / minChunkSize));
+        int chunkSize = (messages.size() + chunks - 1) / chunks;
+
+        // each chunk writes only its own slots
+        String[] failures = new String[messages.size()];
+        List<CompletableFuture<Void>> pending = new ArrayList<>(chunks - 1);
+        int start = 0;
+        for (int chunk = 0; chunk < chunks - 1; chunk++) {
+            int from = start, to = start + chunkSize;
+            pending.add(CompletableFuture.runAsync(
+                    () -> decryptRange(messages, from, to, decryption, failures), cryptoExecutor));
+            start = to;
+        }
+        decryptRange(messages, start, messages.size(), decryption, failures);
+
+        for (int chunk = 0; chunk < pending.size(); chunk++) {
+            try {
+                pending.get(chunk).join();
+            } catch (Exception e) {
+                // decryptRange catches per message; only a lost task ends up here
+                Log.e(TAG, "Decrypt chunk " + chunk + " did not complete", e);
+                int from = chunk * chunkSize, to = Math.min(from + chunkSize, messages.size());
+                for (int i = from; i < to; i++) {
+                    if (failures[i] == null) failures[i] = "chunk did not complete";
+                }
+            }
+        }
+
+        List<T> decrypted = new ArrayList<>(messages.size());
+        Map<String, String> failed = new LinkedHashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            if (failures[i] == null) {
+                decrypted.add(messages.get(i));
+            } else {
+                failed.put(messages.get(i).getId(), failures[i]);
+            }
+        }
+        return new Result<>(decrypted, failed);
+    }
+
+    private void decryptRange(List<T> messages, int from, int to, Decryption<T> decryption, String[] failures) {
+        for (int i = from; i < to; i++) {
+            try {
+                if (decryption.decrypt(messages.get(i)) == null) {
+                    failures[i] = "no plaintext";
+                }
+            } catch (Exception e) {
+                failures[i] = e.getClass().getSimpleName() + ": " + e.getMessage();
+            }
+        }
+    }
+}
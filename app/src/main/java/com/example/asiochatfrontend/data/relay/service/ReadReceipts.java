@@ -0,0 +1,59 @@
+package com.example.asiochatfrontend.data.relay.service;
+
+import com.example.asiochatfrontend.core.model.dto.ChatReadWatermarkDto;
+import com.example.asiochatfrontend.core.model.dto.MessageReadByDto;
+import com.example.asiochatfrontend.core.model.dto.abstracts.MessageDto;
+import com.example.asiochatfrontend.core.model.enums.MessageState;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Folds a batch of incoming read receipts so each message, or each chat
+ * and reader, is written once. Receipts from the current user are dropped,
+ * like in markMessageAsRead. Also holds the unread rule the per-chat
+ * counter is kept by.
+ */
+final class ReadReceipts {
+    private ReadReceipts() {
+    }
+
+    /**
+     * Whether the message counts towards the user's unread badge. The
+     * countUnread and markReadUpTo queries of MessageDao and MediaDao
+     * apply the same rule in SQL, so the counter and a recount agree.
+     */
+    static boolean isUnreadFor(MessageDto message, String userId) {
+        return message.getStatus() == MessageState.SENT
+                && !userId.equals(message.getJid())
+                && message.getWaitingMemebersList() != null
+                && message.getWaitingMemebersList().contains(userId);
+    }
+
+    /** messageId to the users who read it, in arrival order */
+    static Map<String, Set<String>> readersByMessage(List<MessageReadByDto> receipts, String currentUserId) {
+        Map<String, Set<String>> readers = new LinkedHashMap<>();
+        for (MessageReadByDto receipt : receipts) {
+            if (receipt.getMessageId() == null || receipt.getReadBy() == null) continue;
+            if (receipt.getReadBy().equals(currentUserId)) continue;
+            readers.computeIfAbsent(receipt.getMessageId(), id -> new LinkedHashSet<>()).add(receipt.getReadBy());
+        }
+        return readers;
+    }
+
+    /** The highest watermark per chat and reader */
+    static Collection<ChatReadWatermarkDto> latestWatermarks(List<ChatReadWatermarkDto> watermarks, String currentUserId) {
+        Map<String, ChatReadWatermarkDto> latest = new LinkedHashMap<>();
+        for (ChatReadWatermarkDto watermark : watermarks) {
+            if (watermark.getChatId() == null || watermark.getReadBy() == null) continue;
+            if (watermark.getReadBy().equals(currentUserId)) continue;
+            latest.merge(watermark.getChatId() + "|" + watermark.getReadBy(), watermark,
+                    (current, next) -> next.getUpToTimestamp() > current.getUpToTimestamp() ? next : current);
+        }
+        return latest.values();
+    }
+}
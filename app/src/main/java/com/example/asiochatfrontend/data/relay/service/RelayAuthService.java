@@ -2,6 +2,7 @@ package com.example.asiochatfrontend.data.relay.service;
 
 import android.util.Log;
 
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
 import com.example.asiochatfrontend.core.model.dto.PublicKeyDto;
 import com.example.asiochatfrontend.core.model.dto.SymmetricKeyDto;
 import com.example.asiochatfrontend.core.security.EncryptionManager;
@@ -9,6 +10,11 @@ import com.example.asiochatfrontend.core.service.AuthService;
 import com.example.asiochatfrontend.data.database.entity.EncryptionKeyEntity;
 import com.example.asiochatfrontend.data.relay.network.RelayApiClient;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
@@ -18,11 +24,17 @@ import javax.inject.Singleton;
 @Singleton
 public class RelayAuthService implements AuthService {
     private static final String TAG = "RelayAuthService";
+    private static final long SYMMETRIC_REFRESH_INTERVAL_MS = TimeUnit.MINUTES.toMillis(10);
 
     private final RelayApiClient relayApiClient;
     private final EncryptionManager encryptionManager;
     private final ConcurrentHashMap<String, PublicKeyDto> PublicKeyCache = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, SymmetricKeyDto> SymmetricKeyCache = new ConcurrentHashMap<>();
+    private final Map<String, Long> symmetricKeyRefreshedAt = new ConcurrentHashMap<>();
+    private final Set<String> symmetricKeyRefreshing = ConcurrentHashMap.newKeySet();
+    // chats whose newest key was checked with the relay since the socket last (re)connected
+    private final Set<String> symmetricKeyCheckedSinceConnect = ConcurrentHashMap.newKeySet();
+    // encoded public key -> envelope version its holder registered; unknown keys get legacy RSA
+    private final Map<String, Integer> envelopeVersions = new ConcurrentHashMap<>();
     private final String currentUserId;
 
     @Inject
@@ -115,6 +127,7 @@ public class RelayAuthService implements AuthService {
             PublicKeyDto keyDto = relayApiClient.getPublicKeyForTimestamp(userId, messageTimestamp);
             if (keyDto != null) {
                 PublicKeyCache.put(userId, keyDto);
+                rememberEnvelopeVersion(keyDto);
                 encryptionManager.insertPublicKey(keyDto);
                 return keyDto.getPublicKey();
             }
@@ -127,78 +140,152 @@ public class RelayAuthService implements AuthService {
         }
     }
 
-    // Retrieves a symmetric key for a chat and specific timestamp
+    /**
+     * Retrieves a symmetric key for a chat and specific timestamp. Served
+     * from the local key epochs; the relay is asked only when no stored key
+     * is old enough. A key past its validity is still used while a refresh
+     * runs in the background.
+     */
     @Override
     public String getSymmetricKey(String chatId, long messageTimestamp) {
+        SymmetricKeyDto keyDto = getSymmetricKeyDto(chatId, messageTimestamp);
+        return keyDto != null ? keyDto.getSymmetricKey() : null;
+    }
+
+    @Override
+    public SymmetricKeyDto getSymmetricKeyDto(String chatId, long messageTimestamp) {
         try {
-            if (SymmetricKeyCache.containsKey(chatId)) {
-                EncryptionKeyEntity cachedKey = encryptionManager.getSymmetricKeyForTimestamp(chatId, messageTimestamp);
-                if (cachedKey != null && encryptionManager.isKeyValid(cachedKey)) {
-                    SymmetricKeyDto latestBackendSymmetric = relayApiClient.getSymmetricKeyForTimestamp(chatId, messageTimestamp);
-                    if (latestBackendSymmetric != null) {
-                        SymmetricKeyCache.put(chatId, latestBackendSymmetric);
-                        encryptionManager.insertSymmetricKey(latestBackendSymmetric);
-                        return latestBackendSymmetric.getSymmetricKey();
-                    }
-                    Log.d(TAG, "Using cached symmetric key for chat: " + chatId);
-                    return cachedKey.getSymmetricKey();
+            SymmetricKeyDto localKey = encryptionManager.getSymmetricKeyDtoAt(chatId, messageTimestamp);
+            if (localKey != null) {
+                if (localKey.getExpiresAt() <= System.currentTimeMillis()) {
+                    refreshSymmetricKeyAsync(chatId);
                 }
+                return localKey;
             }
 
-            Log.d(TAG, "Fetching symmetric key from relay for chat: " + chatId);
-            SymmetricKeyDto keyDto = relayApiClient.getSymmetricKeyForTimestamp(chatId, messageTimestamp);
-            if (keyDto != null) {
-                SymmetricKeyCache.put(chatId, keyDto);
-                encryptionManager.insertSymmetricKey(keyDto);
-                return keyDto.getSymmetricKey();
-            }
-
-            Log.w(TAG, "No symmetric key returned from relay for chat: " + chatId);
-            return null;
+            return fetchSymmetricKey(chatId, messageTimestamp);
         } catch (Exception e) {
-            Log.e(TAG, "Exception while fetching symmetric key for chat: " + chatId, e);
+            Log.e(TAG, "Exception while getting symmetric key for chat: " + chatId, e);
             return null;
         }
     }
 
+    /** A chat may have a new key; refresh from the relay in the background now */
     @Override
-    public SymmetricKeyDto getSymmetricKeyDto(String chatId, long messageTimestamp) {
-        try {
-            if (SymmetricKeyCache.containsKey(chatId)) {
-                EncryptionKeyEntity cachedKey = encryptionManager.getSymmetricKeyForTimestamp(chatId, messageTimestamp);
-                if (cachedKey != null && encryptionManager.isKeyValid(cachedKey)) {
-                    Log.d(TAG, "Using cached symmetric key for chat: " + chatId);
-                    return symmetricEntityToDto(cachedKey);
-                }
-            }
+    public void onSymmetricKeyRotated(String chatId) {
+        symmetricKeyCheckedSinceConnect.remove(chatId);
+        symmetricKeyRefreshedAt.remove(chatId);
+        refreshSymmetricKeyAsync(chatId);
+    }
 
-            Log.d(TAG, "Fetching symmetric key from relay for chat: " + chatId);
-            SymmetricKeyDto keyDto = relayApiClient.getSymmetricKeyForTimestamp(chatId, messageTimestamp);
-            if (keyDto != null) {
-                SymmetricKeyCache.put(chatId, keyDto);
-                encryptionManager.insertSymmetricKey(keyDto);
-                return keyDto;
+    /**
+     * Keys may have rotated while we were offline. Each chat's newest key is
+     * checked with the relay again before its next send, and public keys are
+     * fetched fresh on next use.
+     */
+    public void onConnectionRestored() {
+        symmetricKeyCheckedSinceConnect.clear();
+        PublicKeyCache.clear();
+    }
+
+    /** Store the chat's current key from the relay once per connection, before we encrypt with it */
+    private void ensureNewestSymmetricKey(String chatId) {
+        if (!symmetricKeyCheckedSinceConnect.add(chatId)) return;
+        try {
+            if (fetchSymmetricKey(chatId, System.currentTimeMillis()) == null) {
+                symmetricKeyCheckedSinceConnect.remove(chatId); // ask again on the next send
+                return;
             }
+            symmetricKeyRefreshedAt.put(chatId, System.currentTimeMillis());
+        } catch (Exception e) {
+            symmetricKeyCheckedSinceConnect.remove(chatId);
+            Log.e(TAG, "Could not check the newest symmetric key for chat: " + chatId, e);
+        }
+    }
 
+    /** Ask the relay for the chat's key at the timestamp and store it */
+    private SymmetricKeyDto fetchSymmetricKey(String chatId, long messageTimestamp) {
+        Log.d(TAG, "Fetching symmetric key from relay for chat: " + chatId);
+        SymmetricKeyDto keyDto = relayApiClient.getSymmetricKeyForTimestamp(chatId, messageTimestamp);
+        if (keyDto == null) {
             Log.w(TAG, "No symmetric key returned from relay for chat: " + chatId);
             return null;
-        } catch (Exception e) {
-            Log.e(TAG, "Exception while fetching symmetric key for chat: " + chatId, e);
-            return null;
         }
+
+        // added as an epoch; insertSymmetricKey would overwrite our newest key with an older one
+        encryptionManager.storeSymmetricKeys(chatId, Collections.singletonList(keyDto));
+        return keyDto;
+    }
+
+    private void refreshSymmetricKeyAsync(String chatId) {
+        Long refreshedAt = symmetricKeyRefreshedAt.get(chatId);
+        if (refreshedAt != null && System.currentTimeMillis() - refreshedAt < SYMMETRIC_REFRESH_INTERVAL_MS) return;
+        if (!symmetricKeyRefreshing.add(chatId)) return;
+
+        AppExecutors.io().execute(() -> {
+            try {
+                fetchSymmetricKey(chatId, System.currentTimeMillis());
+            } catch (Exception e) {
+                Log.e(TAG, "Background symmetric key refresh failed for chat: " + chatId, e);
+            } finally {
+                symmetricKeyRefreshedAt.put(chatId, System.currentTimeMillis());
+                symmetricKeyRefreshing.remove(chatId);
+            }
+        });
+    }
+
+    //==============================
+    // Bulk prefetch
+    //==============================
+    /**
+     * Store every key epoch of the chat from {@code from} on with one relay
+     * call and one transaction, so decrypting its history never waits on
+     * the relay per message.
+     *
+     * @return how many epochs were new, -1 if the relay returned none
+     */
+    @Override
+    public int prefetchSymmetricKeys(String chatId, long from) {
+        List<SymmetricKeyDto> keys = relayApiClient.getAllSymmetricKeysForChat(chatId);
+        if (keys.isEmpty()) return -1;
+
+        List<SymmetricKeyDto> needed = new ArrayList<>();
+        SymmetricKeyDto covering = null; // the epoch in effect at `from`
+        for (SymmetricKeyDto key : keys) {
+            if (key.getCreatedAt() >= from) {
+                needed.add(key);
+            } else if (covering == null || key.getCreatedAt() > covering.getCreatedAt()) {
+                covering = key;
+            }
+        }
+        if (covering != null) needed.add(covering);
+
+        int stored = encryptionManager.storeSymmetricKeys(chatId, needed);
+        symmetricKeyRefreshedAt.put(chatId, System.currentTimeMillis());
+        Log.d(TAG, "Prefetched " + stored + " symmetric key epochs for chat: " + chatId);
+        return stored;
     }
 
     @Override
     public String encryptWithPublicKey(String plainText, String recipientId, long timestamp) {
         try {
             String publicKey = getPublicKey(recipientId, timestamp);
-            return publicKey != null ? encryptionManager.encryptMessagePublic(plainText, publicKey) : null;
+            if (publicKey == null) return null;
+            Integer envelopeVersion = envelopeVersions.get(publicKey);
+            return encryptionManager.encryptMessagePublic(plainText, publicKey,
+                    envelopeVersion != null ? envelopeVersion : 0);
         } catch (Exception e) {
             Log.e(TAG, "Exception while encrypting with public key", e);
             return null;
         }
     }
 
+    private void rememberEnvelopeVersion(PublicKeyDto keyDto) {
+        if (keyDto != null && keyDto.getPublicKey() != null) {
+            envelopeVersions.put(keyDto.getPublicKey(), keyDto.getEnvelopeVersion());
+        }
+    }
+
     @Override
     public String decryptWithPrivateKey(String encryptedText, long timestamp) {
         try {
@@ -212,7 +299,8 @@ public class RelayAuthService implements AuthService {
     @Override
     public String encryptWithSymmetricKey(String plainText, String chatId, long timestamp) {
         try {
-            getSymmetricKey(chatId, timestamp); // fetch or refresh if needed
+            ensureNewestSymmetricKey(chatId); // a rotation we missed offline would make this unreadable
+            getSymmetricKey(chatId, timestamp); // fetch if nothing local covers the timestamp
             return encryptionManager.encryptMessageSymmetric(plainText, chatId);
         } catch (Exception e) {
             Log.e(TAG, "Exception while encrypting with symmetric key", e);
@@ -220,10 +308,15 @@ public class RelayAuthService implements AuthService {
         }
     }
 
+    /**
+     * Decrypt with the stored key epochs only; this runs on the crypto pool
+     * and must not wait on the relay. A null result means a key is missing:
+     * fetch the chat's epochs with {@link #prefetchSymmetricKeys} on the
+     * calling thread and try again.
+     */
     @Override
     public String decryptWithSymmetricKey(String combinedIvCiphertext, String chatId, long timestamp) {
         try {
-            getSymmetricKey(chatId, timestamp); // fetch or refresh if needed
             return encryptionManager.decryptMessageSymmetric(combinedIvCiphertext, chatId, timestamp);
         } catch (Exception e) {
             Log.e(TAG, "Exception while decrypting with symmetric key", e);
@@ -234,15 +327,7 @@ public class RelayAuthService implements AuthService {
     public void clearCache() {
         Log.d(TAG, "Clearing public and symmetric key caches...");
         PublicKeyCache.clear();
-        SymmetricKeyCache.clear();
-    }
-
-    private SymmetricKeyDto symmetricEntityToDto(EncryptionKeyEntity entity) {
-        return new SymmetricKeyDto(
-                entity.getChatId(),
-                entity.getSymmetricKey(),
-                entity.getCreatedAt(),
-                entity.createdAt + TimeUnit.DAYS.toMillis(7)
-        );
+        symmetricKeyRefreshedAt.clear();
+        encryptionManager.clearKeyCache();
     }
 }
@@ -30,7 +30,7 @@ import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
-public class RelayChatService implements ChatService, RelayWebSocketClient.RelayWebSocketListener {
+public class RelayChatService implements ChatService {
     private static final String TAG = "RelayChatService";
 
     private final String currentUserId;
@@ -60,19 +60,19 @@ public class RelayChatService implements ChatService, RelayWebSocketClient.Relay
         this.gson = gson;
         this.wsEventCallbacks = wsEventCallbacks;
 
-        webSocketClient.addListener(event -> {
-            try {
-                if (event.getType() == WebSocketEvent.EventType.CHAT) {
-                    ChatDto chatDto = gson.fromJson(event.getPayload(), ChatDto.class);
-                    chatRepository.updateChat(chatDto);
-                    Log.d(TAG, "Received chat update via WebSocket: " + chatDto.getChatId());
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error processing WebSocket event: " + event.getType(), e);
+        webSocketClient.subscribe(WebSocketEvent.EventType.CHAT, ChatDto.class, (chatDto, event) -> {
+            if (chatDto == null) return;
+            chatRepository.updateChat(chatDto);
+            if (Boolean.TRUE.equals(chatDto.getGroup())) {
+                // membership changes are when a group gets a new key
+                authService.onSymmetricKeyRotated(chatDto.getChatId());
             }
+            Log.d(TAG, "Received chat update via WebSocket: " + chatDto.getChatId());
         });
-
-        webSocketClient.addListener(this);
+        webSocketClient.subscribe(WebSocketEvent.EventType.CREATE_CHAT, JsonElement.class,
+                (payload, event) -> handleChatCreated());
+        webSocketClient.subscribe(WebSocketEvent.EventType.REMOVED_CHAT, String.class,
+                (chatId, event) -> handleRemovedFromChat(chatId));
     }
 
     @Override
@@ -278,35 +278,21 @@ public class RelayChatService implements ChatService, RelayWebSocketClient.Relay
         webSocketClient.sendEvent(event);
     }
 
-    @Override
-    public void onEvent(WebSocketEvent event) {
-        try {
-            Log.i("TAG", "WebSocket event received: " + event.toString());
-            switch (event.getType()) {
-                case CREATE_CHAT:
-                    // Fire load all chats event in UI
-                    for (OnWSEventCallback onWSEventCallback : wsEventCallbacks) {
-                        onWSEventCallback.onChatCreateEvent(null);
-                    }
-                    break;
-
-                case REMOVED_CHAT:
-                    if (event.getPayload() == null) {
-                        Log.e(TAG, "Received null payload in WebSocket event");
-                        return;
-                    }
-
-                    String chatId = gson.fromJson(event.getPayload(), String.class);
-                    for (OnWSEventCallback onWSEventCallback : wsEventCallbacks) {
-                        onWSEventCallback.onRemovedFromChat(chatId);
-                    }
-                    break;
-                default:
-                    Log.d(TAG, "Unhandled WebSocket event type: " + event.getType());
-                    break;
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error processing WebSocket event: " + event.getType(), e);
+    private void handleChatCreated() {
+        // Fire load all chats event in UI
+        for (OnWSEventCallback onWSEventCallback : wsEventCallbacks) {
+            onWSEventCallback.onChatCreateEvent(null);
+        }
+    }
+
+    private void handleRemovedFromChat(String chatId) {
+        if (chatId == null) {
+            Log.e(TAG, "Received null payload in WebSocket event");
+            return;
+        }
+
+        for (OnWSEventCallback onWSEventCallback : wsEventCallbacks) {
+            onWSEventCallback.onRemovedFromChat(chatId);
         }
     }
 
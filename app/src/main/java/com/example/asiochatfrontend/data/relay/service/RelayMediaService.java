@@ -14,14 +14,15 @@ import com.example.asiochatfrontend.core.service.MediaService;
 import com.example.asiochatfrontend.data.common.utils.FileUtils;
 import com.example.asiochatfrontend.data.database.entity.MediaEntity;
 import com.example.asiochatfrontend.data.relay.model.WebSocketEvent;
+import com.example.asiochatfrontend.data.relay.network.ChunkedUpload;
 import com.example.asiochatfrontend.data.relay.network.RelayApiClient;
 import com.example.asiochatfrontend.data.relay.network.RelayWebSocketClient;
 import com.example.asiochatfrontend.domain.repository.ChatRepository;
 import com.example.asiochatfrontend.domain.repository.MediaRepository;
 import com.example.asiochatfrontend.domain.repository.MessageRepository;
+import com.example.asiochatfrontend.domain.repository.TransactionRunner;
 import com.example.asiochatfrontend.ui.chat.bus.ChatUpdateBus;
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
 import java.io.File;
@@ -32,31 +33,42 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import javax.inject.Inject;
 
-public class RelayMediaService implements MediaService, RelayWebSocketClient.RelayWebSocketListener {
+public class RelayMediaService implements MediaService {
 
     private static final String TAG = "RelayMediaService";
+    private static final int HISTORY_PAGE_SIZE = 200;
+    private static final int HISTORY_MAX_PAGES = 25;
+    private static final int RECEIPT_BATCH_SIZE = 200;
+    private static final long RECEIPT_BATCH_DELAY_MS = 100;
 
     private final MediaRepository mediaRepository;
     private final MessageRepository messageRepository;
     private final ChatRepository chatRepository;
     private final RelayApiClient relayApiClient;
     private final RelayWebSocketClient webSocketClient;
-    private final ExecutorService threadPool = Executors.newFixedThreadPool(5);
 
     private final FileUtils fileUtils;
     private final String currentUserId;
     private final Gson gson;
+    private final MessageIdDeduplicator deduplicator;
+    private final ChatSyncMarks syncMarks;
+    private final TransactionRunner transactionRunner;
+    private final OutboxFlusher outboxFlusher;
+    private final IncomingMessageBatcher<MessageReadByDto> receiptBatcher;
+    private final IncomingMessageBatcher<ChatReadWatermarkDto> watermarkBatcher;
 
     private final MutableLiveData<MessageDto> incomingMediaLiveData = new MutableLiveData<>();
     private final MutableLiveData<MessageDto> outgoingMediaLiveData = new MutableLiveData<>();
@@ -71,7 +83,11 @@ public class RelayMediaService implements MediaService, RelayWebSocketClient.Rel
             RelayWebSocketClient webSocketClient,
             FileUtils fileUtils,
             String currentUserId,
-            Gson gson
+            Gson gson,
+            MessageIdDeduplicator deduplicator,
+            ChatSyncMarks syncMarks,
+            TransactionRunner transactionRunner,
+            OutboxFlusher outboxFlusher
     ) {
         this.mediaRepository = mediaRepository;
         this.messageRepository = messageRepository;
@@ -81,16 +97,37 @@ public class RelayMediaService implements MediaService, RelayWebSocketClient.Rel
         this.fileUtils = fileUtils;
         this.currentUserId = currentUserId;
         this.gson = gson;
+        this.deduplicator = deduplicator;
+        this.syncMarks = syncMarks;
+        this.transactionRunner = transactionRunner;
+        this.outboxFlusher = outboxFlusher;
+        this.receiptBatcher = new IncomingMessageBatcher<>(
+                "relay-media-receipts",
+                RECEIPT_BATCH_SIZE,
+                RECEIPT_BATCH_DELAY_MS,
+                this::applyReadReceipts
+        );
+        this.watermarkBatcher = new IncomingMessageBatcher<>(
+                "relay-media-watermarks",
+                RECEIPT_BATCH_SIZE,
+                RECEIPT_BATCH_DELAY_MS,
+                this::applyReadWatermarks
+        );
 
-        webSocketClient.addListener(this);
-        webSocketClient.addListener(event -> {
-            if (event.getType() == WebSocketEvent.EventType.CHAT) {
-                try {
-                    MediaMessageDto mediaMessageDto = gson.fromJson(event.getPayload(), MediaMessageDto.class);
-                    mediaRepository.saveMedia(mediaMessageDto);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error handling MEDIA_UPLOAD event", e);
-                }
+        webSocketClient.subscribe(WebSocketEvent.EventType.INCOMING, MediaMessageDto.class,
+                (message, event) -> handleIncomingMedia(message));
+        webSocketClient.subscribe(WebSocketEvent.EventType.MESSAGE_READ, MessageReadByDto.class,
+                (readByDto, event) -> handleMessageRead(readByDto));
+        webSocketClient.subscribe(WebSocketEvent.EventType.CHAT_READ, ChatReadWatermarkDto.class,
+                (watermark, event) -> handleChatRead(watermark));
+        webSocketClient.addCursorFlushBarrier(receiptBatcher::flush);
+        webSocketClient.addCursorFlushBarrier(watermarkBatcher::flush);
+        webSocketClient.subscribe(WebSocketEvent.EventType.CHAT, MediaMessageDto.class, (mediaMessageDto, event) -> {
+            if (mediaMessageDto == null) return;
+            try {
+                mediaRepository.saveMedia(mediaMessageDto);
+            } catch (Exception e) {
+                Log.e(TAG, "Error handling MEDIA_UPLOAD event", e);
             }
         });
     }
@@ -133,59 +170,26 @@ public class RelayMediaService implements MediaService, RelayWebSocketClient.Rel
                 return mediaMessageDto;
             }
 
-            // Save in local repository as sent and no timestamp (server will set it)
-            mediaMessageDto.setStatus(MessageState.SENT);
+            // Save in local repository as pending and no timestamp (server will set it)
+            mediaMessageDto.setStatus(MessageState.PENDING);
             mediaRepository.saveMedia(mediaMessageDto);
 
-            File mediaFile = mediaMessageDto.getPayload().getFile();
-            if (mediaFile == null || !mediaFile.exists()) {
+            ChunkedUpload upload = startUpload(mediaMessageDto);
+            if (upload == null) {
                 Log.e(TAG, "Media file is missing");
                 return null;
             }
-
-            byte[] fileBytes = FileUtils.readFileToByteArray(mediaFile);
-            String base64Data = null;
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                base64Data = Base64.getEncoder().encodeToString(fileBytes);
-            }
-
-            JsonObject rootPayload = new JsonObject();
-            rootPayload.addProperty("id", mediaMessageDto.getId());
-            rootPayload.addProperty("jid", mediaMessageDto.getJid());
-            rootPayload.addProperty("chatId", mediaMessageDto.getChatId());
-
-            if (mediaMessageDto.getWaitingMemebersList() != null) {
-                JsonArray waitingMembers = new JsonArray();
-                for (String member : mediaMessageDto.getWaitingMemebersList()) {
-                    waitingMembers.add(member);
+            upload.getResult().whenComplete((completed, error) -> {
+                if (error != null || !Boolean.TRUE.equals(completed)) {
+                    // left pending so the next sendPendingMessages retries it
+                    Log.e(TAG, "Media upload did not complete: " + upload.getId(), error);
+                    return;
                 }
-                rootPayload.add("waitingMemebersList", waitingMembers);
-            }
-
-            // Media Payload (matches .NET MediaDto expected structure)
-            if (mediaMessageDto.getPayload().getType() != MediaType.VIDEO) {
-                JsonObject mediaPayload = new JsonObject();
-                mediaPayload.addProperty("name", mediaMessageDto.getPayload().getFileName());
-                mediaPayload.addProperty("type", mediaMessageDto.getPayload().getContentType());
-                mediaPayload.addProperty("data", base64Data);
-
-                // This entire payload will go under 'payload'
-                rootPayload.add("payload", mediaPayload);
-
-                WebSocketEvent event = new WebSocketEvent(
-                        WebSocketEvent.EventType.CHAT,
-                        rootPayload,
-                        mediaMessageDto.getJid()
-                );
-
-                webSocketClient.sendEvent(event);
-            } else {
-                webSocketClient.sendVideoStreamEvent(mediaFile, mediaMessageDto, "video/mp4");
-            }
+                Log.i(TAG, "📎 Media message sent: " + mediaMessageDto.getId());
+                storeSentMedia(mediaMessageDto.getChatId(), Collections.singletonList(mediaMessageDto));
+                outgoingMediaLiveData.postValue(mediaMessageDto);
+            });
 
-            Log.i(TAG, "📎 Media message sent: " + mediaMessageDto.getId());
-            mediaMessageDto.setStatus(MessageState.SENT);
-            mediaRepository.saveMedia(mediaMessageDto);
             chatRepository.updateLastMessage(mediaMessageDto.getChatId(), mediaMessageDto.getId());
             ChatUpdateBus.postLastMessageUpdate(mediaMessageDto);
 
@@ -196,6 +200,54 @@ public class RelayMediaService implements MediaService, RelayWebSocketClient.Rel
         }
     }
 
+    /**
+     * Stream the media file in acked chunks; the start frame carries the
+     * metadata, so the file is never held in memory or base64-encoded.
+     *
+     * @return the upload, or null if the file is missing
+     */
+    private ChunkedUpload startUpload(MediaMessageDto mediaMessageDto) {
+        MediaDto media = mediaMessageDto.getPayload();
+        File mediaFile = media != null ? media.getFile() : null;
+        if (mediaFile == null || !mediaFile.exists()) {
+            return null;
+        }
+
+        String contentType = media.getContentType() != null
+                ? media.getContentType()
+                : (media.getType() == MediaType.VIDEO ? "video/mp4" : "application/octet-stream");
+        ChunkedUpload upload = webSocketClient.sendMediaStream(mediaFile, mediaMessageDto, contentType, media.getType());
+        upload.setProgressListener(progress -> ChatUpdateBus.postUploadProgress(toProgressDto(progress)));
+        return upload;
+    }
+
+    /**
+     * Cancel a media upload that is still queued or in flight
+     */
+    public boolean cancelUpload(String messageId) {
+        return webSocketClient.cancelMediaStream(messageId);
+    }
+
+    private static UploadProgressDto toProgressDto(ChunkedUpload upload) {
+        UploadProgressDto.Status status;
+        switch (upload.getState()) {
+            case SENDING:   status = UploadProgressDto.Status.UPLOADING; break;
+            case PAUSED:    status = UploadProgressDto.Status.PAUSED; break;
+            case COMPLETED: status = UploadProgressDto.Status.COMPLETED; break;
+            case FAILED:    status = UploadProgressDto.Status.FAILED; break;
+            case CANCELLED: status = UploadProgressDto.Status.CANCELLED; break;
+            case QUEUED:
+            default:        status = UploadProgressDto.Status.QUEUED; break;
+        }
+        return new UploadProgressDto(
+                upload.getId(),
+                upload.getChatId(),
+                status,
+                upload.getPercent(),
+                upload.getBytesPerSecond()
+        );
+    }
+
     @Override
     public MediaMessageDto getMediaMessage(String mediaId) throws Exception {
         MediaDto media = mediaRepository.getMediaById(mediaId);
@@ -289,51 +341,168 @@ public class RelayMediaService implements MediaService, RelayWebSocketClient.Rel
     @Override
     public List<MediaMessageDto> getMediaMessagesForChat(String chatId) {
         try {
-            List<MediaMessageDto> localMessages = mediaRepository.getMediaForChat(chatId);
-
-            if (!ServiceModule.getConnectionManager().isOnline()) {
-                // Offline mode, get messages from local storage
-                return localMessages;
+            if (ServiceModule.getConnectionManager().isOnline()) {
+                syncMediaHistory(chatId);
             }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to get messages from server, using local cache", e);
+        }
 
-            // First try to get from backend
-            List<MediaMessageDto> remoteMessages = relayApiClient.getMediaMessagesForChat(chatId);
-            List<MediaMessageDto> chatMessages = new ArrayList<>();
+        return mediaRepository.getMediaForChat(chatId);
+    }
 
-            if (remoteMessages != null && !remoteMessages.isEmpty()) {
-                // Save to local repository
-                for (MediaMessageDto message : remoteMessages) {
-                    // Check if the message already exists in the local repository
-                    mediaRepository.saveMedia(message);
-                    chatMessages.add(message);
+    /**
+     * Fetch the chat's media messages newer than its sync mark, a page at a
+     * time. saveMedia merges status into rows that already exist. Relays
+     * without the paged route get the legacy full-history fetch instead.
+     */
+    private void syncMediaHistory(String chatId) {
+        long since = syncMarks.get(ChatSyncMarks.MEDIA, chatId);
+        Set<String> takenAtMark = new HashSet<>();
+        boolean merged = false;
+
+        try {
+            for (int page = 0; page < HISTORY_MAX_PAGES; page++) {
+                // the route is exclusive; ask from one millisecond earlier so the rest of the mark's millisecond comes too
+                List<MediaMessageDto> batch = relayApiClient.getMediaMessagesForChatSince(chatId, since - 1, HISTORY_PAGE_SIZE);
+                if (batch == null) {
+                    if (page == 0) {
+                        merged = syncMediaHistoryLegacy(chatId, since);
+                    }
+                    return;
+                }
+                List<MediaMessageDto> fresh = ChatSyncMarks.withoutIds(batch, takenAtMark);
+                if (fresh.isEmpty()) {
+                    if (batch.size() >= HISTORY_PAGE_SIZE) {
+                        Log.w(TAG, "Media history sync for " + chatId + " stopped: a full page at " + since + " held nothing new");
+                    }
+                    return;
                 }
 
-                return chatMessages;
+                merged = true;
+                long storedUpTo = storeHistoryPage(chatId, fresh, since);
+                if (storedUpTo < 0) return;
+                takenAtMark = ChatSyncMarks.idsAtMark(fresh, storedUpTo, since, takenAtMark);
+                since = storedUpTo;
+                if (batch.size() < HISTORY_PAGE_SIZE) return;
+            }
+            Log.d(TAG, "Media history sync for " + chatId + " stopped after " + HISTORY_MAX_PAGES + " pages");
+        } finally {
+            if (merged) {
+                recountUnread(chatId);
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to get messages from server, using local cache", e);
         }
+    }
 
-        // Fallback to local repository
-        return mediaRepository.getMediaForChat(chatId);
+    /**
+     * For relays without the paged route: fetch the chat's media once and
+     * store what is not older than the mark in page-sized slices, oldest first.
+     *
+     * @return true if anything was handed to storage
+     */
+    private boolean syncMediaHistoryLegacy(String chatId, long since) {
+        List<MediaMessageDto> remoteMessages = relayApiClient.getMediaMessagesForChat(chatId);
+        if (remoteMessages == null || remoteMessages.isEmpty()) return false;
+
+        List<MediaMessageDto> newer = new ArrayList<>();
+        for (MediaMessageDto message : remoteMessages) {
+            if (message.getTimestamp() == null || message.getTimestamp().getTime() >= since) {
+                newer.add(message);
+            }
+        }
+        if (newer.isEmpty()) return false;
+        newer.sort(Comparator.comparingLong(message ->
+                message.getTimestamp() != null ? message.getTimestamp().getTime() : Long.MAX_VALUE));
+
+        Log.d(TAG, "Paged media history unavailable for " + chatId + "; merging " + newer.size() + " messages");
+        for (int from = 0; from < newer.size(); from += HISTORY_PAGE_SIZE) {
+            List<MediaMessageDto> slice = newer.subList(from, Math.min(from + HISTORY_PAGE_SIZE, newer.size()));
+            since = storeHistoryPage(chatId, slice, since);
+            if (since < 0) break;
+        }
+        return true;
+    }
+
+    /**
+     * Save one page, oldest first, and move the chat's mark up to the newest
+     * message saved before the first one that failed. The failed message
+     * and everything after it are fetched again by the next sync. The page
+     * must hold only messages not yet taken by this sync.
+     *
+     * @return the new mark, or -1 if the sync should stop at this page
+     */
+    private long storeHistoryPage(String chatId, List<MediaMessageDto> batch, long since) {
+        long storedUpTo = since;
+        boolean complete = true;
+        for (MediaMessageDto message : batch) {
+            Date timestamp = message.getTimestamp();
+            try {
+                mediaRepository.saveMedia(message);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to store history media " + message.getId(), e);
+                // stop short of the failed message's millisecond, so the next sync fetches it again
+                if (timestamp != null) {
+                    storedUpTo = Math.min(storedUpTo, timestamp.getTime() - 1);
+                }
+                complete = false;
+                break;
+            }
+            deduplicator.markIfNew(message.getId());
+            if (timestamp != null) {
+                storedUpTo = Math.max(storedUpTo, timestamp.getTime());
+            }
+        }
+
+        if (storedUpTo < since) return -1; // failed at the mark's own millisecond
+        syncMarks.advance(ChatSyncMarks.MEDIA, chatId, storedUpTo);
+        return complete ? storedUpTo : -1;
+    }
+
+    /** Store what the batchers still hold; called before the shared pools shut down */
+    public void shutdown() {
+        receiptBatcher.shutdown();
+        watermarkBatcher.shutdown();
+    }
+
+    /** Reset the chat's unread counter from the stored rows after a history merge */
+    private void recountUnread(String chatId) {
+        try {
+            int textUnread = messageRepository.getUnreadMessagesCount(chatId, currentUserId);
+            int mediaUnread = mediaRepository.getUnreadMessagesCount(chatId, currentUserId);
+            chatRepository.updateUnreadCount(chatId, textUnread + mediaUnread);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to recount unread messages for " + chatId, e);
+        }
     }
 
     @Override
     public List<MessageDto> sendPendingMessages() {
         List<MediaMessageDto> pendingMessages = mediaRepository.getPendingMessages();
-        List<MessageDto> updatedMessages = new ArrayList<>();
-        pendingMessages.forEach((pendingMessage) -> {
-            try {
-                // Send message and add to updated messages list
-                updatedMessages.add(createMediaMessage(pendingMessage));
-                Log.i(TAG, "Send pending message: " + pendingMessage.getId()
-                        + " for chatId: " + pendingMessage.getChatId());
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to send pending message: " + pendingMessage.getId());
+        Log.i(TAG, "Sending " + pendingMessages.size() + " pending media messages");
+        return new ArrayList<>(outboxFlusher.flush(
+                pendingMessages,
+                (message, chat) -> {
+                    ChunkedUpload upload = startUpload(message);
+                    if (upload == null) {
+                        throw new IllegalStateException("Media file is missing for " + message.getId());
+                    }
+                    return upload.getResult();
+                },
+                this::storeSentMedia
+        ));
+    }
+
+    /** One transaction for a chat's flushed media and its last message pointer */
+    private void storeSentMedia(String chatId, List<MediaMessageDto> sent) {
+        MediaMessageDto newest = sent.get(sent.size() - 1);
+        transactionRunner.runInTransaction(() -> {
+            for (MediaMessageDto message : sent) {
+                message.setStatus(MessageState.SENT);
+                mediaRepository.saveMedia(message);
             }
+            chatRepository.updateLastMessage(chatId, newest.getId());
         });
-
-        return updatedMessages;
+        ChatUpdateBus.postLastMessageUpdate(newest);
     }
 
     public boolean setMessageReadByUser(String messageId, String userId, String readBy) {
@@ -356,136 +525,123 @@ public class RelayMediaService implements MediaService, RelayWebSocketClient.Rel
         return true;
     }
 
+    /**
+     * Local half of marking a chat read: one update over the chat's media.
+     * The CHAT_READ watermark sent by the message service covers media too.
+     */
     public boolean setMessagesInChatReadByUser(String chatId, String userId) {
         try {
-            List<MediaMessageDto> messages = mediaRepository.getMediaForChat(chatId);
-            List<MediaMessageDto> remoteMessages = relayApiClient.getMediaMessagesForChat(chatId);
+            MessageDto lastText = messageRepository.getLastMessageForChat(chatId);
+            MessageDto lastMedia = mediaRepository.getLastMessageForChat(chatId);
+            long upTo = 0;
+            if (lastText != null && lastText.getTimestamp() != null) {
+                upTo = lastText.getTimestamp().getTime();
+            }
+            if (lastMedia != null && lastMedia.getTimestamp() != null) {
+                upTo = Math.max(upTo, lastMedia.getTimestamp().getTime());
+            }
+            if (upTo == 0) return true;
+
+            long watermark = upTo;
+            int[] updated = new int[1];
+            transactionRunner.runInTransaction(() -> {
+                updated[0] = mediaRepository.markChatReadUpTo(chatId, userId, watermark);
+                if (userId.equals(currentUserId)) {
+                    chatRepository.addUnreadCount(chatId, -updated[0]);
+                }
+            });
+            Log.d(TAG, "Marked " + updated[0] + " media messages read in chat " + chatId);
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error marking all messages as read", e);
+            return false;
+        }
+    }
 
-            boolean success = true;
+    private void handleMessageRead(MessageReadByDto readByDto) {
+        if (readByDto == null) {
+            Log.e(TAG, "Received null payload in MESSAGE_READ event");
+            return;
+        }
+        receiptBatcher.submit(readByDto);
+    }
 
-            for (MessageDto message : messages) {
-                // Check if message state is 'SENT' but waiting members list is empty
-                if (message.getWaitingMemebersList() == null || message.getWaitingMemebersList().isEmpty()) {
-                    if(message.getStatus().equals(MessageState.SENT)) {
-                        message.setStatus(MessageState.READ);
-                        mediaRepository.updateMessage(message);
-                    }
-                }
+    private void handleChatRead(ChatReadWatermarkDto watermark) {
+        if (watermark == null) {
+            Log.e(TAG, "Received null payload in CHAT_READ event");
+            return;
+        }
+        watermarkBatcher.submit(watermark);
+    }
 
-                MediaMessageDto remoteMessage = remoteMessages.stream()
-                        .filter(m -> m.getId().equals(message.getId()))
-                        .findFirst()
-                        .orElse(null);
-
-                // or waiting members does not contain userId
-                if (message.getJid().equals(userId)
-                        && !message.getWaitingMemebersList().contains(userId)
-                        && message.getStatus() == MessageState.READ) {
-                    if (remoteMessage != null
-                            && remoteMessage.getWaitingMemebersList() != null
-                            && remoteMessage.getWaitingMemebersList().contains(userId)
-                            && remoteMessage.getStatus() == MessageState.READ) {
-                        // local is set on READ, remote is not
-                        // broadcast READ event
-                    }
-                    else {
-                        continue;
-                    }
-                } else {
-                    if (message.getStatus() == MessageState.READ) {
-                        // validate message is set on READ in backend
-                        if (remoteMessage != null && remoteMessage.getStatus() == MessageState.READ) {
-                            continue;
-                        }
-                    } else {
-                        // backend message is set on READ, local message is not
-                        if (remoteMessage != null && remoteMessage.getStatus() == MessageState.READ) {
-                            message.setStatus(remoteMessage.getStatus());
-                            List<String> waitingMembersList = new ArrayList<>(message.getWaitingMemebersList());
-                            if (waitingMembersList != null) {
-                                waitingMembersList.remove(userId);
-                            }
-                            message.setWaitingMemebersList(waitingMembersList);
-                            mediaRepository.updateMessage(message);
-                            continue;
-                        }
-
-                        // case for group chat
-                        if (remoteMessage != null && remoteMessage.getStatus() == MessageState.SENT) {
-                            message.setStatus(remoteMessage.getStatus());
-                            List<String> waitingMembersList = new ArrayList<>(message.getWaitingMemebersList());
-                            if (waitingMembersList != null) {
-                                waitingMembersList.remove(userId);
-                            }
-                            message.setWaitingMemebersList(waitingMembersList);
-                            mediaRepository.updateMessage(message);
-                        }
-                    }
-                }
+    /** Each media message is written once per batch, the UI hears about each chat once */
+    private void applyReadReceipts(List<MessageReadByDto> batch) {
+        Map<String, MediaMessageDto> lastUpdatedByChat = new LinkedHashMap<>();
 
-                // Send read event to webSocket
-                // Create the message read payload
-                JsonObject readPayload = new JsonObject();
-                readPayload.addProperty("messageId", message.getId());
-                readPayload.addProperty("sendBy", message.getJid());
-                readPayload.addProperty("readBy", userId);
-
-                // Create the WebSocket event
-                WebSocketEvent event = new WebSocketEvent(
-                        WebSocketEvent.EventType.MESSAGE_READ,
-                        readPayload,
-                        userId
-                );
+        for (Map.Entry<String, Set<String>> entry : ReadReceipts.readersByMessage(batch, currentUserId).entrySet()) {
+            try {
+                MediaEntity mediaEntity = mediaRepository.getMediaEntityByMessageId(entry.getKey());
+                if (mediaEntity == null) continue; // text, or not stored here
+
+                List<String> waitingMembersList = new ArrayList<>(mediaEntity.getWaitingMembersList());
+                if (!waitingMembersList.removeAll(entry.getValue())) continue;
 
-                // Send the event through the WebSocket client
-                webSocketClient.sendEvent(event);
-                Log.d(TAG, "Message read event sent: message " + message.getId() +
-                        " sent by " + message.getJid() + " was read by " + userId);
+                MediaMessageDto mediaMessageDto = new MediaMessageDto();
+                mediaMessageDto.setId(entry.getKey());
+                mediaMessageDto.setJid(mediaEntity.getSenderId());
+                mediaMessageDto.setChatId(mediaEntity.getChatId());
+                mediaMessageDto.setStatus(waitingMembersList.isEmpty() ? MessageState.READ : mediaEntity.getState());
+                mediaMessageDto.setWaitingMemebersList(waitingMembersList);
+                mediaMessageDto.setTimestamp(mediaEntity.getCreatedAt());
+                mediaRepository.updateMessage(mediaMessageDto);
+                lastUpdatedByChat.put(mediaMessageDto.getChatId(), mediaMessageDto);
+            } catch (Exception e) {
+                Log.e(TAG, "Error marking message as read", e);
             }
+        }
 
-            return success;
-        } catch (Exception e) {
-            Log.e(TAG, "Error marking all messages as read", e);
-            return false;
+        for (MediaMessageDto message : lastUpdatedByChat.values()) {
+            outgoingMediaLiveData.postValue(message);
         }
     }
 
-    @Override
-    public void onEvent(WebSocketEvent event) {
-        try {
-            Log.i("TAG", "WebSocket event received: " + event.toString());
-            switch (event.getType()) {
-                case INCOMING:
-                    handleIncomingMedia(event);
-                    break;
-                case MESSAGE_READ:
-                    // Handle message read event
-                    MessageReadByDto readByDto = gson.fromJson(event.getPayload(), MessageReadByDto.class);
-                    markMessageAsRead(readByDto.getMessageId(), readByDto.getReadBy());
-                    break;
-                default:
-                    Log.d(TAG, "Unhandled WebSocket event type: " + event.getType());
-                    break;
+    /** Apply the newest watermark per chat and reader, one update each */
+    private void applyReadWatermarks(List<ChatReadWatermarkDto> batch) {
+        for (ChatReadWatermarkDto watermark : ReadReceipts.latestWatermarks(batch, currentUserId)) {
+            try {
+                int updated = mediaRepository.markChatReadUpTo(
+                        watermark.getChatId(), watermark.getReadBy(), watermark.getUpToTimestamp());
+                if (updated == 0) continue;
+
+                MessageDto lastMedia = mediaRepository.getLastMessageForChat(watermark.getChatId());
+                if (lastMedia != null) {
+                    outgoingMediaLiveData.postValue(lastMedia);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error applying read watermark " + watermark, e);
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error processing WebSocket event: " + event.getType(), e);
         }
     }
 
-    private void handleIncomingMedia(WebSocketEvent event) {
+    private void handleIncomingMedia(MediaMessageDto message) {
         try {
-            if (event.getPayload() == null) {
+            if (message == null) {
                 Log.e(TAG, "Received null payload in WebSocket event");
                 return;
             }
-            MediaMessageDto message = gson.fromJson(event.getPayload(), MediaMessageDto.class);
-            if (message == null) return;
 
             // Skip messages from self
             if (currentUserId != null && currentUserId.equals(message.getJid())) {
                 return;
             }
 
+            // Avoid duplicate message processing
+            if (!deduplicator.markIfNew(message.getId(),
+                    id -> mediaRepository.getMediaEntityByMessageId(id) != null)) {
+                Log.d(TAG, "Dropping duplicate media message " + message.getId());
+                return;
+            }
+
             Log.d(TAG, "Received media via WebSocket: " + message.getId() + " for chat: " + message.getChatId());
 
             // Process message
@@ -500,22 +656,16 @@ public class RelayMediaService implements MediaService, RelayWebSocketClient.Rel
             // Add message to LiveData for real-time display
             incomingMediaLiveData.postValue(message);
             chatRepository.updateLastMessage(message.getChatId(), message.getId());
-            int currentUnread = chatRepository.getUnreadCounts(message.getChatId());
-            chatRepository.updateUnreadCount(message.getChatId(), currentUnread + 1);
+            if (ReadReceipts.isUnreadFor(message, currentUserId)) {
+                chatRepository.addUnreadCount(message.getChatId(), 1);
+            }
             ChatUpdateBus.postLastMessageUpdate(message);
-
-            Executors.newSingleThreadExecutor().execute(() -> {
-                try {
-                    String chatId = message.getChatId();
-                    int textUnread = messageRepository.getUnreadMessagesCount(chatId, currentUserId);
-                    int mediaUnread = mediaRepository.getUnreadMessagesCount(chatId, currentUserId);
-                    ChatUpdateBus.postUnreadCountUpdate(chatId, textUnread + mediaUnread);
-                } catch (Exception e) {
-                    Log.e(TAG, "Failed to get media unread count", e);
-                }
-            });
+            ChatUpdateBus.postUnreadCountUpdate(message.getChatId(), chatRepository.getUnreadCounts(message.getChatId()));
         } catch (Exception e) {
             // Message might be null or invalid for media
+            if (message != null) {
+                deduplicator.forget(message.getId());
+            }
         }
     }
 
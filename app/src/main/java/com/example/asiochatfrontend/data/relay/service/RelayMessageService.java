@@ -7,19 +7,25 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import com.example.asiochatfrontend.app.di.ServiceModule;
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
+import com.example.asiochatfrontend.core.concurrent.SerialExecutor;
 import com.example.asiochatfrontend.core.model.dto.ChatDto;
+import com.example.asiochatfrontend.core.model.dto.ChatReadWatermarkDto;
+import com.example.asiochatfrontend.core.model.dto.MessageAckDto;
 import com.example.asiochatfrontend.core.model.dto.TextMessageDto;
 import com.example.asiochatfrontend.core.model.dto.abstracts.MessageDto;
 import com.example.asiochatfrontend.core.model.enums.MessageState;
 import com.example.asiochatfrontend.core.service.AuthService;
 import com.example.asiochatfrontend.core.service.MessageService;
 import com.example.asiochatfrontend.core.model.dto.MessageReadByDto;
+import com.example.asiochatfrontend.data.relay.model.OfflineInboxPage;
 import com.example.asiochatfrontend.data.relay.model.WebSocketEvent;
 import com.example.asiochatfrontend.data.relay.network.RelayApiClient;
 import com.example.asiochatfrontend.data.relay.network.RelayWebSocketClient;
 import com.example.asiochatfrontend.domain.repository.ChatRepository;
 import com.example.asiochatfrontend.domain.repository.MediaRepository;
 import com.example.asiochatfrontend.domain.repository.MessageRepository;
+import com.example.asiochatfrontend.domain.repository.TransactionRunner;
 import com.example.asiochatfrontend.ui.chat.bus.ChatUpdateBus;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
@@ -31,17 +37,29 @@ import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 @Singleton
-public class RelayMessageService implements MessageService, RelayWebSocketClient.RelayWebSocketListener {
+public class RelayMessageService implements MessageService {
 
     private static final String TAG = "RelayMessageService";
     private static final int RETRY_DELAY_SECONDS = 5;
     private static final int MAX_RETRY_ATTEMPTS = 3;
+    private static final int CATCH_UP_PAGE_SIZE = 200;
+    private static final int CATCH_UP_MAX_PAGES = 10;
+    private static final int INGEST_BATCH_SIZE = 100;
+    private static final int HISTORY_PAGE_SIZE = 200;
+    private static final int RECEIPT_BATCH_SIZE = 200;
+    private static final long RECEIPT_BATCH_DELAY_MS = 100;
+    private static final int HISTORY_MAX_PAGES = 25;
+    private static final long INGEST_BATCH_DELAY_MS = 50;
+    private static final int OFFLINE_PAGE_SIZE = 100;
+    private static final long ACK_TIMEOUT_MS = 10_000;
+    // History decryption: chunks in flight at once, and the smallest chunk worth a pool hop
+    private static final int DECRYPT_PARALLELISM = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    private static final int DECRYPT_MIN_CHUNK = 16;
 
     private final MessageRepository messageRepository;
     private final MediaRepository mediaRepository;
@@ -50,15 +68,24 @@ public class RelayMessageService implements MessageService, RelayWebSocketClient
     private final RelayApiClient relayApiClient;
     private final RelayWebSocketClient webSocketClient;
     private final Gson gson;
+    private final TransactionRunner transactionRunner;
+    private final IncomingMessageBatcher<TextMessageDto> incomingBatcher;
+    private final IncomingMessageBatcher<MessageReadByDto> receiptBatcher;
+    private final IncomingMessageBatcher<ChatReadWatermarkDto> watermarkBatcher;
+    private final Map<String, Long> sentReadWatermarks = new ConcurrentHashMap<>();
+    private final MessageIdDeduplicator deduplicator;
+    private final ChatSyncMarks syncMarks;
+    private final OutboxFlusher outboxFlusher;
+    private final MessageAckTracker ackTracker = new MessageAckTracker(ACK_TIMEOUT_MS, MAX_RETRY_ATTEMPTS);
+    private final Map<String, SerialExecutor> sendLanes = new ConcurrentHashMap<>();
+    private final ParallelDecryptor<TextMessageDto> decryptor = new ParallelDecryptor<>(
+            task -> AppExecutors.crypto().execute(task), DECRYPT_PARALLELISM, DECRYPT_MIN_CHUNK);
     private String currentUserId;
 
     // LiveData for real-time message updates by chat ID
     private final MutableLiveData<MessageDto> incomingMessageLiveData = new MutableLiveData<>();
     private final MutableLiveData<MessageDto> outgoingMessageLiveData = new MutableLiveData<>();
 
-    // Cache to avoid duplicate message processing
-    private final Set<String> recentlyProcessedMessageIds = Collections.newSetFromMap(new ConcurrentHashMap<>());
-
     @Inject
     public RelayMessageService(
             MessageRepository messageRepository,
@@ -68,7 +95,11 @@ public class RelayMessageService implements MessageService, RelayWebSocketClient
             RelayApiClient relayApiClient,
             RelayWebSocketClient webSocketClient,
             Gson gson,
-            String currentUserId
+            String currentUserId,
+            TransactionRunner transactionRunner,
+            MessageIdDeduplicator deduplicator,
+            ChatSyncMarks syncMarks,
+            OutboxFlusher outboxFlusher
     ) {
         this.messageRepository = messageRepository;
         this.mediaRepository = mediaRepository;
@@ -78,103 +109,322 @@ public class RelayMessageService implements MessageService, RelayWebSocketClient
         this.webSocketClient = webSocketClient;
         this.gson = gson;
         this.currentUserId = currentUserId;
+        this.transactionRunner = transactionRunner;
+        this.deduplicator = deduplicator;
+        this.syncMarks = syncMarks;
+        this.outboxFlusher = outboxFlusher;
+        this.incomingBatcher = new IncomingMessageBatcher<>(
+                "relay-message-ingest",
+                INGEST_BATCH_SIZE,
+                INGEST_BATCH_DELAY_MS,
+                this::ingestIncomingBatch
+        );
+        this.receiptBatcher = new IncomingMessageBatcher<>(
+                "relay-message-receipts",
+                RECEIPT_BATCH_SIZE,
+                RECEIPT_BATCH_DELAY_MS,
+                this::applyReadReceipts
+        );
+        this.watermarkBatcher = new IncomingMessageBatcher<>(
+                "relay-message-watermarks",
+                RECEIPT_BATCH_SIZE,
+                RECEIPT_BATCH_DELAY_MS,
+                this::applyReadWatermarks
+        );
 
-        // Register this service as a WebSocket listener
-        this.webSocketClient.addListener(this);
+        // Subscribe to the WebSocket events this service handles
+        this.webSocketClient.subscribe(WebSocketEvent.EventType.INCOMING, TextMessageDto.class,
+                (message, event) -> handleIncomingMessage(message));
+        this.webSocketClient.subscribe(WebSocketEvent.EventType.MESSAGE_READ, MessageReadByDto.class,
+                (readByDto, event) -> handleMessageRead(readByDto));
+        this.webSocketClient.subscribe(WebSocketEvent.EventType.CHAT_READ, ChatReadWatermarkDto.class,
+                (watermark, event) -> handleChatRead(watermark));
+        this.webSocketClient.subscribe(WebSocketEvent.EventType.MESSAGE_ACK, MessageAckDto.class,
+                (ack, event) -> handleMessageAck(ack));
+        this.webSocketClient.addCatchUpHandler(this::catchUpSince);
+        // events must be stored before the resume cursor claims them as handled
+        this.webSocketClient.addCursorFlushBarrier(incomingBatcher::flush);
+        this.webSocketClient.addCursorFlushBarrier(receiptBatcher::flush);
+        this.webSocketClient.addCursorFlushBarrier(watermarkBatcher::flush);
     }
 
     /**
-     * Handles WebSocket events
+     * Fetch messages missed while disconnected, when the relay could not
+     * replay them. Bounded to {@link #CATCH_UP_MAX_PAGES} pages; anything
+     * older is picked up when the chat is opened.
+     * Pages are requested from the newest server timestamp already fetched,
+     * inclusive, so messages sharing the boundary millisecond are not
+     * skipped; ids seen at the boundary are dropped from the next page.
+     *
+     * @return the newest server timestamp the gap is covered up to;
+     *         {@code sinceTimestamp} if nothing more could be stored
      */
-    @Override
-    public void onEvent(WebSocketEvent event) {
-        try {
-            Log.i("TAG", "WebSocket event received: " + event.toString());
-            switch (event.getType()) {
-                case INCOMING:
-                    handleIncomingMessage(event);
-                    break;
-                case MESSAGE_READ:
-                    // Handle message read event
-                    MessageReadByDto readByDto = gson.fromJson(event.getPayload(), MessageReadByDto.class);
-                    markMessageAsRead(readByDto.getMessageId(), readByDto.getReadBy());
-                    break;
-                default:
-                    Log.d(TAG, "Unhandled WebSocket event type: " + event.getType());
-                    break;
+    public long catchUpSince(long sinceTimestamp) {
+        if (currentUserId == null) return sinceTimestamp;
+
+        long since = sinceTimestamp;
+        Set<String> boundaryIds = new HashSet<>(); // fetched ids whose timestamp is `since`
+        int fetched = 0;
+
+        for (int page = 0; page < CATCH_UP_MAX_PAGES; page++) {
+            // the route is exclusive, so ask from one millisecond earlier
+            List<TextMessageDto> batch = relayApiClient.getMessagesSince(currentUserId, since - 1, CATCH_UP_PAGE_SIZE);
+            if (batch == null) {
+                Log.e(TAG, "Catch-up fetch failed after " + fetched + " messages");
+                return since;
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error processing WebSocket event: " + event.getType(), e);
+
+            List<TextMessageDto> missing = new ArrayList<>();
+            long pageMax = since;
+            Set<String> pageMaxIds = new HashSet<>(boundaryIds);
+            int fresh = 0;
+            for (TextMessageDto remoteMessage : batch) {
+                if (boundaryIds.contains(remoteMessage.getId())) continue;
+                fresh++;
+                if (remoteMessage.getTimestamp() != null) { // only server timestamps move the bound
+                    long timestamp = remoteMessage.getTimestamp().getTime();
+                    if (timestamp > pageMax) {
+                        pageMax = timestamp;
+                        pageMaxIds.clear();
+                    }
+                    if (timestamp == pageMax) pageMaxIds.add(remoteMessage.getId());
+                }
+                if (currentUserId.equals(remoteMessage.getJid())) continue;
+                if (messageRepository.getMessageById(remoteMessage.getId()) != null) continue;
+                missing.add(remoteMessage);
+            }
+            // one transaction per page
+            if (!ingestIncomingBatch(missing)) {
+                Log.e(TAG, "Catch-up page could not be stored after " + fetched + " messages");
+                return since;
+            }
+            fetched += fresh;
+
+            if (batch.size() < CATCH_UP_PAGE_SIZE) {
+                Log.d(TAG, "Catch-up fetched " + fetched + " messages");
+                return pageMax;
+            }
+            if (fresh == 0) {
+                Log.w(TAG, "Catch-up stopped: a full page at " + since + " held no new messages");
+                return since;
+            }
+            since = pageMax;
+            boundaryIds = pageMaxIds;
         }
+
+        // the rest is fetched by the next catch-up, from where this one stopped
+        Log.d(TAG, "Catch-up stopped after " + CATCH_UP_MAX_PAGES + " pages (" + fetched + " messages) at " + since);
+        return since;
     }
 
-    private void handleIncomingMessage(WebSocketEvent event) {
-        try {
-            if (event.getPayload() == null) {
-                Log.e(TAG, "Received null payload in WebSocket event");
-                return;
+    /**
+     * Store a batch of incoming messages. Payloads are decrypted first, in
+     * parallel chunks on the crypto pool; then the messages, each chat's
+     * last-message pointer and unread counter are written in one transaction. UI updates go out once per chat.
+     *
+     * @return false if the batch could not be written, or some of it could
+     *         not be decrypted; what did decrypt is stored either way
+     */
+    private boolean ingestIncomingBatch(List<TextMessageDto> batch) {
+        if (batch.isEmpty()) return true;
+
+        List<TextMessageDto> toSave = new ArrayList<>(batch.size());
+        Map<String, TextMessageDto> lastMessageByChat = new LinkedHashMap<>();
+        Map<String, Integer> newUnreadByChat = new HashMap<>();
+        Map<String, ChatDto> chatCache = new HashMap<>();
+
+        // one storage lookup for the ids the dedup window no longer covers
+        List<String> unknownIds = new ArrayList<>();
+        for (TextMessageDto remoteMessage : batch) {
+            if (!currentUserId.equals(remoteMessage.getJid()) && !deduplicator.contains(remoteMessage.getId())) {
+                unknownIds.add(remoteMessage.getId());
             }
-            TextMessageDto message = gson.fromJson(event.getPayload(), TextMessageDto.class);
-            if (message == null) return;
+        }
+        Set<String> storedIds = new HashSet<>(messageRepository.getExistingMessageIds(unknownIds));
 
-            // Process the message
-            message = processRemoteMessage(message, message.getChatId());
-            if (message == null) {
-                Log.e(TAG, "Failed to process incoming message");
-                return;
-            }
+        List<TextMessageDto> toDecrypt = new ArrayList<>();
+        for (TextMessageDto remoteMessage : batch) {
+            try {
+                if (remoteMessage.getJid() != null && remoteMessage.getJid().equals(currentUserId)) {
+                    // Self message, update only status, waiting members list and timestamp
+                    TextMessageDto messageToUpdate = messageRepository.getMessageById(remoteMessage.getId());
+                    if (messageToUpdate == null) {
+                        Log.e(TAG, "Message not found in repository: " + remoteMessage.getId());
+                        continue;
+                    }
+                    messageToUpdate.setStatus(remoteMessage.getStatus());
+                    messageToUpdate.setWaitingMemebersList(remoteMessage.getWaitingMemebersList());
+                    messageToUpdate.setTimestamp(remoteMessage.getTimestamp());
+                    if (remoteMessage.getTimestamp() != null) {
+                        ackTracker.onServerTimestamp(remoteMessage.getId(), remoteMessage.getTimestamp().getTime());
+                    }
+                    toSave.add(messageToUpdate);
+                    continue;
+                }
 
-            // Skip messages from self
-            if (currentUserId != null && currentUserId.equals(message.getJid())) {
-                return;
+                // Avoid duplicate message processing
+                if (!deduplicator.markIfNew(remoteMessage.getId(), storedIds::contains)) continue;
+
+                ChatDto chat = chatCache.computeIfAbsent(remoteMessage.getChatId(), chatRepository::getChatById);
+                if (chat == null) {
+                    Log.e(TAG, "Failed to process incoming message " + remoteMessage.getId() + ": unknown chat");
+                    deduplicator.forget(remoteMessage.getId());
+                    continue;
+                }
+                toDecrypt.add(remoteMessage);
+            } catch (Exception e) {
+                Log.e(TAG, "Error processing remote message", e);
             }
+        }
 
-            // Avoid duplicate message processing
-            if (recentlyProcessedMessageIds.contains(message.getId())) {
-                return;
+        ParallelDecryptor.Result<TextMessageDto> decrypted = decryptBatch(toDecrypt, chatCache);
+        for (Map.Entry<String, String> failure : decrypted.getFailures().entrySet()) {
+            Log.e(TAG, "Failed to decrypt incoming message " + failure.getKey() + ": " + failure.getValue());
+            deduplicator.forget(failure.getKey());
+        }
+        for (TextMessageDto remoteMessage : decrypted.getDecrypted()) {
+            String chatId = remoteMessage.getChatId();
+            if (remoteMessage.getTimestamp() == null) {
+                remoteMessage.setTimestamp(new Date());
             }
 
-            recentlyProcessedMessageIds.add(message.getId());
+            toSave.add(remoteMessage);
+            lastMessageByChat.put(chatId, remoteMessage);
+            newUnreadByChat.merge(chatId, ReadReceipts.isUnreadFor(remoteMessage, currentUserId) ? 1 : 0, Integer::sum);
+        }
+        boolean allDecrypted = decrypted.getFailures().isEmpty();
+        if (toSave.isEmpty()) return allDecrypted;
+
+        try {
+            transactionRunner.runInTransaction(() -> {
+                messageRepository.saveMessages(toSave);
+                for (Map.Entry<String, TextMessageDto> entry : lastMessageByChat.entrySet()) {
+                    String chatId = entry.getKey();
+                    chatRepository.recordIncomingMessages(chatId, entry.getValue().getId(), newUnreadByChat.get(chatId));
+                }
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to store batch of " + toSave.size() + " incoming messages", e);
+            // none of them were stored, so a redelivery of any must get through
+            for (TextMessageDto message : toSave) {
+                deduplicator.forget(message.getId());
+            }
+            return false;
+        }
+        Log.d(TAG, "Stored " + toSave.size() + " incoming messages across " + lastMessageByChat.size() + " chats");
 
-            Log.d(TAG, "Received message via WebSocket: " + message.getId() + " for chat: " + message.getChatId());
+        for (TextMessageDto lastMessage : lastMessageByChat.values()) {
+            String chatId = lastMessage.getChatId();
+            incomingMessageLiveData.postValue(lastMessage);
+            ChatUpdateBus.postLastMessageUpdate(lastMessage);
+            try {
+                ChatUpdateBus.postUnreadCountUpdate(chatId, chatRepository.getUnreadCounts(chatId));
 
-            // Process message
-            message.setStatus(message.getStatus());
-            if (message.getTimestamp() == null) {
-                message.setTimestamp(new Date());
+                ChatDto updatedChat = chatRepository.getChatById(chatId);
+                if (updatedChat != null) {
+                    ChatUpdateBus.postChatUpdate(updatedChat);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to refresh unread count", e);
             }
+        }
+        return allDecrypted;
+    }
 
-            // Save to repository
-            message = messageRepository.saveMessage((TextMessageDto) message);
+    private void handleMessageRead(MessageReadByDto readByDto) {
+        if (readByDto == null) {
+            Log.e(TAG, "Received null payload in MESSAGE_READ event");
+            return;
+        }
+        receiptBatcher.submit(readByDto);
+    }
 
-            // Add message to LiveData for real-time display
-            incomingMessageLiveData.postValue(message);
-            chatRepository.updateLastMessage(message.getChatId(), message.getId());
-            int currentUnread = chatRepository.getUnreadCounts(message.getChatId());
-            chatRepository.updateUnreadCount(message.getChatId(), currentUnread + 1);
-            ChatUpdateBus.postLastMessageUpdate(message);
+    private void handleChatRead(ChatReadWatermarkDto watermark) {
+        if (watermark == null) {
+            Log.e(TAG, "Received null payload in CHAT_READ event");
+            return;
+        }
+        watermarkBatcher.submit(watermark);
+    }
 
-            TextMessageDto finalMessage = message;
-            Executors.newSingleThreadExecutor().execute(() -> {
-                try {
-                    String chatId = finalMessage.getChatId();
-                    int textUnread = messageRepository.getUnreadMessagesCount(chatId, currentUserId);
-                    int mediaUnread = mediaRepository.getUnreadMessagesCount(chatId, currentUserId);
-                    ChatUpdateBus.postUnreadCountUpdate(chatId, textUnread + mediaUnread);
-                } catch (Exception e) {
-                    Log.e(TAG, "Failed to get media unread count", e);
+    private void handleMessageAck(MessageAckDto ack) {
+        if (ack == null || ack.getMessageId() == null) {
+            Log.e(TAG, "Received MESSAGE_ACK without a message id");
+            return;
+        }
+        ackTracker.onAck(ack.getMessageId());
+    }
+
+    /**
+     * Apply a batch of per-message receipts: each message is loaded and
+     * written once however many readers it got, all in one transaction,
+     * and the UI hears about each chat once.
+     */
+    private void applyReadReceipts(List<MessageReadByDto> batch) {
+        Map<String, Set<String>> readersByMessage = ReadReceipts.readersByMessage(batch, currentUserId);
+        Map<String, TextMessageDto> lastUpdatedByChat = new LinkedHashMap<>();
+        for (String messageId : readersByMessage.keySet()) {
+            ackTracker.onRead(messageId);
+        }
+
+        try {
+            transactionRunner.runInTransaction(() -> {
+                for (Map.Entry<String, Set<String>> entry : readersByMessage.entrySet()) {
+                    TextMessageDto message = messageRepository.getMessageById(entry.getKey());
+                    if (message == null) continue; // media, or not stored here
+
+                    List<String> waitingMembersList = new ArrayList<>(message.getWaitingMemebersList());
+                    if (!waitingMembersList.removeAll(entry.getValue())) continue;
+                    message.setWaitingMemebersList(waitingMembersList);
+                    if (waitingMembersList.isEmpty()) {
+                        message.setStatus(MessageState.READ);
+                    }
+
+                    messageRepository.updateMessage(message);
+                    lastUpdatedByChat.put(message.getChatId(), message);
                 }
             });
+        } catch (Exception e) {
+            Log.e(TAG, "Error applying " + batch.size() + " read receipts", e);
+            return;
+        }
 
-            // Schedule cleanup of processed ID after a delay
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-                CompletableFuture.delayedExecutor(30, TimeUnit.SECONDS).execute(() -> {
-                    recentlyProcessedMessageIds.remove(finalMessage.getId());
-                });
+        for (TextMessageDto message : lastUpdatedByChat.values()) {
+            outgoingMessageLiveData.postValue(message);
+        }
+        Log.d(TAG, "Applied " + batch.size() + " read receipts to " + lastUpdatedByChat.size() + " chats");
+    }
+
+    /** Apply the newest watermark per chat and reader, one update each */
+    private void applyReadWatermarks(List<ChatReadWatermarkDto> batch) {
+        Set<String> touchedChatIds = new LinkedHashSet<>();
+        for (ChatReadWatermarkDto watermark : ReadReceipts.latestWatermarks(batch, currentUserId)) {
+            ackTracker.onChatRead(watermark.getChatId(), watermark.getUpToMessageId(), watermark.getUpToTimestamp());
+            try {
+                int updated = messageRepository.markChatReadUpTo(
+                        watermark.getChatId(), watermark.getReadBy(), watermark.getUpToTimestamp());
+                if (updated > 0) {
+                    touchedChatIds.add(watermark.getChatId());
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error applying read watermark " + watermark, e);
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error handling incoming message", e);
         }
+
+        for (String chatId : touchedChatIds) {
+            TextMessageDto lastMessage = messageRepository.getLastMessageForChat(chatId);
+            if (lastMessage != null) {
+                outgoingMessageLiveData.postValue(lastMessage);
+            }
+        }
+    }
+
+    private void handleIncomingMessage(TextMessageDto message) {
+        if (message == null) {
+            Log.e(TAG, "Received null payload in WebSocket event");
+            return;
+        }
+        incomingBatcher.submit(message);
     }
 
     @Override
@@ -226,8 +476,13 @@ public class RelayMessageService implements MessageService, RelayWebSocketClient
             messageDto.setStatus(MessageState.PENDING);
         }
 
-        // Offline mode, save message in repo on pending
-        if (!ServiceModule.getConnectionManager().isOnline()) {
+        // Every send starts PENDING; the relay's ack (or the socket write, for relays that do not ack) moves it to SENT
+        TextMessageDto message = (TextMessageDto) messageDto;
+        message.setStatus(MessageState.PENDING);
+        boolean online = ServiceModule.getConnectionManager().isOnline();
+
+        // Offline mode, timestamp it locally (the server sets it when online)
+        if (!online) {
             // Support both old and new version for timestamp utc now
             Date nowUtcDate;
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -244,207 +499,446 @@ public class RelayMessageService implements MessageService, RelayWebSocketClient
                 nowUtcDate     = new Date(fakeUtcMs);
             }
 
-            messageDto.setTimestamp(nowUtcDate);
-
-            // Save in local repository
-            messageRepository.saveMessage((TextMessageDto) messageDto);
-            return messageDto;
+            message.setTimestamp(nowUtcDate);
         }
 
-        // Save in local repository as sent and no timestamp (server will set it)
-        messageDto.setStatus(MessageState.SENT);
-        messageRepository.saveMessage((TextMessageDto) messageDto);
-        ChatUpdateBus.postLastMessageUpdate(messageDto);
+        // The only write before returning: the row and the chat's last message pointer
+        transactionRunner.runInTransaction(() -> {
+            messageRepository.saveMessage(message);
+            chatRepository.recordOutgoingMessage(message.getChatId(), message.getId());
+        });
+        ChatUpdateBus.postLastMessageUpdate(message);
 
-        // Send via WebSocket for real-time delivery
-        try {
-            // Message payload encryption //
-            ChatDto targetChat = chatRepository.getChatById(messageDto.getChatId());
-            String messagePayload = ((TextMessageDto) messageDto).getPayload();
-            long currentTimestamp = System.currentTimeMillis();
-            String encryptedPayload = null;
+        // Offline, the message waits for the outbox flush on reconnect
+        if (online) {
+            dispatchInBackground(message);
+        }
+        return message;
+    }
 
-            if (targetChat.getGroup()) {
-                // <--- Group chat, encrypt message with group symmetric key ---->
-                encryptedPayload = authService.encryptWithSymmetricKey(messagePayload, targetChat.getChatId(), currentTimestamp);
+    /**
+     * Encrypt and send a saved PENDING message off the caller's thread.
+     * Messages of one chat go out in the order they were sent. A message
+     * that fails stays PENDING for the next outbox flush.
+     */
+    private void dispatchInBackground(TextMessageDto message) {
+        if (!outboxFlusher.claim(message.getId())) return; // a flush is already sending it
 
-            } else {
-                // <--- Private chat, encrypt message with recipient's public key ---->
-                String recipientId = messageDto
-                        .getWaitingMemebersList()
-                        .stream().filter(id -> !id.equals(currentUserId))
-                        .findFirst()
-                        .get();
-
-                encryptedPayload = authService.encryptWithPublicKey(messagePayload, recipientId, currentTimestamp);
+        sendLanes.computeIfAbsent(message.getChatId(),
+                id -> new SerialExecutor(task -> AppExecutors.io().execute(task))
+        ).execute(() -> {
+            CompletableFuture<Boolean> write;
+            try {
+                write = sendTracked(message, chatRepository.getChatById(message.getChatId()));
+            } catch (Exception e) {
+                Log.e(TAG, "Error sending message " + message.getId() + ", left pending", e);
+                outboxFlusher.release(message.getId());
+                return;
             }
 
-            // Set the encrypted payload back to the message DTO
-            ((TextMessageDto) messageDto).setPayload(encryptedPayload);
-            JsonObject messageJson = gson.toJsonTree(messageDto).getAsJsonObject();
+            write.whenCompleteAsync((delivered, error) -> {
+                try {
+                    if (error == null && Boolean.TRUE.equals(delivered)) {
+                        markSent(message);
+                    } else {
+                        Log.w(TAG, "Message " + message.getId() + " not delivered, left pending", error);
+                    }
+                } finally {
+                    outboxFlusher.release(message.getId());
+                }
+            }, AppExecutors.dbWrite());
+        });
+    }
 
-            // Send the message payload via WebSocket
-            WebSocketEvent event = new WebSocketEvent(
-                    WebSocketEvent.EventType.CHAT,
-                    messageJson,
-                    messageDto.getJid()
-            );
+    /** PENDING to SENT, or straight to READ when nobody is waiting on it */
+    private void markSent(TextMessageDto message) {
+        List<String> waiting = message.getWaitingMemebersList();
+        MessageState state = waiting == null || waiting.isEmpty() ? MessageState.READ : MessageState.SENT;
+        if (!messageRepository.updatePendingMessageState(message.getId(), state)) return;
 
-            webSocketClient.sendEvent(event);
-            Log.d(TAG, "Message sent via WebSocket: " + messageDto.getId());
+        message.setStatus(state);
+        outgoingMessageLiveData.postValue(message);
+        Log.d(TAG, "Message delivered to relay: " + message.getId());
+    }
 
-            // Mark as sent
-            messageDto.setStatus(MessageState.SENT);
-            // Keep the original payload for local storage
-            ((TextMessageDto) messageDto).setPayload(messagePayload);
-            messageRepository.updateMessage((TextMessageDto) messageDto);
-            chatRepository.updateLastMessage(messageDto.getChatId(), messageDto.getId());
-            ChatUpdateBus.postLastMessageUpdate(messageDto);
+    /**
+     * Encrypt and frame the message once, then send it until the relay acks
+     * it. Retries reuse the same frame.
+     *
+     * @return completes with true once the relay acked the message, or once
+     *         it was written if the relay does not ack
+     */
+    private CompletableFuture<Boolean> sendTracked(TextMessageDto message, ChatDto targetChat) throws Exception {
+        WebSocketEvent event = buildChatEvent(message, targetChat);
+        return ackTracker.track(message.getId(), message.getChatId(), () -> webSocketClient.sendEvent(event));
+    }
 
-            return messageDto;
-        } catch (Exception e) {
-            Log.e(TAG, "Error sending message via WebSocket, message status unknown", e);
-            messageDto.setStatus(MessageState.UNKNOWN);
-            messageRepository.updateMessage((TextMessageDto) messageDto);
-            return messageDto;
+    public MessageAckTracker.Stats getAckStats() {
+        return ackTracker.getStats();
+    }
+
+    /** Store what the batchers still hold; called before the shared pools shut down */
+    public void shutdown() {
+        incomingBatcher.shutdown();
+        receiptBatcher.shutdown();
+        watermarkBatcher.shutdown();
+    }
+
+    /**
+     * Encrypt the payload for the chat and frame the message as a CHAT event.
+     * The DTO keeps its plain payload for local storage.
+     */
+    private WebSocketEvent buildChatEvent(TextMessageDto messageDto, ChatDto targetChat) throws Exception {
+        String messagePayload = messageDto.getPayload();
+        long currentTimestamp = System.currentTimeMillis();
+        String encryptedPayload;
+
+        if (targetChat.getGroup()) {
+            // <--- Group chat, encrypt message with group symmetric key ---->
+            encryptedPayload = authService.encryptWithSymmetricKey(messagePayload, targetChat.getChatId(), currentTimestamp);
+
+        } else {
+            // <--- Private chat, encrypt message with recipient's public key ---->
+            String recipientId = messageDto
+                    .getWaitingMemebersList()
+                    .stream().filter(id -> !id.equals(currentUserId))
+                    .findFirst()
+                    .get();
+
+            encryptedPayload = authService.encryptWithPublicKey(messagePayload, recipientId, currentTimestamp);
         }
+
+        // Only the frame carries the encrypted payload
+        JsonObject messageJson = gson.toJsonTree(messageDto).getAsJsonObject();
+        messageJson.addProperty("payload", encryptedPayload);
+
+        return new WebSocketEvent(
+                WebSocketEvent.EventType.CHAT,
+                messageJson,
+                messageDto.getJid()
+        );
     }
 
     @Override
     public List<TextMessageDto> getMessagesForChat(String chatId) {
         try {
-            List<TextMessageDto> localMessages = messageRepository.getMessagesForChat(chatId);
-
-            if (!ServiceModule.getConnectionManager().isOnline()) {
-                // Offline mode, get messages from local storage
-                return localMessages;
+            if (ServiceModule.getConnectionManager().isOnline()) {
+                syncChatHistory(chatId);
             }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to get messages from server, using local cache", e);
+        }
 
-            List<TextMessageDto> remoteMessages = relayApiClient.getMessagesForChat(chatId);
-            List<TextMessageDto> chatMessages = new ArrayList<>();
-            Set<String> localIds = localMessages.stream()
-                    .map(TextMessageDto::getId)
-                    .collect(Collectors.toSet());
-
-            TextMessageDto processedMessage = null;
-            if (remoteMessages != null && !remoteMessages.isEmpty()) {
-                for (TextMessageDto remoteMessage : remoteMessages) {
-                    String remoteMessageId = remoteMessage.getId();
-                    if (localIds.contains(remoteMessageId)) {
-                        TextMessageDto presentMessage = localMessages.stream()
-                                .filter(m -> m.getId().equals(remoteMessageId))
-                                .findFirst()
-                                .orElse(null);
-
-                        if (presentMessage != null) {
-                            String presentPayload = presentMessage.getPayload();
-                            List<String> waitingList = presentMessage.getWaitingMemebersList();
-                            remoteMessage.setPayload(presentPayload);
-                            remoteMessage.setWaitingMemebersList(new ArrayList<>(waitingList));
-                            messageRepository.saveMessage(remoteMessage);
-                            processedMessage = remoteMessage;
-                        }
-                    } else {
-                        processedMessage = processRemoteMessage(remoteMessage, chatId);
-                    }
+        return messageRepository.getMessagesForChat(chatId);
+    }
 
-                    if (processedMessage != null && processedMessage.getPayload() != null) {
-                        chatMessages.add(processedMessage);
+    /**
+     * Fetch the chat's messages from its sync mark on, a page at a time,
+     * and move the mark after each stored page. A long backlog is spread
+     * over several chat opens rather than fetched in one go. Relays without
+     * the paged route get the legacy full-history fetch instead.
+     */
+    private void syncChatHistory(String chatId) {
+        long since = syncMarks.get(ChatSyncMarks.MESSAGES, chatId);
+        Set<String> takenAtMark = new HashSet<>();
+        boolean merged = false;
+
+        try {
+            for (int page = 0; page < HISTORY_MAX_PAGES; page++) {
+                // the route is exclusive; ask from one millisecond earlier so the rest of the mark's millisecond comes too
+                List<TextMessageDto> batch = relayApiClient.getMessagesForChatSince(chatId, since - 1, HISTORY_PAGE_SIZE);
+                if (batch == null) {
+                    if (page == 0) {
+                        merged = syncChatHistoryLegacy(chatId, since);
                     }
+                    return;
+                }
+                List<TextMessageDto> fresh = ChatSyncMarks.withoutIds(batch, takenAtMark);
+                if (fresh.isEmpty()) {
+                    if (batch.size() >= HISTORY_PAGE_SIZE) {
+                        Log.w(TAG, "History sync for " + chatId + " stopped: a full page at " + since + " held nothing new");
+                    }
+                    return;
                 }
 
-                return chatMessages;
+                merged = true;
+                long storedUpTo = storeHistoryPage(chatId, fresh, since);
+                if (storedUpTo < 0) return;
+                takenAtMark = ChatSyncMarks.idsAtMark(fresh, storedUpTo, since, takenAtMark);
+                since = storedUpTo;
+                if (batch.size() < HISTORY_PAGE_SIZE) return;
+            }
+            Log.d(TAG, "History sync for " + chatId + " stopped after " + HISTORY_MAX_PAGES + " pages");
+        } finally {
+            if (merged) {
+                recountUnread(chatId);
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to get messages from server, using local cache", e);
         }
+    }
 
-        return messageRepository.getMessagesForChat(chatId);
+    /**
+     * For relays without the paged route: fetch the whole chat once and
+     * store what is not older than the mark in page-sized slices, oldest
+     * first. Messages already stored at the mark only take the server's status.
+     *
+     * @return true if anything was handed to storage
+     */
+    private boolean syncChatHistoryLegacy(String chatId, long since) {
+        List<TextMessageDto> remoteMessages = relayApiClient.getMessagesForChat(chatId);
+        if (remoteMessages == null || remoteMessages.isEmpty()) return false;
+
+        List<TextMessageDto> newer = new ArrayList<>();
+        for (TextMessageDto remoteMessage : remoteMessages) {
+            if (remoteMessage.getTimestamp() == null || remoteMessage.getTimestamp().getTime() >= since) {
+                newer.add(remoteMessage);
+            }
+        }
+        if (newer.isEmpty()) return false;
+        newer.sort(Comparator.comparingLong(message ->
+                message.getTimestamp() != null ? message.getTimestamp().getTime() : Long.MAX_VALUE));
+
+        Log.d(TAG, "Paged history unavailable for " + chatId + "; merging " + newer.size() + " messages");
+        for (int from = 0; from < newer.size(); from += HISTORY_PAGE_SIZE) {
+            List<TextMessageDto> slice = newer.subList(from, Math.min(from + HISTORY_PAGE_SIZE, newer.size()));
+            since = storeHistoryPage(chatId, slice, since);
+            if (since < 0) break;
+        }
+        return true;
+    }
+
+    /**
+     * Merge one page, oldest first, and move the chat's mark up to the
+     * newest message stored before the first one that failed. The failed
+     * message and everything after it are fetched again by the next sync.
+     * The page must hold only messages not yet taken by this sync, so a
+     * mark that stays put still means progress.
+     *
+     * @return the new mark, or -1 if the sync should stop at this page
+     */
+    private long storeHistoryPage(String chatId, List<TextMessageDto> batch, long since) {
+        long pageMax = since;
+        for (TextMessageDto remoteMessage : batch) {
+            if (remoteMessage.getTimestamp() != null) {
+                pageMax = Math.max(pageMax, remoteMessage.getTimestamp().getTime());
+            }
+        }
+
+        long storedUpTo = mergeHistoryPage(chatId, batch, since);
+        if (storedUpTo < since) return -1; // not stored, or failed at the mark's own millisecond
+        syncMarks.advance(ChatSyncMarks.MESSAGES, chatId, storedUpTo);
+        return storedUpTo < pageMax ? -1 : storedUpTo;
     }
 
-    private TextMessageDto processRemoteMessage(TextMessageDto remoteMessage, String chatId) {
+    /**
+     * Reset the chat's unread counter from the stored rows, after history
+     * merges that bypass the per-message bookkeeping. Two COUNT queries.
+     */
+    private void recountUnread(String chatId) {
         try {
-            ChatDto targetChat = chatRepository.getChatById(chatId);
-            String decryptedPayload = null;
-
-            if (remoteMessage.getJid().equals(currentUserId)) {
-                // Self message, update only status, waiting members list and timestamp
-                TextMessageDto messageToUpdate = messageRepository.getMessageById(remoteMessage.getId());
-                if (messageToUpdate == null) {
-                    Log.e(TAG, "Message not found in repository: " + remoteMessage.getId());
-                    return null;
-                }
-                messageToUpdate.setStatus(remoteMessage.getStatus());
-                messageToUpdate.setWaitingMemebersList(remoteMessage.getWaitingMemebersList());
-                messageToUpdate.setTimestamp(remoteMessage.getTimestamp());
-                messageRepository.saveMessage(messageToUpdate);
-                return messageToUpdate;
-            } else {
-                // Not a self message, decrypt payload
-                long messageTimestamp = System.currentTimeMillis();
-                if (remoteMessage.getTimestamp() != null) {
-                    messageTimestamp = remoteMessage.getTimestamp().getTime();
+            int textUnread = messageRepository.getUnreadMessagesCount(chatId, currentUserId);
+            int mediaUnread = mediaRepository.getUnreadMessagesCount(chatId, currentUserId);
+            chatRepository.updateUnreadCount(chatId, textUnread + mediaUnread);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to recount unread messages for " + chatId, e);
+        }
+    }
+
+    /**
+     * Store one page of history: new messages are decrypted and inserted,
+     * known ones only take the server's status and waiting list.
+     *
+     * @return the newest server timestamp stored without a gap, counted in
+     *         page order up to the first message that failed to decrypt,
+     *         below {@code since} if that was the first message; -1 if the
+     *         page could not be stored
+     */
+    private long mergeHistoryPage(String chatId, List<TextMessageDto> batch, long since) {
+        ChatDto chat = chatRepository.getChatById(chatId);
+        if (chat == null) return -1;
+
+        List<String> ids = new ArrayList<>(batch.size());
+        for (TextMessageDto remoteMessage : batch) {
+            ids.add(remoteMessage.getId());
+        }
+        Set<String> storedIds = new HashSet<>(messageRepository.getExistingMessageIds(ids));
+
+        List<TextMessageDto> toDecrypt = new ArrayList<>();
+        List<TextMessageDto> knownMessages = new ArrayList<>();
+        for (TextMessageDto remoteMessage : batch) {
+            if (storedIds.contains(remoteMessage.getId())) {
+                knownMessages.add(remoteMessage);
+            } else if (!currentUserId.equals(remoteMessage.getJid())) {
+                toDecrypt.add(remoteMessage);
+            }
+        }
+
+        ParallelDecryptor.Result<TextMessageDto> decrypted =
+                decryptBatch(toDecrypt, Collections.singletonMap(chatId, chat));
+        for (Map.Entry<String, String> failure : decrypted.getFailures().entrySet()) {
+            Log.e(TAG, "Failed to decrypt history message " + failure.getKey() + ": " + failure.getValue());
+        }
+        List<TextMessageDto> newMessages = decrypted.getDecrypted();
+
+        try {
+            transactionRunner.runInTransaction(() -> {
+                messageRepository.saveMessages(newMessages);
+                for (TextMessageDto remoteMessage : knownMessages) {
+                    if (remoteMessage.getTimestamp() != null && remoteMessage.getStatus() != null) {
+                        messageRepository.updateMessage(remoteMessage);
+                    }
                 }
-                if (targetChat.getGroup()) {
-                    // Group chat: decrypt with group symmetric key
-                    decryptedPayload = authService.decryptWithSymmetricKey(remoteMessage.getPayload(), chatId, messageTimestamp);
-                } else {
-                    // Private chat: decrypt with recipient's public key
-                    decryptedPayload = authService.decryptWithPrivateKey(remoteMessage.getPayload(), messageTimestamp);
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to store history page for " + chatId, e);
+            return -1;
+        }
+
+        // a later live redelivery of these must not count as new
+        for (TextMessageDto message : newMessages) {
+            deduplicator.markIfNew(message.getId());
+        }
+
+        Set<String> failedIds = decrypted.getFailures().keySet();
+        long storedUpTo = since;
+        for (TextMessageDto remoteMessage : batch) {
+            Date timestamp = remoteMessage.getTimestamp();
+            if (failedIds.contains(remoteMessage.getId())) {
+                // stop short of the failed message's millisecond, so the next sync fetches it again
+                if (timestamp != null) {
+                    storedUpTo = Math.min(storedUpTo, timestamp.getTime() - 1);
                 }
-                remoteMessage.setPayload(decryptedPayload);
-                if (decryptedPayload != null)
-                    messageRepository.saveMessage(remoteMessage);
+                break;
+            }
+            if (timestamp != null) {
+                storedUpTo = Math.max(storedUpTo, timestamp.getTime());
+            }
+        }
+        return storedUpTo;
+    }
 
-                return remoteMessage;
+    /**
+     * Decrypt a batch in parallel on the crypto pool with the keys already
+     * stored. Group messages that fail get their chat's key epochs fetched
+     * here on the calling thread, one relay call per chat, and only those
+     * messages are decrypted again.
+     */
+    private ParallelDecryptor.Result<TextMessageDto> decryptBatch(List<TextMessageDto> messages, Map<String, ChatDto> chats) {
+        return decryptor.decryptAll(messages,
+                message -> decryptRemoteMessage(message, chats.get(message.getChatId())),
+                failed -> fetchMissingGroupKeys(failed, chats));
+    }
+
+    /** @return true if any chat got a key epoch it did not have */
+    private boolean fetchMissingGroupKeys(List<TextMessageDto> failed, Map<String, ChatDto> chats) {
+        Map<String, Long> oldestByGroup = new HashMap<>();
+        for (TextMessageDto message : failed) {
+            ChatDto chat = chats.get(message.getChatId());
+            if (chat == null || !Boolean.TRUE.equals(chat.getGroup())) continue; // private keys are our own
+            long timestamp = message.getTimestamp() != null ? message.getTimestamp().getTime() : System.currentTimeMillis();
+            oldestByGroup.merge(chat.getChatId(), timestamp, Math::min);
+        }
+
+        boolean fetched = false;
+        for (Map.Entry<String, Long> group : oldestByGroup.entrySet()) {
+            try {
+                // every epoch from the oldest failure on, the chat's newest one included
+                if (authService.prefetchSymmetricKeys(group.getKey(), group.getValue()) > 0) {
+                    fetched = true;
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Could not fetch keys for chat: " + group.getKey(), e);
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error processing remote message", e);
-            return null;
         }
+        return fetched;
+    }
+
+    /**
+     * Replace the message's encrypted payload with the plaintext
+     *
+     * @return the plaintext, or null if it could not be decrypted
+     */
+    private String decryptRemoteMessage(TextMessageDto remoteMessage, ChatDto targetChat) throws Exception {
+        long messageTimestamp = System.currentTimeMillis();
+        if (remoteMessage.getTimestamp() != null) {
+            messageTimestamp = remoteMessage.getTimestamp().getTime();
+        }
+
+        String decryptedPayload;
+        if (targetChat.getGroup()) {
+            // Group chat: decrypt with group symmetric key
+            decryptedPayload = authService.decryptWithSymmetricKey(remoteMessage.getPayload(), targetChat.getChatId(), messageTimestamp);
+        } else {
+            // Private chat: hybrid v2 envelope or legacy RSA, told apart by the payload's prefix
+            decryptedPayload = authService.decryptWithPrivateKey(remoteMessage.getPayload(), messageTimestamp);
+        }
+        if (decryptedPayload != null) {
+            remoteMessage.setPayload(decryptedPayload); // a failed one keeps its ciphertext for the retry
+        }
+        return decryptedPayload;
     }
 
+    /**
+     * Pull the offline inbox a page at a time. Each page is read off the
+     * response in chunks of at most a page, and each chunk is decrypted and
+     * stored in one transaction before the next is read, so memory stays at
+     * one page and chats fill in while the rest downloads. Stops at the
+     * first chunk that cannot be fetched, decrypted or stored, without
+     * reading past it; the relay hands the rest out again on the next call.
+     *
+     * @return how many messages were handed to storage
+     */
     @Override
-    public List<MessageDto> getOfflineMessages(String userId) throws Exception {
+    public int syncOfflineMessages(String userId) {
         if (currentUserId == null) {
             currentUserId = userId;
         }
 
-        try {
-            List<MessageDto> offlineMessages = relayApiClient.getOfflineMessages(userId);
-            if (offlineMessages != null) {
-                for (MessageDto message : offlineMessages) {
-                    // Save to repository
-                    messageRepository.saveMessage((TextMessageDto) message);
-
-                    // Send delivery receipt
-                    // sendDeliveryReceipt(message);
-                }
-                return offlineMessages;
+        String cursor = null;
+        int received = 0;
+        while (true) {
+            OfflineInboxPage page = relayApiClient.getOfflineMessagesPage(
+                    userId, cursor, OFFLINE_PAGE_SIZE, this::ingestIncomingBatch);
+            if (page == null) {
+                Log.e(TAG, "Offline inbox fetch failed after " + received + " messages");
+                break;
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to get offline messages", e);
+            received += page.getReceived();
+            if (!page.isComplete()) {
+                Log.e(TAG, "Offline inbox page could not be stored in full, stopping after " + received + " messages");
+                break;
+            }
+
+            if (!page.hasMore() || page.getNextCursor().equals(cursor)) break;
+            cursor = page.getNextCursor();
         }
 
-        return Collections.emptyList();
+        Log.d(TAG, "Offline inbox synced: " + received + " messages");
+        return received;
     }
 
+
     @Override
     public List<MessageDto> sendPendingMessages() throws Exception {
         List<TextMessageDto> pendingMessages = messageRepository.getPendingMessages();
-        List<MessageDto> updatedMessages = new ArrayList<>();
-        pendingMessages.forEach((pendingMessage) -> {
-            try {
-                // Send message and add to updated messages list
-                updatedMessages.add(sendMessage(pendingMessage));
-                Log.i(TAG, "Send pending message: " + pendingMessage.getId()
-                        + " for chatId: " + pendingMessage.getChatId());
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to send pending message: " + pendingMessage.getId());
-            }
-        });
+        Log.i(TAG, "Sending " + pendingMessages.size() + " pending messages");
+        return new ArrayList<>(outboxFlusher.flush(
+                pendingMessages,
+                this::sendTracked,
+                this::storeSentMessages
+        ));
+    }
 
-        return updatedMessages;
+    /** One write for a chat's flushed messages and its last message pointer */
+    private void storeSentMessages(String chatId, List<TextMessageDto> sent) {
+        for (TextMessageDto message : sent) {
+            message.setStatus(MessageState.SENT);
+        }
+        TextMessageDto newest = sent.get(sent.size() - 1);
+        transactionRunner.runInTransaction(() -> {
+            messageRepository.saveMessages(sent);
+            chatRepository.updateLastMessage(chatId, newest.getId());
+        });
+        ChatUpdateBus.postLastMessageUpdate(newest);
     }
 
     public LiveData<MessageDto> getIncomingMessageLiveData() {
@@ -540,94 +1034,69 @@ public class RelayMessageService implements MessageService, RelayWebSocketClient
         return true;
     }
 
+    /**
+     * A frame written just before the socket dropped may never have reached
+     * the relay, so the next read watermark for each chat is sent again.
+     */
+    public void onConnectionRestored() {
+        sentReadWatermarks.clear();
+    }
+
+    /**
+     * Mark the whole chat read by the user: one update per table locally and
+     * a single CHAT_READ watermark to the relay, which covers text and media.
+     */
     @Override
     public boolean setMessagesInChatReadByUser(String chatId, String userId) throws Exception {
         try {
-            List<TextMessageDto> localMessages = messageRepository.getMessagesForChat(chatId);
-            List<TextMessageDto> remoteMessages = relayApiClient.getMessagesForChat(chatId);
-            boolean success = true;
-
-            for (TextMessageDto message : localMessages) {
-                // Check if message state is 'SENT' but waiting members list is empty
-                if (message.getWaitingMemebersList() == null || message.getWaitingMemebersList().isEmpty()) {
-                    if (message.getStatus().equals(MessageState.SENT)) {
-                        message.setStatus(MessageState.READ);
-                        messageRepository.updateMessage(message);
-                    }
-                }
-
-                TextMessageDto remoteMessage = remoteMessages.stream()
-                        .filter(m -> m.getId().equals(message.getId()))
-                        .findFirst()
-                        .orElse(null);
-
-                // or waiting members does not contain userId
-                if (message.getJid().equals(userId) || !message.getWaitingMemebersList().contains(userId)) {
-                    if (remoteMessage != null
-                            && remoteMessage.getWaitingMemebersList() != null
-                                && remoteMessage.getWaitingMemebersList().contains(userId)) {
-                        // local is set on READ, remote is not
-                        // broadcast READ event
-                    }
-                    else {
-                        continue;
-                    }
-                } else {
-                    if (message.getStatus() == MessageState.READ) {
-                        // validate message is set on READ in backend
-                        if (remoteMessage != null && remoteMessage.getStatus() == MessageState.READ) {
-                            continue;
-                        }
-                    } else {
-                        // backend message is set on READ, local message is not
-                        if (remoteMessage != null && remoteMessage.getStatus() == MessageState.READ) {
-                            message.setStatus(remoteMessage.getStatus());
-                            List<String> waitingMembersList = new ArrayList<>(message.getWaitingMemebersList());
-                            if (waitingMembersList != null) {
-                                waitingMembersList.remove(userId);
-                            }
-                            message.setWaitingMemebersList(waitingMembersList);
-                            messageRepository.updateMessage(message);
-                            continue;
-                        }
-
-                        // case for group chat
-                        if (remoteMessage != null && remoteMessage.getStatus() == MessageState.SENT) {
-                            message.setStatus(remoteMessage.getStatus());
-                            List<String> waitingMembersList = new ArrayList<>(message.getWaitingMemebersList());
-                            if (waitingMembersList != null) {
-                                waitingMembersList.remove(userId);
-                            }
-                            message.setWaitingMemebersList(waitingMembersList);
-                            messageRepository.updateMessage(message);
-                        }
-                    }
+            ChatReadWatermarkDto watermark = currentReadWatermark(chatId, userId);
+            if (watermark == null) return true; // nothing in the chat yet
+
+            int[] updated = new int[1];
+            transactionRunner.runInTransaction(() -> {
+                updated[0] = messageRepository.markChatReadUpTo(chatId, userId, watermark.getUpToTimestamp());
+                if (userId.equals(currentUserId)) {
+                    chatRepository.addUnreadCount(chatId, -updated[0]);
                 }
+            });
 
-                // Send read event to webSocket
-                // Create the message read payload
-                JsonObject readPayload = new JsonObject();
-                readPayload.addProperty("messageId", message.getId());
-                readPayload.addProperty("sendBy", message.getJid());
-                readPayload.addProperty("readBy", userId);
-
-                // Create the WebSocket event
-                WebSocketEvent event = new WebSocketEvent(
-                        WebSocketEvent.EventType.MESSAGE_READ,
-                        readPayload,
+            Long lastSent = sentReadWatermarks.get(chatId);
+            if (lastSent == null || lastSent < watermark.getUpToTimestamp()) {
+                webSocketClient.sendEvent(new WebSocketEvent(
+                        WebSocketEvent.EventType.CHAT_READ,
+                        gson.toJsonTree(watermark),
                         userId
-                );
-
-                // Send the event through the WebSocket client
-                webSocketClient.sendEvent(event);
-                Log.d(TAG, "Message read event sent: message " + message.getId() +
-                        " sent by " + message.getJid() + " was read by " + userId);
+                )).whenComplete((written, error) -> {
+                    // only a written frame counts as sent; otherwise the next call tries again
+                    if (error != null || !Boolean.TRUE.equals(written)) {
+                        Log.w(TAG, "Read watermark for chat " + chatId + " not written", error);
+                        return;
+                    }
+                    sentReadWatermarks.merge(chatId, watermark.getUpToTimestamp(), Math::max);
+                    Log.d(TAG, "Read watermark sent for chat " + chatId + " up to " + watermark.getUpToMessageId()
+                            + " (" + updated[0] + " local messages updated)");
+                });
             }
-
-            return success;
+            return true;
         } catch (Exception e) {
             Log.e(TAG, "Error marking all messages as read", e);
             return false;
         }
     }
+
+    /** Watermark at the newest text or media message stored for the chat, null if there is none */
+    private ChatReadWatermarkDto currentReadWatermark(String chatId, String userId) {
+        MessageDto lastText = messageRepository.getLastMessageForChat(chatId);
+        MessageDto lastMedia = mediaRepository.getLastMessageForChat(chatId);
+
+        MessageDto newest = lastText;
+        if (newest == null || newest.getTimestamp() == null
+                || (lastMedia != null && lastMedia.getTimestamp() != null
+                    && lastMedia.getTimestamp().after(newest.getTimestamp()))) {
+            newest = lastMedia;
+        }
+        if (newest == null || newest.getTimestamp() == null) return null;
+
+        return new ChatReadWatermarkDto(chatId, userId, newest.getId(), newest.getTimestamp().getTime());
+    }
 }
\ No newline at end of file
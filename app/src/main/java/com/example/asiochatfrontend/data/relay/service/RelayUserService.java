@@ -12,6 +12,7 @@ import com.example.asiochatfrontend.data.relay.network.RelayApiClient;
 import com.example.asiochatfrontend.data.relay.network.RelayWebSocketClient;
 import com.example.asiochatfrontend.domain.repository.UserRepository;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 import java.util.Collections;
@@ -41,10 +42,10 @@ public class RelayUserService implements UserService {
         this.webSocketClient = webSocketClient;
         this.gson = gson;
 
-        webSocketClient.addListener(event -> {
-            if (event.getType() == WebSocketEvent.EventType.CONNECTION) {
+        webSocketClient.subscribe(WebSocketEvent.EventType.CONNECTION, JsonElement.class, (connection, event) -> {
+            if (connection != null && connection.isJsonObject()) {
                 try {
-                    JsonObject payload = event.getPayload().getAsJsonObject();
+                    JsonObject payload = connection.getAsJsonObject();
                     System.out.println("Connected to server: " + payload);
                     String userId = payload.get("jid").getAsString();
 
@@ -36,6 +36,15 @@ public interface ChatRepository {
      */
     List<ChatDto> getChatsForUser(String userId);
 
+    /**
+     * Get the user's chats with the most recent activity
+     *
+     * @param userId The id of the user
+     * @param limit How many chats to return at most
+     * @return Chats ordered by their last message, newest first
+     */
+    List<ChatDto> getRecentChatsForUser(String userId, int limit);
+
     /**
      * Update an existing chat
      *
@@ -79,6 +88,36 @@ public interface ChatRepository {
      */
     boolean updateUnreadCount(String chatId, int count);
 
+    /**
+     * Point a chat at its newest message and add to its unread count in one
+     * statement. Posts no UI updates; the caller notifies once per batch.
+     *
+     * @param chatId The id of the chat
+     * @param lastMessageId The id of the newest message
+     * @param unreadDelta How many unread messages arrived
+     * @return true if the chat exists
+     */
+    boolean recordIncomingMessages(String chatId, String lastMessageId, int unreadDelta);
+
+    /**
+     * Point a chat at a message the user just sent. Posts no UI updates.
+     *
+     * @param chatId The id of the chat
+     * @param messageId The id of the sent message
+     * @return true if the chat exists
+     */
+    boolean recordOutgoingMessage(String chatId, String messageId);
+
+    /**
+     * Adjust a chat's unread count in place, never below zero. Posts no UI
+     * updates.
+     *
+     * @param chatId The id of the chat
+     * @param delta Messages that became unread (positive) or read (negative)
+     * @return true if the chat exists
+     */
+    boolean addUnreadCount(String chatId, int delta);
+
     /**
      * Search for chats by name
      *
@@ -75,6 +75,17 @@ public interface MediaRepository {
 
     MessageDto getLastMessageForChat(String chatId);
 
+    /**
+     * Mark every media message in the chat created at or before the
+     * timestamp as read by the user, in a single update
+     *
+     * @param chatId The id of the chat
+     * @param userId The reader
+     * @param upToTimestamp Read watermark, epoch millis
+     * @return The number of media messages that were unread by the user and are not anymore
+     */
+    int markChatReadUpTo(String chatId, String userId, long upToTimestamp);
+
     int getUnreadMessagesCount(String chatId, String currentUserId);
 
     void updateMessage(MessageDto message);
@@ -20,6 +20,14 @@ public interface MessageRepository {
      */
     TextMessageDto saveMessage(TextMessageDto message);
 
+    /**
+     * Save several messages with a single insert
+     *
+     * @param messages The messages to save
+     * @return The saved messages with any updated fields
+     */
+    List<TextMessageDto> saveMessages(List<TextMessageDto> messages);
+
     /**
      * Get a message by its unique identifier
      *
@@ -28,6 +36,14 @@ public interface MessageRepository {
      */
     TextMessageDto getMessageById(String messageId);
 
+    /**
+     * Find which of the given messages are already stored
+     *
+     * @param messageIds The ids to look up
+     * @return The subset of ids that exist
+     */
+    List<String> getExistingMessageIds(List<String> messageIds);
+
     /**
      * Get all messages for a specific chat
      *
@@ -60,11 +76,31 @@ public interface MessageRepository {
      */
     boolean updateMessageState(String messageId, MessageState state);
 
+    /**
+     * Update the state of a message that is still PENDING
+     *
+     * @param messageId The id of the message
+     * @param state The new state
+     * @return true if the message was still pending
+     */
+    boolean updatePendingMessageState(String messageId, MessageState state);
+
     boolean updateMessageDeliveredAt(String messageId, Date deliveredAt);
 
     boolean updateMessageReadAt(String messageId, Date readAt);
 
     TextMessageDto getLastMessageForChat(String chatId);
 
+    /**
+     * Mark every message in the chat created at or before the timestamp as
+     * read by the user, in a single update
+     *
+     * @param chatId The id of the chat
+     * @param userId The reader
+     * @param upToTimestamp Read watermark, epoch millis
+     * @return The number of messages that were unread by the user and are not anymore
+     */
+    int markChatReadUpTo(String chatId, String userId, long upToTimestamp);
+
     int getUnreadMessagesCount(String chatId, String userId);
 }
\ No newline at end of file
@@ -0,0 +1,9 @@
+package com.example.asiochatfrontend.domain.repository;
+
+/**
+ * Runs a group of repository writes atomically; either every write in the
+ * block is committed or none is. Backed by the Room database.
+ */
+public interface TransactionRunner {
+    void runInTransaction(Runnable writes);
+}
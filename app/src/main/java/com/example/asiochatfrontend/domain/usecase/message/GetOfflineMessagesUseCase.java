@@ -1,9 +1,6 @@
 package com.example.asiochatfrontend.domain.usecase.message;
 
 import com.example.asiochatfrontend.core.connection.ConnectionManager;
-import com.example.asiochatfrontend.core.model.dto.abstracts.MessageDto;
-
-import java.util.List;
 
 public class GetOfflineMessagesUseCase {
     private final ConnectionManager connectionManager;
@@ -12,7 +9,8 @@ public class GetOfflineMessagesUseCase {
         this.connectionManager = connectionManager;
     }
 
-    public List<MessageDto> execute(String userId) throws Exception {
-        return connectionManager.getOfflineMessages(userId);
+    /** @return how many new messages were stored */
+    public int execute(String userId) throws Exception {
+        return connectionManager.syncOfflineMessages(userId);
     }
 }
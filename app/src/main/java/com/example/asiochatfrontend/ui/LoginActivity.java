@@ -15,6 +15,7 @@ import androidx.multidex.BuildConfig;
 import com.example.asiochatfrontend.R;
 import com.example.asiochatfrontend.app.di.DatabaseModule;
 import com.example.asiochatfrontend.app.di.ServiceModule;
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
 import com.example.asiochatfrontend.core.connection.ConnectionManager;
 import com.example.asiochatfrontend.core.connection.ConnectionMode;
 import com.example.asiochatfrontend.core.model.dto.UserDetailsDto;
@@ -35,7 +36,6 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.util.Date;
 import java.util.UUID;
-import java.util.concurrent.Executors;
 
 import javax.inject.Inject;
 
@@ -71,7 +71,7 @@ public class LoginActivity extends AppCompatActivity {
         String portStr = prefs.getString(KEY_PORT,     null);
 
         if (userId != null && relayIp != null && portStr != null) {
-            Executors.newSingleThreadExecutor().submit(() -> {
+            AppExecutors.io().execute(() -> {
                 boolean reachable = isRelayServerReachable(relayIp, Integer.parseInt(portStr));
                 Intent intent = new Intent(LoginActivity.this, MainActivity.class);
                 if (!reachable) {
@@ -140,7 +140,7 @@ public class LoginActivity extends AppCompatActivity {
         final String finalRelayIp = relayIp;
         final String finalPortStr = port;
 
-        Executors.newSingleThreadExecutor().submit(() -> {
+        AppExecutors.io().execute(() -> {
             boolean isRelayServerReachable = this.isRelayServerReachable(finalRelayIp, portNumber);
             if (!isRelayServerReachable) {
                 // force MainActivity into RELAY mode so its banner shows immediately
@@ -157,7 +157,7 @@ public class LoginActivity extends AppCompatActivity {
         initializeCoreServices(finalUserId, finalRelayIp, portNumber);
         connectionManager = ServiceModule.getConnectionManager();
 
-        new Thread(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 createUserIfNotExists(finalUserId, "");
                 savePreferences(finalUserId, finalRelayIp, finalPortStr, "");
@@ -166,7 +166,7 @@ public class LoginActivity extends AppCompatActivity {
             } catch (Exception e) {
                 Log.e(TAG, "Error creating user", e);
             }
-        }).start();
+        });
     }
 
     private void savePreferences(String userId, String relayIp, String port, String displayName) {
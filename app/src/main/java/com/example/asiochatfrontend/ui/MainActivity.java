@@ -30,6 +30,8 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.asiochatfrontend.R;
 import com.example.asiochatfrontend.app.di.DatabaseModule;
 import com.example.asiochatfrontend.app.di.ServiceModule;
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
+import com.example.asiochatfrontend.core.concurrent.SerialExecutor;
 import com.example.asiochatfrontend.core.connection.ConnectionManager;
 import com.example.asiochatfrontend.core.connection.ConnectionMode;
 import com.example.asiochatfrontend.core.model.dto.ChatDto;
@@ -71,6 +73,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -579,7 +582,8 @@ public class MainActivity extends AppCompatActivity implements OnWSEventCallback
 
         // Initialize values in the ChatBus
         if (chats != null && !isInitialLoadDone) {
-            ExecutorService executor = Executors.newSingleThreadExecutor();
+            // One serial lane on the shared IO pool, so chats initialize in list order
+            Executor executor = new SerialExecutor(AppExecutors.io());
             for (ChatDto chat : chats) {
                 // capture chatId for the lambda
                 final String chatId = chat.getChatId();
@@ -631,7 +635,7 @@ public class MainActivity extends AppCompatActivity implements OnWSEventCallback
     }
 
     private void initializeUnreadCounts() {
-        Executors.newSingleThreadExecutor().execute(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 List<ChatDto> chats = ServiceModule.getChatRepository().getChatsForUser(currentUserId);
                 if (chats != null) {
@@ -646,7 +650,7 @@ public class MainActivity extends AppCompatActivity implements OnWSEventCallback
     }
 
     private void initializeLastMessages() {
-        Executors.newSingleThreadExecutor().execute(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 List<ChatDto> chats = ServiceModule.getChatRepository().getChatsForUser(currentUserId);
                 if (chats != null) {
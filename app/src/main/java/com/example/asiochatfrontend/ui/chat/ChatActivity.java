@@ -44,6 +44,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.asiochatfrontend.R;
 import com.example.asiochatfrontend.app.di.ServiceModule;
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
 import com.example.asiochatfrontend.core.model.dto.ChatDto;
 import com.example.asiochatfrontend.core.model.dto.MediaStreamResultDto;
 import com.example.asiochatfrontend.core.model.dto.TextMessageDto;
@@ -67,7 +68,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.Executors;
 
 import dagger.hilt.android.AndroidEntryPoint;
 
@@ -917,7 +917,7 @@ public class ChatActivity extends AppCompatActivity implements OnWSEventCallback
     //================================================================================
 
     private void markMessagesAsRead() {
-        Executors.newSingleThreadExecutor().execute(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 new UpdateMessageInChatReadByUserUseCase(
                         ServiceModule.getConnectionManager()
@@ -1288,7 +1288,7 @@ public class ChatActivity extends AppCompatActivity implements OnWSEventCallback
 
     @Override
     public void onChatCreateEvent(List<ChatDto> chats) {
-        Executors.newSingleThreadExecutor().execute(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 // Fetch chats from the database
                 List<ChatDto> newChatList = ServiceModule.getRelayChatService().getChatsForUser(currentUserId);
@@ -10,6 +10,7 @@ import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 
 import com.example.asiochatfrontend.app.di.ServiceModule;
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
 import com.example.asiochatfrontend.core.connection.ConnectionManager;
 import com.example.asiochatfrontend.core.connection.ConnectionMode;
 import com.example.asiochatfrontend.core.model.dto.ChatDto;
@@ -23,6 +24,7 @@ import com.example.asiochatfrontend.core.model.enums.MediaType;
 import com.example.asiochatfrontend.core.model.enums.MessageState;
 import com.example.asiochatfrontend.data.common.utils.FileUtils;
 import com.example.asiochatfrontend.data.common.utils.UuidGenerator;
+import com.example.asiochatfrontend.data.relay.service.KeyPrefetcher;
 import com.example.asiochatfrontend.domain.usecase.chat.GetChatsForUserUseCase;
 import com.example.asiochatfrontend.domain.usecase.media.CreateMediaMessageUseCase;
 import com.example.asiochatfrontend.domain.usecase.media.GetMediaMessageUseCase;
@@ -39,7 +41,6 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.Executors;
 
 import javax.inject.Inject;
 
@@ -91,9 +92,9 @@ public class ChatViewModel extends ViewModel {
         // Set current user in the connection manager
         connectionManager.setCurrentUser(currentUserId);
 
-        // Load chat data and messages
+        // Load chat data and messages; the chat's keys are fetched in bulk first
         loadChatData();
-        loadMessages();
+        loadMessages(true);
     }
 
     public LiveData<MessageDto> getIncomingMessageLiveData() {
@@ -183,7 +184,7 @@ public class ChatViewModel extends ViewModel {
         addMessageToList(messageDto);
 
         // Send in background
-        new Thread(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 MessageDto sentMessage = createMessageUseCase.execute(messageDto);
 
@@ -195,14 +196,14 @@ public class ChatViewModel extends ViewModel {
             } finally {
                 isLoading.postValue(false);
             }
-        }).start();
+        });
     }
 
     public void sendMediaMessage(Uri mediaUri, MediaType mediaType, String caption, String replyToMessageId) {
         if (mediaUri == null) return;
         isLoading.setValue(false);
 
-        Executors.newSingleThreadExecutor().execute(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 FileUtils fileUtils = ServiceModule.getFileUtils();
                 File file = fileUtils.getFileFromUri(mediaUri); // Get local file copy
@@ -267,7 +268,7 @@ public class ChatViewModel extends ViewModel {
     public void resendMessage(String messageId) {
         isLoading.setValue(true);
 
-        new Thread(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 boolean success = resendFailedMessageUseCase.execute(messageId);
                 loadMessages(); // Refresh to update message status
@@ -277,7 +278,7 @@ public class ChatViewModel extends ViewModel {
                 error.postValue("Error resending message: " + e.getMessage());
                 isLoading.postValue(false);
             }
-        }).start();
+        });
     }
 
     public void markMessagesAsRead() {
@@ -285,7 +286,7 @@ public class ChatViewModel extends ViewModel {
             return;
         }
 
-        new Thread(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 // Mark all messages in this chat as read by current user
                 boolean success = connectionManager.setMessagesInChatReadByUser(chatId, currentUserId);
@@ -298,7 +299,7 @@ public class ChatViewModel extends ViewModel {
             } catch (Exception e) {
                 Log.e(TAG, "Error marking messages as read", e);
             }
-        }).start();
+        });
     }
 
     public void markMessageAsRead(String messageId, String readBy) {
@@ -306,14 +307,14 @@ public class ChatViewModel extends ViewModel {
             return;
         }
 
-        new Thread(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 // Mark a specific message as read
                 connectionManager.setMessageReadByUser(messageId, currentUserId, readBy);
             } catch (Exception e) {
                 Log.e(TAG, "Error marking message as read: " + messageId, e);
             }
-        }).start();
+        });
     }
 
     private void loadChatData() {
@@ -322,7 +323,7 @@ public class ChatViewModel extends ViewModel {
             return;
         }
 
-        new Thread(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 List<ChatDto> chats = getChatsUseCase.execute(currentUserId);
                 for (ChatDto chat : chats) {
@@ -344,7 +345,7 @@ public class ChatViewModel extends ViewModel {
                 Log.e(TAG, "Error loading chat data", e);
                 error.postValue("Error loading chat data: " + e.getMessage());
             }
-        }).start();
+        });
     }
 
     private void loadChatMembers() {
@@ -352,7 +353,7 @@ public class ChatViewModel extends ViewModel {
             return;
         }
 
-        new Thread(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 List<UserDto> members = new ArrayList<>();
                 for (String userId : participants) {
@@ -369,16 +370,27 @@ public class ChatViewModel extends ViewModel {
             } catch (Exception e) {
                 Log.e(TAG, "Error loading chat members", e);
             }
-        }).start();
+        });
     }
 
     private void loadMessages() {
+        loadMessages(false);
+    }
+
+    private void loadMessages(boolean prefetchKeys) {
         if (chatId == null || chatId.isEmpty()) {
             error.setValue("Invalid chat ID");
             return;
         }
 
-        new Thread(() -> {
+        // alongside the load, so the relay's key endpoints never hold up the stored messages
+        KeyPrefetcher keyPrefetcher = ServiceModule.getKeyPrefetcher();
+        if (prefetchKeys && keyPrefetcher != null) {
+            String prefetchChatId = chatId;
+            AppExecutors.io().execute(() -> keyPrefetcher.prefetchChat(prefetchChatId));
+        }
+
+        AppExecutors.io().execute(() -> {
             try {
                 List<TextMessageDto> fetchedTextMessages = getMessagesUseCase.execute(chatId);
                 List<MediaMessageDto> fetchedMediaMessages = getMediaMessagesUseCase.execute(chatId);
@@ -404,7 +416,7 @@ public class ChatViewModel extends ViewModel {
                 error.postValue("Error loading messages: " + e.getMessage());
                 isLoading.postValue(false);
             }
-        }).start();
+        });
     }
 
     private void addMessageToList(MessageDto message) {
@@ -41,6 +41,7 @@ import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.bumptech.glide.request.RequestOptions;
 import com.example.asiochatfrontend.R;
 import com.example.asiochatfrontend.app.di.ServiceModule;
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
 import com.example.asiochatfrontend.core.model.dto.MediaStreamResultDto;
 import com.example.asiochatfrontend.core.model.dto.TextMessageDto;
 import com.example.asiochatfrontend.core.model.dto.abstracts.MessageDto;
@@ -57,8 +58,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 public class MessageAdapter extends ListAdapter<MessageDto, MessageAdapter.MessageViewHolder> {
 
@@ -75,8 +75,8 @@ public class MessageAdapter extends ListAdapter<MessageDto, MessageAdapter.Messa
     private static final int MAX_RETRY_ATTEMPTS = 3;
     private static final int INITIAL_RETRY_DELAY_MS = 300;
 
-    // Create a thread pool with a fixed number of threads to limit concurrent operations
-    private final ExecutorService executorService = Executors.newFixedThreadPool(3);
+    // Thumbnail and media loading share the app's bounded UI-prep pool
+    private final Executor uiPrepExecutor = AppExecutors.uiPrep();
 
     // Create an LRU cache for thumbnails to avoid regenerating them
     private final LruCache<String, Bitmap> thumbnailCache;
@@ -206,7 +206,7 @@ public class MessageAdapter extends ListAdapter<MessageDto, MessageAdapter.Messa
                 mediaClickListener,
                 glideRequestManager,
                 thumbnailCache,
-                executorService
+                uiPrepExecutor
         );
     }
 
@@ -269,13 +269,6 @@ public class MessageAdapter extends ListAdapter<MessageDto, MessageAdapter.Messa
         holder.cancelImageLoading();
     }
 
-    @Override
-    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
-        super.onDetachedFromRecyclerView(recyclerView);
-        // Shutdown the executor service when adapter is detached
-        executorService.shutdown();
-    }
-
     static class MessageViewHolder extends RecyclerView.ViewHolder {
         private final LinearLayout messageLayout;
         private final MaterialTextView senderNameText;
@@ -305,7 +298,7 @@ public class MessageAdapter extends ListAdapter<MessageDto, MessageAdapter.Messa
         private final OnMediaClickListener mediaClickListener;
         private final RequestManager glideRequestManager;
         private final LruCache<String, Bitmap> thumbnailCache;
-        private final ExecutorService executorService;
+        private final Executor uiPrepExecutor;
         private Runnable pendingThumbnailTask;
 
         public MessageViewHolder(@NonNull View itemView,
@@ -313,13 +306,13 @@ public class MessageAdapter extends ListAdapter<MessageDto, MessageAdapter.Messa
                                  OnMediaClickListener mediaClickListener,
                                  RequestManager glideRequestManager,
                                  LruCache<String, Bitmap> thumbnailCache,
-                                 ExecutorService executorService) {
+                                 Executor uiPrepExecutor) {
             super(itemView);
             this.longClickListener = longClickListener;
             this.mediaClickListener = mediaClickListener;
             this.glideRequestManager = glideRequestManager;
             this.thumbnailCache = thumbnailCache;
-            this.executorService = executorService;
+            this.uiPrepExecutor = uiPrepExecutor;
 
             messageLayout = itemView.findViewById(R.id.message_LLO_message);
             senderNameText = itemView.findViewById(R.id.message_MTV_sender_name);
@@ -431,7 +424,7 @@ public class MessageAdapter extends ListAdapter<MessageDto, MessageAdapter.Messa
                     attachmentLayout.setVisibility(View.GONE); // Hide until loaded
                     attachmentProgress.setVisibility(View.VISIBLE); // Hide until loaded
 
-                    Executors.newSingleThreadExecutor().execute(() -> {
+                    uiPrepExecutor.execute(() -> {
                         MediaStreamResultDto mediaStream = ServiceModule
                                 .getConnectionManager()
                                 .getMediaStream(mediaMessage.getId());
@@ -846,7 +839,7 @@ public class MessageAdapter extends ListAdapter<MessageDto, MessageAdapter.Messa
          * @param retryCount Current retry count
          */
         private void loadVideoThumbnailWithRetry(File file, String cacheKey, MessageDto message, int retryCount) {
-            executorService.execute(() -> {
+            uiPrepExecutor.execute(() -> {
                 MediaMetadataRetriever retriever = null;
                 try {
                     retriever = new MediaMetadataRetriever();
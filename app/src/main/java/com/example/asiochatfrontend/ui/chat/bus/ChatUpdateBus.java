@@ -4,10 +4,13 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import com.example.asiochatfrontend.core.model.dto.ChatDto;
+import com.example.asiochatfrontend.core.model.dto.OutboxProgressDto;
+import com.example.asiochatfrontend.core.model.dto.UploadProgressDto;
 import com.example.asiochatfrontend.core.model.dto.abstracts.MessageDto;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Singleton;
 
@@ -27,6 +30,14 @@ public class ChatUpdateBus {
     // Unread count updates mapped by chatId
     private static final MutableLiveData<Map<String, Integer>> unreadCountsLiveData = new MutableLiveData<>(new HashMap<>());
 
+    // Media upload progress mapped by messageId; finished uploads drop out after their final post
+    private static final Map<String, UploadProgressDto> activeUploads = new ConcurrentHashMap<>();
+    private static final MutableLiveData<Map<String, UploadProgressDto>> uploadProgressLiveData =
+            new MutableLiveData<>(new HashMap<>());
+
+    // Progress of the offline outbox flush after a reconnect
+    private static final MutableLiveData<OutboxProgressDto> outboxProgressLiveData = new MutableLiveData<>();
+
     /**
      * Post a chat update that will be broadcast to all observers
      */
@@ -69,6 +80,27 @@ public class ChatUpdateBus {
         unreadCountsLiveData.postValue(current);
     }
 
+    /**
+     * Post media upload progress; posted from upload worker threads
+     */
+    public static void postUploadProgress(UploadProgressDto progress) {
+        if (progress == null || progress.getMessageId() == null) return;
+
+        activeUploads.put(progress.getMessageId(), progress);
+        uploadProgressLiveData.postValue(new HashMap<>(activeUploads));
+        if (progress.isFinished()) {
+            activeUploads.remove(progress.getMessageId());
+        }
+    }
+
+    /**
+     * Post offline outbox progress; posted from outbox worker threads
+     */
+    public static void postOutboxProgress(OutboxProgressDto progress) {
+        if (progress == null) return;
+        outboxProgressLiveData.postValue(progress);
+    }
+
     /**
      * Get the LiveData for observing chat updates
      */
@@ -90,6 +122,20 @@ public class ChatUpdateBus {
         return unreadCountsLiveData;
     }
 
+    /**
+     * Get the LiveData for observing media upload progress by messageId
+     */
+    public static LiveData<Map<String, UploadProgressDto>> getUploadProgress() {
+        return uploadProgressLiveData;
+    }
+
+    /**
+     * Get the LiveData for observing offline outbox progress
+     */
+    public static LiveData<OutboxProgressDto> getOutboxProgress() {
+        return outboxProgressLiveData;
+    }
+
     public static LiveData<Map<String, MessageDto>> getLatestMessagesMap() {
         return latestMessagesMap;
     }
@@ -6,6 +6,7 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
 import com.example.asiochatfrontend.core.connection.ConnectionManager;
 import com.example.asiochatfrontend.core.model.dto.ChatDto;
 import com.example.asiochatfrontend.core.model.dto.UserDto;
@@ -108,7 +109,7 @@ public class ContactsViewModel extends ViewModel {
 
         isLoading.setValue(true);
 
-        new Thread(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 String chatId = UuidGenerator.generateForChat(currentUserId, otherUserId);
                 ChatDto chat = createPrivateChatUseCase.execute(chatId, currentUserId, otherUserId);
@@ -125,7 +126,7 @@ public class ContactsViewModel extends ViewModel {
                 error.postValue("Error creating chat: " + e.getMessage());
                 isLoading.postValue(false);
             }
-        }).start();
+        });
     }
 
     public void createGroupChat(String name, List<String> memberIds) {
@@ -141,7 +142,7 @@ public class ContactsViewModel extends ViewModel {
 
         isLoading.setValue(true);
 
-        new Thread(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 String chatId = UuidGenerator.generate();
                 ChatDto chat = createGroupChatUseCase.execute(chatId, name, memberIds, currentUserId);
@@ -152,13 +153,13 @@ public class ContactsViewModel extends ViewModel {
                 error.postValue("Error creating group chat: " + e.getMessage());
                 isLoading.postValue(false);
             }
-        }).start();
+        });
     }
 
     private void loadContacts() {
         isLoading.setValue(true);
 
-        new Thread(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 // In a real app, you'd also get contacts from a local database
                 // For now, we'll just use online users as our contacts
@@ -180,7 +181,7 @@ public class ContactsViewModel extends ViewModel {
                 error.postValue("Error loading contacts: " + e.getMessage());
                 isLoading.postValue(false);
             }
-        }).start();
+        });
     }
 
     // Helpers
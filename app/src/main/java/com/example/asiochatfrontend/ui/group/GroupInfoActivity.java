@@ -16,6 +16,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.asiochatfrontend.R;
 import com.example.asiochatfrontend.app.di.ServiceModule;
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
 import com.example.asiochatfrontend.core.model.dto.ChatDto;
 import com.example.asiochatfrontend.core.model.dto.UserDto;
 import com.example.asiochatfrontend.core.model.enums.ChatType;
@@ -204,7 +205,7 @@ public class GroupInfoActivity extends AppCompatActivity {
 
     private void showAddMemberDialog() {
         // fetch & filter off the UI thread
-        new Thread(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 // 1. load all users
                 List<UserDto> allUsers = new GetAllUsersUseCase(
@@ -267,7 +268,7 @@ public class GroupInfoActivity extends AppCompatActivity {
                         Toast.makeText(this, "Failed to load contacts", Toast.LENGTH_SHORT).show()
                 );
             }
-        }).start();
+        });
     }
 
     private void showMemberOptionsDialog(String memberId) {
@@ -6,6 +6,7 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
 import com.example.asiochatfrontend.core.connection.ConnectionManager;
 import com.example.asiochatfrontend.core.model.dto.ChatDto;
 import com.example.asiochatfrontend.core.model.dto.UserDto;
@@ -99,7 +100,7 @@ public class GroupViewModel extends ViewModel {
 
         isLoading.setValue(true);
 
-        new Thread(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 boolean success = updateGroupNameUseCase.execute(chatId, newName);
                 if (success) {
@@ -114,7 +115,7 @@ public class GroupViewModel extends ViewModel {
                 error.postValue("Error updating group name: " + e.getMessage());
                 isLoading.postValue(false);
             }
-        }).start();
+        });
     }
 
     public void addMemberToGroup(String userId) {
@@ -125,7 +126,7 @@ public class GroupViewModel extends ViewModel {
 
         isLoading.setValue(true);
 
-        new Thread(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 boolean success = addMemberToGroupUseCase.execute(chatId, userId);
                 if (success) {
@@ -140,7 +141,7 @@ public class GroupViewModel extends ViewModel {
                 error.postValue("Error adding member to group: " + e.getMessage());
                 isLoading.postValue(false);
             }
-        }).start();
+        });
     }
 
     public void removeMemberFromGroup(String userId) {
@@ -151,7 +152,7 @@ public class GroupViewModel extends ViewModel {
 
         isLoading.setValue(true);
 
-        new Thread(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 boolean success = removeMemberFromGroupUseCase.execute(chatId, userId);
                 if (success) {
@@ -166,7 +167,7 @@ public class GroupViewModel extends ViewModel {
                 error.postValue("Error removing member from group: " + e.getMessage());
                 isLoading.postValue(false);
             }
-        }).start();
+        });
     }
 
     public void startPrivateChat(String otherUserId) {
@@ -177,7 +178,7 @@ public class GroupViewModel extends ViewModel {
 
         isLoading.setValue(true);
 
-        new Thread(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 String chatId = UuidGenerator.generateForChat(currentUserId, otherUserId);
                 ChatDto chat = createPrivateChatUseCase.execute(chatId, currentUserId, otherUserId);
@@ -188,7 +189,7 @@ public class GroupViewModel extends ViewModel {
                 error.postValue("Error creating private chat: " + e.getMessage());
                 isLoading.postValue(false);
             }
-        }).start();
+        });
     }
 
     private void loadGroupData() {
@@ -199,7 +200,7 @@ public class GroupViewModel extends ViewModel {
 
         isLoading.postValue(true);
 
-        new Thread(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 // Get the chat data
                 List<ChatDto> chats = getChatsUseCase.execute(currentUserId);
@@ -241,6 +242,6 @@ public class GroupViewModel extends ViewModel {
                 error.postValue("Error loading group data: " + e.getMessage());
                 isLoading.postValue(false);
             }
-        }).start();
+        });
     }
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 
 import com.example.asiochatfrontend.app.di.ServiceModule;
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
 import com.example.asiochatfrontend.core.connection.ConnectionManager;
 import com.example.asiochatfrontend.core.model.dto.ChatDto;
 import com.example.asiochatfrontend.core.model.dto.MediaMessageDto;
@@ -24,8 +25,6 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -137,7 +136,7 @@ public class HomeViewModel extends ViewModel {
     private void refreshChatData(String chatId) {
         if (chatId == null) return;
 
-        Executors.newSingleThreadExecutor().execute(() -> {
+        AppExecutors.io().execute(() -> {
             try {
                 // Get the latest chat data from database
                 ChatDto updatedChat = connectionManager.getChatById(chatId);
@@ -189,7 +188,7 @@ public class HomeViewModel extends ViewModel {
 
         isLoading.postValue(true);
 
-        Executors.newSingleThreadExecutor().execute(() -> {
+        AppExecutors.io().execute(() -> {
             try
             {
                 // Fetch chats from the database
@@ -245,7 +244,7 @@ public class HomeViewModel extends ViewModel {
     }
 
     public void filterChats(String query) {
-        Executors.newSingleThreadExecutor().execute(() -> {
+        AppExecutors.io().execute(() -> {
             // 1) Build the unread list if needed
             Map<String, Integer> unreadMap = null;
             List<ChatDto> unreadChats = null;
@@ -326,8 +325,7 @@ public class HomeViewModel extends ViewModel {
         MessageDto cached = lastMessageCache.get(chatId);
         if (cached != null) return cached;
 
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        Future<MessageDto> future = executor.submit(() -> {
+        Future<MessageDto> future = AppExecutors.io().submit(() -> {
             try {
                 MessageDto textMessage = ServiceModule.getMessageRepository().getLastMessageForChat(chatId);
                 MessageDto mediaMessage = ServiceModule.getMediaRepository().getLastMessageForChat(chatId);
@@ -357,18 +355,15 @@ public class HomeViewModel extends ViewModel {
         } catch (Exception e) {
             Log.e(TAG, "Future failed", e);
             return null;
-        } finally {
-            executor.shutdown();
         }
     }
 
     public int getUnreadMessageCountForChat(String chatId) {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
         try {
             // Get text message unread count
             // Add timeout to prevent blocking indefinitely
 
-            return executor.submit(() -> {
+            return AppExecutors.io().submit(() -> {
                 try {
                     // Get text message unread count
                     return connectionManager.getUnreadMessagesCount(chatId, currentUserId);
@@ -380,8 +375,6 @@ public class HomeViewModel extends ViewModel {
         } catch (Exception e) {
             Log.e(TAG, "Failed to get unread count: " + e.getMessage());
             return 0;
-        } finally {
-            executor.shutdownNow();
         }
     }
 
@@ -397,7 +390,7 @@ public class HomeViewModel extends ViewModel {
             updateChatInList(chatDto);
 
             // Fetch the latest message on a background thread
-            Executors.newSingleThreadExecutor().execute(() -> {
+            AppExecutors.io().execute(() -> {
                 try {
                     MessageDto lastMessage = lastMessageCache.get(chatDto.getChatId());
                     if (lastMessage == null) {
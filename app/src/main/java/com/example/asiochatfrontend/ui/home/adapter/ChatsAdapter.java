@@ -13,6 +13,7 @@ import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.asiochatfrontend.R;
+import com.example.asiochatfrontend.core.concurrent.AppExecutors;
 import com.example.asiochatfrontend.core.model.dto.ChatDto;
 import com.example.asiochatfrontend.core.model.dto.MediaMessageDto;
 import com.example.asiochatfrontend.core.model.dto.TextMessageDto;
@@ -32,7 +33,6 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
@@ -161,7 +161,7 @@ public class ChatsAdapter extends ListAdapter<ChatDto, ChatsAdapter.ChatViewHold
         } else {
             // Always update the unread count in background to ensure it's fresh
             // This will both initialize missing values and refresh existing ones
-            Executors.newSingleThreadExecutor().execute(() -> {
+            AppExecutors.uiPrep().execute(() -> {
                 try {
                     int freshCount = viewModel.getUnreadMessageCountForChat(chat.getChatId());
                     if (freshCount > 0) {
@@ -0,0 +1,135 @@
+package com.example.asiochatfrontend.core.security;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.util.Base64;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKey;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Private-message wire format: v2 envelopes survive format/parse and
+ * decrypt, legacy RSA payloads are never taken for envelopes, and altered
+ * envelopes are rejected.
+ */
+public class HybridEnvelopeTest {
+
+    private static final EncryptionService crypto = new EncryptionService();
+    private static KeyPair recipient;
+
+    @BeforeClass
+    public static void generateRecipientKey() throws Exception {
+        recipient = crypto.generatePublicPrivateKeyPair();
+    }
+
+    @Test
+    public void formatThenParseRoundTrips() {
+        byte[] iv = crypto.generateRandomGcmIV();
+        byte[] ciphertext = "not really ciphertext".getBytes(StandardCharsets.UTF_8);
+        HybridEnvelope envelope = new HybridEnvelope("d3JhcHBlZA==", iv, ciphertext);
+
+        String payload = envelope.format();
+        HybridEnvelope parsed = HybridEnvelope.parse(payload);
+
+        assertTrue(payload.startsWith(HybridEnvelope.V2_PREFIX));
+        assertNotNull(parsed);
+        assertEquals(envelope.wrappedKey, parsed.wrappedKey);
+        assertArrayEquals(iv, parsed.iv);
+        assertArrayEquals(ciphertext, parsed.ciphertext);
+    }
+
+    @Test
+    public void envelopeDecryptsWithUnwrappedSessionKey() throws Exception {
+        String text = longText(2000); // far past what one RSA block carries
+        String payload = seal(text);
+
+        HybridEnvelope parsed = HybridEnvelope.parse(payload);
+        assertNotNull(parsed);
+        assertEquals(text, open(parsed));
+    }
+
+    @Test
+    public void legacyPayloadIsNotAnEnvelope() throws Exception {
+        byte[] legacy = crypto.encryptStringPublic("hello", recipient.getPublic());
+        String payload = Base64.getEncoder().encodeToString(legacy);
+
+        assertFalse(HybridEnvelope.isHybrid(payload));
+        assertNull(HybridEnvelope.parse(payload));
+        assertEquals("hello", crypto.decryptToStringPrivate(Base64.getDecoder().decode(payload), recipient.getPrivate()));
+    }
+
+    @Test
+    public void legacyFitsOnlyWhatOneRsaBlockCarries() {
+        assertTrue(HybridEnvelope.fitsLegacy(245, recipient.getPublic()));
+        assertFalse(HybridEnvelope.fitsLegacy(246, recipient.getPublic()));
+    }
+
+    @Test
+    public void malformedEnvelopesDoNotParse() {
+        assertNull(HybridEnvelope.parse("v2:onlytwo:parts"));
+        assertNull(HybridEnvelope.parse("v2:a:b:c:d"));
+        assertNull(HybridEnvelope.parse("v2::AAAA:AAAA"));
+        assertNull(HybridEnvelope.parse("v2:key:not base64!:AAAA"));
+        assertNull(HybridEnvelope.parse(null));
+    }
+
+    @Test
+    public void tamperedCiphertextIsRejected() throws Exception {
+        HybridEnvelope parsed = HybridEnvelope.parse(seal("pay 10 to alice"));
+        assertNotNull(parsed);
+        parsed.ciphertext[0] ^= 0x01;
+
+        try {
+            open(parsed);
+            fail("tampered ciphertext decrypted");
+        } catch (AEADBadTagException expected) {
+            // GCM tag check
+        }
+    }
+
+    @Test
+    public void tamperedIvIsRejected() throws Exception {
+        HybridEnvelope parsed = HybridEnvelope.parse(seal("pay 10 to alice"));
+        assertNotNull(parsed);
+        parsed.iv[0] ^= 0x01;
+
+        try {
+            open(parsed);
+            fail("envelope with altered iv decrypted");
+        } catch (AEADBadTagException expected) {
+            // GCM tag check
+        }
+    }
+
+    private static String seal(String text) throws Exception {
+        SecretKey sessionKey = crypto.generateSymmetricKey();
+        String wrapped = Base64.getEncoder().encodeToString(crypto.wrapKey(sessionKey, recipient.getPublic()));
+        byte[] iv = crypto.generateRandomGcmIV();
+        byte[] ciphertext = crypto.encryptGcm(text.getBytes(StandardCharsets.UTF_8), sessionKey, iv);
+        return new HybridEnvelope(wrapped, iv, ciphertext).format();
+    }
+
+    private static String open(HybridEnvelope envelope) throws Exception {
+        SecretKey sessionKey = crypto.unwrapKey(Base64.getDecoder().decode(envelope.wrappedKey), recipient.getPrivate());
+        return new String(crypto.decryptGcm(envelope.ciphertext, sessionKey, envelope.iv), StandardCharsets.UTF_8);
+    }
+
+    private static String longText(int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.asiochatfrontend.data.relay.network;
+
+import com.example.asiochatfrontend.core.model.dto.MediaMessageDto;
+import com.example.asiochatfrontend.core.model.enums.MediaType;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+import okhttp3.WebSocket;
+import okio.ByteString;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Two uploads submitted together, against relays that write each chunk
+ * into the stream they opened last (framing 0, which never acks, and 1)
+ * and one that reads
+ * the stream id from the chunk header (framing 2). Every file must arrive
+ * intact, and the older relays must never see two streams open at once.
+ */
+public class MediaUploadSchedulerTest {
+
+    private static final int FILE_BYTES = 10 * ChunkedUploadEngine.CHUNK_SIZE + 123;
+
+    private final Gson gson = new Gson();
+    private final Random random = new Random(42);
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("uploads").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void rawChunksUploadOneAtATime() throws Exception {
+        FakeRelay relay = uploadTwoFiles(0);
+
+        assertEquals("streams open at once on a framing 0 relay", 1, relay.maxOpenStreams);
+    }
+
+    @Test
+    public void sequencedChunksUploadOneAtATime() throws Exception {
+        FakeRelay relay = uploadTwoFiles(1);
+
+        assertEquals("streams open at once on a framing 1 relay", 1, relay.maxOpenStreams);
+    }
+
+    @Test
+    public void multiplexedChunksKeepTheirStreams() throws Exception {
+        FakeRelay relay = uploadTwoFiles(2);
+
+        assertTrue(relay.maxOpenStreams >= 1);
+    }
+
+    /** Submit two uploads at once and check both files arrived byte for byte */
+    private FakeRelay uploadTwoFiles(int framing) throws Exception {
+        FakeRelay relay = new FakeRelay(framing);
+        ChunkedUploadEngine engine = new ChunkedUploadEngine(() -> relay, () -> false, gson, "me");
+        relay.engine = engine;
+        MediaUploadScheduler scheduler = new MediaUploadScheduler(engine, 2);
+
+        try {
+            byte[] first = randomBytes();
+            byte[] second = randomBytes();
+            ChunkedUpload a = engine.create(write("a.bin", first), message("a", "chat-1"), "application/octet-stream", MediaType.DOCUMENT);
+            ChunkedUpload b = engine.create(write("b.bin", second), message("b", "chat-2"), "application/octet-stream", MediaType.DOCUMENT);
+            scheduler.submit(a);
+            scheduler.submit(b);
+
+            assertTrue("upload a did not complete", a.result.get(20, TimeUnit.SECONDS));
+            assertTrue("upload b did not complete", b.result.get(20, TimeUnit.SECONDS));
+            assertArrayEquals("file a corrupted", first, relay.received("a"));
+            assertArrayEquals("file b corrupted", second, relay.received("b"));
+            return relay;
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    private byte[] randomBytes() {
+        byte[] bytes = new byte[FILE_BYTES];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private File write(String name, byte[] bytes) throws Exception {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+
+    private static MediaMessageDto message(String id, String chatId) {
+        MediaMessageDto message = new MediaMessageDto();
+        message.setId(id);
+        message.setChatId(chatId);
+        message.setJid("me");
+        return message;
+    }
+
+    /**
+     * Acks every start and chunk with its framing, from framing 1 on. Below
+     * framing 2 a chunk goes to the stream opened last, as on older relays.
+     */
+    private final class FakeRelay implements WebSocket {
+        private final int framing;
+        private final Map<String, ByteArrayOutputStream> files = new HashMap<>();
+        private final Map<Integer, String> streams = new HashMap<>();
+        private String lastStarted;
+        private int openStreams;
+        volatile int maxOpenStreams;
+        volatile ChunkedUploadEngine engine;
+
+        FakeRelay(int framing) {
+            this.framing = framing;
+        }
+
+        synchronized byte[] received(String id) {
+            ByteArrayOutputStream file = files.get(id);
+            return file != null ? file.toByteArray() : new byte[0];
+        }
+
+        @Override
+        public boolean send(String text) {
+            JsonObject payload = JsonParser.parseString(text).getAsJsonObject().getAsJsonObject("payload");
+            String id = payload.get("id").getAsString();
+            String streamState = payload.get("streamState").getAsString();
+            synchronized (this) {
+                if ("start".equals(streamState)) {
+                    files.put(id, new ByteArrayOutputStream());
+                    streams.put(payload.get("streamId").getAsInt(), id);
+                    lastStarted = id;
+                    maxOpenStreams = Math.max(maxOpenStreams, ++openStreams);
+                } else if ("end".equals(streamState) || "cancel".equals(streamState)) {
+                    openStreams--;
+                }
+            }
+            if ("start".equals(streamState)) {
+                ack(id, 0);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean send(ByteString bytes) {
+            ByteBuffer chunk = ByteBuffer.wrap(bytes.toByteArray());
+            String id;
+            long stored;
+            synchronized (this) {
+                id = lastStarted;
+                if (framing >= 2) {
+                    id = streams.get(chunk.getInt());
+                }
+                if (framing >= 1) {
+                    chunk.getInt();  // seq
+                    chunk.getLong(); // offset
+                }
+                ByteArrayOutputStream file = files.get(id);
+                file.write(chunk.array(), chunk.position(), chunk.remaining());
+                stored = file.size();
+            }
+            ack(id, stored);
+            Thread.yield(); // give a second upload the chance to interleave
+            return true;
+        }
+
+        private void ack(String id, long offset) {
+            if (framing == 0) return; // older relays do not ack at all
+            JsonObject ack = new JsonObject();
+            ack.addProperty("id", id);
+            ack.addProperty("streamState", "ack");
+            ack.addProperty("offset", offset);
+            ack.addProperty("framing", framing);
+            engine.onStreamEvent(ack);
+        }
+
+        @Override
+        public Request request() {
+            return new Request.Builder().url("http://relay.test/ws").build();
+        }
+
+        @Override
+        public long queueSize() {
+            return 0;
+        }
+
+        @Override
+        public boolean close(int code, String reason) {
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.asiochatfrontend.data.relay.network;
+
+import com.example.asiochatfrontend.data.relay.model.WebSocketEvent;
+import com.google.gson.JsonPrimitive;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * An event that could not be written goes back into the slot it held, so
+ * requeueing never pushes a full queue past its capacity and new events
+ * still see the queue as full.
+ */
+public class RelaySendQueueTest {
+
+    private static final int CAPACITY = 3;
+
+    @Test
+    public void requeueOnAFullLaneKeepsTheCapacity() {
+        RelaySendQueue queue = new RelaySendQueue(CAPACITY, RelaySendQueue.OverflowPolicy.FAIL_FAST, 0);
+        for (int i = 0; i < CAPACITY; i++) {
+            queue.offer(event(i));
+        }
+
+        RelaySendQueue.PendingEvent first = queue.poll();
+        // the polled event still holds its slot, so the lane stays full
+        RelaySendQueue.PendingEvent rejected = queue.offer(event(CAPACITY));
+        assertTrue(rejected.getResult().isCompletedExceptionally());
+
+        queue.requeue(first);
+        assertEquals(CAPACITY, queue.depth());
+        assertSame(first, queue.poll());
+        assertEquals(1, queue.getDroppedCount());
+    }
+
+    @Test
+    public void blockedOfferWaitsForTheSlotToBeReleased() throws Exception {
+        RelaySendQueue queue = new RelaySendQueue(CAPACITY, RelaySendQueue.OverflowPolicy.BLOCK, 5_000);
+        for (int i = 0; i < CAPACITY; i++) {
+            queue.offer(event(i));
+        }
+        RelaySendQueue.PendingEvent first = queue.poll();
+
+        RelaySendQueue.PendingEvent[] offered = new RelaySendQueue.PendingEvent[1];
+        Thread writer = new Thread(() -> offered[0] = queue.offer(event(CAPACITY)));
+        writer.start();
+        writer.join(200);
+        assertTrue("offer should wait while the polled event holds its slot", writer.isAlive());
+
+        // a requeue does not free the slot; only a send does
+        queue.requeue(first);
+        writer.join(200);
+        assertTrue(writer.isAlive());
+
+        queue.markSent(queue.poll());
+        writer.join(2_000);
+        assertTrue(!writer.isAlive() && !offered[0].getResult().isCompletedExceptionally());
+        assertEquals(CAPACITY, queue.depth());
+    }
+
+    private static WebSocketEvent event(int n) {
+        return new WebSocketEvent(WebSocketEvent.EventType.CHAT_READ, new JsonPrimitive(n), "user");
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.asiochatfrontend.data.relay.standin;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/** Collects nanosecond samples from many threads and reports exact percentiles */
+public class LatencyRecorder {
+
+    private long[] samples = new long[1024];
+    private int count = 0;
+
+    public synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /** @return the percentile in microseconds, e.g. 0.99 for p99; 0 if empty */
+    public synchronized long percentileMicros(double percentile) {
+        if (count == 0) return 0;
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * count) - 1;
+        return TimeUnit.NANOSECONDS.toMicros(sorted[Math.max(0, Math.min(index, count - 1))]);
+    }
+
+    public synchronized long maxMicros() {
+        long max = 0;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, samples[i]);
+        }
+        return TimeUnit.NANOSECONDS.toMicros(max);
+    }
+
+    /** One-line percentile summary for reports */
+    public String summary() {
+        return "p50=" + percentileMicros(0.50) + "us"
+                + " p95=" + percentileMicros(0.95) + "us"
+                + " p99=" + percentileMicros(0.99) + "us"
+                + " max=" + maxMicros() + "us";
+    }
+}
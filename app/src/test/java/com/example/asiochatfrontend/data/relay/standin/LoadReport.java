@@ -0,0 +1,64 @@
+package com.example.asiochatfrontend.data.relay.standin;
+
+/** Outcome of one {@link RelayLoadGenerator} run */
+public class LoadReport {
+
+    public final RelayLoadGenerator.Profile profile;
+    public final long sent;
+    public final long expectedDeliveries;
+    public final long delivered;
+    public final long duplicates;
+    public final long elapsedMs;
+    public final int maxDispatchQueueDepth;
+    public final LatencyRecorder endToEnd;
+    public final LatencyRecorder decrypt;
+    public final LatencyRecorder store;
+
+    LoadReport(
+            RelayLoadGenerator.Profile profile,
+            long sent,
+            long expectedDeliveries,
+            long delivered,
+            long duplicates,
+            long elapsedMs,
+            int maxDispatchQueueDepth,
+            LatencyRecorder endToEnd,
+            LatencyRecorder decrypt,
+            LatencyRecorder store
+    ) {
+        this.profile = profile;
+        this.sent = sent;
+        this.expectedDeliveries = expectedDeliveries;
+        this.delivered = delivered;
+        this.duplicates = duplicates;
+        this.elapsedMs = elapsedMs;
+        this.maxDispatchQueueDepth = maxDispatchQueueDepth;
+        this.endToEnd = endToEnd;
+        this.decrypt = decrypt;
+        this.store = store;
+    }
+
+    /** Deliveries that never arrived before the drain timeout */
+    public long getDropped() {
+        return Math.max(0, expectedDeliveries - delivered);
+    }
+
+    public double getDeliveriesPerSecond() {
+        return elapsedMs == 0 ? 0 : delivered * 1000.0 / elapsedMs;
+    }
+
+    @Override
+    public String toString() {
+        return "Relay load: " + profile + "\n"
+                + "  sent=" + sent
+                + " expected=" + expectedDeliveries
+                + " delivered=" + delivered
+                + " dropped=" + getDropped()
+                + " duplicates=" + duplicates
+                + String.format(" (%.0f deliveries/s)", getDeliveriesPerSecond()) + "\n"
+                + "  send->receive " + endToEnd.summary() + "\n"
+                + "  decrypt       " + decrypt.summary() + "\n"
+                + "  store         " + store.summary() + "\n"
+                + "  max dispatch queue depth=" + maxDispatchQueueDepth;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.asiochatfrontend.data.relay.standin;
+
+import androidx.arch.core.executor.ArchTaskExecutor;
+import androidx.arch.core.executor.TaskExecutor;
+
+import com.example.asiochatfrontend.core.model.dto.ChatDto;
+import com.example.asiochatfrontend.core.model.dto.TextMessageDto;
+import com.example.asiochatfrontend.core.service.AuthService;
+import com.example.asiochatfrontend.data.relay.network.RelayApiClient;
+import com.example.asiochatfrontend.data.relay.network.RelayApiService;
+import com.example.asiochatfrontend.data.relay.network.RelayWebSocketClient;
+import com.example.asiochatfrontend.data.relay.service.MessageIdDeduplicator;
+import com.example.asiochatfrontend.data.relay.service.RelayMessageService;
+import com.example.asiochatfrontend.domain.repository.ChatRepository;
+import com.example.asiochatfrontend.domain.repository.MediaRepository;
+import com.example.asiochatfrontend.domain.repository.MessageRepository;
+import com.example.asiochatfrontend.domain.repository.TransactionRunner;
+import com.google.gson.Gson;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts a real {@link RelayMessageService} behind a load-test client, so
+ * incoming messages go through its batching, dedup, parallel decrypt and
+ * transactional store. Storage and keys are in-memory fakes: the
+ * repositories hand stored batches to a {@link Sink} and every chat is a
+ * group chat whose key comes from a {@link KeyRing}. The REST client has
+ * no backend, so catch-up fetches fail the way an unreachable relay does.
+ */
+final class MessageServiceHarness {
+
+    private static final long DEDUP_WINDOW_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final int DEDUP_CAPACITY = 100_000;
+
+    interface KeyRing {
+        String decrypt(String chatId, String ciphertext) throws Exception;
+    }
+
+    interface Sink {
+        /** One batch the service wrote in a transaction */
+        void onStored(List<TextMessageDto> messages) throws Exception;
+    }
+
+    private MessageServiceHarness() {
+    }
+
+    static RelayMessageService attach(RelayWebSocketClient client, String userId, Gson gson, KeyRing keys, Sink sink) {
+        installInstantLiveData();
+
+        MessageRepository messages = fake(MessageRepository.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "saveMessages": {
+                    @SuppressWarnings("unchecked")
+                    List<TextMessageDto> batch = (List<TextMessageDto>) args[0];
+                    sink.onStored(batch);
+                    return batch;
+                }
+                case "getExistingMessageIds":
+                case "getPendingMessages":
+                    return Collections.emptyList();
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+        ChatRepository chats = fake(ChatRepository.class, (proxy, method, args) -> {
+            if (method.getName().equals("getChatById")) {
+                return new ChatDto((String) args[0], true, Collections.emptyList(), (String) args[0]);
+            }
+            return defaultValue(method.getReturnType());
+        });
+        AuthService auth = fake(AuthService.class, (proxy, method, args) -> {
+            if (method.getName().equals("decryptWithSymmetricKey")) {
+                return keys.decrypt((String) args[1], (String) args[0]);
+            }
+            return defaultValue(method.getReturnType());
+        });
+        TransactionRunner transactions = Runnable::run;
+
+        return new RelayMessageService(
+                messages,
+                fake(MediaRepository.class, (proxy, method, args) -> defaultValue(method.getReturnType())),
+                chats,
+                auth,
+                new RelayApiClient(fake(RelayApiService.class, (proxy, method, args) -> null), gson),
+                client,
+                gson,
+                userId,
+                transactions,
+                new MessageIdDeduplicator(DEDUP_WINDOW_MS, DEDUP_CAPACITY),
+                null,
+                null
+        );
+    }
+
+    /** LiveData posts run inline; the host JVM has no main looper to post to */
+    private static synchronized void installInstantLiveData() {
+        ArchTaskExecutor.getInstance().setDelegate(new TaskExecutor() {
+            @Override
+            public void executeOnDiskIO(Runnable runnable) {
+                runnable.run();
+            }
+
+            @Override
+            public void postToMainThread(Runnable runnable) {
+                runnable.run();
+            }
+
+            @Override
+            public boolean isMainThread() {
+                return true;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T fake(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals": return proxy == args[0];
+                    case "hashCode": return System.identityHashCode(proxy);
+                    default: return type.getSimpleName() + " fake";
+                }
+            }
+            return handler.invoke(proxy, method, args);
+        });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) return null;
+        if (type == boolean.class) return false;
+        if (type == char.class) return '\0';
+        if (type == long.class) return 0L;
+        if (type == float.class) return 0f;
+        if (type == double.class) return 0d;
+        if (type == byte.class) return (byte) 0;
+        if (type == short.class) return (short) 0;
+        return 0;
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.asiochatfrontend.data.relay.standin;
+
+import com.example.asiochatfrontend.core.model.dto.TextMessageDto;
+import com.example.asiochatfrontend.core.model.enums.MessageState;
+import com.example.asiochatfrontend.core.security.EncryptionService;
+import com.example.asiochatfrontend.data.database.converter.MessageStateDeserializer;
+import com.example.asiochatfrontend.data.relay.model.WebSocketEvent;
+import com.example.asiochatfrontend.data.relay.model.WebSocketEvent.EventType;
+import com.example.asiochatfrontend.data.relay.network.RelayWebSocketClient;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Drives N {@link RelayWebSocketClient}s through a {@link RelayStandInServer}:
+ * users are spread over M chats and send AES-encrypted text messages at a
+ * fixed total rate. Every receiver decrypts and stores what it gets, so the
+ * report covers the same steps a real incoming message goes through. With
+ * {@link Profile#viaMessageService} each receiver is a
+ * {@link com.example.asiochatfrontend.data.relay.service.RelayMessageService}
+ * instead, and a delivery counts once the service has stored it.
+ *
+ * Send and receive timestamps come from one JVM clock, so send-to-receive
+ * latency is exact. Storage is pluggable; the default keeps messages in a
+ * map, so a Room-backed {@link MessageStore} is needed for on-device timings.
+ */
+public class RelayLoadGenerator {
+
+    private static final long CONNECT_TIMEOUT_MS = 10_000;
+    private static final long DRAIN_TIMEOUT_MS = 10_000;
+
+    /** Where received messages are written; timed per message */
+    public interface MessageStore {
+        void save(TextMessageDto message) throws Exception;
+    }
+
+    /** Shape of the simulated traffic */
+    public static class Profile {
+        public int users = 6;
+        public int chats = 4;
+        public int membersPerChat = 3;
+        public int messagesPerSecond = 100;
+        public long durationMs = 3_000;
+        public int payloadBytes = 256;
+        /** Receive through RelayMessageService rather than a bare listener */
+        public boolean viaMessageService = false;
+
+        /** Defaults overridden by {@code -Drelay.load.users=10} and friends */
+        public static Profile fromSystemProperties() {
+            Profile profile = new Profile();
+            profile.users = Integer.getInteger("relay.load.users", profile.users);
+            profile.chats = Integer.getInteger("relay.load.chats", profile.chats);
+            profile.membersPerChat = Integer.getInteger("relay.load.membersPerChat", profile.membersPerChat);
+            profile.messagesPerSecond = Integer.getInteger("relay.load.rate", profile.messagesPerSecond);
+            profile.durationMs = Long.getLong("relay.load.durationMs", profile.durationMs);
+            profile.payloadBytes = Integer.getInteger("relay.load.payloadBytes", profile.payloadBytes);
+            profile.viaMessageService = Boolean.parseBoolean(
+                    System.getProperty("relay.load.viaMessageService", String.valueOf(profile.viaMessageService)));
+            return profile;
+        }
+
+        @Override
+        public String toString() {
+            return users + " users, " + chats + " chats x " + membersPerChat + " members, "
+                    + messagesPerSecond + " msg/s for " + durationMs + "ms, "
+                    + payloadBytes + "B payloads"
+                    + (viaMessageService ? ", via RelayMessageService" : "");
+        }
+    }
+
+    private final RelayStandInServer server;
+    private final Profile profile;
+    private final MessageStore store;
+    private final EncryptionService encryption = new EncryptionService();
+    private final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(MessageState.class, new MessageStateDeserializer())
+            .create();
+
+    private final Map<String, RelayWebSocketClient> clients = new ConcurrentHashMap<>();
+    private final List<SimulatedChat> chats = new ArrayList<>();
+    private final Map<String, Long> sentAtNanos = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> seenByUser = new ConcurrentHashMap<>();
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong expected = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicInteger maxDispatchDepth = new AtomicInteger();
+    private final LatencyRecorder endToEnd = new LatencyRecorder();
+    private final LatencyRecorder decrypt = new LatencyRecorder();
+    private final LatencyRecorder storeTime = new LatencyRecorder();
+
+    public RelayLoadGenerator(RelayStandInServer server, Profile profile) {
+        this(server, profile, inMemoryStore());
+    }
+
+    public RelayLoadGenerator(RelayStandInServer server, Profile profile, MessageStore store) {
+        this.server = server;
+        this.profile = profile;
+        this.store = store;
+    }
+
+    /** Connect every user, send for the profile's duration, wait for stragglers, report */
+    public LoadReport run() throws Exception {
+        setUpChats();
+        connectUsers();
+
+        long startNs = System.nanoTime();
+        ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor();
+        long periodNs = TimeUnit.SECONDS.toNanos(1) / Math.max(1, profile.messagesPerSecond);
+        sender.scheduleAtFixedRate(this::sendOne, 0, periodNs, TimeUnit.NANOSECONDS);
+        Thread.sleep(profile.durationMs);
+        sender.shutdownNow();
+        sender.awaitTermination(1, TimeUnit.SECONDS);
+
+        long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (delivered.get() < expected.get() && System.currentTimeMillis() < drainDeadline) {
+            sampleDispatchDepth();
+            Thread.sleep(20);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+
+        for (RelayWebSocketClient client : clients.values()) {
+            client.shutdown();
+        }
+        return new LoadReport(profile, sent.get(), expected.get(), delivered.get(), duplicates.get(),
+                elapsedMs, maxDispatchDepth.get(), endToEnd, decrypt, storeTime);
+    }
+
+    //==============================
+    // Setup
+    //==============================
+
+    private void setUpChats() throws Exception {
+        for (int c = 0; c < profile.chats; c++) {
+            List<String> members = new ArrayList<>();
+            for (int m = 0; m < Math.min(profile.membersPerChat, profile.users); m++) {
+                members.add(userId((c + m) % profile.users));
+            }
+            String chatId = "load-chat-" + c;
+            server.addChat(chatId, members.size() > 2, members);
+            chats.add(new SimulatedChat(chatId, members, encryption.generateSymmetricKey(),
+                    encryption.generateRandomIV()));
+        }
+    }
+
+    private void connectUsers() throws InterruptedException {
+        for (int u = 0; u < profile.users; u++) {
+            String userId = userId(u);
+            RelayWebSocketClient client = new RelayWebSocketClient(server.getBaseUrl(), userId, null, gson);
+            Set<String> seen = Collections.newSetFromMap(new ConcurrentHashMap<>());
+            seenByUser.put(userId, seen);
+            if (profile.viaMessageService) {
+                MessageServiceHarness.attach(client, userId, gson, this::decryptFor,
+                        stored -> onStored(userId, seen, stored));
+            } else {
+                client.subscribe(EventType.INCOMING, TextMessageDto.class,
+                        (message, event) -> onReceived(userId, seen, message));
+            }
+            clients.put(userId, client);
+        }
+
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+        while (server.getConnectedCount() < profile.users) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Only " + server.getConnectedCount() + "/"
+                        + profile.users + " users connected to the stand-in relay");
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    //==============================
+    // Traffic
+    //==============================
+
+    private void sendOne() {
+        try {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            SimulatedChat chat = chats.get(random.nextInt(chats.size()));
+            String senderId = chat.members.get(random.nextInt(chat.members.size()));
+
+            String id = UUID.randomUUID().toString();
+            String ciphertext = encryption.encryptStringSymmetric(randomText(random), chat.key, chat.iv);
+            TextMessageDto message = new TextMessageDto(id, new ArrayList<>(chat.members), MessageState.SENT,
+                    new Date(), senderId, chat.chatId, ciphertext);
+
+            expected.addAndGet(chat.members.size() - 1);
+            sentAtNanos.put(id, System.nanoTime());
+            clients.get(senderId).sendEvent(
+                    new WebSocketEvent(EventType.CHAT, gson.toJsonTree(message), senderId));
+            sent.incrementAndGet();
+            sampleDispatchDepth();
+        } catch (Exception e) {
+            throw new IllegalStateException("Load generator send failed", e);
+        }
+    }
+
+    /** Runs on the receiving client's dispatch thread, like a real listener */
+    private void onReceived(String userId, Set<String> seen, TextMessageDto message) {
+        long receivedNs = System.nanoTime();
+        if (message == null || userId.equals(message.getJid())) return; // our own echo
+        if (!firstDelivery(seen, message, receivedNs)) return;
+
+        try {
+            SimulatedChat chat = chatById(message.getChatId());
+            long decryptStart = System.nanoTime();
+            message.setPayload(encryption.decryptStringSymmetric(message.getPayload(), chat.key, chat.iv));
+            decrypt.record(System.nanoTime() - decryptStart);
+
+            long storeStart = System.nanoTime();
+            store.save(message);
+            storeTime.record(System.nanoTime() - storeStart);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to handle message " + message.getId(), e);
+        }
+        delivered.incrementAndGet();
+    }
+
+    /** Runs inside the service's store transaction, after it decrypted the batch */
+    private void onStored(String userId, Set<String> seen, List<TextMessageDto> stored) throws Exception {
+        long storedNs = System.nanoTime();
+        for (TextMessageDto message : stored) {
+            if (userId.equals(message.getJid()) || !firstDelivery(seen, message, storedNs)) continue;
+
+            long storeStart = System.nanoTime();
+            store.save(message);
+            storeTime.record(System.nanoTime() - storeStart);
+            delivered.incrementAndGet();
+        }
+    }
+
+    /** Called by the service's decrypt workers */
+    private String decryptFor(String chatId, String ciphertext) throws Exception {
+        SimulatedChat chat = chatById(chatId);
+        long decryptStart = System.nanoTime();
+        String plaintext = encryption.decryptStringSymmetric(ciphertext, chat.key, chat.iv);
+        decrypt.record(System.nanoTime() - decryptStart);
+        return plaintext;
+    }
+
+    /** Count a duplicate, or record the message's latency if it is the first copy */
+    private boolean firstDelivery(Set<String> seen, TextMessageDto message, long arrivedNs) {
+        if (!seen.add(message.getId())) {
+            duplicates.incrementAndGet();
+            return false;
+        }
+        Long sentNs = sentAtNanos.get(message.getId());
+        if (sentNs != null) {
+            endToEnd.record(arrivedNs - sentNs);
+        }
+        return true;
+    }
+
+    private void sampleDispatchDepth() {
+        for (RelayWebSocketClient client : clients.values()) {
+            maxDispatchDepth.accumulateAndGet(client.getDispatchQueueDepth(), Math::max);
+        }
+    }
+
+    private SimulatedChat chatById(String chatId) {
+        for (SimulatedChat chat : chats) {
+            if (chat.chatId.equals(chatId)) return chat;
+        }
+        throw new IllegalArgumentException("Unknown chat " + chatId);
+    }
+
+    private String randomText(ThreadLocalRandom random) {
+        StringBuilder text = new StringBuilder(profile.payloadBytes);
+        for (int i = 0; i < profile.payloadBytes; i++) {
+            text.append((char) ('a' + random.nextInt(26)));
+        }
+        return text.toString();
+    }
+
+    private static String userId(int index) {
+        return "load-user-" + index;
+    }
+
+    private static MessageStore inMemoryStore() {
+        Map<String, TextMessageDto> messages = new ConcurrentHashMap<>();
+        return message -> messages.put(message.getId(), message);
+    }
+
+    private static final class SimulatedChat {
+        final String chatId;
+        final List<String> members;
+        final SecretKey key;
+        final byte[] iv;
+
+        SimulatedChat(String chatId, List<String> members, SecretKey key, byte[] iv) {
+            this.chatId = chatId;
+            this.members = members;
+            this.key = key;
+            this.iv = iv;
+        }
+    }
+}
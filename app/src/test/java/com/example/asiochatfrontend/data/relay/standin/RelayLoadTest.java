@@ -0,0 +1,69 @@
+package com.example.asiochatfrontend.data.relay.standin;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * End-to-end relay load test against the in-process stand-in relay.
+ * Each run takes seconds, so it is skipped unless {@code relay.load.enabled}
+ * is set; the profile takes its shape from the other relay.load properties, e.g.
+ * {@code ./gradlew :app:testDebugUnitTest --tests '*RelayLoadTest' -Drelay.load.enabled=true -Drelay.load.users=50 -Drelay.load.rate=2000}
+ * The report is carried in every assertion message, so a failing run shows
+ * its numbers.
+ */
+public class RelayLoadTest {
+
+    private RelayStandInServer relay;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue("relay load tests need -Drelay.load.enabled=true", Boolean.getBoolean("relay.load.enabled"));
+        relay = new RelayStandInServer();
+        relay.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (relay == null) return;
+        relay.shutdown();
+    }
+
+    @Test
+    public void messagesFanOutWithoutLossOrDuplicates() throws Exception {
+        LoadReport report = new RelayLoadGenerator(relay, RelayLoadGenerator.Profile.fromSystemProperties()).run();
+
+        assertTrue("nothing was sent\n" + report, report.sent > 0);
+        assertEquals("dropped deliveries\n" + report, 0, report.getDropped());
+        assertEquals("duplicate deliveries\n" + report, 0, report.duplicates);
+    }
+
+    @Test
+    public void messageServiceStoresEveryMessageOnceUnderLoad() throws Exception {
+        relay.setDuplicateRate(0.05); // redeliveries must be dropped by the service, not stored
+        RelayLoadGenerator.Profile profile = RelayLoadGenerator.Profile.fromSystemProperties();
+        profile.viaMessageService = true;
+
+        LoadReport report = new RelayLoadGenerator(relay, profile).run();
+
+        assertTrue("nothing was sent\n" + report, report.sent > 0);
+        assertEquals("deliveries not stored\n" + report, 0, report.getDropped());
+        assertEquals("duplicates stored\n" + report, 0, report.duplicates);
+    }
+
+    @Test
+    public void reportCountsRelayDuplicates() throws Exception {
+        relay.setDuplicateRate(0.2);
+        RelayLoadGenerator.Profile profile = new RelayLoadGenerator.Profile();
+        profile.durationMs = 1_000;
+
+        LoadReport report = new RelayLoadGenerator(relay, profile).run();
+
+        assertEquals("dropped deliveries\n" + report, 0, report.getDropped());
+        assertTrue("duplicates not detected\n" + report, report.duplicates > 0);
+    }
+}
@@ -0,0 +1,551 @@
+package com.example.asiochatfrontend.data.relay.standin;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.HttpUrl;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * In-process stand-in for the .NET relay, good enough for
+ * {@code RelayWebSocketClient} and the Retrofit routes in
+ * {@code RelayApiService} to run against without network access.
+ *
+ * Serves {@code /message-broker/live-chat}: CONNECTION registers the session,
+ * CHAT messages fan out to every chat member as {@code incomingMessage} with
+ * a per-user seq and are acked to the sender with MESSAGE_ACK (a resent
+ * message is acked again but stored once), MESSAGE_READ goes back to the sender, a CHAT_READ
+ * watermark is applied to the stored messages and passed on to the other
+ * members, PING is answered with PONG and a resume request is acked with
+ * {@code replayed:false}.
+ * Chats, keys, users and message history live in memory.
+ * Frames can be dropped or duplicated on purpose to exercise the client.
+ */
+public class RelayStandInServer {
+
+    private static final String LIVE_CHAT_PATH = "/message-broker/live-chat";
+
+    private final MockWebServer server = new MockWebServer();
+    private final Gson gson = new Gson();
+
+    private final Map<String, WebSocket> sessions = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> userSeq = new ConcurrentHashMap<>();
+    private final Map<String, JsonObject> chats = new ConcurrentHashMap<>();
+    private final Map<String, JsonObject> users = new ConcurrentHashMap<>();
+    private final Map<String, List<JsonObject>> publicKeys = new ConcurrentHashMap<>();
+    private final Map<String, List<JsonObject>> symmetricKeys = new ConcurrentHashMap<>();
+    private final List<StoredMessage> messages = new CopyOnWriteArrayList<>();
+    private final Map<String, String> messageSenders = new ConcurrentHashMap<>();
+
+    private final AtomicLong framesIn = new AtomicLong();
+    private final AtomicLong framesOut = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesDuplicated = new AtomicLong();
+
+    private volatile double dropRate = 0;
+    private volatile double duplicateRate = 0;
+    private volatile boolean acksEnabled = true;
+
+    public RelayStandInServer() {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath() != null ? request.getPath() : "";
+                if (path.startsWith(LIVE_CHAT_PATH)) {
+                    return new MockResponse().withWebSocketUpgrade(new SessionListener());
+                }
+                return handleRest(request.getMethod(), stripQuery(path), request.getRequestUrl(), request.getBody().readUtf8());
+            }
+        });
+    }
+
+    public void start() throws IOException {
+        server.start();
+    }
+
+    public void shutdown() throws IOException {
+        for (WebSocket session : sessions.values()) {
+            session.close(1001, "Stand-in shutting down");
+        }
+        server.shutdown();
+    }
+
+    /** Base URL in the form the app stores it, e.g. {@code http://127.0.0.1:54321} */
+    public String getBaseUrl() {
+        return "http://" + server.getHostName() + ":" + server.getPort();
+    }
+
+    public String getHost() {
+        return server.getHostName();
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+
+    /** Register a chat directly, as if it had been created through the REST route */
+    public void addChat(String chatId, boolean group, List<String> members) {
+        JsonObject chat = new JsonObject();
+        chat.addProperty("chatId", chatId);
+        chat.addProperty("isGroup", group);
+        JsonArray recipients = new JsonArray();
+        members.forEach(recipients::add);
+        chat.add("recipients", recipients);
+        chat.addProperty("chatName", chatId);
+        chats.put(chatId, chat);
+    }
+
+    /** Fraction of outbound frames silently lost, 0..1 */
+    public void setDropRate(double dropRate) {
+        this.dropRate = dropRate;
+    }
+
+    /** Fraction of outbound frames sent twice, 0..1 */
+    public void setDuplicateRate(double duplicateRate) {
+        this.duplicateRate = duplicateRate;
+    }
+
+    /** Stop acking CHAT messages, as a relay that lost them would */
+    public void setAcksEnabled(boolean acksEnabled) {
+        this.acksEnabled = acksEnabled;
+    }
+
+    public int getConnectedCount() {
+        return sessions.size();
+    }
+
+    public long getFramesIn() {
+        return framesIn.get();
+    }
+
+    public long getFramesOut() {
+        return framesOut.get();
+    }
+
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    public long getFramesDuplicated() {
+        return framesDuplicated.get();
+    }
+
+    //==============================
+    // WebSocket
+    //==============================
+
+    private class SessionListener extends WebSocketListener {
+        private volatile String jid;
+
+        @Override
+        public void onMessage(WebSocket socket, String text) {
+            framesIn.incrementAndGet();
+            JsonObject frame = JsonParser.parseString(text).getAsJsonObject();
+            String type = frame.has("type") ? frame.get("type").getAsString() : "";
+            JsonElement payload = frame.get("payload");
+
+            switch (type) {
+                case "CONNECTION":
+                    jid = frame.get("jid").getAsString();
+                    WebSocket previous = sessions.put(jid, socket);
+                    if (previous != null && previous != socket) {
+                        previous.close(1000, "Replaced by newer session");
+                    }
+                    if (payload != null && payload.isJsonObject()
+                            && payload.getAsJsonObject().has("resume")) {
+                        JsonObject ack = new JsonObject();
+                        ack.addProperty("replayed", false);
+                        send(socket, "RESUME", null, null, ack);
+                    }
+                    break;
+                case "PING":
+                    send(socket, "PONG", null, null, payload);
+                    break;
+                case "CHAT":
+                    onChatFrame(socket, payload);
+                    break;
+                case "MESSAGE_READ":
+                    onReadReceipt(payload);
+                    break;
+                case "CHAT_READ":
+                    onReadWatermark(payload);
+                    break;
+                case "CREATE_CHAT":
+                    onChatCreated(payload);
+                    break;
+                case "REMOVED_CHAT":
+                    onRemovedFromChat(payload);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void onClosed(WebSocket socket, int code, String reason) {
+            unregister(socket);
+        }
+
+        @Override
+        public void onFailure(WebSocket socket, Throwable t, Response response) {
+            unregister(socket);
+        }
+
+        private void unregister(WebSocket socket) {
+            if (jid != null) {
+                sessions.remove(jid, socket);
+            }
+        }
+    }
+
+    /** CHAT carries either a message (has "payload") or a group update (has "recipients") */
+    private void onChatFrame(WebSocket socket, JsonElement payload) {
+        if (payload == null || !payload.isJsonObject()) return;
+        JsonObject body = payload.getAsJsonObject();
+        String chatId = body.has("chatId") ? body.get("chatId").getAsString() : null;
+        if (chatId == null) return;
+
+        if (body.has("recipients")) {
+            chats.put(chatId, body);
+            for (String member : membersOf(chatId)) {
+                sendTo(member, "CHAT", body);
+            }
+            return;
+        }
+
+        String messageId = body.has("id") ? body.get("id").getAsString() : null;
+        String sender = body.has("jid") ? body.get("jid").getAsString() : null;
+        boolean resent = messageId != null && sender != null && messageSenders.putIfAbsent(messageId, sender) != null;
+        if (!resent) {
+            messages.add(new StoredMessage(System.currentTimeMillis(), body));
+            for (String member : membersOf(chatId)) {
+                sendTo(member, "incomingMessage", body);
+            }
+        }
+
+        if (socket != null && acksEnabled && messageId != null) {
+            JsonObject ack = new JsonObject();
+            ack.addProperty("messageId", messageId);
+            send(socket, "MESSAGE_ACK", null, null, ack);
+        }
+    }
+
+    private void onReadReceipt(JsonElement payload) {
+        if (payload == null || !payload.isJsonObject()) return;
+        JsonObject receipt = payload.getAsJsonObject();
+        if (!receipt.has("messageId")) return;
+        String sender = messageSenders.get(receipt.get("messageId").getAsString());
+        if (sender != null) {
+            sendTo(sender, "MESSAGE_READ", receipt);
+        }
+    }
+
+    /** Drop the reader from every stored message up to the watermark, then fan it out once */
+    private void onReadWatermark(JsonElement payload) {
+        if (payload == null || !payload.isJsonObject()) return;
+        JsonObject watermark = payload.getAsJsonObject();
+        if (!watermark.has("chatId") || !watermark.has("readBy") || !watermark.has("upToMessageId")) return;
+        String chatId = watermark.get("chatId").getAsString();
+        String reader = watermark.get("readBy").getAsString();
+        String upToMessageId = watermark.get("upToMessageId").getAsString();
+
+        List<JsonObject> covered = new ArrayList<>();
+        boolean found = false;
+        for (StoredMessage message : messages) {
+            if (!chatId.equals(message.chatId())) continue;
+            covered.add(message.body);
+            if (message.body.has("id") && upToMessageId.equals(message.body.get("id").getAsString())) {
+                found = true;
+                break;
+            }
+        }
+        if (!found) return;
+
+        for (JsonObject body : covered) {
+            synchronized (body) {
+                JsonArray waiting = body.getAsJsonArray("waitingMemebersList");
+                if (waiting == null || !waiting.remove(new JsonPrimitive(reader))) continue;
+                if (waiting.size() == 0) body.addProperty("status", "READ");
+            }
+        }
+        for (String member : membersOf(chatId)) {
+            if (!member.equals(reader)) sendTo(member, "CHAT_READ", watermark);
+        }
+    }
+
+    private void onChatCreated(JsonElement payload) {
+        if (payload == null || !payload.isJsonObject()) return;
+        JsonElement participants = payload.getAsJsonObject().get("participants");
+        if (participants == null || !participants.isJsonArray()) return;
+        for (JsonElement participant : participants.getAsJsonArray()) {
+            sendTo(participant.getAsString(), "CREATE_CHAT", payload);
+        }
+    }
+
+    private void onRemovedFromChat(JsonElement payload) {
+        if (payload == null || !payload.isJsonObject()) return;
+        JsonObject removal = payload.getAsJsonObject();
+        String userId = removal.get("userIdToRemove").getAsString();
+        String chatId = removal.get("chatIdToRemoveFrom").getAsString();
+        JsonObject chat = chats.get(chatId);
+        if (chat != null && chat.has("recipients")) {
+            JsonArray remaining = new JsonArray();
+            for (JsonElement member : chat.getAsJsonArray("recipients")) {
+                if (!member.getAsString().equals(userId)) remaining.add(member);
+            }
+            chat.add("recipients", remaining);
+        }
+        sendTo(userId, "REMOVED_CHAT", gson.toJsonTree(chatId));
+    }
+
+    private void sendTo(String userId, String type, JsonElement payload) {
+        WebSocket session = sessions.get(userId);
+        if (session == null) return; // offline; it will fetch history on catch-up
+        AtomicLong seq = userSeq.computeIfAbsent(userId, id -> new AtomicLong());
+        synchronized (seq) {
+            // several senders fan out to one recipient at once; keep seq and wire order in step
+            send(session, type, userId, seq.incrementAndGet(), payload);
+        }
+    }
+
+    private void send(WebSocket socket, String type, String jid, Long seq, JsonElement payload) {
+        JsonObject frame = new JsonObject();
+        frame.addProperty("type", type);
+        if (jid != null) frame.addProperty("jid", jid);
+        if (seq != null) frame.addProperty("seq", seq);
+        frame.addProperty("ts", System.currentTimeMillis());
+        frame.add("payload", payload);
+        String text = gson.toJson(frame);
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (dropRate > 0 && random.nextDouble() < dropRate) {
+            framesDropped.incrementAndGet();
+            return;
+        }
+        socket.send(text);
+        framesOut.incrementAndGet();
+        if (duplicateRate > 0 && random.nextDouble() < duplicateRate) {
+            socket.send(text);
+            framesDuplicated.incrementAndGet();
+        }
+    }
+
+    private List<String> membersOf(String chatId) {
+        List<String> members = new ArrayList<>();
+        JsonObject chat = chats.get(chatId);
+        if (chat == null || !chat.has("recipients")) return members;
+        for (JsonElement member : chat.getAsJsonArray("recipients")) {
+            members.add(member.getAsString());
+        }
+        return members;
+    }
+
+    //==============================
+    // REST routes
+    //==============================
+
+    private MockResponse handleRest(String method, String path, HttpUrl url, String body) {
+        String[] parts = path.replaceFirst("^/", "").split("/");
+        try {
+            // auth-service/api/auth/...
+            if (path.startsWith("/auth-service/api/auth/")) {
+                return handleAuth(method, parts, body);
+            }
+            // user-service/api/users/...
+            if (path.startsWith("/user-service/api/users")) {
+                if (parts.length == 3) {
+                    return json(toArray(users.values()));
+                }
+                String userId = parts[3];
+                if ("PUT".equals(method)) {
+                    JsonObject user = JsonParser.parseString(body).getAsJsonObject();
+                    user.addProperty("jid", userId);
+                    users.put(userId, user);
+                }
+                return json(users.computeIfAbsent(userId, RelayStandInServer::newUser));
+            }
+            // message-broker/chat/...
+            if (path.startsWith("/message-broker/chat")) {
+                if ("POST".equals(method) && parts.length == 2) {
+                    JsonObject chat = JsonParser.parseString(body).getAsJsonObject();
+                    chats.put(chat.get("chatId").getAsString(), chat);
+                    return json(chat);
+                }
+                if (parts.length == 4 && "user".equals(parts[2])) {
+                    List<JsonObject> mine = new ArrayList<>();
+                    for (JsonObject chat : chats.values()) {
+                        if (membersOf(chat.get("chatId").getAsString()).contains(parts[3])) mine.add(chat);
+                    }
+                    return json(toArray(mine));
+                }
+                if (parts.length == 3) {
+                    if ("PUT".equals(method)) {
+                        chats.put(parts[2], JsonParser.parseString(body).getAsJsonObject());
+                    }
+                    JsonObject chat = chats.get(parts[2]);
+                    return chat != null ? json(chat) : notFound();
+                }
+            }
+            // message-broker (REST send)
+            if ("POST".equals(method) && "/message-broker".equals(path)) {
+                JsonObject message = JsonParser.parseString(body).getAsJsonObject();
+                onChatFrame(null, message); // the response is the ack
+                return json(message);
+            }
+            // message-service/api/messages/...
+            if (path.startsWith("/message-service/api/messages/")) {
+                return handleMessageHistory(parts, url);
+            }
+        } catch (RuntimeException e) {
+            return new MockResponse().setResponseCode(400).setBody(String.valueOf(e.getMessage()));
+        }
+        return notFound();
+    }
+
+    private MockResponse handleAuth(String method, String[] parts, String body) {
+        // parts: auth-service, api, auth, <op>, ...
+        String op = parts[3];
+        if ("register".equals(op)) {
+            JsonObject credentials = JsonParser.parseString(body).getAsJsonObject();
+            String jid = credentials.has("jid") ? credentials.get("jid").getAsString() : "user";
+            return json(users.computeIfAbsent(jid, RelayStandInServer::newUser));
+        }
+
+        boolean isPublic = "public".equals(parts[4]);
+        Map<String, List<JsonObject>> store = isPublic ? publicKeys : symmetricKeys;
+        if ("POST".equals(method)) {
+            JsonObject key = JsonParser.parseString(body).getAsJsonObject();
+            String owner = key.get(isPublic ? "jid" : "chatId").getAsString();
+            store.computeIfAbsent(owner, id -> new CopyOnWriteArrayList<>()).add(key);
+            return json(gson.toJsonTree(true));
+        }
+
+        if ("all".equals(parts[5])) {
+            if (isPublic) {
+                List<JsonObject> keys = publicKeys.get(parts[6]);
+                return json(toArray(keys != null ? keys : new ArrayList<>()));
+            }
+            // symmetric keys of every chat the user is in
+            List<JsonObject> keys = new ArrayList<>();
+            for (Map.Entry<String, List<JsonObject>> entry : symmetricKeys.entrySet()) {
+                if (membersOf(entry.getKey()).contains(parts[6])) keys.addAll(entry.getValue());
+            }
+            return json(toArray(keys));
+        }
+
+        // <owner>/timestamp/<ts>: newest key created at or before ts
+        List<JsonObject> keys = store.get(parts[5]);
+        long timestamp = Long.parseLong(parts[7]);
+        JsonObject match = null;
+        if (keys != null) {
+            for (JsonObject key : keys) {
+                if (key.get("createdAt").getAsLong() <= timestamp) match = key;
+            }
+        }
+        return match != null ? json(match) : notFound();
+    }
+
+    private MockResponse handleMessageHistory(String[] parts, HttpUrl url) {
+        // chat/{chatId}, user/{userId}/since/{timestamp} or user/{userId}/offline
+        if ("user".equals(parts[3]) && parts.length == 6 && "offline".equals(parts[5])) {
+            return offlineInboxPage(parts[4], url);
+        }
+        List<JsonObject> result = new ArrayList<>();
+        if ("chat".equals(parts[3])) {
+            for (StoredMessage message : messages) {
+                if (parts[4].equals(message.chatId())) result.add(message.body);
+            }
+        } else if ("user".equals(parts[3]) && parts.length >= 7) {
+            String userId = parts[4];
+            long since = Long.parseLong(parts[6]);
+            for (StoredMessage message : messages) {
+                if (message.receivedAt > since && membersOf(message.chatId()).contains(userId)) {
+                    result.add(message.body);
+                }
+            }
+        }
+        return json(toArray(result));
+    }
+
+    /** The cursor is an offset into the user's messages, oldest first */
+    private MockResponse offlineInboxPage(String userId, HttpUrl url) {
+        String cursor = url != null ? url.queryParameter("cursor") : null;
+        String limitParam = url != null ? url.queryParameter("limit") : null;
+        int offset = cursor != null ? Integer.parseInt(cursor) : 0;
+        int limit = limitParam != null ? Integer.parseInt(limitParam) : 100;
+
+        List<JsonObject> inbox = new ArrayList<>();
+        for (StoredMessage message : messages) {
+            if (membersOf(message.chatId()).contains(userId)) inbox.add(message.body);
+        }
+        int end = Math.min(inbox.size(), offset + limit);
+
+        JsonObject page = new JsonObject();
+        page.add("messages", toArray(inbox.subList(Math.min(offset, end), end)));
+        if (end < inbox.size()) {
+            page.addProperty("nextCursor", String.valueOf(end));
+        }
+        return json(page);
+    }
+
+    private static final class StoredMessage {
+        final long receivedAt;
+        final JsonObject body;
+
+        StoredMessage(long receivedAt, JsonObject body) {
+            this.receivedAt = receivedAt;
+            this.body = body;
+        }
+
+        String chatId() {
+            return body.get("chatId").getAsString();
+        }
+    }
+
+    private static JsonObject newUser(String jid) {
+        JsonObject user = new JsonObject();
+        user.addProperty("jid", jid);
+        user.addProperty("name", jid);
+        return user;
+    }
+
+    private JsonArray toArray(Iterable<JsonObject> items) {
+        JsonArray array = new JsonArray();
+        items.forEach(array::add);
+        return array;
+    }
+
+    private MockResponse json(JsonElement body) {
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody(gson.toJson(body));
+    }
+
+    private static MockResponse notFound() {
+        return new MockResponse().setResponseCode(404);
+    }
+
+    private static String stripQuery(String path) {
+        int query = path.indexOf('?');
+        return query >= 0 ? path.substring(0, query) : path;
+    }
+}